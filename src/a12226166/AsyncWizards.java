@@ -0,0 +1,168 @@
+package a12226166;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous front end for wizards: castSpell, useItem, sellItem, steal and
+ * loot return a CompletableFuture of the result instead of running on the
+ * calling thread, so a caller never blocks on a wizard that is busy and can
+ * compose the results (thenCompose, allOf, ...).
+ * <p>
+ * Wizard is not thread safe, so every Wizard has a lane: the actions that
+ * concern a wizard run one after the other, in the order in which they were
+ * submitted, and never at the same time as another action of the same wizard.
+ * An action that concerns several wizards (e.g. a spell cast on another Wizard
+ * or a sale to a Wizard) takes its turn in the lanes of all of them; turns are
+ * taken in all lanes at once, so two such actions cannot wait for each other.
+ * Other participants (e.g. a ConcurrentWizard) are thread safe and have no
+ * lane. Lanes do not block threads: an action is handed to the executor once
+ * it has its turn in all of its lanes, and its future completes on the thread
+ * of the executor that ran it.
+ * <p>
+ * The wizards must not be used directly by other threads while actions are
+ * pending.
+ */
+public final class AsyncWizards {
+    private final Executor executor;
+    /**
+     * Lane of every wizard; guarded by this
+     */
+    private final Map<Wizard, Lane> lanes = new WeakHashMap<>();
+
+    /**
+     * If executor is null, an IllegalArgumentException is thrown
+     *
+     * @param executor runs the actions
+     */
+    public AsyncWizards(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("Executor must not be null");
+        this.executor = executor;
+    }
+
+    /**
+     * If an argument is null, an IllegalArgumentException is thrown; casts spell
+     * on target (see Wizard.castSpell)
+     *
+     * @param caster wizard that casts the spell
+     * @param spell  spell to cast
+     * @param target target of the spell
+     * @return future of the result of castSpell
+     */
+    public CompletableFuture<Boolean> castSpell(Wizard caster, Spell spell, MagicEffectRealization target) {
+        requireNonNull(caster, spell, target);
+        return run(() -> caster.castSpell(spell, target), caster, target);
+    }
+
+    /**
+     * If an argument is null, an IllegalArgumentException is thrown; uses item on
+     * target (see Wizard.useItem)
+     *
+     * @param user   wizard that uses the item
+     * @param item   item to use
+     * @param target target of the item
+     * @return future of the result of useItem
+     */
+    public CompletableFuture<Boolean> useItem(Wizard user, Tradeable item, MagicEffectRealization target) {
+        requireNonNull(user, item, target);
+        return run(() -> user.useItem(item, target), user, target);
+    }
+
+    /**
+     * If an argument is null, an IllegalArgumentException is thrown; sells item
+     * to buyer (see Wizard.sellItem)
+     *
+     * @param seller wizard that sells the item
+     * @param item   item to sell
+     * @param buyer  the one who buys the item
+     * @return future of the result of sellItem
+     */
+    public CompletableFuture<Boolean> sellItem(Wizard seller, Tradeable item, Trader buyer) {
+        requireNonNull(seller, item, buyer);
+        return run(() -> seller.sellItem(item, buyer), seller, buyer);
+    }
+
+    /**
+     * If an argument is null, an IllegalArgumentException is thrown; thief
+     * steals from victim (see Wizard.steal)
+     *
+     * @param victim wizard that is robbed
+     * @param thief  the one who steals
+     * @return future of the result of steal
+     */
+    public CompletableFuture<Boolean> steal(Wizard victim, Trader thief) {
+        requireNonNull(victim, thief);
+        return run(() -> victim.steal(thief), victim, thief);
+    }
+
+    /**
+     * If an argument is null, an IllegalArgumentException is thrown; looter
+     * loots victim (see Wizard.loot)
+     *
+     * @param victim wizard that is looted
+     * @param looter the one who loots
+     * @return future of the result of loot
+     */
+    public CompletableFuture<Boolean> loot(Wizard victim, Trader looter) {
+        requireNonNull(victim, looter);
+        return run(() -> victim.loot(looter), victim, looter);
+    }
+
+    /**
+     * If wizard or action is null, an IllegalArgumentException is thrown; applies
+     * action to wizard in the lane of wizard, e.g. to read its state in between
+     * other actions
+     *
+     * @param wizard wizard the action concerns
+     * @param action action to apply
+     * @param <T>    type of the result
+     * @return future of the result of action
+     */
+    public <T> CompletableFuture<T> submit(Wizard wizard, Function<? super Wizard, ? extends T> action) {
+        requireNonNull(wizard, action);
+        return run(() -> action.apply(wizard), wizard);
+    }
+
+    private static void requireNonNull(Object... arguments) {
+        for (var argument : arguments)
+            if (argument == null)
+                throw new IllegalArgumentException("Arguments must not be null");
+    }
+
+    /**
+     * Runs action on the executor once it has its turn in the lanes of all
+     * participants that are wizards; the turns end when action has completed
+     */
+    private <T> CompletableFuture<T> run(Supplier<? extends T> action, Object... participants) {
+        var release = new CompletableFuture<Void>();
+        var turns = new ArrayList<CompletableFuture<Void>>(participants.length);
+        synchronized (this) {
+            for (var participant : participants)
+                if (participant instanceof Wizard wizard) {
+                    var lane = lanes.computeIfAbsent(wizard, w -> new Lane());
+                    if (lane.tail != release) {
+                        turns.add(lane.tail);
+                        lane.tail = release;
+                    }
+                }
+        }
+        var turn = turns.size() == 1 ? turns.get(0)
+                : CompletableFuture.allOf(turns.toArray(new CompletableFuture<?>[0]));
+        CompletableFuture<T> result = turn.thenApplyAsync(v -> action.get(), executor);
+        return result.whenComplete((value, failure) -> release.complete(null));
+    }
+
+    /**
+     * Actions of one wizard, as a chain of futures: every action waits for the
+     * future of the action before it and completes its own when it is done
+     */
+    private static final class Lane {
+        CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    }
+}
@@ -1,8 +1,5 @@
 package a12226166;
 
-import java.util.Collections;
-import java.util.Set;
-
 /**
  * Magic spells that do some sort of damage to a target
  */
@@ -30,6 +27,14 @@ public class AttackingSpell extends Spell {
      * if percentage==true, amount must be in the interval [0,100]
      */
     private final int amount;
+    /**
+     * Kind of effect resolved from type and percentage
+     */
+    private final EffectKind effect;
+    /**
+     * Result of additionalOutputString, which never changes
+     */
+    private final String outputString;
 
     /**
      * @param name        name
@@ -49,34 +54,64 @@ public class AttackingSpell extends Spell {
         this.type = type;
         this.percentage = percentage;
         this.amount = amount;
+        this.effect = EffectKind.attack(type, percentage);
+        this.outputString = String.format("; -%d%s %s", amount, (percentage ? " %" : ""), (type ? "HP" : "MP"));
+    }
+
+    /**
+     * Returns the kind of effect of this spell
+     *
+     * @return value of instance variable effect
+     */
+    public EffectKind getEffect() {
+        return effect;
+    }
+
+    /**
+     * Returns the amount (or percentage) of the effect of this spell
+     *
+     * @return value of instance variable amount
+     */
+    public int getAmount() {
+        return amount;
+    }
+
+    /**
+     * Appends effect and amount to the definition of Spell
+     */
+    @Override
+    String definition() {
+        return super.definition() + ";" + effect.name() + ";" + amount;
     }
 
     /**
      * If the target is protected against this spell (isProtected), then protection
-     * against exactly this spell is removed (removeProtection). Otherwise, use one
+     * against exactly this spell is removed (removeProtection); both is done by
+     * consumeProtection. Otherwise, use one
      * of the functions takeDamage, takeDamagePercent, weakenMagic or
-     * weakenMagicPercent on target according to the flags type and percentage.
+     * weakenMagicPercent on target according to the flags type and percentage
+     * (resolved to effect in the constructor).
      *
      * @param target target that takes the damage
      */
     @Override
     public void doEffect(MagicEffectRealization target) {
-        if (target.isProtected(this)) {
-            Set<AttackingSpell> spell = Collections.singleton(this);
-            target.removeProtection(spell);
-            return;
-        }
-        if (type) { // affects HP
-            if (percentage)
-                target.takeDamagePercent(amount);
-            else
-                target.takeDamage(amount);
-        } else { // affects MP
-            if (percentage)
-                target.weakenMagicPercent(amount);
-            else
-                target.weakenMagic(amount);
-        }
+        if (!target.consumeProtection(this))
+            effect.applyTo(target, amount);
+    }
+
+    /**
+     * Same as doEffect for every target; the protection is checked per target
+     *
+     * @param targets targets of the spell
+     * @param from    index of the first target (inclusive)
+     * @param to      index of the last target (exclusive)
+     */
+    @Override
+    protected void doEffect(MagicEffectRealization[] targets, int from, int to) {
+        for (int i = from; i < to; ++i)
+            if (!targets[i].consumeProtection(this))
+                effect.applyTo(targets[i], amount);
     }
 
     /**
@@ -88,6 +123,19 @@ public class AttackingSpell extends Spell {
      */
     @Override
     public String additionalOutputString() {
-        return String.format("; -%d%s %s", amount, (percentage ? " %" : ""), (type ? "HP" : "MP"));
+        return outputString;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o))
+            return false;
+        AttackingSpell spell = (AttackingSpell) o;
+        return effect == spell.effect && amount == spell.amount;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + effect.ordinal()) + amount;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,338 @@
+package a12226166;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tick based battle of many wizards. The wizards are split into partitions of
+ * consecutive wizards, which are processed in parallel in a ForkJoinPool. Every
+ * tick has two phases:
+ * <ol>
+ * <li>cast: every living wizard that knows a spell charges a random spell (the
+ * mana is paid by the caster, see Spell.charge) and picks a random target;
+ * the effect is put into the queue from the partition of the caster to the
+ * partition of the target</li>
+ * <li>apply: every partition applies the effects of all queues to its
+ * partition (doEffect), in the order of the source partitions</li>
+ * </ol>
+ * So every wizard is only changed by the task of its own partition, and
+ * effects across partitions need no locks. Effects cast in a tick only take
+ * effect at the end of the tick. For the same wizards, partitions and seed, a
+ * battle has the same outcome, whatever the parallelism of the pool.
+ * <p>
+ * While a journal is installed, every payment is journaled in the cast phase
+ * and every effect in the apply phase (see Journal.Type.CAST), so Replay
+ * repeats them in the same order as the tick.
+ * <p>
+ * The wizards must not be used by other threads while a tick is running.
+ */
+public class BattleEngine {
+    /**
+     * Partitions with at most this many wizards are not split further, unless
+     * more partitions are requested explicitly
+     */
+    public static final int DEFAULT_PARTITION_SIZE = 1024;
+
+    /**
+     * All wizards of the battle; partition p owns wizards[p*partitionSize] up to
+     * wizards[(p+1)*partitionSize-1]
+     */
+    private final Wizard[] wizards;
+    /**
+     * Number of wizards in every partition (but the last)
+     */
+    private final int partitionSize;
+    private final int partitions;
+    private final ForkJoinPool pool;
+    /**
+     * Random generator of every partition for the choice of targets
+     */
+    private final SplittableRandom[] randoms;
+    /**
+     * queues[s][d]: effects of the current tick, cast by wizards of partition s
+     * on wizards of partition d
+     */
+    private final EffectQueue[][] queues;
+    /**
+     * Number of spells charged by every partition in the last tick
+     */
+    private final long[] casts;
+    /**
+     * Number of ticks run so far
+     */
+    private long tick;
+
+    /**
+     * Creates a battle with partitions of DEFAULT_PARTITION_SIZE wizards
+     *
+     * @param wizards wizards of the battle
+     * @param pool    pool that runs the partitions
+     * @param seed    seed of the random choice of targets
+     */
+    public BattleEngine(Collection<Wizard> wizards, ForkJoinPool pool, long seed) {
+        this(wizards, wizards == null ? 1 : (wizards.size() + DEFAULT_PARTITION_SIZE - 1) / DEFAULT_PARTITION_SIZE,
+                pool, seed);
+    }
+
+    /**
+     * If wizards is null or empty, contains null or the same wizard twice, or
+     * partitions is not positive or pool is null, an IllegalArgumentException is
+     * thrown. There are never more partitions than wizards.
+     *
+     * @param wizards    wizards of the battle
+     * @param partitions number of partitions
+     * @param pool       pool that runs the partitions
+     * @param seed       seed of the random choice of targets
+     */
+    public BattleEngine(Collection<Wizard> wizards, int partitions, ForkJoinPool pool, long seed) {
+        if (wizards == null || wizards.isEmpty())
+            throw new IllegalArgumentException("Wizards must not be null or empty");
+        if (partitions <= 0)
+            throw new IllegalArgumentException("Number of partitions must be positive");
+        if (pool == null)
+            throw new IllegalArgumentException("Pool must not be null");
+        this.wizards = wizards.toArray(new Wizard[0]);
+        Set<Wizard> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (var wizard : this.wizards)
+            if (wizard == null || !seen.add(wizard))
+                throw new IllegalArgumentException("Wizards must not contain null or duplicates");
+
+        this.partitionSize = (this.wizards.length + Math.min(partitions, this.wizards.length) - 1)
+                / Math.min(partitions, this.wizards.length);
+        this.partitions = (this.wizards.length + partitionSize - 1) / partitionSize;
+        this.pool = pool;
+        this.randoms = new SplittableRandom[this.partitions];
+        var root = new SplittableRandom(seed);
+        for (int p = 0; p < this.partitions; ++p)
+            randoms[p] = root.split();
+        this.queues = new EffectQueue[this.partitions][this.partitions];
+        for (var row : queues)
+            for (int d = 0; d < row.length; ++d)
+                row[d] = new EffectQueue();
+        this.casts = new long[this.partitions];
+    }
+
+    /**
+     * Returns the number of partitions
+     *
+     * @return number of partitions
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Returns the number of ticks run so far
+     *
+     * @return number of ticks
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the number of wizards that are not dead
+     *
+     * @return number of living wizards
+     */
+    public int countAlive() {
+        int alive = 0;
+        for (var wizard : wizards)
+            if (!wizard.isDead())
+                ++alive;
+        return alive;
+    }
+
+    /**
+     * Runs a single tick (cast and apply phase)
+     *
+     * @return number of spells cast in the tick
+     */
+    public long tick() {
+        pool.invoke(new PhaseTask(this, true, 0, partitions));
+        pool.invoke(new PhaseTask(this, false, 0, partitions));
+        ++tick;
+        long total = 0;
+        for (long c : casts)
+            total += c;
+        return total;
+    }
+
+    /**
+     * If ticks is negative, an IllegalArgumentException is thrown; runs ticks
+     * ticks and returns how long they took
+     *
+     * @param ticks number of ticks to run
+     * @return report of the run
+     */
+    public Report run(int ticks) {
+        if (ticks < 0)
+            throw new IllegalArgumentException("Number of ticks must not be negative");
+        long totalCasts = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; ++i)
+            totalCasts += tick();
+        long nanos = System.nanoTime() - start;
+        return new Report(ticks, nanos, totalCasts, countAlive());
+    }
+
+    /**
+     * Cast phase of partition p: charges a random spell of every wizard of the
+     * partition and enqueues its effect on a random target
+     *
+     * @param p partition
+     */
+    private void cast(int p) {
+        var row = queues[p];
+        for (var queue : row)
+            queue.clear();
+        var random = randoms[p];
+        long count = 0;
+        int to = Math.min(wizards.length, (p + 1) * partitionSize);
+        for (int i = p * partitionSize; i < to; ++i) {
+            Spell spell = wizards[i].chargeRandomSpell();
+            if (spell == null)
+                continue;
+            int target = random.nextInt(wizards.length);
+            row[target / partitionSize].add(spell, i, target);
+            ++count;
+        }
+        casts[p] = count;
+    }
+
+    /**
+     * Apply phase of partition d: applies the effects of all queues to partition
+     * d, in the order of the source partitions
+     *
+     * @param d partition
+     */
+    private void apply(int d) {
+        for (var row : queues) {
+            var queue = row[d];
+            for (int k = 0; k < queue.size; ++k) {
+                var target = wizards[queue.targets[k]];
+                queue.spells[k].doEffect(target);
+                Journal.effect(wizards[queue.sources[k]], target, queue.spells[k]);
+            }
+        }
+    }
+
+    /**
+     * Fork-join task that runs one phase for a range of partitions
+     */
+    private static class PhaseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BattleEngine engine;
+        private final boolean cast;
+        private final int from;
+        private final int to;
+
+        PhaseTask(BattleEngine engine, boolean cast, int from, int to) {
+            this.engine = engine;
+            this.cast = cast;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                if (cast)
+                    engine.cast(from);
+                else
+                    engine.apply(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PhaseTask(engine, cast, from, middle), new PhaseTask(engine, cast, middle, to));
+        }
+    }
+
+    /**
+     * Effects from one partition to another within one tick; spells, casters
+     * and targets are kept in parallel arrays that are reused in every tick
+     */
+    private static class EffectQueue {
+        private Spell[] spells = new Spell[16];
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private int size;
+
+        void add(Spell spell, int source, int target) {
+            if (size == spells.length) {
+                spells = Arrays.copyOf(spells, size * 2);
+                sources = Arrays.copyOf(sources, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+            spells[size] = spell;
+            sources[size] = source;
+            targets[size] = target;
+            ++size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Result of BattleEngine.run
+     */
+    public static class Report {
+        private final int ticks;
+        private final long nanos;
+        private final long casts;
+        private final int alive;
+
+        Report(int ticks, long nanos, long casts, int alive) {
+            this.ticks = ticks;
+            this.nanos = nanos;
+            this.casts = casts;
+            this.alive = alive;
+        }
+
+        public int getTicks() {
+            return ticks;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getCasts() {
+            return casts;
+        }
+
+        public int getAlive() {
+            return alive;
+        }
+
+        /**
+         * Returns the number of ticks per second of the run
+         *
+         * @return ticks per second, 0 if no time was measured
+         */
+        public double ticksPerSecond() {
+            return nanos == 0 ? 0 : ticks * 1e9 / nanos;
+        }
+
+        /**
+         * Returns "'ticks' ticks in 'seconds' s ('ticksPerSecond' ticks/s); 'casts'
+         * casts; 'alive' alive"
+         *
+         * @return summary of the run
+         */
+        @Override
+        public String toString() {
+            return String.format("%d ticks in %.3f s (%.1f ticks/s); %d casts; %d alive", ticks, nanos / 1e9,
+                    ticksPerSecond(), casts, alive);
+        }
+    }
+}
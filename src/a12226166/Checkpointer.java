@@ -0,0 +1,391 @@
+package a12226166;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Incremental checkpoints of a world of wizards and magic items. Wizards and
+ * MagicItems mark themselves dirty whenever their state changes; checkpoint
+ * encodes only the dirty ones into a delta file, so a checkpoint costs time
+ * proportional to the changes, not to the world.
+ * <p>
+ * The directory contains a base snapshot (BASE, a WizardFile) and delta files
+ * named after their number (e.g. 00000000000000000001.delta). A delta starts
+ * with magic number, version and the journal sequence of the checkpoint,
+ * followed by the spell table of the wizards (see SpellTable), the dirty
+ * wizards (index and state, see WizardFile.writeWizard) and the dirty items
+ * (code and usages). The state of the world is the base
+ * with all deltas applied in order.
+ * <p>
+ * checkpoint only encodes the records (on the calling thread, which must own
+ * the wizards and items at that moment); writing and forcing the file is done
+ * by a background thread. After every compactEvery deltas, the background
+ * thread also compacts: it merges base and deltas into a new base, writes the
+ * latest usages of the items into a new delta and then deletes the old deltas,
+ * oldest first. Every file is written to a temporary file first and then moved
+ * into place, so a crash leaves either the old or the new file. A crash
+ * during a compaction leaves the new base with the newest of the old deltas,
+ * in which the last record of every wizard is its newest state, so applying
+ * them again gives the same state.
+ */
+public final class Checkpointer implements Closeable {
+    static final int MAGIC = 0x48574344; // "HWCD"
+    static final int VERSION = 2;
+    public static final String BASE = "base.wizards";
+    static final String SUFFIX = ".delta";
+    private static final String TEMPORARY = ".tmp";
+
+    private final Path directory;
+    private final Wizard[] wizards;
+    private final MagicItem[] items;
+    private final ItemCodec codec;
+    private final int compactEvery;
+    private final ExecutorService writer;
+    private volatile IOException failure;
+    private long nextDelta;
+    /**
+     * Number of deltas since the last compaction
+     */
+    private int pending;
+    private boolean closed;
+
+    private Checkpointer(Path directory, Wizard[] wizards, MagicItem[] items, ItemCodec codec, int compactEvery,
+                         long nextDelta, int pending) {
+        this.directory = directory;
+        this.wizards = wizards;
+        this.items = items;
+        this.codec = codec;
+        this.compactEvery = compactEvery;
+        this.nextDelta = nextDelta;
+        this.pending = pending;
+        this.writer = Executors.newSingleThreadExecutor(task -> {
+            var thread = new Thread(task, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * If an argument is null, wizards or items contain null or compactEvery is
+     * not positive, an IllegalArgumentException is thrown. If the directory has
+     * no base snapshot yet, all wizards are written to a new base (with sequence
+     * 0) at once; otherwise the wizards must be the ones restored from the
+     * directory (see recover), in the same order. Afterwards all wizards and
+     * items are clean.
+     *
+     * @param directory    checkpoint directory, created if it does not exist
+     * @param wizards      all wizards of the world; wizard i is stored as record i
+     * @param items        all magic items whose usages are checkpointed; they
+     *                     must be encodable by codec
+     * @param codec        codec for the items
+     * @param compactEvery number of deltas after which a compaction is started
+     * @return the checkpointer
+     * @throws IOException if the directory cannot be read or the base cannot be
+     *                     written
+     */
+    public static Checkpointer open(Path directory, List<Wizard> wizards, List<? extends MagicItem> items,
+                                    ItemCodec codec, int compactEvery) throws IOException {
+        if (directory == null || wizards == null || items == null || codec == null)
+            throw new IllegalArgumentException("Directory, wizards, items and codec must not be null");
+        if (compactEvery <= 0)
+            throw new IllegalArgumentException("Compaction interval must be positive");
+        var wizardArray = wizards.toArray(new Wizard[0]);
+        var itemArray = items.toArray(new MagicItem[0]);
+        for (var wizard : wizardArray)
+            if (wizard == null)
+                throw new IllegalArgumentException("Wizards must not contain null");
+        for (var item : itemArray)
+            if (item == null)
+                throw new IllegalArgumentException("Items must not contain null");
+
+        Files.createDirectories(directory);
+        var base = directory.resolve(BASE);
+        if (Files.exists(base)) {
+            if (WizardFile.open(base, codec).size() != wizardArray.length)
+                throw new IllegalArgumentException("Wizards do not match the checkpoint in " + directory);
+        } else {
+            var temporary = directory.resolve(BASE + TEMPORARY);
+            WizardFile.write(temporary, wizards, codec, 0);
+            Files.move(temporary, base, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (var wizard : wizardArray)
+            wizard.clearDirty();
+        for (var item : itemArray)
+            item.clearDirty();
+
+        var deltas = deltas(directory);
+        long next = deltas.isEmpty() ? 1 : number(deltas.get(deltas.size() - 1)) + 1;
+        return new Checkpointer(directory, wizardArray, itemArray, codec, compactEvery, next, deltas.size());
+    }
+
+    /**
+     * If sequence is negative, an IllegalArgumentException is thrown; if the
+     * checkpointer is closed, an IllegalStateException is thrown. Encodes all
+     * dirty wizards and items into a new delta, clears their dirty flags and
+     * hands the delta to the background thread; starts a compaction after
+     * every compactEvery deltas.
+     *
+     * @param sequence journal sequence of the state (see Journal.nextSequence),
+     *                 0 without a journal
+     * @return number of wizards and items in the delta
+     * @throws IOException if a previous write or compaction failed
+     */
+    public int checkpoint(long sequence) throws IOException {
+        if (sequence < 0)
+            throw new IllegalArgumentException("Sequence must not be negative");
+        if (closed)
+            throw new IllegalStateException("Checkpointer is closed");
+        if (failure != null)
+            throw failure;
+
+        var records = new ByteArrayOutputStream();
+        var recordsOut = new DataOutputStream(records);
+        var used = new SpellBitSet<>();
+        int dirtyWizards = 0;
+        for (int i = 0; i < wizards.length; ++i)
+            if (wizards[i].clearDirty()) {
+                recordsOut.writeInt(i);
+                WizardFile.writeWizard(recordsOut, wizards[i], codec);
+                used.addAll(wizards[i].getKnownSpells());
+                used.addAll(wizards[i].getProtectedFrom());
+                ++dirtyWizards;
+            }
+        recordsOut.flush();
+
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(sequence);
+        SpellTable.write(out, used.toWords());
+        out.writeInt(dirtyWizards);
+        records.writeTo(out);
+        int dirtyItems = 0;
+        for (var item : items)
+            if (item.isDirty())
+                ++dirtyItems;
+        out.writeInt(dirtyItems);
+        for (var item : items)
+            if (item.clearDirty()) {
+                out.writeLong(codec.encode(item));
+                out.writeInt(item.getUsages());
+            }
+        out.flush();
+
+        var delta = directory.resolve(String.format("%020d%s", nextDelta++, SUFFIX));
+        var content = bytes.toByteArray();
+        submit(() -> writeAtomically(delta, content));
+        if (++pending >= compactEvery)
+            compact();
+        return dirtyWizards + dirtyItems;
+    }
+
+    /**
+     * Starts a compaction of base and deltas in the background
+     */
+    public void compact() {
+        if (closed)
+            throw new IllegalStateException("Checkpointer is closed");
+        pending = 0;
+        long usagesDelta = nextDelta++;
+        submit(() -> compactNow(usagesDelta));
+    }
+
+    /**
+     * Waits until all deltas and compactions started before are done
+     *
+     * @throws IOException if a write or compaction failed
+     */
+    public void sync() throws IOException {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Waits for all pending writes and stops the background thread; further
+     * checkpoints throw an IllegalStateException
+     *
+     * @throws IOException if a write or compaction failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            sync();
+        } finally {
+            closed = true;
+            writer.shutdown();
+        }
+    }
+
+    private interface IOTask {
+        void run() throws IOException;
+    }
+
+    private void submit(IOTask task) {
+        writer.execute(() -> {
+            if (failure != null)
+                return;
+            try {
+                task.run();
+            } catch (IOException e) {
+                failure = e;
+            }
+        });
+    }
+
+    /**
+     * Merges base and all deltas before usagesDelta into a new base, writes the
+     * latest usages of all items and no wizards into delta usagesDelta and then
+     * deletes the merged deltas, oldest first (so the deltas left by a crash
+     * are never older than the ones deleted)
+     *
+     * @param usagesDelta number of the new delta, reserved by compact
+     */
+    private void compactNow(long usagesDelta) throws IOException {
+        var deltas = deltas(directory).stream().filter(d -> number(d) < usagesDelta).toList();
+        if (deltas.isEmpty())
+            return;
+        var base = WizardFile.open(directory.resolve(BASE), codec);
+        List<Wizard> merged = base.loadAll();
+        Map<Long, Integer> usages = new LinkedHashMap<>();
+        long sequence = base.getSequence();
+        for (var delta : deltas)
+            sequence = readDelta(delta, merged, usages, codec);
+
+        var temporary = directory.resolve(BASE + TEMPORARY);
+        WizardFile.write(temporary, merged, codec, sequence);
+        Files.move(temporary, directory.resolve(BASE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(sequence);
+        SpellTable.write(out, new long[0]);
+        out.writeInt(0);
+        out.writeInt(usages.size());
+        for (var entry : usages.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.flush();
+        writeAtomically(directory.resolve(String.format("%020d%s", usagesDelta, SUFFIX)), bytes.toByteArray());
+        for (var delta : deltas)
+            Files.delete(delta);
+    }
+
+    /**
+     * Restores a world from a checkpoint directory: loads the base, applies all
+     * deltas (wizards are replaced, usages of items are restored on the items
+     * decoded by codec) and, if journal is not null, replays the journal events
+     * from the sequence of the last checkpoint (see Replay)
+     *
+     * @param directory checkpoint directory
+     * @param journal   journal directory or null; the journal must identify
+     *                  every wizard by its index
+     * @param codec     codec for the items
+     * @return the restored wizards, in the order of the checkpoint
+     * @throws IOException if a file cannot be read or is not valid
+     */
+    public static List<Wizard> recover(Path directory, Path journal, ItemCodec codec) throws IOException {
+        if (directory == null || codec == null)
+            throw new IllegalArgumentException("Directory and codec must not be null");
+        var base = WizardFile.open(directory.resolve(BASE), codec);
+        List<Wizard> world = base.loadAll();
+        Map<Long, Integer> usages = new LinkedHashMap<>();
+        long sequence = base.getSequence();
+        for (var delta : deltas(directory))
+            sequence = readDelta(delta, world, usages, codec);
+        for (var entry : usages.entrySet()) {
+            if (!(codec.decode(entry.getKey()) instanceof MagicItem item))
+                throw new IOException("Item " + entry.getKey() + " is not a magic item");
+            item.restoreUsages(entry.getValue());
+        }
+        if (journal != null)
+            new Replay(id -> id >= 0 && id < world.size() ? world.get((int) id) : null, codec)
+                    .replay(journal, sequence);
+        return world;
+    }
+
+    /**
+     * Applies a delta: replaces the wizards in world and puts the usages of the
+     * items into usages
+     *
+     * @return sequence of the delta
+     */
+    private static long readDelta(Path delta, List<Wizard> world, Map<Long, Integer> usages, ItemCodec codec)
+            throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(delta)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a delta file: " + delta);
+            long sequence = in.readLong();
+            var spells = SpellTable.read(in);
+            spells.checkKnown(delta);
+            int wizards = in.readInt();
+            for (int k = 0; k < wizards; ++k) {
+                int index = in.readInt();
+                if (index < 0 || index >= world.size())
+                    throw new IOException("No wizard with index " + index + " in " + delta);
+                world.set(index, WizardFile.readWizard(in, codec, spells));
+            }
+            int items = in.readInt();
+            for (int k = 0; k < items; ++k)
+                usages.put(in.readLong(), in.readInt());
+            return sequence;
+        }
+    }
+
+    private static void writeAtomically(Path target, byte[] content) throws IOException {
+        var temporary = target.resolveSibling(target.getFileName() + TEMPORARY);
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            var buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the delta files of directory in the order of their numbers
+     */
+    static List<Path> deltas(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().matches("\\d{20}\\" + SUFFIX))
+                    .sorted().toList();
+        }
+    }
+
+    private static long number(Path delta) {
+        var name = delta.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
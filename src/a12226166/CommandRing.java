@@ -0,0 +1,380 @@
+package a12226166;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+/**
+ * Ingestion of game commands (cast, use, sell, steal and loot) from any number
+ * of threads into a single world thread, which is the only thread that calls
+ * the methods of the wizards, so the wizards need no locks.
+ * <p>
+ * Like the ring of the Journal (both use MultiProducerRing), the ring buffer is
+ * allocated once with one array per field: publishing a command only claims a
+ * slot and fills in a few numbers (ids of wizards, spell and item), nothing is
+ * allocated and no lock is taken; if the ring is full, the publisher waits for
+ * the world thread. The
+ * world thread takes all commands that are ready, up to BATCH at a time, runs
+ * them in the order of their sequence numbers and then reports the end of the
+ * batch to the listener (e.g. to checkpoint the wizards changed by the batch).
+ * <p>
+ * Wizards are resolved by the function given to open, spells by their
+ * SpellCatalog id and items by the ItemCodec. A command with an unknown id or
+ * whose wizard method throws fails (its result is false); exceptions of the
+ * listener count as failures as well and do not stop the world thread. The
+ * time from publishing to the end of running every command is recorded in a
+ * histogram with buckets of powers of two nanoseconds (see
+ * getLatencyPercentile).
+ */
+public final class CommandRing implements Closeable {
+    /**
+     * Commands run by the world thread at once at most
+     */
+    public static final int BATCH = 1024;
+    /**
+     * Time sync sleeps between checks whether the commands have run
+     */
+    private static final long SYNC_NANOS = 50_000;
+
+    /**
+     * Kinds of commands; source is the wizard that acts, target the other one
+     */
+    public enum Type {
+        /**
+         * source.castSpell(spell, target)
+         */
+        CAST,
+        /**
+         * source.useItem(item, target)
+         */
+        USE,
+        /**
+         * source.sellItem(item, target)
+         */
+        SELL,
+        /**
+         * target.steal(source): source steals from target
+         */
+        STEAL,
+        /**
+         * target.loot(source): source loots target
+         */
+        LOOT
+    }
+
+    /**
+     * Receives the results of the commands on the world thread
+     */
+    public interface Listener {
+        /**
+         * Called after command sequence has run; if it throws a RuntimeException,
+         * the command counts as failed
+         *
+         * @param sequence     sequence number of the command
+         * @param type         kind of the command
+         * @param result       result of the wizard method, false if the command
+         *                     failed
+         * @param latencyNanos time from publishing to the end of running
+         */
+        void processed(long sequence, Type type, boolean result, long latencyNanos);
+
+        /**
+         * Called after a batch of commands has run, before sync returns for them;
+         * if it throws a RuntimeException, it counts as one failure. Default
+         * implementation does nothing
+         *
+         * @param next all commands before this sequence have run
+         */
+        default void batchEnd(long next) {
+        }
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    private final LongFunction<Wizard> wizards;
+    private final ItemCodec codec;
+    private final Listener listener;
+    /**
+     * Hands out the slots of the arrays and runs the world thread
+     */
+    private final MultiProducerRing ring;
+
+    // ring buffer: one array per field, slot of sequence s is ring.slot(s)
+    private final byte[] types;
+    private final long[] sources;
+    private final long[] targets;
+    private final int[] spells;
+    private final long[] items;
+    private final long[] publishTimes;
+
+    // statistics, written by the world thread only
+    private final AtomicLongArray histogram = new AtomicLongArray(64);
+    private volatile long failed;
+    private volatile long totalLatency;
+    private volatile long maxLatency;
+
+    private CommandRing(LongFunction<Wizard> wizards, ItemCodec codec, Listener listener, int capacity) {
+        this.wizards = wizards;
+        this.codec = codec;
+        this.listener = listener;
+        types = new byte[capacity];
+        sources = new long[capacity];
+        targets = new long[capacity];
+        spells = new int[capacity];
+        items = new long[capacity];
+        publishTimes = new long[capacity];
+        ring = new MultiProducerRing(capacity, 0, this::runLoop, "world", "Command ring is closed");
+    }
+
+    /**
+     * If wizards or codec is null or capacity is not a power of two, an
+     * IllegalArgumentException is thrown; creates the ring and starts the world
+     * thread
+     *
+     * @param wizards  wizard of every id, null for unknown ids
+     * @param codec    codec for the items
+     * @param listener receives the results, may be null
+     * @param capacity number of slots of the ring buffer
+     * @return the open ring
+     */
+    public static CommandRing open(LongFunction<Wizard> wizards, ItemCodec codec, Listener listener, int capacity) {
+        if (wizards == null || codec == null)
+            throw new IllegalArgumentException("Wizards and codec must not be null");
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        var ring = new CommandRing(wizards, codec, listener, capacity);
+        ring.ring.start();
+        return ring;
+    }
+
+    /**
+     * Publishes a cast of the spell with SpellCatalog id spell by caster on
+     * target
+     *
+     * @return sequence of the command
+     */
+    public long cast(long caster, long target, int spell) {
+        return publish(Type.CAST, caster, target, spell, -1);
+    }
+
+    /**
+     * Publishes a usage of the item with code item by user on target
+     *
+     * @return sequence of the command
+     */
+    public long use(long user, long target, long item) {
+        return publish(Type.USE, user, target, -1, item);
+    }
+
+    /**
+     * Publishes a sale of the item with code item by seller to buyer
+     *
+     * @return sequence of the command
+     */
+    public long sell(long seller, long buyer, long item) {
+        return publish(Type.SELL, seller, buyer, -1, item);
+    }
+
+    /**
+     * Publishes a theft by thief from victim
+     *
+     * @return sequence of the command
+     */
+    public long steal(long thief, long victim) {
+        return publish(Type.STEAL, thief, victim, -1, -1);
+    }
+
+    /**
+     * Publishes looting of victim by looter
+     *
+     * @return sequence of the command
+     */
+    public long loot(long looter, long victim) {
+        return publish(Type.LOOT, looter, victim, -1, -1);
+    }
+
+    /**
+     * Claims the next slot of the ring and publishes the command in it; waits,
+     * if the ring is full. If the ring is closed, an IllegalStateException is
+     * thrown, also if it was closed while the command was published and the
+     * world thread stopped without running it
+     *
+     * @return sequence of the command
+     */
+    private long publish(Type type, long source, long target, int spell, long item) {
+        long sequence = ring.claim();
+        int slot = ring.slot(sequence);
+        types[slot] = (byte) type.ordinal();
+        sources[slot] = source;
+        targets[slot] = target;
+        spells[slot] = spell;
+        items[slot] = item;
+        publishTimes[slot] = System.nanoTime();
+        ring.publish(sequence);
+        return sequence;
+    }
+
+    /**
+     * Waits until all commands published before have run
+     */
+    public void sync() {
+        long target = ring.claimed();
+        while (ring.consumed() < target && ring.isRunning()) {
+            ring.wake();
+            LockSupport.parkNanos(SYNC_NANOS);
+        }
+    }
+
+    /**
+     * Runs all commands published before and stops the world thread; publishing
+     * afterwards throws an IllegalStateException
+     */
+    @Override
+    public void close() {
+        ring.close();
+    }
+
+    /**
+     * Returns the number of commands that have run
+     *
+     * @return number of commands run
+     */
+    public long getProcessed() {
+        return ring.consumed();
+    }
+
+    /**
+     * Returns the number of commands that failed (unknown id or exception of
+     * the wizard method or of the listener), plus the number of batch ends whose
+     * listener threw
+     *
+     * @return number of failures
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the mean time from publishing to the end of running of all
+     * commands that have run, 0 if none
+     *
+     * @return mean latency in nanoseconds
+     */
+    public long getMeanLatency() {
+        long processed = ring.consumed();
+        return processed == 0 ? 0 : totalLatency / processed;
+    }
+
+    /**
+     * Returns the longest time from publishing to the end of running
+     *
+     * @return maximum latency in nanoseconds
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * If percentile is not between 0 and 100, an IllegalArgumentException is
+     * thrown; returns an upper bound of the latency of percentile percent of
+     * the commands: the smallest power of two that is at least as large, 0 if no
+     * command has run
+     *
+     * @param percentile percentage of the commands
+     * @return upper bound of the latency in nanoseconds
+     */
+    public long getLatencyPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100))
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        long total = 0;
+        var counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; ++i)
+            total += counts[i] = histogram.get(i);
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= rank)
+                return i == 63 ? Long.MAX_VALUE : 1L << i;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Loop of the world thread: takes all published commands and runs them
+     */
+    private void runLoop() {
+        long next = ring.consumed();
+        while (true) {
+            int count = 0;
+            while (count < BATCH && ring.isPublished(next)) {
+                int slot = ring.slot(next);
+                var type = TYPES[types[slot]];
+                boolean result = false;
+                boolean ok;
+                try {
+                    result = run(type, slot);
+                    ok = true;
+                } catch (RuntimeException e) {
+                    ok = false;
+                }
+                long latency = System.nanoTime() - publishTimes[slot];
+                record(latency);
+                if (listener != null) {
+                    try {
+                        listener.processed(next, type, result, latency);
+                    } catch (RuntimeException e) {
+                        ok = false;
+                    }
+                }
+                if (!ok)
+                    failed = failed + 1;
+                ++next;
+                ++count;
+            }
+            if (count > 0) {
+                if (listener != null) {
+                    try {
+                        listener.batchEnd(next);
+                    } catch (RuntimeException e) {
+                        failed = failed + 1;
+                    }
+                }
+                ring.consumed(next);
+            } else if (!ring.await(next)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Runs the command in slot; if a wizard is unknown, an
+     * IllegalArgumentException is thrown
+     *
+     * @return result of the wizard method
+     */
+    private boolean run(Type type, int slot) {
+        var source = wizards.apply(sources[slot]);
+        var target = wizards.apply(targets[slot]);
+        if (source == null || target == null)
+            throw new IllegalArgumentException("Unknown wizard");
+        return switch (type) {
+            case CAST -> source.castSpell(SpellCatalog.byId(spells[slot]), target);
+            case USE -> source.useItem(codec.decode(items[slot]), target);
+            case SELL -> source.sellItem(codec.decode(items[slot]), target);
+            case STEAL -> target.steal(source);
+            case LOOT -> target.loot(source);
+        };
+    }
+
+    private void record(long latency) {
+        int bucket = latency <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(latency - 1);
+        histogram.lazySet(bucket, histogram.get(bucket) + 1);
+        totalLatency = totalLatency + latency;
+        if (latency > maxLatency)
+            maxLatency = latency;
+    }
+}
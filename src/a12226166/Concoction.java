@@ -1,6 +1,5 @@
 package a12226166;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -11,59 +10,53 @@ import java.util.List;
  * The concoction must at least have one effect
  */
 public class Concoction extends Potion {
-    /**
-     * change of health on target; may be any int value
-     */
-    private final int health;
-    /**
-     * change of mana on target; may be any int value
-     */
-    private final int mana;
-    /**
-     * spells cast when concoction is consumed; must not be null but may be empty;
-     * Use ArrayList as concrete type
-     */
-    private final List<Spell> spells;
-
     /**
      * @param name   name
      * @param usages number of usages still left
      * @param price  price
      * @param weight weight
-     * @param health change of health on target
-     * @param mana   change of mana on target
-     * @param spells list of spells that are cast when consuming the concoction
+     * @param health change of health on target; may be any int value
+     * @param mana   change of mana on target; may be any int value
+     * @param spells list of spells that are cast when consuming the concoction;
+     *               must not be null but may be empty
      */
     public Concoction(String name, int usages, int price, int weight, int health, int mana, List<Spell> spells) {
-        super(name, usages, price, weight);
-        if (health == 0 && mana == 0 && spells.isEmpty() || spells == null) {
+        super(prototype(name, price, weight, health, mana, spells), usages);
+    }
+
+    private Concoction(ItemPrototype prototype, int usages) {
+        super(prototype, usages);
+    }
+
+    /**
+     * If the concoction has no effect, an IllegalArgumentException is thrown;
+     * returns the prototype with the additional output "; '+/-''health' HP;
+     * '+/-''mana' MP; cast 'spells' "; here '+/-' denotes the appropriate sign,
+     * spells will be a bracketed list of spells (Java default toString method for
+     * lists) e.g. (total result of toString) "[My Brew; 2 g; 2 Knuts; 4 gulps; -5
+     * HP; +10 MP; cast [[Confringo(*) -20 HP], [Diffindo(*) -15 HP]]]" If health
+     * or mana is 0 or spells is empty, then the respective part(s) are suppressed
+     * e.g. "[Your Brew; 2 g; 1 Knut; 1 gulp; +5 MP]
+     */
+    private static ItemPrototype prototype(String name, int price, int weight, int health, int mana,
+                                           List<Spell> spells) {
+        if (spells == null || health == 0 && mana == 0 && spells.isEmpty())
             throw new IllegalArgumentException("A concoction must have at least one effect.");
-        }
-        this.health = health;
-        this.mana = mana;
-        this.spells = new ArrayList<>(spells);
+        return ItemPrototype.of(Concoction.class, name, price, weight, health, mana, spells, Concoction::new,
+                Concoction::suffix);
     }
 
     /**
-     * Returns "; '+/-''health' HP; '+/-''mana' MP; cast 'spells' "; here '+/-'
-     * denotes the appropriate sign, spells will be a bracketed list of spells (Java
-     * default toString method for lists) e.g. (total result of toString) "[My Brew;
-     * 2 g; 2 Knuts; 4 gulps; -5 HP; +10 MP; cast [[Confringo(*) -20 HP],
-     * [Diffindo(*) -15 HP]]]" If health or mana is 0 or spells is empty, then the
-     * respective part(s) are suppressed e.g. "[Your Brew; 2 g; 1 Knut; 1 gulp; +5
-     * MP]
-     *
-     * @return "; '+/-''health' HP; '+/-''mana' MP; cast 'spells' "
+     * Returns the additional output of the prototype (see prototype)
      */
-    @Override
-    public String additionalOutputString() {
+    private static String suffix(ItemPrototype prototype) {
         StringBuilder sb = new StringBuilder();
-        if (health != 0)
-            sb.append(String.format("; %s%d HP", (health > 0 ? "+" : ""), health));
-        if (mana != 0)
-            sb.append(String.format("; %s%d MP", (mana > 0 ? "+" : ""), mana));
-        if (!spells.isEmpty())
-            sb.append("; cast ").append(spells);
+        if (prototype.getHealth() != 0)
+            sb.append(String.format("; %s%d HP", (prototype.getHealth() > 0 ? "+" : ""), prototype.getHealth()));
+        if (prototype.getMana() != 0)
+            sb.append(String.format("; %s%d MP", (prototype.getMana() > 0 ? "+" : ""), prototype.getMana()));
+        if (!prototype.getSpells().isEmpty())
+            sb.append("; cast ").append(prototype.getSpells());
         return sb.toString();
     }
 
@@ -79,6 +72,9 @@ public class Concoction extends Potion {
     @Override
     public void useOn(MagicEffectRealization target) {
         if (tryUsage()) {
+            var prototype = getPrototype();
+            int health = prototype.getHealth();
+            int mana = prototype.getMana();
             if (health > 0)
                 target.heal(health);
             else if (health < 0)
@@ -89,8 +85,8 @@ public class Concoction extends Potion {
             else if (mana < 0)
                 target.weakenMagic(-mana);
 
-            for (var spell : spells)
+            for (var spell : prototype.getSpells())
                 spell.cast(this, target);
         }
     }
-}
\ No newline at end of file
+}
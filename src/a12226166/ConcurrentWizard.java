@@ -0,0 +1,724 @@
+package a12226166;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
+
+/**
+ * Thread safe variant of Wizard. Any number of threads may cast spells on, trade
+ * with or steal from the same ConcurrentWizard.
+ * <p>
+ * HP, MP and money are atomics that are only ever changed by compare-and-set, so
+ * damage, healing, mana and payments never block. knownSpells, protectedFrom and
+ * inventory are each guarded by their own lock (the set object itself), so e.g.
+ * a trade does not block a spell that checks protection. Apart from trades, no
+ * method of this class holds more than one of these locks at a time or calls
+ * into another object while holding one. The inventory lock is also the trade
+ * lock (see Trader.tradeLock): trades (Tradeable.purchase and give, steal and
+ * loot) hold the trade locks of both traders, which TradeLock always takes in
+ * the order of Trader.lockOrder, which rules out deadlocks between wizards.
+ * <p>
+ * The effect of a spell or item on a target is not atomic as a whole: every
+ * single change (e.g. takeDamage) is atomic, but a concurrent observer may see
+ * one of several changes of a Concoction before the others.
+ */
+public class ConcurrentWizard implements MagicSource, Trader, MagicEffectRealization {
+    /**
+     * Unique among all wizards; used as lockOrder
+     */
+    private final long id = TradeLock.nextId();
+    /**
+     * Not null not empty
+     */
+    private final String name;
+    /**
+     * Not null
+     */
+    private final MagicLevel level;
+    /**
+     * Not negative
+     */
+    private final int basicHP;
+    /**
+     * Not negative; defaults to basicHP
+     */
+    private final AtomicInteger HP;
+    /**
+     * Not less than the manapoints associated with the magic level
+     */
+    private final int basicMP;
+    /**
+     * Not negative; defaults to basicMP
+     */
+    private final AtomicInteger MP;
+    /**
+     * Not negative
+     */
+    private final AtomicInteger money;
+    /**
+     * Not null, may be empty; guarded by itself
+     */
+    private final SpellBitSet<Spell> knownSpells;
+    /**
+     * The spells of knownSpells in an IndexedSet, so that a random spell is
+     * picked in O(1); guarded by knownSpells
+     */
+    private final IndexedSet<Spell> spellList;
+    /**
+     * Not null, may be empty; guarded by itself
+     */
+    private final SpellBitSet<AttackingSpell> protectedFrom;
+    /**
+     * Not negative
+     */
+    private final int carryingCapacity;
+    /**
+     * Not null, may be empty; guarded by itself together with inventoryWeight;
+     * total weight of inventory may never exceed carryingCapacity
+     */
+    private final IndexedSet<Tradeable> inventory;
+    /**
+     * The ItemStacks of inventory by their kind (see ItemStack.put); guarded by
+     * inventory
+     */
+    private final Map<Long, ItemStack> stacks = new HashMap<>();
+    /**
+     * Total weight of all items in inventory; guarded by inventory
+     */
+    private int inventoryWeight;
+    /**
+     * Source of randomness for all random actions of this wizard; guarded by
+     * itself, as it may be shared by threads; null, if every thread draws from
+     * its ThreadLocalRandom
+     */
+    private final RandomGenerator random;
+
+    /**
+     * Every thread draws from its own ThreadLocalRandom, so random actions never
+     * contend, but are not reproducible
+     *
+     * @param name             name
+     * @param level            the magic level (proficiency needed to cast spells)
+     * @param basicHP          base for percentage health calculations
+     * @param HP               current health
+     * @param basicMP          base for percentage mana calculations
+     * @param MP               current mana
+     * @param money            current money
+     * @param knownSpells      set of known spells
+     * @param protectedFrom    set of spells the object is protected against
+     * @param carryingCapacity maximum carrying capacity
+     * @param inventory        set of items the object is currently carrying; see
+     *                         Wizard.inventoryOrder for the order of the items
+     */
+    public ConcurrentWizard(String name, MagicLevel level, int basicHP, int HP, int basicMP, int MP, int money,
+                            Set<Spell> knownSpells, Set<AttackingSpell> protectedFrom, int carryingCapacity,
+                            Set<Tradeable> inventory) {
+        this(name, level, basicHP, HP, basicMP, MP, money, knownSpells, protectedFrom, carryingCapacity, inventory,
+                null, false);
+    }
+
+    /**
+     * Same as the other constructor, but all random actions of the wizard
+     * (castRandomSpell, useRandomItem, sellRandomItem, steal) draw from random,
+     * as they do for Wizard; the draws are synchronized on random, so passing a
+     * seeded generator makes single threaded runs reproducible
+     *
+     * @param name             name
+     * @param level            the magic level (proficiency needed to cast spells)
+     * @param basicHP          base for percentage health calculations
+     * @param HP               current health
+     * @param basicMP          base for percentage mana calculations
+     * @param MP               current mana
+     * @param money            current money
+     * @param knownSpells      set of known spells
+     * @param protectedFrom    set of spells the object is protected against
+     * @param carryingCapacity maximum carrying capacity
+     * @param inventory        set of items the object is currently carrying; see
+     *                         Wizard.inventoryOrder for the order of the items
+     * @param random           source of randomness used by this wizard only
+     */
+    public ConcurrentWizard(String name, MagicLevel level, int basicHP, int HP, int basicMP, int MP, int money,
+                            Set<Spell> knownSpells, Set<AttackingSpell> protectedFrom, int carryingCapacity,
+                            Set<Tradeable> inventory, RandomGenerator random) {
+        this(name, level, basicHP, HP, basicMP, MP, money, knownSpells, protectedFrom, carryingCapacity, inventory,
+                random, true);
+    }
+
+    private ConcurrentWizard(String name, MagicLevel level, int basicHP, int HP, int basicMP, int MP, int money,
+                             Set<Spell> knownSpells, Set<AttackingSpell> protectedFrom, int carryingCapacity,
+                             Set<Tradeable> inventory, RandomGenerator random, boolean injected) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("Name must not be null or empty");
+        if (level == null)
+            throw new IllegalArgumentException("MagicLevel must not be null");
+        if (basicHP < 0 || HP < 0 || basicMP < level.toMana() || MP < 0 || money < 0 || carryingCapacity < 0)
+            throw new IllegalArgumentException("Values must not be negative");
+        if (knownSpells == null || protectedFrom == null || inventory == null)
+            throw new IllegalArgumentException("Sets must not be null");
+        if (injected && random == null)
+            throw new IllegalArgumentException("Random generator must not be null");
+
+        this.name = name;
+        this.level = level;
+        this.basicHP = basicHP;
+        this.HP = new AtomicInteger(HP);
+        this.basicMP = basicMP;
+        this.MP = new AtomicInteger(MP);
+        this.money = new AtomicInteger(money);
+
+        this.knownSpells = new SpellBitSet<>(knownSpells);
+        this.spellList = new IndexedSet<>(this.knownSpells);
+        this.protectedFrom = new SpellBitSet<>(protectedFrom);
+        this.carryingCapacity = carryingCapacity;
+        this.inventory = new IndexedSet<>();
+        this.random = random;
+        for (var item : Wizard.inventoryOrder(inventory))
+            if (ItemStack.put(this.inventory, stacks, item))
+                this.inventoryWeight += item.getWeight();
+
+        if (inventoryWeight > carryingCapacity)
+            throw new IllegalArgumentException("Inventory exceeds carrying capacity");
+    }
+
+    /**
+     * Subtracts amount from value, but not below 0
+     *
+     * @param value  value to be reduced
+     * @param amount amount to be subtracted; not negative
+     */
+    private static void subtractClamped(AtomicInteger value, int amount) {
+        int current;
+        do {
+            current = value.get();
+        } while (!value.compareAndSet(current, Math.max(0, current - amount)));
+    }
+
+    /**
+     * Subtracts amount from value, if value is at least amount
+     *
+     * @param value  value to be reduced
+     * @param amount amount to be subtracted; not negative
+     * @return true, if amount was subtracted, false otherwise
+     */
+    private static boolean trySubtract(AtomicInteger value, int amount) {
+        int current;
+        do {
+            current = value.get();
+            if (current < amount)
+                return false;
+        } while (!value.compareAndSet(current, current - amount));
+        return true;
+    }
+
+    /**
+     * Draws a random index below bound from random or, if there is none, from
+     * the ThreadLocalRandom of the calling thread
+     *
+     * @param bound number of elements to choose from; positive
+     * @return random index
+     */
+    private int nextIndex(int bound) {
+        if (random == null)
+            return ThreadLocalRandom.current().nextInt(bound);
+        synchronized (random) {
+            return random.nextInt(bound);
+        }
+    }
+
+    /**
+     * Returns the unique id of this wizard
+     *
+     * @return value of instance variable id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Return true, if HP is 0, false otherwise
+     *
+     * @return true, if HP is 0, false otherwise
+     */
+    public boolean isDead() {
+        return HP.get() <= 0;
+    }
+
+    /**
+     * See Wizard.learn
+     *
+     * @param s spell to be learned
+     * @return true, if insertion was successful, false otherwise.
+     */
+    public boolean learn(Spell s) {
+        if (s == null)
+            throw new IllegalArgumentException("Spell must not be null");
+        if (isDead())
+            return false;
+        synchronized (knownSpells) {
+            return knownSpells.add(s) && spellList.add(s);
+        }
+    }
+
+    /**
+     * See Wizard.forget
+     *
+     * @param s spell that the object is about to forget
+     * @return true, if removal was successful, false otherwise.
+     */
+    public boolean forget(Spell s) {
+        if (s == null)
+            throw new IllegalArgumentException("Spell must not be null");
+        if (isDead())
+            return false;
+        synchronized (knownSpells) {
+            return knownSpells.remove(s) && spellList.remove(s);
+        }
+    }
+
+    /**
+     * See Wizard.castSpell; the spell is cast without holding any lock
+     *
+     * @param s      spell to be cast
+     * @param target target of the spell to cast
+     * @return true, if cast was called, false otherwise;
+     */
+    public boolean castSpell(Spell s, MagicEffectRealization target) {
+        if (s == null || target == null)
+            throw new IllegalArgumentException("Spell and target must not be null");
+        if (isDead())
+            return false;
+        synchronized (knownSpells) {
+            if (!knownSpells.contains(s))
+                return false;
+        }
+        s.cast(this, target);
+        return true;
+    }
+
+    /**
+     * See Wizard.castRandomSpell
+     *
+     * @param target target of the spell to cast
+     * @return false, if the object does not know a spell, otherwise the result of
+     * the delegation to castSpell
+     */
+    public boolean castRandomSpell(MagicEffectRealization target) {
+        Spell s;
+        synchronized (knownSpells) {
+            if (spellList.isEmpty())
+                return false;
+            s = spellList.get(nextIndex(spellList.size()));
+        }
+        return castSpell(s, target);
+    }
+
+    /**
+     * See Wizard.useItem; the item is used without holding any lock. Of an
+     * ItemStack, a single item is split off under the lock of the inventory (see
+     * ItemStack.unstack) and used
+     *
+     * @param item   item to be used
+     * @param target target on which item is to be used on
+     * @return true, if useOn was called, false otherwise
+     */
+    public boolean useItem(Tradeable item, MagicEffectRealization target) {
+        if (item == null || target == null)
+            throw new IllegalArgumentException("Item and target must not be null");
+        if (isDead())
+            return false;
+        Tradeable used = item;
+        synchronized (inventory) {
+            if (item instanceof ItemStack stack)
+                used = ItemStack.unstack(inventory, stacks, stack);
+            else if (!inventory.contains(item))
+                used = null;
+        }
+        if (used == null)
+            return false;
+        used.useOn(target);
+        Journal.use(this, target, item instanceof ItemStack stack ? stack.withCount(1) : item);
+        return true;
+    }
+
+    /**
+     * See Wizard.useRandomItem
+     *
+     * @param target target on which item is to be used on
+     * @return false, if the object does not possess any item, otherwise the result
+     * of the delegation to useItem
+     */
+    public boolean useRandomItem(MagicEffectRealization target) {
+        Tradeable item = randomItem();
+        if (item == null)
+            return false;
+        return useItem(item, target);
+    }
+
+    /**
+     * See Wizard.sellItem
+     *
+     * @param item   item to be sold
+     * @param target object the item is sold to (buyer)
+     * @return true, if purchase was called successfully (returned true), false
+     * otherwise.
+     */
+    public boolean sellItem(Tradeable item, Trader target) {
+        if (item == null)
+            throw new IllegalArgumentException("ConcurrentWizard: sellItem: item == null");
+        if (target == null)
+            throw new IllegalArgumentException("ConcurrentWizard: sellItem: target == null");
+        if (isDead())
+            return false;
+        return item.purchase(this, target);
+    }
+
+    /**
+     * See Wizard.sellRandomItem
+     *
+     * @param target object the item is sold to (buyer)
+     * @return false, if the object does not possess any item, otherwise the result
+     * of the delegation to sellItem
+     */
+    public boolean sellRandomItem(Trader target) {
+        Tradeable item = randomItem();
+        if (item == null)
+            return false;
+        return sellItem(item, target);
+    }
+
+    /**
+     * Returns a random item of the inventory
+     *
+     * @return random item of the inventory or null if the inventory is empty
+     */
+    private Tradeable randomItem() {
+        synchronized (inventory) {
+            if (inventory.isEmpty())
+                return null;
+            return inventory.get(nextIndex(inventory.size()));
+        }
+    }
+
+    /**
+     * Same format as Wizard.toString; the sets are copied under their locks, the
+     * values may therefore stem from slightly different points in time
+     *
+     * @return "['name'('level'): 'HP'/'basicHP' 'MP'/'basicMP'; 'money'
+     * 'KnutOrKnuts'; knows 'knownSpells'; carries 'inventory']"
+     */
+    @Override
+    public String toString() {
+        String spellsString;
+        synchronized (knownSpells) {
+            spellsString = knownSpells.toString();
+        }
+        String inventoryString;
+        synchronized (inventory) {
+            inventoryString = inventory.toString();
+        }
+        int currentMoney = money.get();
+        String moneyString = currentMoney == 1 ? "Knut" : "Knuts";
+        return String.format("[%s(%s): %d/%d %d/%d; %d %s; knows %s; carries %s]", name, level, HP.get(), basicHP,
+                MP.get(), basicMP, currentMoney, moneyString, spellsString, inventoryString);
+    }
+
+    // MagicSource Interface
+
+    /**
+     * See Wizard.provideMana; MP is reduced atomically, so concurrent casts never
+     * spend more mana than available
+     *
+     * @param levelNeeded minimum magic level needed for the action
+     * @param manaAmount  amount of mana needed for the action
+     * @return true, if mana can be successfully provided, false otherwise
+     */
+    @Override
+    public boolean provideMana(MagicLevel levelNeeded, int manaAmount) {
+        if (levelNeeded == null || manaAmount < 0)
+            throw new IllegalArgumentException("Level needed must not be null and mana amount must not be negative");
+        if (isDead())
+            return false;
+        if (level.compareTo(levelNeeded) < 0)
+            return false;
+        return trySubtract(MP, manaAmount);
+    }
+
+    // Trader Interface
+
+    @Override
+    public boolean possesses(Tradeable item) {
+        if (item == null)
+            throw new IllegalArgumentException("Item must not be null");
+        synchronized (inventory) {
+            return ItemStack.holds(inventory, stacks, item);
+        }
+    }
+
+    @Override
+    public boolean canAfford(int amount) {
+        if (amount < 0)
+            throw new IllegalArgumentException("ConcurrentWizard: canAfford: amount < 0");
+        return money.get() >= amount;
+    }
+
+    @Override
+    public boolean hasCapacity(int weight) {
+        if (weight < 0)
+            throw new IllegalArgumentException("ConcurrentWizard: hasCapacity: weight < 0");
+        synchronized (inventory) {
+            return inventoryWeight + weight <= carryingCapacity;
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        synchronized (inventory) {
+            return Math.max(0, carryingCapacity - inventoryWeight);
+        }
+    }
+
+    @Override
+    public boolean pay(int amount) {
+        if (amount < 0)
+            throw new IllegalArgumentException("ConcurrentWizard: pay: amount < 0");
+        if (isDead())
+            return false;
+        return trySubtract(money, amount);
+    }
+
+    @Override
+    public boolean earn(int amount) {
+        if (amount < 0)
+            throw new IllegalArgumentException("ConcurrentWizard: earn: amount < 0");
+        if (isDead())
+            return false;
+        money.addAndGet(amount);
+        return true;
+    }
+
+    /**
+     * See Wizard.addToInventory; the capacity check and the insertion are done
+     * under the same lock; an ItemStack is merged into the stack of its kind
+     *
+     * @param item item to be added to object's inventory
+     * @return true. if item is successfully added, false otherwise
+     */
+    @Override
+    public boolean addToInventory(Tradeable item) {
+        if (item == null)
+            throw new IllegalArgumentException("Item must not be null");
+        synchronized (inventory) {
+            if (inventoryWeight + item.getWeight() > carryingCapacity || !ItemStack.put(inventory, stacks, item))
+                return false;
+            inventoryWeight += item.getWeight();
+            return true;
+        }
+    }
+
+    /**
+     * See Wizard.removeFromInventory; an ItemStack removes its count of items
+     * from the stack of its kind
+     *
+     * @param item item to be removed from object's inventory
+     * @return true, if item is successfully removed, false otherwise
+     */
+    @Override
+    public boolean removeFromInventory(Tradeable item) {
+        if (item == null)
+            throw new IllegalArgumentException("Item must not be null");
+        synchronized (inventory) {
+            if (!ItemStack.take(inventory, stacks, item))
+                return false;
+            inventoryWeight -= item.getWeight();
+            return true;
+        }
+    }
+
+    /**
+     * Returns the unique id of this wizard, so trade locks are taken in the
+     * order of creation of the wizards
+     *
+     * @return value of instance variable id
+     */
+    @Override
+    public long lockOrder() {
+        return id;
+    }
+
+    /**
+     * Trades lock the inventory, the same lock that guards inventory changes
+     *
+     * @return lock of the inventory
+     */
+    @Override
+    public Object tradeLock() {
+        return inventory;
+    }
+
+    @Override
+    public boolean canSteal() {
+        return !isDead();
+    }
+
+    /**
+     * See Wizard.steal; the theft is done under the trade locks of both traders
+     * (see TradeLock), so it is journaled in the order of the trades
+     *
+     * @param thief object that is stealing the item from the this-object.
+     * @return true, if theft was successful
+     */
+    @Override
+    public boolean steal(Trader thief) {
+        if (thief == null)
+            throw new IllegalArgumentException("Thief must not be null");
+        if (!thief.canSteal())
+            return false;
+        return TradeLock.lockBoth(this, thief, () -> {
+            if (inventory.isEmpty())
+                return false;
+            var item = ItemStack.single(inventory.get(nextIndex(inventory.size())));
+            ItemStack.take(inventory, stacks, item);
+            inventoryWeight -= item.getWeight();
+            boolean carried = thief.addToInventory(item);
+            Journal.trade(Journal.Type.STEAL, this, thief, item, carried ? 1 : 0, 0);
+            return carried;
+        });
+    }
+
+    @Override
+    public boolean isLootable() {
+        return isDead();
+    }
+
+    @Override
+    public boolean canLoot() {
+        return !isDead();
+    }
+
+    /**
+     * See Wizard.loot; the looting is done under the trade locks of both traders
+     * (see TradeLock), so it is journaled in the order of the trades
+     *
+     * @param looter object that is looting this-object.
+     * @return true, if looting was successful, false otherwise
+     */
+    @Override
+    public boolean loot(Trader looter) {
+        if (looter == null)
+            throw new IllegalArgumentException("Looter must not be null");
+        if (!looter.canLoot() || !isLootable())
+            return false;
+        return TradeLock.lockBoth(this, looter, () -> {
+            var items = inventory.toArray(new Tradeable[0]);
+            inventory.clear();
+            stacks.clear();
+            inventoryWeight = 0;
+            boolean success = false;
+            for (var item : items) {
+                boolean carried = looter.addToInventory(item);
+                Journal.trade(Journal.Type.LOOT, this, looter, item, carried ? 1 : 0, 0);
+                success |= carried;
+            }
+            return success;
+        });
+    }
+
+    // MagicEffectRealization Interface
+
+    @Override
+    public void takeDamage(int amount) {
+        MagicEffectRealization.super.takeDamage(amount);
+        subtractClamped(HP, amount);
+    }
+
+    @Override
+    public void takeDamagePercent(int percentage) {
+        MagicEffectRealization.super.takeDamagePercent(percentage);
+        var damage = (int) (basicHP * (percentage / 100.0));
+        takeDamage(damage);
+    }
+
+    @Override
+    public void weakenMagic(int amount) {
+        MagicEffectRealization.super.weakenMagic(amount);
+        subtractClamped(MP, amount);
+    }
+
+    @Override
+    public void weakenMagicPercent(int percentage) {
+        MagicEffectRealization.super.weakenMagicPercent(percentage);
+        var reduction = (int) (basicMP * (percentage / 100.0));
+        weakenMagic(reduction);
+    }
+
+    @Override
+    public void heal(int amount) {
+        MagicEffectRealization.super.heal(amount);
+        HP.addAndGet(amount);
+    }
+
+    @Override
+    public void healPercent(int percentage) {
+        MagicEffectRealization.super.healPercent(percentage);
+        var healAmount = (int) (basicHP * (percentage / 100.0));
+        heal(healAmount);
+    }
+
+    @Override
+    public void enforceMagic(int amount) {
+        MagicEffectRealization.super.enforceMagic(amount);
+        MP.addAndGet(amount);
+    }
+
+    @Override
+    public void enforceMagicPercent(int percentage) {
+        MagicEffectRealization.super.enforceMagicPercent(percentage);
+        var increaseAmount = (int) (basicMP * (percentage / 100.0));
+        enforceMagic(increaseAmount);
+    }
+
+    @Override
+    public boolean isProtected(Spell s) {
+        MagicEffectRealization.super.isProtected(s);
+        if (!(s instanceof AttackingSpell))
+            return false;
+        synchronized (protectedFrom) {
+            return protectedFrom.contains(s);
+        }
+    }
+
+    @Override
+    public void setProtection(Set<AttackingSpell> attacks) {
+        MagicEffectRealization.super.setProtection(attacks);
+        synchronized (protectedFrom) {
+            protectedFrom.addAll(attacks);
+        }
+    }
+
+    /**
+     * Test and removal of the protection are done under the same lock, so of two
+     * concurrent attacks only one is blocked by the protection
+     *
+     * @param s attacking spell that uses up the protection
+     * @return true, if the object was protected against s
+     */
+    @Override
+    public boolean consumeProtection(AttackingSpell s) {
+        if (s == null)
+            throw new IllegalArgumentException("Spell cannot be null");
+        synchronized (protectedFrom) {
+            return protectedFrom.remove(s);
+        }
+    }
+
+    @Override
+    public void removeProtection(Set<AttackingSpell> attacks) {
+        MagicEffectRealization.super.removeProtection(attacks);
+        synchronized (protectedFrom) {
+            protectedFrom.removeAll(attacks);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package a12226166;
+
+/**
+ * The eight kinds of effects that attacking and healing spells can have on HP
+ * or MP. A spell resolves its flags type and percentage to one EffectKind when
+ * it is constructed, so casting only needs a single switch instead of the nested
+ * flag tests.
+ */
+public enum EffectKind {
+    DAMAGE, DAMAGE_PERCENT, WEAKEN, WEAKEN_PERCENT, HEAL, HEAL_PERCENT, ENFORCE, ENFORCE_PERCENT;
+
+    /**
+     * Returns the kind of effect of an attacking spell
+     *
+     * @param type       true: affects HP, false: affects MP
+     * @param percentage true: amount is a percentage, false: absolute value
+     * @return DAMAGE, DAMAGE_PERCENT, WEAKEN or WEAKEN_PERCENT
+     */
+    public static EffectKind attack(boolean type, boolean percentage) {
+        if (type)
+            return percentage ? DAMAGE_PERCENT : DAMAGE;
+        return percentage ? WEAKEN_PERCENT : WEAKEN;
+    }
+
+    /**
+     * Returns the kind of effect of a healing spell
+     *
+     * @param type       true: affects HP, false: affects MP
+     * @param percentage true: amount is a percentage, false: absolute value
+     * @return HEAL, HEAL_PERCENT, ENFORCE or ENFORCE_PERCENT
+     */
+    public static EffectKind healing(boolean type, boolean percentage) {
+        if (type)
+            return percentage ? HEAL_PERCENT : HEAL;
+        return percentage ? ENFORCE_PERCENT : ENFORCE;
+    }
+
+    /**
+     * Returns true, if the effect changes HP, false if it changes MP
+     *
+     * @return true, if the effect changes HP
+     */
+    public boolean affectsHP() {
+        return switch (this) {
+            case DAMAGE, DAMAGE_PERCENT, HEAL, HEAL_PERCENT -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Returns true, if the amount of the effect is a percentage of the basic value
+     *
+     * @return true, if the amount is a percentage
+     */
+    public boolean isPercentage() {
+        return switch (this) {
+            case DAMAGE_PERCENT, WEAKEN_PERCENT, HEAL_PERCENT, ENFORCE_PERCENT -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Returns true, if the effect reduces HP or MP
+     *
+     * @return true, if the effect reduces HP or MP
+     */
+    public boolean isHarmful() {
+        return ordinal() <= WEAKEN_PERCENT.ordinal();
+    }
+
+    /**
+     * Calls the method of target that realizes this kind of effect (e.g.
+     * takeDamagePercent for DAMAGE_PERCENT) with amount
+     *
+     * @param target target of the effect
+     * @param amount amount or percentage of the effect
+     */
+    public void applyTo(MagicEffectRealization target, int amount) {
+        switch (this) {
+            case DAMAGE -> target.takeDamage(amount);
+            case DAMAGE_PERCENT -> target.takeDamagePercent(amount);
+            case WEAKEN -> target.weakenMagic(amount);
+            case WEAKEN_PERCENT -> target.weakenMagicPercent(amount);
+            case HEAL -> target.heal(amount);
+            case HEAL_PERCENT -> target.healPercent(amount);
+            case ENFORCE -> target.enforceMagic(amount);
+            case ENFORCE_PERCENT -> target.enforceMagicPercent(amount);
+        }
+    }
+
+    /**
+     * Applies this kind of effect with amount to all targets
+     *
+     * @param targets targets of the effect
+     * @param amount  amount or percentage of the effect
+     */
+    public void applyTo(MagicEffectRealization[] targets, int amount) {
+        applyTo(targets, 0, targets.length, amount);
+    }
+
+    /**
+     * Applies this kind of effect with amount to targets[from] to targets[to-1];
+     * the switch is done once for the whole range, so every loop only calls a
+     * single method
+     *
+     * @param targets targets of the effect
+     * @param from    index of the first target (inclusive)
+     * @param to      index of the last target (exclusive)
+     * @param amount  amount or percentage of the effect
+     */
+    public void applyTo(MagicEffectRealization[] targets, int from, int to, int amount) {
+        switch (this) {
+            case DAMAGE -> {
+                for (int i = from; i < to; ++i)
+                    targets[i].takeDamage(amount);
+            }
+            case DAMAGE_PERCENT -> {
+                for (int i = from; i < to; ++i)
+                    targets[i].takeDamagePercent(amount);
+            }
+            case WEAKEN -> {
+                for (int i = from; i < to; ++i)
+                    targets[i].weakenMagic(amount);
+            }
+            case WEAKEN_PERCENT -> {
+                for (int i = from; i < to; ++i)
+                    targets[i].weakenMagicPercent(amount);
+            }
+            case HEAL -> {
+                for (int i = from; i < to; ++i)
+                    targets[i].heal(amount);
+            }
+            case HEAL_PERCENT -> {
+                for (int i = from; i < to; ++i)
+                    targets[i].healPercent(amount);
+            }
+            case ENFORCE -> {
+                for (int i = from; i < to; ++i)
+                    targets[i].enforceMagic(amount);
+            }
+            case ENFORCE_PERCENT -> {
+                for (int i = from; i < to; ++i)
+                    targets[i].enforceMagicPercent(amount);
+            }
+        }
+    }
+}
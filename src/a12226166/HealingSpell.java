@@ -26,6 +26,14 @@ public class HealingSpell extends Spell {
      * [0,100]
      */
     private final int amount;
+    /**
+     * Kind of effect resolved from type and percentage
+     */
+    private final EffectKind effect;
+    /**
+     * Result of additionalOutputString, which never changes
+     */
+    private final String outputString;
 
     /**
      * @param name        name
@@ -45,27 +53,59 @@ public class HealingSpell extends Spell {
         this.type = type;
         this.percentage = percentage;
         this.amount = amount;
+        this.effect = EffectKind.healing(type, percentage);
+        this.outputString = String.format("; +%d%s %s", amount, (percentage ? " %" : ""), (type ? "HP" : "MP"));
+    }
+
+    /**
+     * Returns the kind of effect of this spell
+     *
+     * @return value of instance variable effect
+     */
+    public EffectKind getEffect() {
+        return effect;
+    }
+
+    /**
+     * Returns the amount (or percentage) of the effect of this spell
+     *
+     * @return value of instance variable amount
+     */
+    public int getAmount() {
+        return amount;
+    }
+
+    /**
+     * Appends effect and amount to the definition of Spell
+     */
+    @Override
+    String definition() {
+        return super.definition() + ";" + effect.name() + ";" + amount;
     }
 
     /**
      * Use one of the functions heal, healPercent, enforceMagic or
-     * enforceMagicPercent according to the flags type and percentage
+     * enforceMagicPercent according to the flags type and percentage (resolved to
+     * effect in the constructor)
      *
      * @param target target that receives healing
      */
     @Override
     public void doEffect(MagicEffectRealization target) {
-        if (type) { // affects HP
-            if (percentage)
-                target.healPercent(amount);
-            else
-                target.heal(amount);
-        } else { // affects MP
-            if (percentage)
-                target.enforceMagicPercent(amount);
-            else
-                target.enforceMagic(amount);
-        }
+        effect.applyTo(target, amount);
+    }
+
+    /**
+     * Applies the effect to all targets with a single dispatch on the kind of
+     * effect (see EffectKind.applyTo)
+     *
+     * @param targets targets of the spell
+     * @param from    index of the first target (inclusive)
+     * @param to      index of the last target (exclusive)
+     */
+    @Override
+    protected void doEffect(MagicEffectRealization[] targets, int from, int to) {
+        effect.applyTo(targets, from, to, amount);
     }
 
     /**
@@ -77,7 +117,19 @@ public class HealingSpell extends Spell {
      */
     @Override
     public String additionalOutputString() {
-        return String.format("; +%d%s %s", amount, (percentage ? " %" : ""), (type ? "HP" : "MP"));
+        return outputString;
+    }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o))
+            return false;
+        HealingSpell spell = (HealingSpell) o;
+        return effect == spell.effect && amount == spell.amount;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + effect.ordinal()) + amount;
     }
-}
\ No newline at end of file
+}
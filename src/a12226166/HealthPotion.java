@@ -1,14 +1,11 @@
 package a12226166;
 
+import java.util.List;
+
 /**
  * HealthPotions increase the consumer's mana
  */
 public class HealthPotion extends Potion {
-    /**
-     * Must not be negative
-     */
-    private final int health;
-
     /**
      * @param name   name
      * @param usages number of usages still left
@@ -17,23 +14,23 @@ public class HealthPotion extends Potion {
      * @param health change of health on consumer
      */
     public HealthPotion(String name, int usages, int price, int weight, int health) {
-        super(name, usages, price, weight);
-
-        if (health < 0)
-            throw new IllegalArgumentException("Health must not be negative");
+        super(prototype(name, price, weight, health), usages);
+    }
 
-        this.health = health;
+    private HealthPotion(ItemPrototype prototype, int usages) {
+        super(prototype, usages);
     }
 
     /**
-     * returns "; +'health' HP". e.g. (total result of toString) "[Health Potion; 1
-     * g; 1 Knut; 5 gulps; +10 HP]"
-     *
-     * @return "; +'health' HP"
+     * If health is negative, an IllegalArgumentException is thrown; returns the
+     * prototype with the additional output "; +'health' HP". e.g. (total result
+     * of toString) "[Health Potion; 1 g; 1 Knut; 5 gulps; +10 HP]"
      */
-    @Override
-    public String additionalOutputString() {
-        return String.format("; +%d HP", health);
+    private static ItemPrototype prototype(String name, int price, int weight, int health) {
+        if (health < 0)
+            throw new IllegalArgumentException("Health must not be negative");
+        return ItemPrototype.of(HealthPotion.class, name, price, weight, health, 0, List.of(), HealthPotion::new,
+                p -> String.format("; +%d HP", p.getHealth()));
     }
 
     /**
@@ -45,6 +42,6 @@ public class HealthPotion extends Potion {
     @Override
     public void useOn(MagicEffectRealization target) {
         if (tryUsage())
-            target.heal(health);
+            target.heal(getPrototype().getHealth());
     }
-}
\ No newline at end of file
+}
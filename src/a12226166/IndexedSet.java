@@ -0,0 +1,164 @@
+package a12226166;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Set that additionally keeps its elements in an array, so that an element can
+ * be accessed by its position. Removal moves the last element into the gap
+ * (swap-remove), so add, remove, contains and get are all O(1). The order of
+ * the elements is therefore not stable.
+ *
+ * @param <E> type of the elements
+ */
+public class IndexedSet<E> extends AbstractSet<E> {
+    /**
+     * Elements in positions 0 to size-1; not null
+     */
+    private Object[] elements;
+    /**
+     * Position of every element in elements; not null
+     */
+    private final Map<E, Integer> positions;
+    /**
+     * Number of elements; not negative
+     */
+    private int size;
+    /**
+     * Incremented on every structural change to detect concurrent modification
+     * while iterating
+     */
+    private int modCount;
+
+    /**
+     * Creates an empty set
+     */
+    public IndexedSet() {
+        this.elements = new Object[8];
+        this.positions = new HashMap<>();
+    }
+
+    /**
+     * Creates a set containing all the elements of c
+     *
+     * @param c elements to be added; must not be null
+     */
+    public IndexedSet(Collection<? extends E> c) {
+        if (c == null)
+            throw new IllegalArgumentException("Collection must not be null");
+        this.elements = new Object[Math.max(8, c.size())];
+        this.positions = new HashMap<>(Math.max(16, (int) (c.size() / .75f) + 1));
+        addAll(c);
+    }
+
+    /**
+     * Returns the element at position index
+     *
+     * @param index position of the element; must be in the interval [0,size)
+     * @return element at position index
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return positions.containsKey(o);
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (positions.putIfAbsent(e, size) != null)
+            return false;
+        if (size == elements.length)
+            elements = Arrays.copyOf(elements, size * 2);
+        elements[size++] = e;
+        ++modCount;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        Integer index = positions.remove(o);
+        if (index == null)
+            return false;
+        fillGap(index);
+        return true;
+    }
+
+    /**
+     * Moves the last element into the (already unmapped) position index
+     *
+     * @param index position of the removed element
+     */
+    @SuppressWarnings("unchecked")
+    private void fillGap(int index) {
+        int last = --size;
+        if (index != last) {
+            elements[index] = elements[last];
+            positions.put((E) elements[index], index);
+        }
+        elements[last] = null;
+        ++modCount;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, 0, size, null);
+        positions.clear();
+        size = 0;
+        ++modCount;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int cursor;
+            private int lastReturned = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            @Override
+            public E next() {
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (cursor >= size)
+                    throw new NoSuchElementException();
+                lastReturned = cursor;
+                return get(cursor++);
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned < 0)
+                    throw new IllegalStateException();
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                positions.remove(elements[lastReturned]);
+                // the last element moves into the gap and has to be visited next
+                fillGap(lastReturned);
+                cursor = lastReturned;
+                lastReturned = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package a12226166;
+
+/**
+ * Maps items to long codes and back, so that inventories can be persisted (see
+ * WizardFile). Items have no common identity, so the application decides what
+ * a code means (e.g. an index into its own item table).
+ */
+public interface ItemCodec {
+    /**
+     * Returns the code of item; decode(encode(item)) must return an item that
+     * can replace item
+     *
+     * @param item item to encode
+     * @return code of item
+     */
+    long encode(Tradeable item);
+
+    /**
+     * Returns the item with the given code; if code is not valid, an
+     * IllegalArgumentException is thrown
+     *
+     * @param code code returned by encode
+     * @return item with the given code
+     */
+    Tradeable decode(long code);
+}
@@ -0,0 +1,256 @@
+package a12226166;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Immutable definition of a kind of magic item: class, name, price, weight and
+ * effect (health, mana and spells, as far as the class uses them). A MagicItem
+ * only holds its prototype and its remaining usages, so many items of a kind
+ * share one definition, and two items are of the same kind exactly if they
+ * have the same prototype and usages (see MagicItem.isSameKind).
+ * <p>
+ * Prototypes are interned like spells (see SpellCatalog): equal definitions
+ * share one canonical instance with a dense int id, handed out in the order in
+ * which definitions are first seen. The fixed parts of the output of
+ * MagicItem.toString are computed once per canonical prototype, when it is
+ * interned.
+ * <p>
+ * Only new definitions take the lock of the class: known definitions are
+ * looked up in a concurrent map, and lookups by id read a copy-on-write array,
+ * like SpellCatalog.byId.
+ */
+public final class ItemPrototype {
+    /**
+     * Canonical instances; the id of a definition is its index. Never changed,
+     * only replaced by a longer copy while holding the lock of the class
+     */
+    private static volatile ItemPrototype[] prototypes = new ItemPrototype[0];
+    /**
+     * Canonical instance of every definition; only written while holding the
+     * lock of the class, after id and prefix of the instance are set
+     */
+    private static final Map<ItemPrototype, ItemPrototype> canonical = new ConcurrentHashMap<>();
+
+    private final Class<? extends MagicItem> type;
+    private final String name;
+    private final int price;
+    private final int weight;
+    private final int health;
+    private final int mana;
+    private final List<Spell> spells;
+    /**
+     * Creates an item of the prototype with the given usages; null, if items
+     * of the type cannot be created from a prototype (see MagicItem.copy)
+     */
+    private final BiFunction<ItemPrototype, Integer, MagicItem> factory;
+    /**
+     * "['name'; 'weight' g; 'price' 'currencyString'; "; set when the prototype
+     * becomes canonical
+     */
+    private String prefix;
+    /**
+     * Computes the additional output of the class from the definition (see
+     * MagicItem.additionalOutputString)
+     */
+    private final Function<ItemPrototype, String> suffixOf;
+    /**
+     * Additional output of the class; set when the prototype becomes canonical
+     */
+    private String suffix;
+    private int id = -1;
+
+    private ItemPrototype(Class<? extends MagicItem> type, String name, int price, int weight, int health, int mana,
+                          List<Spell> spells, BiFunction<ItemPrototype, Integer, MagicItem> factory,
+                          Function<ItemPrototype, String> suffixOf) {
+        this.type = type;
+        this.name = name;
+        this.price = price;
+        this.weight = weight;
+        this.health = health;
+        this.mana = mana;
+        this.spells = spells;
+        this.factory = factory;
+        this.suffixOf = suffixOf;
+    }
+
+    /**
+     * If type, name, spells or suffix is null, name is empty or price or weight
+     * is negative, an IllegalArgumentException is thrown; returns the canonical
+     * prototype of the definition
+     *
+     * @param type    class of the items
+     * @param name    name
+     * @param price   price
+     * @param weight  weight
+     * @param health  change of health of the effect, 0 if none
+     * @param mana    change of mana of the effect, 0 if none
+     * @param spells  spells cast by the effect
+     * @param factory creates an item of the prototype with the given usages, or
+     *                null
+     * @param suffix  computes the additional output of the class for toString
+     *                from the definition; only called for new definitions
+     * @return canonical prototype
+     */
+    static ItemPrototype of(Class<? extends MagicItem> type, String name, int price, int weight, int health,
+                            int mana, List<Spell> spells, BiFunction<ItemPrototype, Integer, MagicItem> factory,
+                            Function<ItemPrototype, String> suffix) {
+        if (type == null || spells == null || suffix == null)
+            throw new IllegalArgumentException("Type, spells and suffix must not be null");
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("Name must not be null or empty");
+        if (price < 0)
+            throw new IllegalArgumentException("Price must not be negative");
+        if (weight < 0)
+            throw new IllegalArgumentException("Weight must not be negative");
+        var prototype = new ItemPrototype(type, name, price, weight, health, mana, List.copyOf(spells), factory,
+                suffix);
+        var existing = canonical.get(prototype);
+        return existing != null ? existing : intern(prototype);
+    }
+
+    /**
+     * Makes prototype the canonical instance of its definition, unless another
+     * thread was faster
+     */
+    private static synchronized ItemPrototype intern(ItemPrototype prototype) {
+        var existing = canonical.get(prototype);
+        if (existing != null)
+            return existing;
+        prototype.prefix = String.format("[%s; %d g; %d %s; ", prototype.name, prototype.weight, prototype.price,
+                prototype.price == 1 ? "Knut" : "Knuts");
+        prototype.suffix = prototype.suffixOf.apply(prototype);
+        prototype.id = prototypes.length;
+        var grown = Arrays.copyOf(prototypes, prototype.id + 1);
+        grown[prototype.id] = prototype;
+        prototypes = grown;
+        canonical.put(prototype, prototype);
+        return prototype;
+    }
+
+    /**
+     * Returns the canonical prototype with the given id; takes no lock
+     *
+     * @param id id of a known definition
+     * @return canonical prototype with the given id
+     */
+    public static ItemPrototype byId(int id) {
+        var current = prototypes;
+        if (id < 0 || id >= current.length)
+            throw new IllegalArgumentException("No item prototype with id " + id);
+        return current[id];
+    }
+
+    /**
+     * Returns the number of known definitions, which is also the next id
+     *
+     * @return number of known definitions
+     */
+    public static int size() {
+        return prototypes.length;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Class<? extends MagicItem> getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPrice() {
+        return price;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getHealth() {
+        return health;
+    }
+
+    public int getMana() {
+        return mana;
+    }
+
+    /**
+     * Returns the spells of the effect
+     *
+     * @return unmodifiable list of spells
+     */
+    public List<Spell> getSpells() {
+        return spells;
+    }
+
+    String prefix() {
+        return prefix;
+    }
+
+    String suffix() {
+        return suffix;
+    }
+
+    /**
+     * Returns true, if items can be created from this prototype (see newItem)
+     *
+     * @return true, if the prototype has a factory
+     */
+    boolean isInstantiable() {
+        return factory != null;
+    }
+
+    /**
+     * If usages is negative, an IllegalArgumentException is thrown; creates a new
+     * item of this prototype; throws an UnsupportedOperationException, if the
+     * class of the items cannot be created from a prototype
+     *
+     * @param usages number of usages left
+     * @return new item
+     */
+    public MagicItem newItem(int usages) {
+        if (factory == null)
+            throw new UnsupportedOperationException(type.getSimpleName() + " cannot be created from a prototype");
+        if (usages < 0)
+            throw new IllegalArgumentException("Usages must not be negative");
+        return factory.apply(this, usages);
+    }
+
+    /**
+     * Prototypes are equal, if all attributes of the definition are equal (the
+     * factory and the output derived from the definition are not part of it)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ItemPrototype other))
+            return false;
+        return type == other.type && price == other.price && weight == other.weight && health == other.health
+                && mana == other.mana && name.equals(other.name) && spells.equals(other.spells);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, name, price, weight, health, mana, spells);
+    }
+
+    /**
+     * Returns "'name' ('type')"
+     *
+     * @return "'name' ('type')"
+     */
+    @Override
+    public String toString() {
+        return name + " (" + type.getSimpleName() + ")";
+    }
+}
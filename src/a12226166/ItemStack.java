@@ -0,0 +1,312 @@
+package a12226166;
+
+import java.util.Map;
+
+/**
+ * A number of identical magic items that are traded as one: count items with
+ * the same ItemPrototype (class, name, price, weight and effect) and usages.
+ * Price and weight of a stack are the ones of all its items. Stacks are values:
+ * two stacks are equal, if they have the same kind and count.
+ * <p>
+ * The wizards (Wizard, ConcurrentWizard and WizardTable.View) hold at most one
+ * stack per kind (see put, take, holds and unstack): addToInventory merges a
+ * stack into the stack of the same kind, and possesses and removeFromInventory
+ * accept any stack of up to the count held, so purchase, give and loot of n
+ * identical items is a single operation (e.g. new ItemStack(potion,
+ * 5).purchase(seller, buyer)). Other traders may store a stack like a single
+ * item.
+ * <p>
+ * The items of a stack are used through useItem of the wizards, which splits
+ * one item off the stack (see unstack) and uses it; steal takes a single item
+ * of a stack.
+ */
+public final class ItemStack implements Tradeable {
+    /**
+     * Canonical definition of the items
+     */
+    private final ItemPrototype prototype;
+    /**
+     * Usages left of every item
+     */
+    private final int usages;
+    /**
+     * Positive
+     */
+    private final int count;
+
+    /**
+     * If item is null or count is not positive, an IllegalArgumentException is
+     * thrown; creates a stack of count items of the kind of item, item itself
+     * does not become part of the stack. If items of the class cannot be created
+     * from their prototype (see MagicItem.copy), an
+     * UnsupportedOperationException is thrown
+     *
+     * @param item  item of the kind of the stack
+     * @param count number of items
+     */
+    public ItemStack(MagicItem item, int count) {
+        if (item == null)
+            throw new IllegalArgumentException("Item must not be null");
+        if (count <= 0)
+            throw new IllegalArgumentException("Count must be positive");
+        if (!item.getPrototype().isInstantiable())
+            throw new UnsupportedOperationException(item.getClass().getSimpleName() + " cannot be stacked");
+        this.prototype = item.getPrototype();
+        this.usages = item.getUsages();
+        this.count = count;
+    }
+
+    private ItemStack(ItemStack stack, int count) {
+        this.prototype = stack.prototype;
+        this.usages = stack.usages;
+        this.count = count;
+    }
+
+    /**
+     * Returns the number of items in the stack
+     *
+     * @return value of instance variable count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns true, if item is of the kind of this stack
+     *
+     * @param item item to compare
+     * @return true, if item would be part of this stack
+     */
+    public boolean isKindOf(MagicItem item) {
+        return item != null && prototype == item.getPrototype() && usages == item.getUsages();
+    }
+
+    /**
+     * Returns true, if other is a stack of the same kind (of any count)
+     *
+     * @param other stack to compare
+     * @return true, if the stacks can be merged
+     */
+    public boolean isSameKind(ItemStack other) {
+        return other != null && prototype == other.prototype && usages == other.usages;
+    }
+
+    /**
+     * If count is not positive, an IllegalArgumentException is thrown; returns a
+     * stack of the same kind with count items
+     *
+     * @param count number of items
+     * @return stack with count items of this kind
+     */
+    public ItemStack withCount(int count) {
+        if (count <= 0)
+            throw new IllegalArgumentException("Count must be positive");
+        return count == this.count ? this : new ItemStack(this, count);
+    }
+
+    /**
+     * Returns a new single item of the kind of this stack
+     *
+     * @return new item
+     */
+    public MagicItem newItem() {
+        return prototype.newItem(usages);
+    }
+
+    /**
+     * Returns the definition of the items
+     *
+     * @return value of instance variable prototype
+     */
+    public ItemPrototype getPrototype() {
+        return prototype;
+    }
+
+    /**
+     * Returns the usages left of every item
+     *
+     * @return value of instance variable usages
+     */
+    public int getUsages() {
+        return usages;
+    }
+
+    /**
+     * Returns the key of the kind, which is the same for all stacks of a kind:
+     * prototype id and usages
+     *
+     * @return key of the kind
+     */
+    long kind() {
+        return (long) prototype.getId() << 32 | usages;
+    }
+
+    /**
+     * Returns the price of a single item
+     *
+     * @return price of one item
+     */
+    public int getUnitPrice() {
+        return prototype.getPrice();
+    }
+
+    /**
+     * Returns the weight of a single item
+     *
+     * @return weight of one item
+     */
+    public int getUnitWeight() {
+        return prototype.getWeight();
+    }
+
+    /**
+     * Returns the price of all items of the stack
+     *
+     * @return count times the price of one item
+     */
+    @Override
+    public int getPrice() {
+        return Math.multiplyExact(count, prototype.getPrice());
+    }
+
+    /**
+     * Returns the weight of all items of the stack
+     *
+     * @return count times the weight of one item
+     */
+    @Override
+    public int getWeight() {
+        return Math.multiplyExact(count, prototype.getWeight());
+    }
+
+    /**
+     * Uses a new item of the kind of the stack (see newItem) on target; the
+     * stack is a value and does not change, so owners take the used item off the
+     * stack, as useItem of the wizards does
+     *
+     * @param target target of the usage
+     */
+    @Override
+    public void useOn(MagicEffectRealization target) {
+        if (target == null)
+            throw new IllegalArgumentException("Target must not be null");
+        newItem().useOn(target);
+    }
+
+    // Inventories of the wizards: an IndexedSet of items and stacks, and the
+    // stacks of the set by their kind
+
+    /**
+     * Adds item to inventory; an ItemStack is merged into the stack of its kind
+     * in stacks
+     *
+     * @param inventory items of a trader
+     * @param stacks    stacks of inventory by their kind
+     * @param item      item to add
+     * @return true, if the item was added
+     */
+    static boolean put(IndexedSet<Tradeable> inventory, Map<Long, ItemStack> stacks, Tradeable item) {
+        if (!(item instanceof ItemStack stack))
+            return inventory.add(item);
+        var held = stacks.get(stack.kind());
+        if (held != null) {
+            inventory.remove(held);
+            stack = held.withCount(Math.addExact(held.count, stack.count));
+        }
+        inventory.add(stack);
+        stacks.put(stack.kind(), stack);
+        return true;
+    }
+
+    /**
+     * Removes item from inventory; an ItemStack is taken from the stack of its
+     * kind, which must hold at least as many items
+     *
+     * @param inventory items of a trader
+     * @param stacks    stacks of inventory by their kind
+     * @param item      item to remove
+     * @return true, if the item was removed
+     */
+    static boolean take(IndexedSet<Tradeable> inventory, Map<Long, ItemStack> stacks, Tradeable item) {
+        if (!(item instanceof ItemStack stack))
+            return inventory.remove(item);
+        var held = stacks.get(stack.kind());
+        if (held == null || held.count < stack.count)
+            return false;
+        inventory.remove(held);
+        if (held.count == stack.count) {
+            stacks.remove(stack.kind());
+        } else {
+            held = held.withCount(held.count - stack.count);
+            inventory.add(held);
+            stacks.put(held.kind(), held);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true, if inventory holds item; for an ItemStack, if the stack of
+     * its kind holds at least its count
+     *
+     * @param inventory items of a trader
+     * @param stacks    stacks of inventory by their kind
+     * @param item      item to look for
+     * @return true, if item is held
+     */
+    static boolean holds(IndexedSet<Tradeable> inventory, Map<Long, ItemStack> stacks, Tradeable item) {
+        if (!(item instanceof ItemStack stack))
+            return inventory.contains(item);
+        var held = stacks.get(stack.kind());
+        return held != null && held.count >= stack.count;
+    }
+
+    /**
+     * Splits one item off the stack of the kind of kind: one item is taken from
+     * the stack and a new item (see newItem) is put into inventory; the total
+     * weight does not change
+     *
+     * @param inventory items of a trader
+     * @param stacks    stacks of inventory by their kind
+     * @param kind      stack of the kind to split (of any count)
+     * @return the single item or null, if no stack of the kind is held
+     */
+    static MagicItem unstack(IndexedSet<Tradeable> inventory, Map<Long, ItemStack> stacks, ItemStack kind) {
+        if (!take(inventory, stacks, kind.withCount(1)))
+            return null;
+        var item = kind.newItem();
+        inventory.add(item);
+        return item;
+    }
+
+    /**
+     * Returns the part of item a theft takes: a single item of an ItemStack,
+     * item itself otherwise
+     *
+     * @param item item picked from an inventory
+     * @return item to remove
+     */
+    static Tradeable single(Tradeable item) {
+        return item instanceof ItemStack stack ? stack.withCount(1) : item;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ItemStack other && count == other.count && isSameKind(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * prototype.getId() + usages) * 31 + count;
+    }
+
+    /**
+     * Returns "'count' x 'item'", e.g. "5 x [Health Potion; 1 g; 1 Knut; 1 gulp;
+     * +10 HP]"
+     *
+     * @return "'count' x 'item'"
+     */
+    @Override
+    public String toString() {
+        return count + " x " + newItem();
+    }
+}
@@ -0,0 +1,685 @@
+package a12226166;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of casts, item usages and trades. While a journal is
+ * installed (see install), Spell.cast, Wizard.useItem, Tradeable.purchase and
+ * give and steal and loot of the wizards append an event to it.
+ * <p>
+ * Appending only claims a slot of a ring buffer and fills in a few numbers;
+ * a single writer thread takes all events that are ready, writes them in one
+ * go and forces them to disk once per batch (group commit), so no caller ever
+ * waits for I/O. If the ring is full, callers wait for the writer. When the
+ * ring is empty, the writer parks until an appender wakes it up (see
+ * MultiProducerRing). sync waits until all events appended before are
+ * durable.
+ * <p>
+ * The log is split into segment files named after the sequence number of their
+ * first event (e.g. 00000000000000000000.journal). Every segment starts with
+ * the magic number and version, followed by records of RECORD_SIZE bytes:
+ * sequence, type, effect kind, spell id, source, target, item, amount and
+ * price (see Event). Wizards are identified by the function given to open and
+ * items by the ItemCodec. Spells are identified by ids of the journal: the file
+ * SPELLS holds the magic number and version followed by an entry for every
+ * spell (see SpellTable), which is forced before the first record with the
+ * spell, and read translates the ids into SpellCatalog ids of the reading run.
+ */
+public final class Journal implements Closeable {
+    static final int MAGIC = 0x484A524E; // "HJRN"
+    static final int VERSION = 2;
+    static final int SEGMENT_HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 48;
+    static final String SUFFIX = ".journal";
+    static final String SPELLS = "spells.table";
+
+    /**
+     * Records written by the writer thread at once at most
+     */
+    private static final int BATCH = 1024;
+    /**
+     * Time sync waits between two checks of the durable events
+     */
+    private static final long SYNC_NANOS = 50_000;
+
+    /**
+     * Kinds of events
+     */
+    public enum Type {
+        /**
+         * Spell cast by source on target; effect and amount of the spell, if it
+         * is an AttackingSpell or HealingSpell; price is the mana paid by source
+         * (for a batch cast, the first event has the mana of the whole batch,
+         * the others 0). If the mana is paid before the effect is applied (see
+         * BattleEngine), the payment is a CAST with target -1 and the effect a
+         * CAST with price 0
+         */
+        CAST,
+        /**
+         * Item used by source on target
+         */
+        USE,
+        /**
+         * Item sold by source to target for price
+         */
+        PURCHASE,
+        /**
+         * Item given by source to target
+         */
+        GIVE,
+        /**
+         * Item stolen from source by target; amount is 1, if the thief could
+         * carry it, 0 if it vanished
+         */
+        STEAL,
+        /**
+         * Item looted from source by target; amount is 1, if the looter could
+         * carry it, 0 if it vanished
+         */
+        LOOT
+    }
+
+    private static final Type[] TYPES = Type.values();
+    private static final EffectKind[] EFFECTS = EffectKind.values();
+
+    /**
+     * The journal that the game objects append to; null if none
+     */
+    private static volatile Journal installed;
+
+    private final Path directory;
+    private final ItemCodec codec;
+    private final ToLongFunction<Object> ids;
+    private final long segmentSize;
+    /**
+     * Hands out the slots of the arrays and runs the writer thread
+     */
+    private final MultiProducerRing ring;
+
+    // ring buffer: one array per field, slot of sequence s is ring.slot(s)
+    private final byte[] types;
+    private final byte[] effects;
+    private final int[] spells;
+    private final long[] sources;
+    private final long[] targets;
+    private final long[] items;
+    private final int[] amounts;
+    private final int[] prices;
+    /**
+     * All events before this sequence are durable
+     */
+    private volatile long durable;
+    private volatile IOException failure;
+
+    private FileChannel segment;
+    private long segmentBytes;
+    /**
+     * Spell table file, appended to by the writer
+     */
+    private final FileChannel spellFile;
+    /**
+     * Journal id of every spell definition in the spell table; only used by the
+     * writer
+     */
+    private final Map<String, Integer> spellIds;
+    /**
+     * Journal id of every SpellCatalog id seen by the writer, -1 if not seen yet
+     */
+    private int[] catalogToJournal = new int[0];
+    /**
+     * Entries of new spells, written to the spell table before the next records
+     */
+    private final ByteArrayOutputStream newSpells = new ByteArrayOutputStream();
+
+    private Journal(Path directory, ItemCodec codec, ToLongFunction<Object> ids, int capacity, long segmentSize,
+                    long next, FileChannel spellFile, Map<String, Integer> spellIds) {
+        this.directory = directory;
+        this.spellFile = spellFile;
+        this.spellIds = spellIds;
+        this.codec = codec;
+        this.ids = ids;
+        this.segmentSize = segmentSize;
+        types = new byte[capacity];
+        effects = new byte[capacity];
+        spells = new int[capacity];
+        sources = new long[capacity];
+        targets = new long[capacity];
+        items = new long[capacity];
+        amounts = new int[capacity];
+        prices = new int[capacity];
+        durable = next;
+        ring = new MultiProducerRing(capacity, next, this::writeLoop, "journal-writer", "Journal is closed");
+    }
+
+    /**
+     * If an argument is null, capacity is not a power of two or segmentSize is
+     * smaller than one record, an IllegalArgumentException is thrown. Opens the
+     * journal in directory (which is created, if needed) and continues after the
+     * last event of the existing segments
+     *
+     * @param directory   directory of the segment files
+     * @param codec       codec for the items
+     * @param ids         id of every wizard (or other source or target) that is
+     *                    written to the journal
+     * @param capacity    number of slots of the ring buffer
+     * @param segmentSize maximum size of a segment file in bytes
+     * @return the open journal, which is not installed yet
+     * @throws IOException if the directory or the segments cannot be read
+     */
+    public static Journal open(Path directory, ItemCodec codec, ToLongFunction<Object> ids, int capacity,
+                               long segmentSize) throws IOException {
+        if (directory == null || codec == null || ids == null)
+            throw new IllegalArgumentException("Directory, codec and ids must not be null");
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        if (segmentSize < SEGMENT_HEADER_SIZE + RECORD_SIZE)
+            throw new IllegalArgumentException("Segment size must hold at least one record");
+        Files.createDirectories(directory);
+        long next = 0;
+        List<Path> segments = segments(directory);
+        if (!segments.isEmpty()) {
+            Path last = segments.get(segments.size() - 1);
+            next = firstSequence(last) + (Files.size(last) - SEGMENT_HEADER_SIZE) / RECORD_SIZE;
+        }
+        var table = new SpellTable();
+        long size = readSpells(directory, table);
+        Map<String, Integer> spellIds = new HashMap<>();
+        for (int id = 0; table.definition(id) != null; ++id)
+            spellIds.put(table.definition(id), id);
+        var spellFile = FileChannel.open(directory.resolve(SPELLS), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        if (size == 0) {
+            spellFile.truncate(0);
+            var header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining())
+                spellFile.write(header);
+            spellFile.force(false);
+            size = SEGMENT_HEADER_SIZE;
+        }
+        // drop an entry that was only partly written before a crash
+        spellFile.truncate(size);
+        spellFile.position(size);
+        var journal = new Journal(directory, codec, ids, capacity, segmentSize, next, spellFile, spellIds);
+        journal.ring.start();
+        return journal;
+    }
+
+    /**
+     * Reads the entries of the spell table of directory into table; an entry
+     * that was only partly written before a crash is ignored
+     *
+     * @return size of the header and the complete entries; 0, if there is no
+     * spell table
+     */
+    private static long readSpells(Path directory, SpellTable table) throws IOException {
+        Path file = directory.resolve(SPELLS);
+        if (!Files.exists(file) || Files.size(file) == 0)
+            return 0;
+        var bytes = Files.readAllBytes(file);
+        var in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (bytes.length < SEGMENT_HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION)
+            throw new IOException("Not a journal spell table: " + file);
+        long size = SEGMENT_HEADER_SIZE;
+        try {
+            while (in.available() > 0) {
+                table.put(in.readInt(), in.readUTF());
+                size = bytes.length - in.available();
+            }
+        } catch (EOFException e) {
+            // the last entry was only partly written
+        }
+        return size;
+    }
+
+    /**
+     * Returns the journal id of the spell with catalogId; a new spell gets the
+     * next id and an entry for the spell table. Only called by the writer
+     */
+    private int journalSpell(int catalogId) {
+        if (catalogId < 0)
+            return -1;
+        if (catalogId >= catalogToJournal.length) {
+            int old = catalogToJournal.length;
+            catalogToJournal = Arrays.copyOf(catalogToJournal, Math.max(catalogId + 1, old * 2));
+            Arrays.fill(catalogToJournal, old, catalogToJournal.length, -1);
+        }
+        if (catalogToJournal[catalogId] < 0) {
+            String definition = SpellCatalog.definition(catalogId);
+            Integer id = spellIds.get(definition);
+            if (id == null) {
+                id = spellIds.size();
+                spellIds.put(definition, id);
+                try {
+                    SpellTable.writeEntry(new DataOutputStream(newSpells), id, definition);
+                } catch (IOException e) {
+                    throw new AssertionError(e); // cannot happen for a ByteArrayOutputStream
+                }
+            }
+            catalogToJournal[catalogId] = id;
+        }
+        return catalogToJournal[catalogId];
+    }
+
+    /**
+     * Returns the id of a wizard as used by default: Trader.lockOrder for
+     * traders (the unique id of Wizard and ConcurrentWizard), -1 for anything
+     * else
+     *
+     * @param o wizard, item or other object
+     * @return id of o
+     */
+    public static long defaultId(Object o) {
+        return o instanceof Trader ? ((Trader) o).lockOrder() : -1;
+    }
+
+    /**
+     * If journal is null, an IllegalArgumentException is thrown; makes journal
+     * the journal that all casts, usages and trades are appended to
+     *
+     * @param journal journal to install
+     */
+    public static void install(Journal journal) {
+        if (journal == null)
+            throw new IllegalArgumentException("Journal must not be null");
+        installed = journal;
+    }
+
+    /**
+     * Stops appending events to the installed journal
+     */
+    public static void uninstall() {
+        installed = null;
+    }
+
+    // hooks called by the game objects
+
+    static void cast(MagicSource source, MagicEffectRealization target, Spell spell) {
+        var journal = installed;
+        if (journal != null)
+            journal.appendCast(journal.ids.applyAsLong(source), journal.ids.applyAsLong(target), spell,
+                    spell.getManaCost());
+    }
+
+    static void charge(MagicSource source, Spell spell) {
+        var journal = installed;
+        if (journal != null)
+            journal.appendCast(journal.ids.applyAsLong(source), -1, spell, spell.getManaCost());
+    }
+
+    static void effect(MagicSource source, MagicEffectRealization target, Spell spell) {
+        var journal = installed;
+        if (journal != null)
+            journal.appendCast(journal.ids.applyAsLong(source), journal.ids.applyAsLong(target), spell, 0);
+    }
+
+    static void castAll(MagicSource source, MagicEffectRealization[] targets, Spell spell, int mana) {
+        var journal = installed;
+        if (journal != null)
+            for (int i = 0; i < targets.length; ++i)
+                journal.appendCast(journal.ids.applyAsLong(source), journal.ids.applyAsLong(targets[i]), spell,
+                        i == 0 ? mana : 0);
+    }
+
+    static void use(Object user, MagicEffectRealization target, Tradeable item) {
+        var journal = installed;
+        if (journal != null)
+            journal.append(Type.USE, -1, -1, journal.ids.applyAsLong(user), journal.ids.applyAsLong(target),
+                    journal.codec.encode(item), 0, 0);
+    }
+
+    static void trade(Type type, Trader source, Trader target, Tradeable item, int amount, int price) {
+        var journal = installed;
+        if (journal != null)
+            journal.append(type, -1, -1, journal.ids.applyAsLong(source), journal.ids.applyAsLong(target),
+                    journal.codec.encode(item), amount, price);
+    }
+
+    private void appendCast(long source, long target, Spell spell, int mana) {
+        int effect = -1;
+        int amount = 0;
+        if (spell instanceof AttackingSpell) {
+            effect = ((AttackingSpell) spell).getEffect().ordinal();
+            amount = ((AttackingSpell) spell).getAmount();
+        } else if (spell instanceof HealingSpell) {
+            effect = ((HealingSpell) spell).getEffect().ordinal();
+            amount = ((HealingSpell) spell).getAmount();
+        }
+        append(Type.CAST, effect, spell.getId(), source, target, -1, amount, mana);
+    }
+
+    /**
+     * Claims the next slot of the ring and publishes the event in it; waits, if
+     * the ring is full. If the journal is closed, an IllegalStateException is
+     * thrown, also if it was closed while the event was appended and the writer
+     * stopped without taking it
+     *
+     * @return sequence of the event
+     */
+    private long append(Type type, int effect, int spell, long source, long target, long item, int amount,
+                        int price) {
+        long sequence = ring.claim();
+        int slot = ring.slot(sequence);
+        types[slot] = (byte) type.ordinal();
+        effects[slot] = (byte) effect;
+        spells[slot] = spell;
+        sources[slot] = source;
+        targets[slot] = target;
+        items[slot] = item;
+        amounts[slot] = amount;
+        prices[slot] = price;
+        ring.publish(sequence);
+        return sequence;
+    }
+
+    /**
+     * Returns the sequence number of the next event
+     *
+     * @return number of events ever appended to the journal directory
+     */
+    public long nextSequence() {
+        return ring.claimed();
+    }
+
+    /**
+     * Waits until all events appended before are durable
+     *
+     * @throws IOException if the writer failed
+     */
+    public void sync() throws IOException {
+        long target = ring.claimed();
+        while (durable < target && failure == null) {
+            ring.wake();
+            LockSupport.parkNanos(SYNC_NANOS);
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Uninstalls the journal, if installed, writes all events appended before and
+     * stops the writer; appending afterwards throws an IllegalStateException
+     *
+     * @throws IOException if the writer failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (installed == this)
+            uninstall();
+        ring.close();
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Loop of the writer thread: takes all published events, writes them and
+     * forces the segment once per batch
+     */
+    private void writeLoop() {
+        var buffer = ByteBuffer.allocateDirect(BATCH * RECORD_SIZE);
+        long next = ring.consumed();
+        while (true) {
+            int count = 0;
+            buffer.clear();
+            while (count < BATCH && ring.isPublished(next)) {
+                int slot = ring.slot(next);
+                buffer.putLong(next).put(types[slot]).put(effects[slot]).putShort((short) 0)
+                        .putInt(journalSpell(spells[slot]))
+                        .putLong(sources[slot]).putLong(targets[slot]).putLong(items[slot])
+                        .putInt(amounts[slot]).putInt(prices[slot]);
+                ++next;
+                ++count;
+            }
+            if (count > 0) {
+                ring.consumed(next);
+                buffer.flip();
+                if (failure == null) {
+                    try {
+                        write(buffer, next - count, count);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                durable = next;
+            } else if (!ring.await(next)) {
+                break;
+            }
+        }
+        try {
+            if (segment != null)
+                segment.close();
+            spellFile.close();
+        } catch (IOException e) {
+            if (failure == null)
+                failure = e;
+        }
+    }
+
+    /**
+     * Writes the entries of new spells to the spell table and count records
+     * starting with sequence first to the segments and forces them to disk
+     */
+    private void write(ByteBuffer buffer, long first, int count) throws IOException {
+        if (newSpells.size() > 0) {
+            var entries = ByteBuffer.wrap(newSpells.toByteArray());
+            while (entries.hasRemaining())
+                spellFile.write(entries);
+            spellFile.force(false);
+            newSpells.reset();
+        }
+        int written = 0;
+        while (written < count) {
+            if (segment == null || segmentBytes + RECORD_SIZE > segmentSize)
+                startSegment(first + written);
+            int records = (int) Math.min(count - written, (segmentSize - segmentBytes) / RECORD_SIZE);
+            var slice = buffer.duplicate();
+            slice.position(written * RECORD_SIZE).limit((written + records) * RECORD_SIZE);
+            while (slice.hasRemaining())
+                segment.write(slice);
+            segmentBytes += (long) records * RECORD_SIZE;
+            written += records;
+            segment.force(false);
+        }
+    }
+
+    /**
+     * Closes the current segment and starts a new one with the event first, or
+     * continues the last segment, if it has room
+     */
+    private void startSegment(long first) throws IOException {
+        if (segment != null) {
+            segment.close();
+        } else {
+            List<Path> segments = segments(directory);
+            if (!segments.isEmpty()) {
+                Path last = segments.get(segments.size() - 1);
+                long size = Files.size(last);
+                // drop a record that was only partly written before a crash
+                size -= (size - SEGMENT_HEADER_SIZE) % RECORD_SIZE;
+                if (size >= SEGMENT_HEADER_SIZE && size + RECORD_SIZE <= segmentSize) {
+                    segment = FileChannel.open(last, StandardOpenOption.WRITE);
+                    segment.truncate(size);
+                    segment.position(size);
+                    segmentBytes = size;
+                    return;
+                }
+            }
+        }
+        segment = FileChannel.open(directory.resolve(String.format("%020d%s", first, SUFFIX)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        var header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining())
+            segment.write(header);
+        segmentBytes = SEGMENT_HEADER_SIZE;
+    }
+
+    /**
+     * Returns the segment files of directory in the order of their events
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().forEach(segments::add);
+        }
+        return segments;
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * If directory or action is null, an IllegalArgumentException is thrown;
+     * calls action for every event in the segments of directory with at least
+     * sequence from, in the order of the sequence numbers. A record that was
+     * only partly written at the end of the last segment is ignored. The spells
+     * of the events are translated to SpellCatalog ids with the spell table of
+     * the journal
+     *
+     * @param directory directory of the segment files
+     * @param from      sequence of the first event to read
+     * @param action    action for every event
+     * @throws IOException if a segment cannot be read or is not a segment file,
+     *                     or an event has a spell that is not known to
+     *                     SpellCatalog
+     */
+    public static void read(Path directory, long from, Consumer<Event> action) throws IOException {
+        if (directory == null || action == null)
+            throw new IllegalArgumentException("Directory and action must not be null");
+        var spells = new SpellTable();
+        readSpells(directory, spells);
+        List<Path> segments = segments(directory);
+        for (int i = 0; i < segments.size(); ++i) {
+            if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= from)
+                continue;
+            try (var channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                var in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (in.limit() < SEGMENT_HEADER_SIZE || in.getInt(0) != MAGIC || in.getInt(4) != VERSION)
+                    throw new IOException("Not a journal segment: " + segments.get(i));
+                for (int p = SEGMENT_HEADER_SIZE; p + RECORD_SIZE <= in.limit(); p += RECORD_SIZE) {
+                    long sequence = in.getLong(p);
+                    if (sequence < from)
+                        continue;
+                    int effect = in.get(p + 9);
+                    int spell = in.getInt(p + 12);
+                    if (spell >= 0) {
+                        int id = spells.toCatalog(spell);
+                        if (id < 0)
+                            throw new IOException("Unknown spell " + spells.definition(spell) + " in event "
+                                    + sequence + " of " + segments.get(i));
+                        spell = id;
+                    }
+                    action.accept(new Event(sequence, TYPES[in.get(p + 8)], effect < 0 ? null : EFFECTS[effect],
+                            spell, in.getLong(p + 16), in.getLong(p + 24), in.getLong(p + 32),
+                            in.getInt(p + 40), in.getInt(p + 44)));
+                }
+            }
+        }
+    }
+
+    /**
+     * An event read from a journal
+     */
+    public static final class Event {
+        private final long sequence;
+        private final Type type;
+        private final EffectKind effect;
+        private final int spell;
+        private final long source;
+        private final long target;
+        private final long item;
+        private final int amount;
+        private final int price;
+
+        Event(long sequence, Type type, EffectKind effect, int spell, long source, long target, long item,
+              int amount, int price) {
+            this.sequence = sequence;
+            this.type = type;
+            this.effect = effect;
+            this.spell = spell;
+            this.source = source;
+            this.target = target;
+            this.item = item;
+            this.amount = amount;
+            this.price = price;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Returns the kind of effect of the spell of a CAST
+         *
+         * @return kind of effect or null, if the spell has none or the event is
+         * not a CAST
+         */
+        public EffectKind getEffect() {
+            return effect;
+        }
+
+        /**
+         * Returns the SpellCatalog id of the spell of a CAST
+         *
+         * @return spell id or -1
+         */
+        public int getSpell() {
+            return spell;
+        }
+
+        public long getSource() {
+            return source;
+        }
+
+        public long getTarget() {
+            return target;
+        }
+
+        /**
+         * Returns the code of the item (see ItemCodec)
+         *
+         * @return item code or -1 for a CAST
+         */
+        public long getItem() {
+            return item;
+        }
+
+        public int getAmount() {
+            return amount;
+        }
+
+        public int getPrice() {
+            return price;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d %s %d->%d spell %d %s %d item %d price %d", sequence, type, source, target,
+                    spell, effect, amount, item, price);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package a12226166;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Selects a subset of items with maximum total value whose total weight does
+ * not exceed a capacity (0/1 knapsack), e.g. for Wizard.lootOptimal.
+ * <p>
+ * If the capacity is at most MAX_CAPACITY and the dynamic programming table
+ * (items times capacity) has at most MAX_CELLS cells, the selection is exact;
+ * otherwise items are taken greedily by value per weight, and the result is
+ * replaced by the most valuable single item, if that is worth more, which
+ * gives at least half of the optimum. In
+ * both cases, items that still fit afterwards (e.g. worthless ones) are added
+ * in the order of their value per weight.
+ */
+final class Knapsack {
+    /**
+     * Largest table for the exact selection (bits)
+     */
+    static final long MAX_CELLS = 1L << 24;
+    /**
+     * Largest capacity for the exact selection
+     */
+    static final int MAX_CAPACITY = 1 << 20;
+
+    private Knapsack() {
+    }
+
+    /**
+     * If weights and values differ in length, contain negative numbers or
+     * capacity is negative, an IllegalArgumentException is thrown; returns which
+     * items are selected
+     *
+     * @param weights  weight of every item
+     * @param values   value of every item
+     * @param capacity maximum total weight
+     * @return selected[i] is true, if item i is selected
+     */
+    static boolean[] select(int[] weights, long[] values, int capacity) {
+        if (weights == null || values == null || weights.length != values.length)
+            throw new IllegalArgumentException("Weights and values must have the same length");
+        if (capacity < 0)
+            throw new IllegalArgumentException("Capacity must not be negative");
+        int n = weights.length;
+        long total = 0;
+        for (int i = 0; i < n; ++i) {
+            if (weights[i] < 0 || values[i] < 0)
+                throw new IllegalArgumentException("Weights and values must not be negative");
+            total += weights[i];
+        }
+        var selected = new boolean[n];
+        if (total <= capacity) {
+            Arrays.fill(selected, true);
+            return selected;
+        }
+        boolean small = capacity <= MAX_CAPACITY && (long) n * (capacity + 1) <= MAX_CELLS;
+        int used = small ? exact(weights, values, capacity, selected)
+                : approximate(weights, values, capacity, selected);
+        fill(weights, values, capacity - used, selected);
+        return selected;
+    }
+
+    /**
+     * Dynamic programming over the capacities; keep[i] records for every capacity
+     * whether item i is part of the best selection, which is then traced back
+     *
+     * @return total weight of the selection
+     */
+    private static int exact(int[] weights, long[] values, int capacity, boolean[] selected) {
+        int n = weights.length;
+        var best = new long[capacity + 1];
+        var keep = new long[n][(capacity >>> 6) + 1];
+        for (int i = 0; i < n; ++i) {
+            int w = weights[i];
+            long v = values[i];
+            for (int c = capacity; c >= w; --c)
+                if (best[c - w] + v > best[c]) {
+                    best[c] = best[c - w] + v;
+                    keep[i][c >>> 6] |= 1L << c;
+                }
+        }
+        int c = capacity;
+        int used = 0;
+        for (int i = n - 1; i >= 0; --i)
+            if ((keep[i][c >>> 6] & (1L << c)) != 0) {
+                selected[i] = true;
+                c -= weights[i];
+                used += weights[i];
+            }
+        return used;
+    }
+
+    /**
+     * Greedy by value per weight, or the most valuable single item if better
+     *
+     * @return total weight of the selection
+     */
+    private static int approximate(int[] weights, long[] values, int capacity, boolean[] selected) {
+        long greedyValue = 0;
+        int used = 0;
+        for (int i : byDensity(weights, values))
+            if (weights[i] <= capacity - used) {
+                selected[i] = true;
+                used += weights[i];
+                greedyValue += values[i];
+            }
+        int single = -1;
+        for (int i = 0; i < weights.length; ++i)
+            if (weights[i] <= capacity && (single < 0 || values[i] > values[single]))
+                single = i;
+        if (single >= 0 && values[single] > greedyValue) {
+            Arrays.fill(selected, false);
+            selected[single] = true;
+            used = weights[single];
+        }
+        return used;
+    }
+
+    /**
+     * Adds the items that are not selected but still fit into the rest of the
+     * capacity, in the order of their value per weight
+     */
+    private static void fill(int[] weights, long[] values, int rest, boolean[] selected) {
+        for (int i : byDensity(weights, values))
+            if (!selected[i] && weights[i] <= rest) {
+                selected[i] = true;
+                rest -= weights[i];
+            }
+    }
+
+    /**
+     * Returns the indices of the items by descending value per weight; items
+     * without weight come first
+     */
+    private static Integer[] byDensity(int[] weights, long[] values) {
+        var order = new Integer[weights.length];
+        for (int i = 0; i < order.length; ++i)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(
+                (Integer i) -> weights[i] == 0 ? Double.POSITIVE_INFINITY : (double) values[i] / weights[i])
+                .reversed());
+        return order;
+    }
+}
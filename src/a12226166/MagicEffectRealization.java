@@ -1,5 +1,6 @@
 package a12226166;
 
+import java.util.Collections;
 import java.util.Set;
 
 /**
@@ -150,4 +151,22 @@ public interface MagicEffectRealization {
         if (attacks == null)
             throw new IllegalArgumentException("Set of attacks cannot be null");
     }
-}
\ No newline at end of file
+
+    /**
+     * If s is null an IllegalArgumentException must be thrown; if the object is
+     * protected against s (isProtected), the protection against exactly this spell
+     * is removed (removeProtection) and true is returned, false otherwise.
+     * Implementations that are used by several threads at once override this
+     * method to do the test and the removal atomically, so a protection can only
+     * be used up once.
+     *
+     * @param s attacking spell that uses up the protection
+     * @return true, if the object was protected against s
+     */
+    default boolean consumeProtection(AttackingSpell s) {
+        if (!isProtected(s))
+            return false;
+        removeProtection(Collections.singleton(s));
+        return true;
+    }
+}
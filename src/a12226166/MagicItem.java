@@ -1,27 +1,28 @@
 package a12226166;
 
+import java.util.List;
+
 /**
  * MagicItems are items that can cause magic effects on other objects. So they
  * are a source of magic. As items, they can be traded, and they also can be the
  * target of magic effects
+ * <p>
+ * The immutable definition of an item (name, price, weight and effect) is kept
+ * in a shared ItemPrototype; the item itself only holds its remaining usages.
  */
 public abstract class MagicItem implements Tradeable, MagicEffectRealization, MagicSource {
     /**
-     * Must not be null or empty
+     * Definition of the item; not null
      */
-    private final String name;
+    private final ItemPrototype prototype;
     /**
      * Number of usages remaining; must not be negative
      */
     private int usages;
     /**
-     * Must not be negative
-     */
-    private final int price;
-    /**
-     * must not be negative
+     * True, if usages changed since the last checkpoint (see Checkpointer)
      */
-    private final int weight;
+    private boolean dirty;
 
     /**
      * @param name   name
@@ -30,19 +31,46 @@ public abstract class MagicItem implements Tradeable, MagicEffectRealization, Ma
      * @param weight weight
      */
     public MagicItem(String name, int usages, int price, int weight) {
-        if (name == null || name.isEmpty())
-            throw new IllegalArgumentException("Name must not be null or empty");
         if (usages < 0)
             throw new IllegalArgumentException("Usages must not be negative");
-        if (price < 0)
-            throw new IllegalArgumentException("Price must not be negative");
-        if (weight < 0)
-            throw new IllegalArgumentException("Weight must not be negative");
+        this.prototype = ItemPrototype.of(getClass(), name, price, weight, 0, 0, List.of(), null, p -> "");
+        this.usages = usages;
+    }
 
-        this.name = name;
+    /**
+     * If prototype is null or usages is negative, an IllegalArgumentException is
+     * thrown
+     *
+     * @param prototype definition of the item
+     * @param usages    number of usages still left
+     */
+    protected MagicItem(ItemPrototype prototype, int usages) {
+        if (prototype == null)
+            throw new IllegalArgumentException("Prototype must not be null");
+        if (usages < 0)
+            throw new IllegalArgumentException("Usages must not be negative");
+        this.prototype = prototype;
         this.usages = usages;
-        this.price = price;
-        this.weight = weight;
+    }
+
+    /**
+     * Returns the definition of the item
+     *
+     * @return value of instance variable prototype
+     */
+    public ItemPrototype getPrototype() {
+        return prototype;
+    }
+
+    /**
+     * Returns true, if other has the same prototype and usages, i.e. the items
+     * are interchangeable; a reference comparison of the prototypes
+     *
+     * @param other item to compare
+     * @return true, if the items are of the same kind
+     */
+    public boolean isSameKind(MagicItem other) {
+        return other != null && prototype == other.prototype && usages == other.usages;
     }
 
     /**
@@ -54,6 +82,19 @@ public abstract class MagicItem implements Tradeable, MagicEffectRealization, Ma
         return usages;
     }
 
+    /**
+     * Returns a new item of the same kind with the same usages left (used by
+     * ItemStack for the items of a stack); throws an
+     * UnsupportedOperationException for classes whose items cannot be created
+     * from their prototype (see ItemPrototype.newItem), e.g. classes outside this
+     * package
+     *
+     * @return new item of the same kind
+     */
+    public MagicItem copy() {
+        return prototype.newItem(usages);
+    }
+
     /**
      * If usages > 0 reduce usage by 1 and return true, otherwise return false
      *
@@ -63,9 +104,41 @@ public abstract class MagicItem implements Tradeable, MagicEffectRealization, Ma
         if (usages <= 0)
             return false;
         --usages;
+        dirty = true;
         return true;
     }
 
+    /**
+     * Returns true, if usages changed since the last checkpoint (see
+     * Checkpointer)
+     *
+     * @return true, if the item is dirty
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Clears the dirty flag and returns its previous value
+     *
+     * @return true, if the item was dirty
+     */
+    boolean clearDirty() {
+        boolean was = dirty;
+        dirty = false;
+        return was;
+    }
+
+    /**
+     * Sets usages to a value restored by Checkpointer, without marking the item
+     * dirty
+     *
+     * @param usages number of usages left
+     */
+    void restoreUsages(int usages) {
+        this.usages = usages;
+    }
+
     /**
      * Returns "use" if usages is equal to 1, "uses" otherwise
      *
@@ -76,12 +149,14 @@ public abstract class MagicItem implements Tradeable, MagicEffectRealization, Ma
     }
 
     /**
-     * returns empty string. Is overridden in deriving classes as needed
+     * returns the additional output of the prototype, which is computed once
+     * per prototype by the classes of this package; empty string otherwise. Is
+     * overridden in deriving classes as needed
      *
-     * @return ""
+     * @return additional output of the prototype
      */
     public String additionalOutputString() {
-        return "";
+        return prototype.suffix();
     }
 
     /**
@@ -96,9 +171,8 @@ public abstract class MagicItem implements Tradeable, MagicEffectRealization, Ma
      */
     @Override
     public String toString() {
-        String currencyString = price == 1 ? "Knut" : "Knuts";
-        return String.format("[%s; %d g; %d %s; %d %s%s]", name, weight, price, currencyString, usages, usageString(),
-                additionalOutputString());
+        // the part up to the usages is precomputed by the prototype
+        return prototype.prefix() + usages + ' ' + usageString() + additionalOutputString() + ']';
     }
 
     // Tradeable Interface:
@@ -106,21 +180,21 @@ public abstract class MagicItem implements Tradeable, MagicEffectRealization, Ma
     /**
      * Returns price of the object
      *
-     * @return value of instance variable price
+     * @return price of the prototype
      */
     @Override
     public int getPrice() {
-        return price;
+        return prototype.getPrice();
     }
 
     /**
      * Returns weight of the object
      *
-     * @return value of instance variable weight
+     * @return weight of the prototype
      */
     @Override
     public int getWeight() {
-        return weight;
+        return prototype.getWeight();
     }
 
     // MagicSource Interface:
@@ -145,5 +219,6 @@ public abstract class MagicItem implements Tradeable, MagicEffectRealization, Ma
         MagicEffectRealization.super.takeDamagePercent(percentage);
         var damage = (int) (usages * (percentage / 100.0));
         usages = Math.max(0, usages - damage);
+        dirty = true;
     }
 }
\ No newline at end of file
@@ -1,14 +1,11 @@
 package a12226166;
 
+import java.util.List;
+
 /**
  * A ManaPotion provides mana to its consumer
  */
 public class ManaPotion extends Potion {
-    /**
-     * Must not be negative
-     */
-    private final int mana;
-
     /**
      * @param name   name
      * @param usages number of usages still left
@@ -17,23 +14,23 @@ public class ManaPotion extends Potion {
      * @param mana   amount of mana provided to the consumer
      */
     public ManaPotion(String name, int usages, int price, int weight, int mana) {
-        super(name, usages, price, weight);
-
-        if (mana < 0)
-            throw new IllegalArgumentException("Mana must not be negative");
+        super(prototype(name, price, weight, mana), usages);
+    }
 
-        this.mana = mana;
+    private ManaPotion(ItemPrototype prototype, int usages) {
+        super(prototype, usages);
     }
 
     /**
-     * Returns "; +'mana' MP". E.g. (total result of toString) "[Mana Potion; 1 g; 2
-     * Knuts; 1 gulp; +20 MP]"
-     *
-     * @return "; +'mana' MP"
+     * If mana is negative, an IllegalArgumentException is thrown; returns the
+     * prototype with the additional output "; +'mana' MP". E.g. (total result of
+     * toString) "[Mana Potion; 1 g; 2 Knuts; 1 gulp; +20 MP]"
      */
-    @Override
-    public String additionalOutputString() {
-        return String.format("; +%d MP", mana);
+    private static ItemPrototype prototype(String name, int price, int weight, int mana) {
+        if (mana < 0)
+            throw new IllegalArgumentException("Mana must not be negative");
+        return ItemPrototype.of(ManaPotion.class, name, price, weight, 0, mana, List.of(), ManaPotion::new,
+                p -> String.format("; +%d MP", p.getMana()));
     }
 
     /**
@@ -45,6 +42,6 @@ public class ManaPotion extends Potion {
     @Override
     public void useOn(MagicEffectRealization target) {
         if (tryUsage())
-            target.enforceMagic(mana);
+            target.enforceMagic(getPrototype().getMana());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,317 @@
+package a12226166;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Order book marketplace for magic items. Traders post asks (items they sell)
+ * and bids (items they want to buy) with a price per item; orders are kept in
+ * one book per item kind (prototype and usages, see ItemPrototype), so a buyer
+ * finds sellers without looking at any inventory.
+ * <p>
+ * Every book has a TreeMap of price levels per side, every level a queue of
+ * orders in the order of their arrival (price-time priority). A new order is
+ * matched against the best levels of the other side as long as the prices
+ * cross, at the price of the resting order; what is left of it rests in the
+ * book. Inserting and matching take O(log n) for n price levels.
+ * <p>
+ * A match is settled like Tradeable.purchase: under the trade locks of both
+ * traders (see TradeLock), the buyer pays, the seller earns and the items are
+ * moved, and every step is undone if a later one fails. Orders are not
+ * reserved: if the seller no longer has the items, the ask is dropped; if the
+ * buyer cannot pay or carry them, the bid is dropped. A match of a trader with
+ * its own order drops the resting order.
+ * <p>
+ * Items are asked as a MagicItem (one item, the instance is moved) or an
+ * ItemStack (count items, moved as stacks of the matched quantity); bids name
+ * the kind by a MagicItem (one item) or an ItemStack (count items). All
+ * methods are synchronized on the market.
+ */
+public final class Market {
+    /**
+     * Side of an order
+     */
+    public enum Side {
+        BID,
+        ASK
+    }
+
+    private final Map<Long, Book> books = new HashMap<>();
+    private long nextSequence;
+    private long trades;
+
+    /**
+     * If seller or item is null, price is negative or item is neither a
+     * MagicItem nor an ItemStack, an IllegalArgumentException is thrown; posts an
+     * ask for item at price per item and matches it against the bids
+     *
+     * @param seller trader that sells the items
+     * @param item   item or stack of items to sell
+     * @param price  minimum price per item
+     * @return the order; inactive, if it was filled or dropped at once
+     */
+    public synchronized Order ask(Trader seller, Tradeable item, int price) {
+        return post(Side.ASK, seller, item, price);
+    }
+
+    /**
+     * If buyer or kind is null, price is negative or kind is neither a MagicItem
+     * nor an ItemStack, an IllegalArgumentException is thrown; posts a bid for
+     * items of the kind of kind (one item for a MagicItem, count items for an
+     * ItemStack) at price per item and matches it against the asks
+     *
+     * @param buyer trader that buys the items
+     * @param kind  item or stack that names the kind and quantity
+     * @param price maximum price per item
+     * @return the order; inactive, if it was filled or dropped at once
+     */
+    public synchronized Order bid(Trader buyer, Tradeable kind, int price) {
+        return post(Side.BID, buyer, kind, price);
+    }
+
+    /**
+     * If order is null, an IllegalArgumentException is thrown; removes the order
+     * from its book
+     *
+     * @param order order to cancel
+     * @return true, if the order was still active
+     */
+    public synchronized boolean cancel(Order order) {
+        if (order == null)
+            throw new IllegalArgumentException("Order must not be null");
+        if (!order.active)
+            return false;
+        var book = books.get(order.kind);
+        var levels = book.side(order.side);
+        var level = levels.get(order.price);
+        level.remove(order);
+        if (level.isEmpty())
+            levels.remove(order.price);
+        order.active = false;
+        return true;
+    }
+
+    /**
+     * Returns the lowest price of the asks for the kind of item, -1 if there is
+     * none
+     *
+     * @param kind item or stack that names the kind
+     * @return best ask price or -1
+     */
+    public synchronized int bestAsk(Tradeable kind) {
+        var book = books.get(kindOf(kind));
+        return book == null || book.asks.isEmpty() ? -1 : book.asks.firstKey();
+    }
+
+    /**
+     * Returns the highest price of the bids for the kind of item, -1 if there
+     * is none
+     *
+     * @param kind item or stack that names the kind
+     * @return best bid price or -1
+     */
+    public synchronized int bestBid(Tradeable kind) {
+        var book = books.get(kindOf(kind));
+        return book == null || book.bids.isEmpty() ? -1 : book.bids.firstKey();
+    }
+
+    /**
+     * Returns the number of settled matches so far
+     *
+     * @return number of trades
+     */
+    public synchronized long getTrades() {
+        return trades;
+    }
+
+    /**
+     * Returns the key of the book of item: prototype id and usages
+     */
+    private static long kindOf(Tradeable item) {
+        if (item instanceof ItemStack stack)
+            return stack.kind();
+        if (item instanceof MagicItem magicItem)
+            return (long) magicItem.getPrototype().getId() << 32 | magicItem.getUsages();
+        throw new IllegalArgumentException("Only magic items and stacks can be traded on the market");
+    }
+
+    private Order post(Side side, Trader trader, Tradeable item, int price) {
+        if (trader == null || item == null)
+            throw new IllegalArgumentException("Trader and item must not be null");
+        if (price < 0)
+            throw new IllegalArgumentException("Price must not be negative");
+        long kind = kindOf(item);
+        int quantity = item instanceof ItemStack stack ? stack.getCount() : 1;
+        var order = new Order(nextSequence++, side, trader, kind, item, price, quantity);
+        var book = books.computeIfAbsent(kind, k -> new Book());
+        match(book, order);
+        if (order.active)
+            book.side(side).computeIfAbsent(price, p -> new ArrayDeque<>()).addLast(order);
+        return order;
+    }
+
+    /**
+     * Matches taker against the resting orders of the other side while the
+     * prices cross
+     */
+    private void match(Book book, Order taker) {
+        var opposite = book.side(taker.side == Side.BID ? Side.ASK : Side.BID);
+        while (taker.active && !opposite.isEmpty()) {
+            var level = opposite.firstEntry();
+            int price = level.getKey();
+            if (taker.side == Side.BID ? price > taker.price : price < taker.price)
+                break;
+            var queue = level.getValue();
+            var maker = queue.peekFirst();
+            if (maker.trader.equals(taker.trader)) {
+                maker.active = false;
+            } else {
+                var ask = taker.side == Side.ASK ? taker : maker;
+                var bid = taker.side == Side.BID ? taker : maker;
+                settle(ask, bid, price);
+            }
+            if (!maker.active) {
+                queue.pollFirst();
+                if (queue.isEmpty())
+                    opposite.remove(price);
+            }
+        }
+    }
+
+    /**
+     * Settles min(remaining) items of ask and bid at price per item; on
+     * failure, the order of the side that failed is deactivated
+     */
+    private void settle(Order ask, Order bid, int price) {
+        int quantity = Math.min(ask.remaining, bid.remaining);
+        var item = ask.item instanceof ItemStack stack ? stack.withCount(quantity) : ask.item;
+        int total = Math.multiplyExact(quantity, price);
+        var seller = ask.trader;
+        var buyer = bid.trader;
+        // 0: settled, 1: ask failed, 2: bid failed
+        var failed = new int[1];
+        boolean settled = kindOf(item) == ask.kind && TradeLock.lockBoth(seller, buyer, () -> {
+            if (!seller.possesses(item)) {
+                failed[0] = 1;
+                return false;
+            }
+            if (!buyer.hasCapacity(item.getWeight()) || !buyer.canAfford(total) || !buyer.pay(total)) {
+                failed[0] = 2;
+                return false;
+            }
+            if (!seller.earn(total)) {
+                buyer.earn(total);
+                failed[0] = 1;
+                return false;
+            }
+            if (!seller.removeFromInventory(item)) {
+                seller.pay(total);
+                buyer.earn(total);
+                failed[0] = 1;
+                return false;
+            }
+            if (!buyer.addToInventory(item)) {
+                seller.addToInventory(item);
+                seller.pay(total);
+                buyer.earn(total);
+                failed[0] = 2;
+                return false;
+            }
+            // under the locks, so the journal has the trades of seller and buyer in order
+            Journal.trade(Journal.Type.PURCHASE, seller, buyer, item, 1, total);
+            return true;
+        });
+        if (!settled) {
+            // a MagicItem whose usages changed no longer belongs to this book
+            if (failed[0] == 2)
+                bid.active = false;
+            else
+                ask.active = false;
+            return;
+        }
+        ++trades;
+        ask.fill(quantity);
+        bid.fill(quantity);
+    }
+
+    /**
+     * Bids and asks of one kind: price levels with the orders in the order of
+     * their arrival; bids by descending, asks by ascending price
+     */
+    private static final class Book {
+        final TreeMap<Integer, ArrayDeque<Order>> bids = new TreeMap<>(Comparator.reverseOrder());
+        final TreeMap<Integer, ArrayDeque<Order>> asks = new TreeMap<>();
+
+        TreeMap<Integer, ArrayDeque<Order>> side(Side side) {
+            return side == Side.BID ? bids : asks;
+        }
+    }
+
+    /**
+     * An ask or bid; active while it rests in the book
+     */
+    public static final class Order {
+        private final long sequence;
+        private final Side side;
+        private final Trader trader;
+        private final long kind;
+        private final Tradeable item;
+        private final int price;
+        private int remaining;
+        private boolean active = true;
+
+        private Order(long sequence, Side side, Trader trader, long kind, Tradeable item, int price, int quantity) {
+            this.sequence = sequence;
+            this.side = side;
+            this.trader = trader;
+            this.kind = kind;
+            this.item = item;
+            this.price = price;
+            this.remaining = quantity;
+        }
+
+        private void fill(int quantity) {
+            remaining -= quantity;
+            if (remaining == 0)
+                active = false;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public Side getSide() {
+            return side;
+        }
+
+        public Trader getTrader() {
+            return trader;
+        }
+
+        public int getPrice() {
+            return price;
+        }
+
+        /**
+         * Returns the number of items not matched yet
+         *
+         * @return remaining quantity
+         */
+        public int getRemaining() {
+            return remaining;
+        }
+
+        /**
+         * Returns true, if the order rests in the book; false, if it was filled,
+         * dropped or cancelled
+         *
+         * @return true, if the order is active
+         */
+        public boolean isActive() {
+            return active;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package a12226166;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sequencing of a ring buffer with any number of producers and a single
+ * consumer thread, shared by Journal and CommandRing. The owner keeps the
+ * fields of the entries in its own arrays (one per field, slot of sequence s is
+ * s & mask); this class hands out the sequences and tells the consumer which
+ * slots are filled in.
+ * <p>
+ * A producer claims a sequence (claim), waiting while the ring is full, fills
+ * in the fields of its slot and publishes it (publish). The consumer takes the
+ * published entries in the order of their sequence numbers, reports them as
+ * consumed, and parks when the ring is empty (await); producers only unpark it
+ * while it is idle. After close, claim throws an IllegalStateException, and so
+ * does publish, if the consumer stopped without taking the entry.
+ */
+final class MultiProducerRing {
+    private final int mask;
+    /**
+     * Sequence of the entry in every slot, set after the fields are filled in
+     */
+    private final AtomicLongArray published;
+    /**
+     * Next sequence to be claimed by a producer
+     */
+    private final AtomicLong claimed;
+    /**
+     * All entries before this sequence have been taken by the consumer
+     */
+    private volatile long consumed;
+    private volatile boolean closed;
+    /**
+     * True while the consumer is about to park or parked because the ring is
+     * empty; producers only unpark the consumer, if it is set
+     */
+    private volatile boolean idle;
+    private final Thread consumer;
+    /**
+     * Message of the IllegalStateException thrown after close
+     */
+    private final String closedMessage;
+
+    /**
+     * Creates the ring and the consumer thread, which is started by start
+     *
+     * @param capacity      number of slots; a power of two
+     * @param next          sequence of the first entry
+     * @param loop          loop of the consumer thread
+     * @param name          name of the consumer thread
+     * @param closedMessage message of the exception thrown after close
+     */
+    MultiProducerRing(int capacity, long next, Runnable loop, String name, String closedMessage) {
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; ++i)
+            published.set(i, -1);
+        this.claimed = new AtomicLong(next);
+        this.consumed = next;
+        this.consumer = new Thread(loop, name);
+        consumer.setDaemon(true);
+        this.closedMessage = closedMessage;
+    }
+
+    void start() {
+        consumer.start();
+    }
+
+    /**
+     * Returns the slot of sequence
+     *
+     * @param sequence sequence of an entry
+     * @return index into the arrays of the owner
+     */
+    int slot(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    /**
+     * Claims the next sequence; waits, if the ring is full. If the ring is
+     * closed, an IllegalStateException is thrown
+     *
+     * @return claimed sequence, whose slot the producer fills in next
+     */
+    long claim() {
+        if (closed)
+            throw new IllegalStateException(closedMessage);
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed > mask) {
+            if (!consumer.isAlive())
+                throw new IllegalStateException(closedMessage);
+            LockSupport.unpark(consumer);
+            Thread.onSpinWait();
+        }
+        return sequence;
+    }
+
+    /**
+     * Publishes the filled in slot of sequence and wakes up the consumer, if it
+     * is idle. If the ring was closed meanwhile and the consumer stopped
+     * without taking the entry, an IllegalStateException is thrown
+     *
+     * @param sequence sequence returned by claim
+     */
+    void publish(long sequence) {
+        published.set(slot(sequence), sequence);
+        if (idle)
+            LockSupport.unpark(consumer);
+        if (closed) {
+            // the consumer may have seen the last claim before this one and stopped
+            while (consumed <= sequence && consumer.isAlive())
+                Thread.onSpinWait();
+            if (consumed <= sequence)
+                throw new IllegalStateException(closedMessage);
+        }
+    }
+
+    /**
+     * Returns true, if the entry with sequence is published; only called by the
+     * consumer
+     *
+     * @param sequence sequence of the next entry of the consumer
+     * @return true, if the slot of sequence is filled in
+     */
+    boolean isPublished(long sequence) {
+        return published.get(slot(sequence)) == sequence;
+    }
+
+    /**
+     * Frees the slots of all entries before next for the producers; only
+     * called by the consumer
+     *
+     * @param next sequence after the last entry taken
+     */
+    void consumed(long next) {
+        consumed = next;
+    }
+
+    /**
+     * Called by the consumer, if the entry with sequence next is not published:
+     * returns false, if the ring is closed and all claimed entries were taken;
+     * otherwise parks until a producer publishes or the ring is closed and
+     * returns true
+     *
+     * @param next sequence of the next entry of the consumer
+     * @return false, if the consumer must stop
+     */
+    boolean await(long next) {
+        if (closed && next == claimed.get())
+            return false;
+        idle = true;
+        // a producer that published before idle was set did not unpark
+        if (!isPublished(next) && !closed)
+            LockSupport.park(this);
+        idle = false;
+        return true;
+    }
+
+    /**
+     * Returns the next sequence to be claimed
+     *
+     * @return number of entries ever claimed, including the first sequence
+     */
+    long claimed() {
+        return claimed.get();
+    }
+
+    /**
+     * Returns the sequence after the last entry taken by the consumer
+     *
+     * @return all entries before this sequence have been taken
+     */
+    long consumed() {
+        return consumed;
+    }
+
+    /**
+     * Wakes up the consumer, e.g. while waiting for it
+     */
+    void wake() {
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Returns true, if the consumer thread has not stopped
+     *
+     * @return true, if the consumer is alive
+     */
+    boolean isRunning() {
+        return consumer.isAlive();
+    }
+
+    /**
+     * Closes the ring and waits until the consumer has taken all entries
+     * published before and stopped
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
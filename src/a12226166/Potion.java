@@ -14,6 +14,14 @@ public abstract class Potion extends MagicItem {
         super(name, usages, price, weight);
     }
 
+    /**
+     * @param prototype definition of the potion
+     * @param usages    number of usages still left
+     */
+    protected Potion(ItemPrototype prototype, int usages) {
+        super(prototype, usages);
+    }
+
     /**
      * Delegates to method call useOn(drinker)
      *
@@ -1,5 +1,8 @@
 package a12226166;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -11,12 +14,19 @@ public class ProtectingSpell extends Spell {
      * Must not be null or empty; use HashSet as concrete type
      */
     private final Set<AttackingSpell> attacks;
+    /**
+     * The spells of attacks as bitset, computed once in the constructor, so that
+     * targets can add all the protections at once (see Wizard.setProtection);
+     * read-only, as it is handed to every target
+     */
+    private final SpellBitSet<AttackingSpell> protections;
 
     /**
      * @param name        name
      * @param manaCost    manaCost
      * @param levelNeeded levelNeeded
-     * @param attacks     attacking spells against which protection is granted
+     * @param attacks     attacking spells against which protection is granted;
+     *                    the set is copied, so the spell never changes
      */
     public ProtectingSpell(String name, int manaCost, MagicLevel levelNeeded, Set<AttackingSpell> attacks) {
         super(name, manaCost, levelNeeded);
@@ -24,17 +34,19 @@ public class ProtectingSpell extends Spell {
         if (attacks == null || attacks.isEmpty())
             throw new IllegalArgumentException("Attacks set must not be null or empty");
 
-        this.attacks = attacks;
+        this.attacks = new HashSet<>(attacks);
+        this.protections = new SpellBitSet<>(attacks).readOnly();
     }
 
     /**
-     * Call setProtection method on target with attacks as parameter
+     * Call setProtection method on target with attacks as parameter; the
+     * read-only bitset form of attacks is passed, which contains the same spells
      *
      * @param target target for which protection is granted
      */
     @Override
     public void doEffect(MagicEffectRealization target) {
-        target.setProtection(attacks);
+        target.setProtection(protections);
     }
 
     /**
@@ -49,4 +61,29 @@ public class ProtectingSpell extends Spell {
     public String additionalOutputString() {
         return String.format("; protects against %s", attacks);
     }
-}
\ No newline at end of file
+
+    /**
+     * Appends the sorted definitions of the attacks to the definition of Spell
+     */
+    @Override
+    String definition() {
+        var definitions = new ArrayList<String>();
+        for (var attack : attacks)
+            definitions.add(attack.definition());
+        Collections.sort(definitions);
+        var sb = new StringBuilder(super.definition()).append(";[");
+        for (var definition : definitions)
+            sb.append(definition.length()).append(':').append(definition);
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o) && attacks.equals(((ProtectingSpell) o).attacks);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + attacks.hashCode();
+    }
+}
@@ -0,0 +1,155 @@
+package a12226166;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Rebuilds the state of wizards and items by applying journal events (see
+ * Journal) to them, e.g. to a snapshot written by WizardFile. The events are
+ * repeated with the raw changes they stand for (mana paid, effect applied,
+ * money and items moved), without the checks that were done when they
+ * happened and without journaling them again:
+ * <ul>
+ * <li>CAST: the caster pays the mana of the event, and doEffect of the spell is
+ * applied to the target, if there is one (a BattleEngine journals the payment
+ * without target and the effect without mana). Casts whose source is not a
+ * wizard (e.g. a spell cast by a Scroll) are skipped, because they are
+ * repeated by the USE event of the item</li>
+ * <li>USE: useOn of the item is called on the target; for a stack, a single
+ * item is split off the stack of the user first (see Wizard.unstack)</li>
+ * <li>PURCHASE: price and item are moved between seller and buyer; a dead
+ * seller does not earn the price (see WizardActors.Actor.sellItem)</li>
+ * <li>GIVE, STEAL, LOOT: the item is moved, or removed if it vanished</li>
+ * </ul>
+ * Changes of sources or targets that are not wizards (e.g. items, or wizards
+ * not restored) are not repeated. No
+ * journal may be installed while events are replayed, otherwise item usages
+ * would be journaled again.
+ */
+public final class Replay {
+    private final LongFunction<Wizard> wizards;
+    private final ItemCodec codec;
+    private long applied;
+    private long next;
+
+    /**
+     * If wizards or codec is null, an IllegalArgumentException is thrown
+     *
+     * @param wizards returns the wizard with the given journal id, or null if
+     *                the id is not a wizard
+     * @param codec   codec for the items
+     */
+    public Replay(LongFunction<Wizard> wizards, ItemCodec codec) {
+        if (wizards == null || codec == null)
+            throw new IllegalArgumentException("Wizards and codec must not be null");
+        this.wizards = wizards;
+        this.codec = codec;
+    }
+
+    /**
+     * Returns the number of events processed so far, including skipped ones
+     *
+     * @return number of processed events
+     */
+    public long getApplied() {
+        return applied;
+    }
+
+    /**
+     * Returns the sequence after the last event applied so far
+     *
+     * @return sequence of the next event
+     */
+    public long getNextSequence() {
+        return next;
+    }
+
+    /**
+     * If event is null, an IllegalArgumentException is thrown; applies the event
+     *
+     * @param event event to apply
+     */
+    public void apply(Journal.Event event) {
+        if (event == null)
+            throw new IllegalArgumentException("Event must not be null");
+        Wizard source = wizards.apply(event.getSource());
+        Wizard target = wizards.apply(event.getTarget());
+        switch (event.getType()) {
+            case CAST -> {
+                if (source == null)
+                    break;
+                source.replaySpend(event.getPrice());
+                if (target != null)
+                    SpellCatalog.byId(event.getSpell()).doEffect(target);
+            }
+            case USE -> {
+                var item = codec.decode(event.getItem());
+                if (item instanceof ItemStack stack && source != null) {
+                    var single = source.unstack(stack);
+                    if (single != null)
+                        item = single;
+                }
+                if (target != null)
+                    item.useOn(target);
+            }
+            case PURCHASE -> {
+                var item = codec.decode(event.getItem());
+                if (source != null) {
+                    if (!source.isDead())
+                        source.replayEarn(event.getPrice());
+                    source.replayRemove(item);
+                }
+                if (target != null) {
+                    target.replayEarn(-event.getPrice());
+                    target.replayAdd(item);
+                }
+            }
+            case GIVE, STEAL, LOOT -> {
+                var item = codec.decode(event.getItem());
+                if (source != null)
+                    source.replayRemove(item);
+                if (target != null && event.getAmount() != 0)
+                    target.replayAdd(item);
+            }
+        }
+        ++applied;
+        next = event.getSequence() + 1;
+    }
+
+    /**
+     * Applies all events of the journal in directory with at least sequence
+     * from
+     *
+     * @param directory journal directory
+     * @param from      sequence of the first event to apply
+     * @return sequence after the last applied event
+     * @throws IOException if the journal cannot be read
+     */
+    public long replay(Path directory, long from) throws IOException {
+        next = Math.max(next, from);
+        Journal.read(directory, from, this::apply);
+        return next;
+    }
+
+    /**
+     * Restores the wizards of a world from a snapshot and the tail of its
+     * journal: loads all wizards of the snapshot and applies the journal events
+     * from the sequence of the snapshot (see WizardFile.getSequence). The
+     * journal must identify every wizard by its index in the snapshot.
+     *
+     * @param snapshot  file written by WizardFile.write
+     * @param directory journal directory
+     * @param codec     codec for the items
+     * @return the restored wizards, in the order of the snapshot
+     * @throws IOException if snapshot or journal cannot be read
+     */
+    public static List<Wizard> recover(Path snapshot, Path directory, ItemCodec codec) throws IOException {
+        var file = WizardFile.open(snapshot, codec);
+        List<Wizard> world = file.loadAll();
+        var replay = new Replay(id -> id >= 0 && id < world.size() ? world.get((int) id) : null, codec);
+        replay.replay(directory, file.getSequence());
+        return world;
+    }
+}
@@ -1,16 +1,13 @@
 package a12226166;
 
+import java.util.List;
+
 /**
  * A Scroll object contains a spell that can be read by someone. The scroll
  * provides the necessary mana and magic level even if the user's capabilities
  * would not be sufficient to cast the spell
  */
 public class Scroll extends MagicItem {
-    /**
-     * Must not be null
-     */
-    private final Spell spell;
-
     /**
      * @param name   name
      * @param usages number of usages still left
@@ -19,23 +16,24 @@ public class Scroll extends MagicItem {
      * @param spell  spell that is written on the scroll and can therefore be cast
      */
     public Scroll(String name, int usages, int price, int weight, Spell spell) {
-        super(name, usages, price, weight);
-
-        if (spell == null)
-            throw new IllegalArgumentException("Spell must not be null");
+        super(prototype(name, price, weight, spell), usages);
+    }
 
-        this.spell = spell;
+    private Scroll(ItemPrototype prototype, int usages) {
+        super(prototype, usages);
     }
 
     /**
-     * Returns "; casts 'spell'". e.g. (total result of toString) "[Scroll of doom;
-     * 1 g; 100 Knuts; 5 usages; casts [Bombarda(**): 20 mana; -50 % HP]]"
-     *
-     * @return "; casts 'spell'"
+     * If spell is null, an IllegalArgumentException is thrown; returns the
+     * prototype with the additional output "; casts 'spell'". e.g. (total result
+     * of toString) "[Scroll of doom; 1 g; 100 Knuts; 5 usages; casts
+     * [Bombarda(**): 20 mana; -50 % HP]]"
      */
-    @Override
-    public String additionalOutputString() {
-        return String.format("; casts %s", spell);
+    private static ItemPrototype prototype(String name, int price, int weight, Spell spell) {
+        if (spell == null)
+            throw new IllegalArgumentException("Spell must not be null");
+        return ItemPrototype.of(Scroll.class, name, price, weight, 0, 0, List.of(spell), Scroll::new,
+                p -> String.format("; casts %s", p.getSpells().get(0)));
     }
 
     /**
@@ -47,6 +45,6 @@ public class Scroll extends MagicItem {
     @Override
     public void useOn(MagicEffectRealization target) {
         if (tryUsage())
-            spell.cast(this, target);
+            getPrototype().getSpells().get(0).cast(this, target);
     }
-}
\ No newline at end of file
+}
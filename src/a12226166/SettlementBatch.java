@@ -0,0 +1,236 @@
+package a12226166;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects many purchases and settles them together. Instead of checking and
+ * moving the money of every purchase on its own (see Tradeable.purchase), the
+ * batch nets the money and the weight that every trader pays, earns, gets and
+ * gives over all its purchases, checks canAfford and hasCapacity once per
+ * trader against these totals, and then pays and earns the net amount of
+ * every trader once.
+ * <p>
+ * Purchases are checked in the order in which they were added. In mode
+ * ALL_OR_NOTHING the batch is only settled if every purchase passes; in mode
+ * PER_TRADE a purchase that does not pass is rejected and the others are
+ * settled. Items bought in a batch cannot be sold again in the same batch.
+ * <p>
+ * Checks and transfers are done while holding the trade locks of all traders
+ * of the batch (see TradeLock.lockAll). If a step fails that the checks could
+ * not foresee, all steps done before are undone and no purchase is settled.
+ * Every settled purchase is journalled under the locks, like
+ * Tradeable.purchase. A batch is not thread-safe; it is emptied by settle.
+ */
+public final class SettlementBatch {
+    /**
+     * What happens to the batch if a purchase does not pass the checks
+     */
+    public enum Mode {
+        /**
+         * Nothing is settled
+         */
+        ALL_OR_NOTHING,
+        /**
+         * Only that purchase is rejected
+         */
+        PER_TRADE
+    }
+
+    private final List<Trade> trades = new ArrayList<>();
+
+    /**
+     * If item, seller or buyer is null, or seller and buyer are the same
+     * object, an IllegalArgumentException is thrown; adds the purchase of item
+     * at its price to the batch
+     *
+     * @param item   item to purchase
+     * @param seller the one who sells the item
+     * @param buyer  the one who buys the item
+     * @return this batch
+     */
+    public SettlementBatch add(Tradeable item, Trader seller, Trader buyer) {
+        if (item == null || seller == null || buyer == null)
+            throw new IllegalArgumentException("Item, seller and buyer must not be null");
+        if (seller.equals(buyer))
+            throw new IllegalArgumentException("Seller and buyer must not be the same");
+        trades.add(new Trade(item, seller, buyer, item.getPrice(), item.getWeight()));
+        return this;
+    }
+
+    /**
+     * Returns the number of purchases in the batch
+     *
+     * @return number of purchases
+     */
+    public int size() {
+        return trades.size();
+    }
+
+    /**
+     * If mode is null, an IllegalArgumentException is thrown; settles the
+     * purchases of the batch and empties it
+     *
+     * @param mode what happens if a purchase does not pass the checks
+     * @return settled[i] is true, if the i-th purchase was settled
+     */
+    public boolean[] settle(Mode mode) {
+        if (mode == null)
+            throw new IllegalArgumentException("Mode must not be null");
+        var batch = List.copyOf(trades);
+        trades.clear();
+        var settled = new boolean[batch.size()];
+        if (batch.isEmpty())
+            return settled;
+        var accounts = new LinkedHashMap<Trader, Account>();
+        for (var trade : batch) {
+            accounts.computeIfAbsent(trade.seller, t -> new Account());
+            accounts.computeIfAbsent(trade.buyer, t -> new Account());
+        }
+        boolean done = TradeLock.lockAll(accounts.keySet(), () -> {
+            for (int i = 0; i < batch.size(); ++i)
+                settled[i] = accept(batch.get(i), accounts);
+            if (mode == Mode.ALL_OR_NOTHING)
+                for (boolean accepted : settled)
+                    if (!accepted)
+                        return false;
+            if (!commit(batch, settled, accounts))
+                return false;
+            // under the locks, so the journal has the trades of every trader in order
+            for (int i = 0; i < batch.size(); ++i)
+                if (settled[i]) {
+                    var trade = batch.get(i);
+                    Journal.trade(Journal.Type.PURCHASE, trade.seller, trade.buyer, trade.item, 1, trade.price);
+                }
+            return true;
+        });
+        if (!done)
+            return new boolean[batch.size()];
+        return settled;
+    }
+
+    /**
+     * Checks trade against the totals of the purchases accepted so far and adds
+     * it to them, if it passes; accepting a purchase never makes the totals of
+     * the seller worse, so only the buyer is checked again
+     */
+    private static boolean accept(Trade trade, Map<Trader, Account> accounts) {
+        var seller = accounts.get(trade.seller);
+        var buyer = accounts.get(trade.buyer);
+        if (!seller.canReceive(trade.seller) || !buyer.canReceive(trade.buyer))
+            return false;
+        // stacks of a kind are held together (see ItemStack.put), other items one by one
+        Object key = trade.item instanceof ItemStack stack ? stack.kind() : trade.item;
+        int count = trade.item instanceof ItemStack stack ? stack.getCount() : 1;
+        int sold = seller.sold.getOrDefault(key, 0);
+        if (key instanceof Long) {
+            if (!trade.seller.possesses(((ItemStack) trade.item).withCount(sold + count)))
+                return false;
+        } else if (sold > 0 || !trade.seller.possesses(trade.item))
+            return false;
+        long money = buyer.money + trade.price;
+        long weight = buyer.weight + trade.weight;
+        if (money > Integer.MAX_VALUE || weight > Integer.MAX_VALUE
+                || seller.money - trade.price < -Integer.MAX_VALUE)
+            return false;
+        if (money > 0 && !trade.buyer.canAfford((int) money)
+                || weight > 0 && !trade.buyer.hasCapacity((int) weight))
+            return false;
+        seller.sold.put(key, sold + count);
+        seller.money -= trade.price;
+        seller.weight -= trade.weight;
+        buyer.money = money;
+        buyer.weight = weight;
+        return true;
+    }
+
+    /**
+     * Moves the items of the accepted purchases, first out of all inventories,
+     * then into them, and pays and earns the net amount of every trader; undoes
+     * everything, if a step fails
+     */
+    private static boolean commit(List<Trade> batch, boolean[] settled, Map<Trader, Account> accounts) {
+        var undo = new ArrayList<Runnable>();
+        boolean done = true;
+        for (int i = 0; done && i < batch.size(); ++i) {
+            var trade = batch.get(i);
+            if (settled[i] && (done = trade.seller.removeFromInventory(trade.item)))
+                undo.add(() -> trade.seller.addToInventory(trade.item));
+        }
+        for (int i = 0; done && i < batch.size(); ++i) {
+            var trade = batch.get(i);
+            if (settled[i] && (done = trade.buyer.addToInventory(trade.item)))
+                undo.add(() -> trade.buyer.removeFromInventory(trade.item));
+        }
+        for (var entry : accounts.entrySet()) {
+            var trader = entry.getKey();
+            int amount = (int) entry.getValue().money;
+            if (done && amount > 0 && (done = trader.pay(amount)))
+                undo.add(() -> trader.earn(amount));
+        }
+        for (var entry : accounts.entrySet()) {
+            var trader = entry.getKey();
+            int amount = (int) -entry.getValue().money;
+            if (done && amount > 0 && (done = trader.earn(amount)))
+                undo.add(() -> trader.pay(amount));
+        }
+        if (!done)
+            for (int i = undo.size() - 1; i >= 0; --i)
+                undo.get(i).run();
+        return done;
+    }
+
+    /**
+     * A purchase of the batch; price and weight are taken when it is added
+     */
+    private static final class Trade {
+        final Tradeable item;
+        final Trader seller;
+        final Trader buyer;
+        final int price;
+        final int weight;
+
+        Trade(Tradeable item, Trader seller, Trader buyer, int price, int weight) {
+            this.item = item;
+            this.seller = seller;
+            this.buyer = buyer;
+            this.price = price;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Totals of the accepted purchases of one trader
+     */
+    private static final class Account {
+        /**
+         * Count of the items sold, per stack kind or item
+         */
+        final Map<Object, Integer> sold = new HashMap<>();
+        /**
+         * Money paid minus money earned
+         */
+        long money;
+        /**
+         * Weight got minus weight given
+         */
+        long weight;
+        /**
+         * Whether the trader can take part in trades at all, checked once
+         */
+        Boolean canEarn;
+
+        /**
+         * Returns true, if trader can earn money (e.g. a dead Wizard cannot);
+         * earn(0) is asked once per batch
+         */
+        boolean canReceive(Trader trader) {
+            if (canEarn == null)
+                canEarn = trader.earn(0);
+            return canEarn;
+        }
+    }
+}
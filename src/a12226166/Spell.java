@@ -1,11 +1,21 @@
 package a12226166;
 
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * A Spell object generates a magic effect on a target. To cast a spell the
  * caster has to provide sufficient mana and has to have the required magic
  * level.
  */
 public abstract class Spell {
+    /**
+     * Batches with at least this many targets are split into fork-join tasks of
+     * at most this many targets, if a parallel cast is requested
+     */
+    public static final int PARALLEL_THRESHOLD = 256;
     /**
      * Must not be null or empty
      */
@@ -18,6 +28,11 @@ public abstract class Spell {
      * Must not be null
      */
     private final MagicLevel levelNeeded;
+    /**
+     * Dense id of the definition of this spell, assigned by SpellCatalog on first
+     * use; -1 until then
+     */
+    int id = -1;
 
     /**
      * @param name        name
@@ -37,6 +52,17 @@ public abstract class Spell {
         this.levelNeeded = levelNeeded;
     }
 
+    /**
+     * Returns the id of this spell (see SpellCatalog); the spell is registered on
+     * the first call. Equal spells have the same id
+     *
+     * @return id of this spell
+     */
+    public int getId() {
+        int i = id;
+        return i >= 0 ? i : SpellCatalog.register(this);
+    }
+
     /**
      * Ensure necessary magic level and get necessary energy by calling provideMana
      * on source (this will typically reduce MP in source). If provideMana fails
@@ -47,8 +73,117 @@ public abstract class Spell {
      * @param target target of the spell
      */
     public void cast(MagicSource source, MagicEffectRealization target) {
-        if (source.provideMana(levelNeeded, manaCost))
+        if (charge(source)) {
             doEffect(target);
+            Journal.cast(source, target, this);
+        }
+    }
+
+    /**
+     * First half of cast: ensures the magic level and gets the mana by calling
+     * provideMana on source; doEffect may then be called later (e.g. by
+     * BattleEngine, which charges and applies in different phases of a tick)
+     *
+     * @param source caster of the spell
+     * @return true, if source provided the mana
+     */
+    boolean charge(MagicSource source) {
+        return source.provideMana(levelNeeded, manaCost);
+    }
+
+    /**
+     * Returns the mana needed to cast the spell
+     *
+     * @return manaCost
+     */
+    int getManaCost() {
+        return manaCost;
+    }
+
+    /**
+     * Casts the spell on all targets at once (e.g. an area effect). If targets is
+     * null or contains null, or perTargetCost is negative, an
+     * IllegalArgumentException is thrown. Level and mana are checked and charged
+     * once: source has to provide manaCost plus perTargetCost for every target.
+     * If provideMana fails, the cast is canceled, otherwise doEffect is called for
+     * every target. If parallel is true and there are at least
+     * PARALLEL_THRESHOLD targets, the effects are applied in parallel in the
+     * common fork-join pool; the targets must then be distinct objects.
+     *
+     * @param source        caster of the spell
+     * @param targets       targets of the spell
+     * @param perTargetCost additional mana needed for every target
+     * @param parallel      apply the effects in parallel for large batches
+     * @return true, if mana was provided and the effects were applied, false
+     * otherwise
+     */
+    public boolean cast(MagicSource source, Collection<? extends MagicEffectRealization> targets, int perTargetCost,
+                        boolean parallel) {
+        if (targets == null)
+            throw new IllegalArgumentException("Targets must not be null");
+        if (perTargetCost < 0)
+            throw new IllegalArgumentException("Mana cost per target must not be negative");
+        var batch = targets.toArray(new MagicEffectRealization[0]);
+        for (var target : batch)
+            if (target == null)
+                throw new IllegalArgumentException("Targets must not contain null");
+        int totalCost;
+        try {
+            totalCost = Math.addExact(manaCost, Math.multiplyExact(perTargetCost, batch.length));
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Mana cost of batch is too large");
+        }
+        if (!source.provideMana(levelNeeded, totalCost))
+            return false;
+        if (parallel && batch.length >= PARALLEL_THRESHOLD)
+            ForkJoinPool.commonPool().invoke(new EffectTask(this, batch, 0, batch.length));
+        else
+            doEffect(batch, 0, batch.length);
+        Journal.castAll(source, batch, this, totalCost);
+        return true;
+    }
+
+    /**
+     * Applies the effect of the spell to targets[from] to targets[to-1]; calls
+     * doEffect for every target, may be overridden by subclasses that can apply
+     * their effect to a whole batch more efficiently
+     *
+     * @param targets targets of the spell
+     * @param from    index of the first target (inclusive)
+     * @param to      index of the last target (exclusive)
+     */
+    protected void doEffect(MagicEffectRealization[] targets, int from, int to) {
+        for (int i = from; i < to; ++i)
+            doEffect(targets[i]);
+    }
+
+    /**
+     * Fork-join task that applies the effect of a spell to a range of targets
+     */
+    private static class EffectTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Spell spell;
+        private final MagicEffectRealization[] targets;
+        private final int from;
+        private final int to;
+
+        EffectTask(Spell spell, MagicEffectRealization[] targets, int from, int to) {
+            this.spell = spell;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                spell.doEffect(targets, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EffectTask(spell, targets, from, middle), new EffectTask(spell, targets, middle, to));
+        }
     }
 
     /**
@@ -80,4 +215,45 @@ public abstract class Spell {
     public String toString() {
         return String.format("[%s(%s): %d mana%s]", name, levelNeeded, manaCost, additionalOutputString());
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the definition of this spell as a string, which is equal for two
+     * spells exactly if they are equal and does not depend on the run (used to
+     * persist spells, see SpellTable). Subclasses that add defining attributes
+     * append them
+     *
+     * @return "'class';'levelNeeded';'manaCost';'length of name':'name'"
+     */
+    String definition() {
+        return String.format("%s;%s;%d;%d:%s", getClass().getName(), levelNeeded.name(), manaCost, name.length(),
+                name);
+    }
+
+    /**
+     * Spells are equal, if they are of the same class and all their defining
+     * attributes (name, manaCost, levelNeeded and those of the subclasses) are
+     * equal
+     *
+     * @param o object to compare with
+     * @return true, if o is a spell with the same definition
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        Spell spell = (Spell) o;
+        return manaCost == spell.manaCost && levelNeeded == spell.levelNeeded && name.equals(spell.name);
+    }
+
+    /**
+     * Hash code over the defining attributes
+     *
+     * @return hash code consistent with equals
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, manaCost, levelNeeded.ordinal());
+    }
+}
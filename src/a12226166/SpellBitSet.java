@@ -0,0 +1,290 @@
+package a12226166;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of spells stored as a bitset over the spell ids (see SpellCatalog).
+ * contains, add and remove test or change a single bit; addAll and removeAll
+ * with another SpellBitSet are an OR or AND-NOT over the words. Iteration is in
+ * the order of the ids. A set can be made read-only (see readOnly), so that it
+ * can be handed to foreign code without copying.
+ *
+ * @param <S> type of the spells
+ */
+public class SpellBitSet<S extends Spell> extends AbstractSet<S> {
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * Bit id is set, if the spell with this id is in the set; not null
+     */
+    private long[] words;
+    /**
+     * Number of bits set; not negative
+     */
+    private int size;
+    /**
+     * Incremented on every change to detect concurrent modification while
+     * iterating
+     */
+    private int modCount;
+    /**
+     * If true, every change throws an UnsupportedOperationException
+     */
+    private boolean readOnly;
+
+    /**
+     * Creates an empty set
+     */
+    public SpellBitSet() {
+        this.words = EMPTY;
+    }
+
+    /**
+     * Creates a set containing all the spells in c
+     *
+     * @param c spells to be added; must not be null
+     */
+    public SpellBitSet(Collection<? extends S> c) {
+        if (c == null)
+            throw new IllegalArgumentException("Collection must not be null");
+        this.words = EMPTY;
+        addAll(c);
+    }
+
+    /**
+     * Creates a set from the words of toWords (e.g. read from a file); the ids
+     * must be known to SpellCatalog before the set is iterated
+     *
+     * @param words bits of the set; copied
+     */
+    SpellBitSet(long[] words) {
+        this.words = words.clone();
+        for (long word : words)
+            size += Long.bitCount(word);
+    }
+
+    /**
+     * Returns the bits of the set up to the last word that is not 0
+     *
+     * @return copy of the words
+     */
+    long[] toWords() {
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0)
+            --length;
+        return Arrays.copyOf(words, length);
+    }
+
+    /**
+     * Makes the set read-only: afterwards every change throws an
+     * UnsupportedOperationException
+     *
+     * @return this set
+     */
+    SpellBitSet<S> readOnly() {
+        readOnly = true;
+        return this;
+    }
+
+    /**
+     * Throws an UnsupportedOperationException, if the set is read-only
+     */
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException("Spell set is read-only");
+    }
+
+    /**
+     * Makes sure that words can hold the bit for id
+     *
+     * @param id spell id
+     */
+    private void ensureCapacity(int id) {
+        int needed = (id >>> 6) + 1;
+        if (needed > words.length)
+            words = Arrays.copyOf(words, Math.max(needed, words.length * 2));
+    }
+
+    /**
+     * Returns true, if the spell with this id is in the set
+     *
+     * @param id spell id
+     * @return true, if the bit id is set
+     */
+    public boolean containsId(int id) {
+        int word = id >>> 6;
+        return word < words.length && (words[word] & (1L << id)) != 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Spell && containsId(((Spell) o).getId());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(S s) {
+        if (s == null)
+            throw new IllegalArgumentException("Spell must not be null");
+        checkWritable();
+        int id = s.getId();
+        ensureCapacity(id);
+        long bit = 1L << id;
+        if ((words[id >>> 6] & bit) != 0)
+            return false;
+        words[id >>> 6] |= bit;
+        ++size;
+        ++modCount;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        checkWritable();
+        if (!(o instanceof Spell))
+            return false;
+        int id = ((Spell) o).getId();
+        if (!containsId(id))
+            return false;
+        words[id >>> 6] &= ~(1L << id);
+        --size;
+        ++modCount;
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends S> c) {
+        checkWritable();
+        if (!(c instanceof SpellBitSet))
+            return super.addAll(c);
+        long[] other = ((SpellBitSet<?>) c).words;
+        if (other.length > words.length)
+            words = Arrays.copyOf(words, other.length);
+        int added = 0;
+        for (int i = 0; i < other.length; ++i) {
+            long before = words[i];
+            words[i] = before | other[i];
+            added += Long.bitCount(words[i]) - Long.bitCount(before);
+        }
+        size += added;
+        ++modCount;
+        return added > 0;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        checkWritable();
+        if (!(c instanceof SpellBitSet))
+            return super.removeAll(c);
+        long[] other = ((SpellBitSet<?>) c).words;
+        int removed = 0;
+        for (int i = 0; i < Math.min(words.length, other.length); ++i) {
+            long before = words[i];
+            words[i] = before & ~other[i];
+            removed += Long.bitCount(before) - Long.bitCount(words[i]);
+        }
+        size -= removed;
+        ++modCount;
+        return removed > 0;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        Arrays.fill(words, 0);
+        size = 0;
+        ++modCount;
+    }
+
+    /**
+     * Returns the smallest id in the set that is at least from
+     *
+     * @param from smallest id to consider
+     * @return next id in the set or -1 if there is none
+     */
+    public int nextId(int from) {
+        int word = from >>> 6;
+        if (word >= words.length)
+            return -1;
+        long bits = words[word] & (-1L << from);
+        while (true) {
+            if (bits != 0)
+                return word * 64 + Long.numberOfTrailingZeros(bits);
+            if (++word == words.length)
+                return -1;
+            bits = words[word];
+        }
+    }
+
+    /**
+     * Returns the spell with the index-th smallest id in the set; needs a
+     * population count per word up to the spell, so it takes O(number of words)
+     * time (one word per 64 spell ids of the catalog), but no allocation
+     *
+     * @param index position of the spell in id order; must be in [0,size)
+     * @return canonical instance of the spell at position index
+     */
+    @SuppressWarnings("unchecked")
+    public S get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        int word = 0;
+        int count;
+        while (index >= (count = Long.bitCount(words[word]))) {
+            index -= count;
+            ++word;
+        }
+        long bits = words[word];
+        for (int i = 0; i < index; ++i)
+            bits &= bits - 1;
+        return (S) SpellCatalog.byId(word * 64 + Long.numberOfTrailingZeros(bits));
+    }
+
+    @Override
+    public Iterator<S> iterator() {
+        return new Iterator<>() {
+            private int next = nextId(0);
+            private int lastReturned = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public S next() {
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (next < 0)
+                    throw new NoSuchElementException();
+                lastReturned = next;
+                next = nextId(next + 1);
+                return (S) SpellCatalog.byId(lastReturned);
+            }
+
+            @Override
+            public void remove() {
+                checkWritable();
+                if (lastReturned < 0)
+                    throw new IllegalStateException();
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                words[lastReturned >>> 6] &= ~(1L << lastReturned);
+                --size;
+                expectedModCount = ++modCount;
+                lastReturned = -1;
+            }
+        };
+    }
+}
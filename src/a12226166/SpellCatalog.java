@@ -0,0 +1,152 @@
+package a12226166;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Central catalog of all spell definitions. Spells are equal if their defining
+ * attributes are equal (see Spell.equals), and the catalog keeps one canonical
+ * instance for every such definition. Every definition gets a dense int id (0,
+ * 1, 2, ...) the first time Spell.getId is called on one of its instances; equal
+ * spells share the id, so sets of spells can be stored as bitsets (see
+ * SpellBitSet).
+ * <p>
+ * Ids are handed out in the order in which definitions are first seen, so they
+ * differ between runs. Persisted data therefore stores a table from its ids to
+ * the definitions of the spells (see SpellTable), which are looked up by
+ * byDefinition when the data is read. The catalog keeps every definition, which
+ * is fine since spells are long-lived definitions.
+ * <p>
+ * Registration is synchronized, but lookups by id (e.g. while iterating a
+ * SpellBitSet) take no lock: the canonical instances are kept in a
+ * copy-on-write array, which is replaced by a longer copy for every new
+ * definition.
+ */
+public final class SpellCatalog {
+    /**
+     * Canonical instances; the id of a definition is its index. Never changed,
+     * only replaced by a longer copy while holding the lock of the class
+     */
+    private static volatile Spell[] spells = new Spell[0];
+    /**
+     * Id of every definition; guarded by the lock of the class
+     */
+    private static final Map<Spell, Integer> ids = new HashMap<>();
+    /**
+     * Spell.definition of every canonical instance by id; replaced together with
+     * spells
+     */
+    private static volatile String[] definitions = new String[0];
+    /**
+     * Id of every definition string; guarded by the lock of the class
+     */
+    private static final Map<String, Integer> idsByDefinition = new HashMap<>();
+
+    private SpellCatalog() {
+    }
+
+    /**
+     * Assigns the id of its definition to s, if it has no id yet, and returns it;
+     * if s is the first instance of its definition, it becomes the canonical one
+     *
+     * @param s spell to register
+     * @return id of s
+     */
+    static synchronized int register(Spell s) {
+        if (s.id < 0) {
+            Integer id = ids.get(s);
+            if (id == null) {
+                id = spells.length;
+                String definition = s.definition();
+                var grownDefinitions = Arrays.copyOf(definitions, id + 1);
+                grownDefinitions[id] = definition;
+                definitions = grownDefinitions;
+                var grown = Arrays.copyOf(spells, id + 1);
+                grown[id] = s;
+                spells = grown;
+                ids.put(s, id);
+                idsByDefinition.put(definition, id);
+            }
+            s.id = id;
+        }
+        return s.id;
+    }
+
+    /**
+     * If spell is null, an IllegalArgumentException is thrown; returns the
+     * canonical instance of the definition of spell, which is spell itself, if
+     * it is the first instance of its definition
+     *
+     * @param spell spell to intern
+     * @param <S>   type of the spell
+     * @return canonical instance equal to spell
+     */
+    @SuppressWarnings("unchecked")
+    public static <S extends Spell> S intern(S spell) {
+        if (spell == null)
+            throw new IllegalArgumentException("Spell must not be null");
+        // equal spells have the same class, so the cast is safe
+        return (S) byId(spell.getId());
+    }
+
+    /**
+     * Returns the canonical spell with the given id; takes no lock, unless id was
+     * read from a spell registered by another thread without synchronization and
+     * is not yet visible in the array
+     *
+     * @param id id of a known definition
+     * @return canonical spell with the given id
+     */
+    public static Spell byId(int id) {
+        var current = spells;
+        if (id >= 0 && id < current.length)
+            return current[id];
+        synchronized (SpellCatalog.class) {
+            current = spells;
+            if (id < 0 || id >= current.length)
+                throw new IllegalArgumentException("No spell with id " + id);
+            return current[id];
+        }
+    }
+
+    /**
+     * Returns the definition (see Spell.definition) of the spell with the given
+     * id; takes no lock, like byId
+     *
+     * @param id id of a known definition
+     * @return definition of the spell with the given id
+     */
+    static String definition(int id) {
+        var current = definitions;
+        if (id >= 0 && id < current.length)
+            return current[id];
+        synchronized (SpellCatalog.class) {
+            current = definitions;
+            if (id < 0 || id >= current.length)
+                throw new IllegalArgumentException("No spell with id " + id);
+            return current[id];
+        }
+    }
+
+    /**
+     * Returns the id of the spell with the given definition (see
+     * Spell.definition)
+     *
+     * @param definition definition of a spell
+     * @return id of the spell or -1, if no such spell is known
+     */
+    static synchronized int byDefinition(String definition) {
+        Integer id = idsByDefinition.get(definition);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the number of known definitions, which is also the next id
+     *
+     * @return number of known definitions
+     */
+    public static int size() {
+        return spells.length;
+    }
+}
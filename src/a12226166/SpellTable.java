@@ -0,0 +1,181 @@
+package a12226166;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Table of the spells referenced by persisted data (WizardFile, the deltas of
+ * Checkpointer and the Journal): maps the spell ids used in the data to the
+ * definitions of the spells (see Spell.definition). The ids of the data are
+ * translated to the SpellCatalog ids of the reading run, so data can be read
+ * whatever order the spells were interned in.
+ * <p>
+ * An entry is written as the id of the data (an int) followed by the definition
+ * (see DataOutput.writeUTF); a table is written as the number of entries
+ * followed by the entries.
+ */
+final class SpellTable {
+    /**
+     * Definition of every id of the data; null for ids that are not in the table
+     */
+    private String[] definitions = new String[0];
+    /**
+     * SpellCatalog id of every id of the data; -1 if the id is not in the table
+     * or the spell is not known to the catalog
+     */
+    private int[] toCatalog = new int[0];
+    /**
+     * Id of the data of every SpellCatalog id; -1 if the spell is not in the
+     * table
+     */
+    private int[] toData = new int[0];
+
+    /**
+     * Writes a table with an entry for every spell of words, whose bits are
+     * SpellCatalog ids (see SpellBitSet.toWords), so that the ids of the data are
+     * the ids of the catalog
+     *
+     * @param out   output
+     * @param words bits of the spells referenced by the data
+     * @throws IOException if out cannot be written
+     */
+    static void write(DataOutput out, long[] words) throws IOException {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        out.writeInt(count);
+        for (int i = 0; i < words.length; ++i)
+            for (long bits = words[i]; bits != 0; bits &= bits - 1) {
+                int id = i * 64 + Long.numberOfTrailingZeros(bits);
+                writeEntry(out, id, SpellCatalog.definition(id));
+            }
+    }
+
+    /**
+     * Writes a single entry
+     *
+     * @param out        output
+     * @param id         id of the spell in the data
+     * @param definition definition of the spell
+     * @throws IOException if out cannot be written
+     */
+    static void writeEntry(DataOutput out, int id, String definition) throws IOException {
+        out.writeInt(id);
+        out.writeUTF(definition);
+    }
+
+    /**
+     * Reads a table written by write
+     *
+     * @param in input
+     * @return table
+     * @throws IOException if in cannot be read or the table is not valid
+     */
+    static SpellTable read(DataInput in) throws IOException {
+        var table = new SpellTable();
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Invalid spell table");
+        for (int k = 0; k < count; ++k)
+            table.put(in.readInt(), in.readUTF());
+        return table;
+    }
+
+    /**
+     * Adds an entry and looks up its spell in the catalog
+     *
+     * @param id         id of the spell in the data
+     * @param definition definition of the spell
+     * @throws IOException if id is negative or already in the table
+     */
+    void put(int id, String definition) throws IOException {
+        if (id < 0 || id < definitions.length && definitions[id] != null)
+            throw new IOException("Invalid spell table entry " + id);
+        if (id >= definitions.length) {
+            int length = Math.max(id + 1, definitions.length * 2);
+            definitions = Arrays.copyOf(definitions, length);
+            int old = toCatalog.length;
+            toCatalog = Arrays.copyOf(toCatalog, length);
+            Arrays.fill(toCatalog, old, length, -1);
+        }
+        definitions[id] = definition;
+        int catalogId = SpellCatalog.byDefinition(definition);
+        toCatalog[id] = catalogId;
+        if (catalogId >= 0) {
+            if (catalogId >= toData.length) {
+                int old = toData.length;
+                toData = Arrays.copyOf(toData, Math.max(catalogId + 1, toData.length * 2));
+                Arrays.fill(toData, old, toData.length, -1);
+            }
+            toData[catalogId] = id;
+        }
+    }
+
+    /**
+     * Returns the definition of the spell with id in the data
+     *
+     * @param id id of the spell in the data
+     * @return definition or null, if id is not in the table
+     */
+    String definition(int id) {
+        return id >= 0 && id < definitions.length ? definitions[id] : null;
+    }
+
+    /**
+     * Returns the SpellCatalog id of the spell with id in the data
+     *
+     * @param id id of the spell in the data
+     * @return catalog id or -1, if id is not in the table or its spell is not
+     * known to the catalog
+     */
+    int toCatalog(int id) {
+        return id >= 0 && id < toCatalog.length ? toCatalog[id] : -1;
+    }
+
+    /**
+     * Returns the id in the data of the spell with catalogId
+     *
+     * @param catalogId SpellCatalog id
+     * @return id of the spell in the data or -1, if it is not in the table
+     */
+    int toData(int catalogId) {
+        return catalogId >= 0 && catalogId < toData.length ? toData[catalogId] : -1;
+    }
+
+    /**
+     * Throws an IOException, if a spell of the table is not known to the
+     * catalog
+     *
+     * @param source name of the data for the message
+     * @throws IOException if a spell of the table is unknown
+     */
+    void checkKnown(Object source) throws IOException {
+        for (int id = 0; id < definitions.length; ++id)
+            if (definitions[id] != null && toCatalog[id] < 0)
+                throw new IOException("Unknown spell " + definitions[id] + " in " + source);
+    }
+
+    /**
+     * Translates bits of ids of the data (see SpellBitSet.toWords) into bits of
+     * SpellCatalog ids; ids that are not in the table or whose spell is unknown
+     * are dropped (see checkKnown)
+     *
+     * @param words bits of ids of the data
+     * @return bits of catalog ids
+     */
+    long[] toCatalog(long[] words) {
+        long[] translated = new long[0];
+        for (int i = 0; i < words.length; ++i)
+            for (long bits = words[i]; bits != 0; bits &= bits - 1) {
+                int id = toCatalog(i * 64 + Long.numberOfTrailingZeros(bits));
+                if (id < 0)
+                    continue;
+                if ((id >>> 6) >= translated.length)
+                    translated = Arrays.copyOf(translated, (id >>> 6) + 1);
+                translated[id >>> 6] |= 1L << id;
+            }
+        return translated;
+    }
+}
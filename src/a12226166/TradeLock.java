@@ -0,0 +1,120 @@
+package a12226166;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Locks the trade locks (Trader.tradeLock) of two or more traders in a global
+ * order, so that two trades between the same traders in opposite directions
+ * can never deadlock. Traders are ordered by Trader.lockOrder; traders that
+ * share a trade lock (like the views of a WizardTable) are locked once, and if
+ * traders with different trade locks have the same lockOrder, an additional
+ * global tie lock is taken first.
+ */
+final class TradeLock {
+    /**
+     * Source of unique lockOrder values for the traders of this package
+     */
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+    /**
+     * Taken before the trade locks of two traders with the same lockOrder
+     */
+    private static final Object TIE_LOCK = new Object();
+
+    private TradeLock() {
+    }
+
+    /**
+     * Returns a new id that is unique among all ids returned by this method
+     *
+     * @return unique id
+     */
+    static long nextId() {
+        return NEXT_ID.getAndIncrement();
+    }
+
+    /**
+     * Runs action while holding the trade locks of a and b
+     *
+     * @param a      first trader
+     * @param b      second trader
+     * @param action action that may only run while both traders are locked
+     * @return result of action
+     */
+    static boolean lockBoth(Trader a, Trader b, BooleanSupplier action) {
+        if (a.tradeLock() == b.tradeLock())
+            synchronized (a.tradeLock()) {
+                return action.getAsBoolean();
+            }
+        long orderA = a.lockOrder();
+        long orderB = b.lockOrder();
+        if (orderA < orderB)
+            return lockInOrder(a, b, action);
+        if (orderA > orderB)
+            return lockInOrder(b, a, action);
+        synchronized (TIE_LOCK) {
+            return lockInOrder(a, b, action);
+        }
+    }
+
+    /**
+     * Runs action while holding the trade locks of all traders, which are taken
+     * in the same global order as by lockBoth, every trade lock once
+     *
+     * @param traders traders to lock, duplicates and traders sharing a trade
+     *                lock are allowed
+     * @param action  action that may only run while all traders are locked
+     * @return result of action
+     */
+    static boolean lockAll(Collection<? extends Trader> traders, BooleanSupplier action) {
+        var sorted = new ArrayList<Trader>(traders);
+        sorted.sort(Comparator.comparingLong(Trader::lockOrder));
+        var ordered = new ArrayList<Object>(sorted.size());
+        boolean tie = false;
+        for (int i = 0; i < sorted.size(); ++i) {
+            Object lock = sorted.get(i).tradeLock();
+            if (i > 0 && ordered.get(ordered.size() - 1) == lock)
+                continue;
+            tie |= i > 0 && sorted.get(i - 1).lockOrder() == sorted.get(i).lockOrder();
+            ordered.add(lock);
+        }
+        if (tie)
+            synchronized (TIE_LOCK) {
+                return lockFrom(ordered, 0, action);
+            }
+        return lockFrom(ordered, 0, action);
+    }
+
+    /**
+     * Runs action while holding the locks from index on, which are taken in
+     * the order of the list
+     */
+    private static boolean lockFrom(List<Object> ordered, int index, BooleanSupplier action) {
+        if (index == ordered.size())
+            return action.getAsBoolean();
+        synchronized (ordered.get(index)) {
+            return lockFrom(ordered, index + 1, action);
+        }
+    }
+
+    /**
+     * Runs action while holding the trade locks of first and second, which are
+     * taken in this order
+     *
+     * @param first  trader that is locked first
+     * @param second trader that is locked second
+     * @param action action that may only run while both traders are locked
+     * @return result of action
+     */
+    private static boolean lockInOrder(Trader first, Trader second, BooleanSupplier action) {
+        synchronized (first.tradeLock()) {
+            synchronized (second.tradeLock()) {
+                return action.getAsBoolean();
+            }
+        }
+    }
+}
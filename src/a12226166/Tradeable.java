@@ -24,7 +24,8 @@ public interface Tradeable {
      * inventory without any checks. It has to be ensured that all necessary
      * conditions for the transfer are met before calling this function - The default
      * implementation calls removeFromInventory on from and addToInventory on to and
-     * returns true if both calls succeeded (returned true)
+     * returns true if both calls succeeded (returned true). If addToInventory
+     * fails, the item is put back into from's inventory, so it never gets lost
      *
      * @param from object is taken from from's inventory
      * @param to   object is transferre to to's inventory
@@ -32,7 +33,12 @@ public interface Tradeable {
      */
     @SuppressWarnings("GrazieInspection")
     private boolean transfer(Trader from, Trader to) {
-        return from.removeFromInventory(this) && to.addToInventory(this);
+        if (!from.removeFromInventory(this))
+            return false;
+        if (to.addToInventory(this))
+            return true;
+        from.addToInventory(this);
+        return false;
     }
 
     /**
@@ -47,6 +53,10 @@ public interface Tradeable {
      * Otherwise, the item is transferred from the giver's inventory to the taker's
      * inventory (transfer method) and the return value of the transfer call is
      * returned
+     * <p>
+     * Checks, transfer and the journal event are done while holding the trade
+     * locks of both traders (see Trader.tradeLock), which are taken in a global
+     * order (see Trader.lockOrder), so concurrent trades cannot deadlock.
      *
      * @param giver the one who gives the object away
      * @param taker the one who receives the object
@@ -57,11 +67,15 @@ public interface Tradeable {
             throw new IllegalArgumentException("Tradeable: give: giver == null");
         if (taker == null)
             throw new IllegalArgumentException("Tradeable: give: taker == null");
-        if (giver == taker)
+        if (giver.equals(taker))
             throw new IllegalArgumentException("Tradeable: give: giver == taker");
-        if (!giver.possesses(this) || !taker.hasCapacity(getWeight()))
-            return false;
-        return transfer(giver, taker);
+        return TradeLock.lockBoth(giver, taker, () -> {
+            if (!giver.possesses(this) || !taker.hasCapacity(getWeight()) || !transfer(giver, taker))
+                return false;
+            // journaled under the trade locks, so the journal has the order of the trades
+            Journal.trade(Journal.Type.GIVE, giver, taker, this, 1, 0);
+            return true;
+        });
     }
 
     /**
@@ -77,6 +91,12 @@ public interface Tradeable {
      * price paid (earn method), The item is transferred from the seller's inventory
      * to the buyer's inventory (transfer method) and the return value of the
      * transfer call is returned
+     * <p>
+     * The purchase is atomic: checks, payment, transfer and the journal event are
+     * done while holding the trade locks of both traders (see Trader.tradeLock), which are taken in
+     * a global order (see Trader.lockOrder), so concurrent trades cannot
+     * deadlock. If any step fails, the steps done before are undone, so either
+     * money and item are both moved or neither of them is.
      *
      * @param seller the one who sells the object
      * @param buyer  the one who buys the object
@@ -87,13 +107,38 @@ public interface Tradeable {
             throw new IllegalArgumentException("Tradeable: purchase: seller == null");
         if (buyer == null)
             throw new IllegalArgumentException("Tradeable: purchase: buyer == null");
-        if (seller == buyer)
+        if (seller.equals(buyer))
             throw new IllegalArgumentException("Tradeable: purchase: seller == buyer");
-        if (!seller.possesses(this) || !buyer.hasCapacity(getWeight()) || !buyer.canAfford(getPrice()))
+        return TradeLock.lockBoth(seller, buyer, () -> {
+            if (!purchaseLocked(seller, buyer))
+                return false;
+            Journal.trade(Journal.Type.PURCHASE, seller, buyer, this, 1, getPrice());
+            return true;
+        });
+    }
+
+    /**
+     * Does the actual purchase; the trade locks of seller and buyer must be held
+     *
+     * @param seller the one who sells the object
+     * @param buyer  the one who buys the object
+     * @return true, if the purchase is successful, false otherwise
+     */
+    private boolean purchaseLocked(Trader seller, Trader buyer) {
+        int price = getPrice();
+        if (!seller.possesses(this) || !buyer.hasCapacity(getWeight()) || !buyer.canAfford(price))
+            return false;
+        if (!buyer.pay(price))
+            return false;
+        if (!seller.earn(price)) {
+            buyer.earn(price);
             return false;
-        seller.earn(getPrice());
-        buyer.pay(getPrice());
-        return transfer(seller, buyer);
+        }
+        if (transfer(seller, buyer))
+            return true;
+        seller.pay(price);
+        buyer.earn(price);
+        return false;
     }
 
     /**
@@ -34,6 +34,28 @@ public interface Trader {
      */
     boolean hasCapacity(int weight);
 
+    /**
+     * Returns the largest weight for which hasCapacity returns true, 0 if none;
+     * default implementation does a binary search over hasCapacity, traders that
+     * know their inventory weight should override it
+     *
+     * @return weight that can still be added to the inventory
+     */
+    default int remainingCapacity() {
+        if (!hasCapacity(0))
+            return 0;
+        int low = 0;
+        int high = Integer.MAX_VALUE;
+        while (low < high) {
+            int middle = (int) (((long) low + high + 1) >>> 1);
+            if (hasCapacity(middle))
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
     /**
      * If amount is negative, an IllegalArgumentException must be thrown; if this
      * owns enough money, deduct amount from money and return true, return false
@@ -132,4 +154,30 @@ public interface Trader {
      * otherwise
      */
     boolean loot(Trader looter);
-}
\ No newline at end of file
+
+    /**
+     * Returns the object that Tradeable.purchase and Tradeable.give hold as a
+     * monitor while they move money and items from or to this object, so that a
+     * trade is never interleaved with another trade of the same trader; default
+     * implementation returns this.
+     *
+     * @return monitor held during trades of this object
+     */
+    default Object tradeLock() {
+        return this;
+    }
+
+    /**
+     * Returns the position of this object in the global order in which the trade
+     * locks of two traders are taken; default implementation returns the
+     * identity hash code. Traders that share a trade lock should return the same
+     * value and are locked once. Other traders should return unique values:
+     * equal values are handled correctly, but their trades take a global tie
+     * lock and are serialized with all other such trades.
+     *
+     * @return position in the global lock order
+     */
+    default long lockOrder() {
+        return System.identityHashCode(this);
+    }
+}
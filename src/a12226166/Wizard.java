@@ -1,8 +1,16 @@
 package a12226166;
 
-import java.util.HashSet;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * Wizard class objects are the primary actors in the game. They can use and
@@ -10,6 +18,10 @@ import java.util.Set;
  * various magical effects.
  */
 public class Wizard implements MagicSource, Trader, MagicEffectRealization {
+    /**
+     * Unique among all wizards; used as lockOrder
+     */
+    private final long id = TradeLock.nextId();
     /**
      * Not null not empty
      */
@@ -39,22 +51,48 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
      */
     private int money;
     /**
-     * Not null, may be empty; use HashSet for instantiation
+     * Not null, may be empty; bitset over the spell ids (see SpellCatalog), so
+     * knowing a spell is tested with a single bit
+     */
+    private final SpellBitSet<Spell> knownSpells;
+    /**
+     * The spells of knownSpells in an IndexedSet, so that a random spell is
+     * picked in O(1); filled in id order and changed together with knownSpells
      */
-    private final Set<Spell> knownSpells;
+    private final IndexedSet<Spell> spellList;
     /**
-     * Not null, may be empty; use HashSet for instantiation
+     * Not null, may be empty; bitset over the spell ids, so protections are
+     * tested and changed bitwise
      */
-    private final Set<AttackingSpell> protectedFrom;
+    private final SpellBitSet<AttackingSpell> protectedFrom;
     /**
      * Not negative
      */
     private final int carryingCapacity;
     /**
-     * Not null, may be empty, use HashSet for instantiation, total weight of
-     * inventory may never exceed carryingCapacity
+     * Not null, may be empty, IndexedSet, so that a random item can be picked
+     * without copying the set; total weight of inventory may never exceed
+     * carryingCapacity
      */
-    private final Set<Tradeable> inventory;
+    private final IndexedSet<Tradeable> inventory;
+    /**
+     * The ItemStacks of inventory by their kind; at most one stack per kind
+     */
+    private final Map<Long, ItemStack> stacks = new HashMap<>();
+    /**
+     * Total weight of all items in inventory; kept up to date by every method
+     * that changes the inventory, so that capacity checks do not have to sum up
+     * the whole inventory
+     */
+    private int inventoryWeight;
+    /**
+     * Not null; source of randomness for all random actions of this wizard
+     */
+    private final RandomGenerator random;
+    /**
+     * True, if the state changed since the last checkpoint (see Checkpointer)
+     */
+    private boolean dirty;
 
     /**
      * @param name             name
@@ -67,10 +105,39 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
      * @param knownSpells      set of known spells
      * @param protectedFrom    set of spells the object is protected against
      * @param carryingCapacity maximum carrying capacity
-     * @param inventory        set of items the object is currently carrying
+     * @param inventory        set of items the object is currently carrying; see
+     *                         inventoryOrder for the order of the items
      */
     public Wizard(String name, MagicLevel level, int basicHP, int HP, int basicMP, int MP, int money,
                   Set<Spell> knownSpells, Set<AttackingSpell> protectedFrom, int carryingCapacity, Set<Tradeable> inventory) {
+        this(name, level, basicHP, HP, basicMP, MP, money, knownSpells, protectedFrom, carryingCapacity, inventory,
+                new SplittableRandom());
+    }
+
+    /**
+     * Same as the other constructor, but all random actions of the wizard
+     * (castRandomSpell, useRandomItem, sellRandomItem, steal) draw from random.
+     * Passing seeded generators makes runs reproducible; for parallel runs every
+     * worker can hand out generators split from its own SplittableRandom, so no
+     * generator is shared between threads.
+     *
+     * @param name             name
+     * @param level            the magic level (proficiency needed to cast spells)
+     * @param basicHP          base for percentage health calculations
+     * @param HP               current health
+     * @param basicMP          base for percentage mana calculations
+     * @param MP               current mana
+     * @param money            current money
+     * @param knownSpells      set of known spells
+     * @param protectedFrom    set of spells the object is protected against
+     * @param carryingCapacity maximum carrying capacity
+     * @param inventory        set of items the object is currently carrying; see
+     *                         inventoryOrder for the order of the items
+     * @param random           source of randomness used by this wizard only
+     */
+    public Wizard(String name, MagicLevel level, int basicHP, int HP, int basicMP, int MP, int money,
+                  Set<Spell> knownSpells, Set<AttackingSpell> protectedFrom, int carryingCapacity, Set<Tradeable> inventory,
+                  RandomGenerator random) {
         if (name == null || name.isEmpty())
             throw new IllegalArgumentException("Name must not be null or empty");
         if (level == null)
@@ -79,6 +146,8 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
             throw new IllegalArgumentException("Values must not be negative");
         if (knownSpells == null || protectedFrom == null || inventory == null)
             throw new IllegalArgumentException("Sets must not be null");
+        if (random == null)
+            throw new IllegalArgumentException("Random generator must not be null");
 
         this.name = name;
         this.level = level;
@@ -88,15 +157,140 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
         this.MP = MP;
         this.money = money;
 
-        this.knownSpells = new HashSet<>(knownSpells);
-        this.protectedFrom = new HashSet<>(protectedFrom);
+        this.knownSpells = new SpellBitSet<>(knownSpells);
+        this.spellList = new IndexedSet<>(this.knownSpells);
+        this.protectedFrom = new SpellBitSet<>(protectedFrom);
         this.carryingCapacity = carryingCapacity;
-        this.inventory = new HashSet<>(inventory);
+        this.inventory = new IndexedSet<>();
+        for (var item : inventoryOrder(inventory))
+            putItem(item);
+        this.inventoryWeight = inventoryTotalWeight();
+        this.random = random;
 
-        if (inventoryTotalWeight() > carryingCapacity)
+        if (inventoryWeight > carryingCapacity)
             throw new IllegalArgumentException("Inventory exceeds carrying capacity");
     }
 
+    /**
+     * Returns the items of inventory in the order in which a new wizard holds
+     * them, so that random picks with a seeded generator are reproducible: the
+     * order of the set, if it has one (LinkedHashSet, SortedSet, IndexedSet),
+     * otherwise the order of toString, because a HashSet of items iterates in
+     * the order of their identity hash codes, which differs between runs
+     *
+     * @param inventory items of a new wizard
+     * @return the items in a deterministic order
+     */
+    static List<Tradeable> inventoryOrder(Set<Tradeable> inventory) {
+        var items = new ArrayList<>(inventory);
+        if (!(inventory instanceof LinkedHashSet || inventory instanceof SortedSet
+                || inventory instanceof IndexedSet))
+            items.sort(Comparator.comparing(Object::toString));
+        return items;
+    }
+
+    /**
+     * Returns the unique id of this wizard
+     *
+     * @return value of instance variable id
+     */
+    public long getId() {
+        return id;
+    }
+
+    // Package-private accessors for persistence (see WizardFile); the sets are
+    // returned without copying and must not be changed
+
+    String getName() {
+        return name;
+    }
+
+    MagicLevel getLevel() {
+        return level;
+    }
+
+    int getBasicHP() {
+        return basicHP;
+    }
+
+    int getHP() {
+        return HP;
+    }
+
+    int getBasicMP() {
+        return basicMP;
+    }
+
+    int getMP() {
+        return MP;
+    }
+
+    int getMoney() {
+        return money;
+    }
+
+    int getCarryingCapacity() {
+        return carryingCapacity;
+    }
+
+    SpellBitSet<Spell> getKnownSpells() {
+        return knownSpells;
+    }
+
+    SpellBitSet<AttackingSpell> getProtectedFrom() {
+        return protectedFrom;
+    }
+
+    IndexedSet<Tradeable> getInventory() {
+        return inventory;
+    }
+
+    // Package-private mutators for Replay; they repeat changes that were checked
+    // when they happened, so they do no checks and are not journaled
+
+    void replaySpend(int mana) {
+        MP = Math.max(0, MP - mana);
+        dirty = true;
+    }
+
+    void replayEarn(int amount) {
+        money += amount;
+        dirty = true;
+    }
+
+    void replayAdd(Tradeable item) {
+        if (putItem(item))
+            inventoryWeight += item.getWeight();
+        dirty = true;
+    }
+
+    void replayRemove(Tradeable item) {
+        if (takeItem(item))
+            inventoryWeight -= item.getWeight();
+        dirty = true;
+    }
+
+    /**
+     * Returns true, if the state of the wizard changed since the last
+     * checkpoint (see Checkpointer)
+     *
+     * @return true, if the wizard is dirty
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Clears the dirty flag and returns its previous value
+     *
+     * @return true, if the wizard was dirty
+     */
+    boolean clearDirty() {
+        boolean was = dirty;
+        dirty = false;
+        return was;
+    }
+
     /**
      * Return true, if HP is 0, false otherwise
      *
@@ -118,6 +312,17 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
         return totalWeight;
     }
 
+    /**
+     * Consistency check for the running inventoryWeight; recalculates the total
+     * weight of the inventory, so it is only evaluated if assertions are enabled
+     * (java -ea), e.g. when running the tests
+     *
+     * @return true, if inventoryWeight matches the summed up weight of inventory
+     */
+    private boolean inventoryWeightConsistent() {
+        return inventoryWeight == inventoryTotalWeight();
+    }
+
     /**
      * If spell is null, IllegalArgumentException has to be thrown; if wizard is
      * dead (isDead) no action can be taken and false is returned; add spell to the
@@ -132,7 +337,11 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
             throw new IllegalArgumentException("Spell must not be null");
         if (isDead())
             return false;
-        return knownSpells.add(s);
+        if (!knownSpells.add(s))
+            return false;
+        spellList.add(s);
+        dirty = true;
+        return true;
     }
 
     /**
@@ -149,7 +358,11 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
             throw new IllegalArgumentException("Spell must not be null");
         if (isDead())
             return false;
-        return knownSpells.remove(s);
+        if (!knownSpells.remove(s))
+            return false;
+        spellList.remove(s);
+        dirty = true;
+        return true;
     }
 
     /**
@@ -171,6 +384,43 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
         return true;
     }
 
+    /**
+     * Casts s on all targets with a single check of the wizard and a single mana
+     * payment; same as castSpellOnAll(s, targets, 0, false). (Not an overload of
+     * castSpell, so that castSpell(s, null) stays unambiguous)
+     *
+     * @param s       spell to be cast
+     * @param targets targets of the spell to cast
+     * @return true, if cast was called, false otherwise;
+     */
+    public boolean castSpellOnAll(Spell s, Collection<? extends MagicEffectRealization> targets) {
+        return castSpellOnAll(s, targets, 0, false);
+    }
+
+    /**
+     * If s or targets is null, IllegalArgumentException has to be thrown; if
+     * wizard is dead (isDead) no action can be taken and false is returned; if
+     * wizard does not know the spell, false is returned; call the batch cast on s
+     * (see Spell.cast(MagicSource, Collection, int, boolean)) with this as source,
+     * so that manaCost plus perTargetCost for every target is provided once;
+     * return true, if cast was called.
+     *
+     * @param s             spell to be cast
+     * @param targets       targets of the spell to cast
+     * @param perTargetCost additional mana needed for every target
+     * @param parallel      apply the effects in parallel for large batches
+     * @return true, if cast was called, false otherwise;
+     */
+    public boolean castSpellOnAll(Spell s, Collection<? extends MagicEffectRealization> targets, int perTargetCost,
+                                  boolean parallel) {
+        if (s == null || targets == null)
+            throw new IllegalArgumentException("Spell and targets must not be null");
+        if (isDead() || !knownSpells.contains(s))
+            return false;
+        s.cast(this, targets, perTargetCost, parallel);
+        return true;
+    }
+
     /**
      * If this object's knownSpells is empty, return false otherwise choose a random
      * spell from knownSpells and delegate to castSpell(Spell,
@@ -181,18 +431,85 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
      * the delegation to castSpell
      */
     public boolean castRandomSpell(MagicEffectRealization target) {
-        if (knownSpells.isEmpty())
+        if (spellList.isEmpty())
             return false;
-        var spells = knownSpells.toArray(new Spell[0]);
-        int randomIndex = new Random().nextInt(knownSpells.size());
-        return castSpell(spells[randomIndex], target);
+        return castSpell(spellList.get(random.nextInt(spellList.size())), target);
+    }
+
+    /**
+     * First half of castRandomSpell for BattleEngine: if the wizard is alive and
+     * knows a spell, a random spell is chosen and charged (see Spell.charge);
+     * the effect is not applied. The payment is journaled on its own, the
+     * effect must be journaled by Journal.effect when it is applied
+     *
+     * @return the charged spell or null, if no spell was charged
+     */
+    Spell chargeRandomSpell() {
+        if (isDead() || spellList.isEmpty())
+            return null;
+        Spell s = spellList.get(random.nextInt(spellList.size()));
+        if (!s.charge(this))
+            return null;
+        Journal.charge(this, s);
+        return s;
+    }
+
+    /**
+     * Returns a random item of the inventory, which must not be empty
+     *
+     * @return random item of the inventory
+     */
+    private Tradeable randomItem() {
+        return inventory.get(random.nextInt(inventory.size()));
+    }
+
+    /**
+     * Adds item to inventory (see ItemStack.put), without changing
+     * inventoryWeight
+     *
+     * @param item item to add
+     * @return true, if the item was added
+     */
+    private boolean putItem(Tradeable item) {
+        return ItemStack.put(inventory, stacks, item);
+    }
+
+    /**
+     * Removes item from inventory (see ItemStack.take), without changing
+     * inventoryWeight
+     *
+     * @param item item to remove
+     * @return true, if the item was removed
+     */
+    private boolean takeItem(Tradeable item) {
+        return ItemStack.take(inventory, stacks, item);
+    }
+
+    /**
+     * If kind is null, an IllegalArgumentException is thrown; if the inventory
+     * holds a stack of the kind of kind (of any count), one item is split off the
+     * stack and put into the inventory as a single item, which is returned
+     *
+     * @param kind stack of the kind to split
+     * @return the single item or null, if no stack of the kind is held
+     */
+    public MagicItem unstack(ItemStack kind) {
+        if (kind == null)
+            throw new IllegalArgumentException("Stack must not be null");
+        var item = ItemStack.unstack(inventory, stacks, kind);
+        if (item != null)
+            dirty = true;
+        return item;
     }
 
     /**
      * If item or target is null, IllegalArgumentException has to be thrown; if
      * wizard is dead (isDead) no action can be taken and false is returned; if
      * wizard does not possess the item, false is returned; call useOn on the item
-     * with parameter target as target; return true, if useOn was called.
+     * with parameter target as target; return true, if useOn was called. For an
+     * ItemStack, a single item is split off the stack (see unstack) and used;
+     * the usage is journaled with a stack of one item, so Replay splits the item
+     * off as well.
      *
      * @param item   item to be used
      * @param target target on which item is to be used on
@@ -201,9 +518,11 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public boolean useItem(Tradeable item, MagicEffectRealization target) {
         if (item == null || target == null)
             throw new IllegalArgumentException("Item and target must not be null");
-        if (isDead() || !inventory.contains(item))
+        if (isDead() || !possesses(item))
             return false;
-        item.useOn(target);
+        Tradeable used = item instanceof ItemStack stack ? unstack(stack) : item;
+        used.useOn(target);
+        Journal.use(this, target, item instanceof ItemStack stack ? stack.withCount(1) : item);
         return true;
     }
 
@@ -219,9 +538,7 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public boolean useRandomItem(MagicEffectRealization target) {
         if (inventory.isEmpty())
             return false;
-        var items = inventory.toArray(new Tradeable[0]);
-        int randomIndex = new Random().nextInt(inventory.size());
-        return useItem(items[randomIndex], target);
+        return useItem(randomItem(), target);
     }
 
     /**
@@ -257,9 +574,7 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public boolean sellRandomItem(Trader target) {
         if (inventory.isEmpty())
             return false;
-        var items = inventory.toArray(new Tradeable[0]);
-        int randomIndex = new Random().nextInt(inventory.size());
-        return sellItem(items[randomIndex], target);
+        return sellItem(randomItem(), target);
     }
 
     /**
@@ -305,13 +620,15 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
         if (MP < manaAmount)
             return false;
         MP -= manaAmount;
+        dirty = true;
         return true;
     }
 
     // Trader Interface
 
     /**
-     * Return true, if the item is in the inventory, false otherwise
+     * Return true, if the item is in the inventory, false otherwise; for an
+     * ItemStack, true if the inventory holds at least its count of its kind
      *
      * @param item object is tested, if it possesses this item
      * @return true, if the item is in the inventory, false otherwise
@@ -320,7 +637,7 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public boolean possesses(Tradeable item) {
         if (item == null)
             throw new IllegalArgumentException("Item must not be null");
-        return inventory.contains(item);
+        return ItemStack.holds(inventory, stacks, item);
     }
 
     /**
@@ -349,7 +666,17 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public boolean hasCapacity(int weight) {
         if (weight < 0)
             throw new IllegalArgumentException("Wizard: hasCapacity: weight < 0");
-        return inventoryTotalWeight() + weight <= carryingCapacity;
+        return inventoryWeight + weight <= carryingCapacity;
+    }
+
+    /**
+     * Returns carryingCapacity minus the weight of the inventory
+     *
+     * @return weight that can still be added to the inventory
+     */
+    @Override
+    public int remainingCapacity() {
+        return Math.max(0, carryingCapacity - inventoryWeight);
     }
 
     /**
@@ -369,6 +696,7 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
         if (money < amount)
             return false;
         money -= amount;
+        dirty = true;
         return true;
     }
 
@@ -386,13 +714,15 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
         if (isDead())
             return false;
         money += amount;
+        dirty = true;
         return true;
     }
 
     /**
      * Add item to inventory if carryingCapacity is sufficient. returns true, if
      * item is successfully added, false otherwise (carrying capacity exceeded or
-     * item is already in the inventory)
+     * item is already in the inventory); an ItemStack is merged into the stack of
+     * its kind
      *
      * @param item item to be added to object's inventory
      * @return true. if item is successfully added, false otherwise
@@ -401,14 +731,18 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public boolean addToInventory(Tradeable item) {
         if (item == null)
             throw new IllegalArgumentException("Item must not be null");
-        if (hasCapacity(item.getWeight()))
-            return inventory.add(item);
-        return false;
+        if (!hasCapacity(item.getWeight()) || !putItem(item))
+            return false;
+        inventoryWeight += item.getWeight();
+        dirty = true;
+        assert inventoryWeightConsistent();
+        return true;
     }
 
     /**
      * Remove item from inventory. returns true, if item is successfully removed,
-     * false otherwise (item not in the inventory).
+     * false otherwise (item not in the inventory); an ItemStack removes its count
+     * of items from the stack of its kind.
      *
      * @param item item to be removed from object's inventory
      * @return true, if item is successfully removed, false otherwise
@@ -417,7 +751,23 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public boolean removeFromInventory(Tradeable item) {
         if (item == null)
             throw new IllegalArgumentException("Item must not be null");
-        return inventory.remove(item);
+        if (!takeItem(item))
+            return false;
+        inventoryWeight -= item.getWeight();
+        dirty = true;
+        assert inventoryWeightConsistent();
+        return true;
+    }
+
+    /**
+     * Returns the unique id of this wizard, so trade locks are taken in the
+     * order of creation of the wizards
+     *
+     * @return value of instance variable id
+     */
+    @Override
+    public long lockOrder() {
+        return id;
     }
 
     /**
@@ -436,7 +786,8 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
      * returns false if, the object's inventory is empty; otherwise transfers a
      * random item from this object's inventory into the thief's inventory; if
      * the thief's inventory has not enough capacity, the object just vanishes and
-     * false is returned; returns true, if theft was successful.
+     * false is returned; returns true, if theft was successful. From an
+     * ItemStack, a single item is stolen.
      *
      * @param thief object that is stealing the item from the this-object.
      * @return true, if theft was successful
@@ -445,13 +796,14 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public boolean steal(Trader thief) {
         if (thief == null)
             throw new IllegalArgumentException("Thief must not be null");
-        if (!thief.canSteal() || inventory.isEmpty())
+        if (!thief.canSteal())
+            return false;
+        var item = takeRandomItem();
+        if (item == null)
             return false;
-        var items = inventory.toArray(new Tradeable[0]);
-        int randomIndex = new Random().nextInt(inventory.size());
-        Tradeable item = items[randomIndex];
-        inventory.remove(item);
-        return thief.addToInventory(item);
+        boolean carried = thief.addToInventory(item);
+        Journal.trade(Journal.Type.STEAL, this, thief, item, carried ? 1 : 0, 0);
+        return carried;
     }
 
     /**
@@ -480,8 +832,9 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
      * returned; if this object can be looted (isLootable), transfer all the
      * items in the object's inventory into the looter's inventory; items that don't
      * fit in the looter's inventory because of the weight limitation just vanish.
-     * returns true, if at least one item was successfully transferred, false
-     * otherwise.
+     * Of an ItemStack that does not fit as a whole, as many items as fit are
+     * transferred. returns true, if at least one item was successfully
+     * transferred, false otherwise.
      *
      * @param looter object that is looting this-object.
      * @return true, if looting was successful, false otherwise
@@ -492,14 +845,163 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
             throw new IllegalArgumentException("Looter must not be null");
         if (!looter.canLoot() || !isLootable())
             return false;
+        return carryAway(this, looter, takeAll());
+    }
+
+    /**
+     * Removes a random item of the inventory, as steal does: of an ItemStack, a
+     * single item is removed
+     *
+     * @return removed item, null if the inventory is empty
+     */
+    Tradeable takeRandomItem() {
+        if (inventory.isEmpty())
+            return null;
+        var item = ItemStack.single(randomItem());
+        removeFromInventory(item);
+        return item;
+    }
+
+    /**
+     * Removes all items of the inventory, as loot does
+     *
+     * @return removed items, in the order of the inventory
+     */
+    List<Tradeable> takeAll() {
+        var items = new ArrayList<Tradeable>(inventory);
+        inventory.clear();
+        stacks.clear();
+        inventoryWeight = 0;
+        dirty = true;
+        return items;
+    }
+
+    /**
+     * Adds the items looted from victim to the inventory of looter; items that
+     * don't fit vanish, of an ItemStack that does not fit as a whole, as many
+     * items as fit are added
+     *
+     * @param victim object the items were taken from
+     * @param looter object that is looting
+     * @param items  items taken from victim
+     * @return true, if at least one item was added
+     */
+    static boolean carryAway(Trader victim, Trader looter, List<Tradeable> items) {
         boolean success = false;
-        for (var item : inventory)
-            if (looter.addToInventory(item))
-                success = true;
+        for (var item : items) {
+            boolean carried = looter.addToInventory(item);
+            if (!carried && item instanceof ItemStack stack && stack.getCount() > 1) {
+                // take as many items of the stack as fit, the others vanish
+                int fitting = fittingCount(looter, stack);
+                if (fitting > 0 && looter.addToInventory(stack.withCount(fitting))) {
+                    Journal.trade(Journal.Type.LOOT, victim, looter, stack.withCount(fitting), 1, 0);
+                    item = stack.withCount(stack.getCount() - fitting);
+                    success = true;
+                }
+            }
+            Journal.trade(Journal.Type.LOOT, victim, looter, item, carried ? 1 : 0, 0);
+            success |= carried;
+        }
+        return success;
+    }
+
+    /**
+     * Same as loot, but instead of transferring the items in the order of the
+     * inventory, the looter takes the subset of items with the highest total
+     * price that fits into its remaining capacity (see Trader.remainingCapacity
+     * and Knapsack: exact for small capacities, at least half of the optimum for
+     * large ones). Stacks are split into parts of 1, 2, 4, ... items, so any
+     * number of items of a stack can be taken; the parts taken of a stack are
+     * added as a single stack. Weights and prices are read once; the items not
+     * taken vanish.
+     *
+     * @param looter object that is looting this-object.
+     * @return true, if looting was successful, false otherwise
+     */
+    public boolean lootOptimal(Trader looter) {
+        if (looter == null)
+            throw new IllegalArgumentException("Looter must not be null");
+        if (!looter.canLoot() || !isLootable())
+            return false;
+        List<Tradeable> items = new ArrayList<>(inventory);
+        List<Tradeable> parts = new ArrayList<>(items.size());
+        // the parts of items.get(k) are parts.get(firstPart[k]) to parts.get(firstPart[k + 1] - 1)
+        var firstPart = new int[items.size() + 1];
+        for (int k = 0; k < items.size(); ++k) {
+            firstPart[k] = parts.size();
+            if (items.get(k) instanceof ItemStack stack) {
+                int left = stack.getCount();
+                for (int c = 1; left > 0; c <<= 1) {
+                    int count = Math.min(c, left);
+                    parts.add(stack.withCount(count));
+                    left -= count;
+                }
+            } else {
+                parts.add(items.get(k));
+            }
+        }
+        firstPart[items.size()] = parts.size();
+        var weights = new int[parts.size()];
+        var prices = new long[parts.size()];
+        for (int i = 0; i < weights.length; ++i) {
+            weights[i] = parts.get(i).getWeight();
+            prices[i] = parts.get(i).getPrice();
+        }
+        var selected = Knapsack.select(weights, prices, looter.remainingCapacity());
+
+        boolean success = false;
+        for (int k = 0; k < items.size(); ++k) {
+            var item = items.get(k);
+            if (!(item instanceof ItemStack stack)) {
+                boolean carried = selected[firstPart[k]] && looter.addToInventory(item);
+                Journal.trade(Journal.Type.LOOT, this, looter, item, carried ? 1 : 0, 0);
+                success |= carried;
+                continue;
+            }
+            // the selected parts of a stack are added as one stack, because the
+            // parts may be equal (e.g. 1, 2, 2 of 5) and a looter that stores
+            // stacks like single items would reject the second one
+            int taken = 0;
+            for (int i = firstPart[k]; i < firstPart[k + 1]; ++i)
+                if (selected[i])
+                    taken += ((ItemStack) parts.get(i)).getCount();
+            if (taken > 0) {
+                var part = stack.withCount(taken);
+                boolean carried = looter.addToInventory(part);
+                Journal.trade(Journal.Type.LOOT, this, looter, part, carried ? 1 : 0, 0);
+                success |= carried;
+            }
+            if (taken < stack.getCount())
+                Journal.trade(Journal.Type.LOOT, this, looter, stack.withCount(stack.getCount() - taken), 0, 0);
+        }
         inventory.clear();
+        stacks.clear();
+        inventoryWeight = 0;
+        dirty = true;
         return success;
     }
 
+    /**
+     * Returns the largest number of items of stack (less than its count) that
+     * trader has capacity for, found by binary search over hasCapacity
+     *
+     * @param trader trader that receives the items
+     * @param stack  stack that does not fit as a whole
+     * @return number of items that fit
+     */
+    private static int fittingCount(Trader trader, ItemStack stack) {
+        int low = 0;
+        int high = stack.getCount() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (trader.hasCapacity(middle * stack.getUnitWeight()))
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
     // MagicEffectRealization Interface
 
     /**
@@ -512,6 +1014,7 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public void takeDamage(int amount) {
         MagicEffectRealization.super.takeDamage(amount);
         HP = Math.max(0, HP - amount);
+        dirty = true;
     }
 
     /**
@@ -538,6 +1041,7 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public void weakenMagic(int amount) {
         MagicEffectRealization.super.weakenMagic(amount);
         MP = Math.max(0, MP - amount);
+        dirty = true;
     }
 
     /**
@@ -563,6 +1067,7 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public void heal(int amount) {
         MagicEffectRealization.super.heal(amount);
         HP += amount;
+        dirty = true;
     }
 
     /**
@@ -587,6 +1092,7 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public void enforceMagic(int amount) {
         MagicEffectRealization.super.enforceMagic(amount);
         MP += amount;
+        dirty = true;
     }
 
     /**
@@ -603,7 +1109,8 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     }
 
     /**
-     * Return true, if s is contained in instance variable protectedFrom
+     * Return true, if s is contained in instance variable protectedFrom (a single
+     * bit test)
      *
      * @param s spell that is tested for
      * @return true, if object is protected against spell s, false otherwise
@@ -617,7 +1124,8 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     }
 
     /**
-     * Add all spells from attacks to instance variable protectedFrom
+     * Add all spells from attacks to instance variable protectedFrom; a bitset
+     * (as passed by ProtectingSpell) is added by a bitwise OR
      *
      * @param attacks spells against which protection is provided
      */
@@ -625,10 +1133,12 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public void setProtection(Set<AttackingSpell> attacks) {
         MagicEffectRealization.super.setProtection(attacks);
         protectedFrom.addAll(attacks);
+        dirty = true;
     }
 
     /**
-     * Remove all spells from attacks from instance variable protectedFrom
+     * Remove all spells from attacks from instance variable protectedFrom; a
+     * bitset is removed by a bitwise AND-NOT
      *
      * @param attacks spells against which protection is removed
      */
@@ -636,5 +1146,21 @@ public class Wizard implements MagicSource, Trader, MagicEffectRealization {
     public void removeProtection(Set<AttackingSpell> attacks) {
         MagicEffectRealization.super.removeProtection(attacks);
         protectedFrom.removeAll(attacks);
+        dirty = true;
+    }
+
+    /**
+     * Clears the bit of s in protectedFrom and returns whether it was set
+     *
+     * @param s attacking spell that uses up the protection
+     * @return true, if the object was protected against s
+     */
+    @Override
+    public boolean consumeProtection(AttackingSpell s) {
+        if (s == null)
+            throw new IllegalArgumentException("Spell cannot be null");
+        boolean consumed = protectedFrom.remove(s);
+        dirty |= consumed;
+        return consumed;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,400 @@
+package a12226166;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Actor runtime for wizards: every Wizard is owned by an Actor, which changes
+ * it only from the messages of its mailbox, one message at a time. Wizards are
+ * never locked; an interaction of two wizards is a sequence of messages, each
+ * of which is processed by the actor that owns the state it reads and changes:
+ * <ul>
+ * <li>castSpell: the caster checks and pays the mana, the target applies the
+ * effect; payment and effect are journaled by the message that makes them</li>
+ * <li>useItem: the user uses up one usage of the item, the target applies the
+ * effect of a copy of the item (so an item in an inventory is only changed by
+ * its owner; items that cannot be copied, see MagicItem.copy, can only be
+ * used by their owner on itself)</li>
+ * <li>sellItem: the seller removes the item, the buyer checks capacity and
+ * pays and takes the item, the seller earns the price (lost, if it died in
+ * between) or takes the item back</li>
+ * <li>steal and loot: the thief (looter) checks whether it can steal (loot),
+ * the victim removes the item (all items), the thief (looter) adds it (as many
+ * as fit)</li>
+ * </ul>
+ * Every check is made by an actor on its own state when it processes the
+ * message, so it may differ from what the other actor saw before (e.g. an item
+ * that is taken back by a seller that has received other items in between may
+ * not fit and vanishes, like a stolen item that does not fit).
+ * <p>
+ * Mailboxes are bounded: an action reserves room for all messages it will
+ * send in the mailboxes of all actors concerned before it starts; if a
+ * mailbox is full, the future of the action fails with a
+ * RejectedExecutionException, and the caller can retry later. Actors are run
+ * by a shared Executor; an actor with messages is scheduled once and processes
+ * up to THROUGHPUT messages before it makes room for other actors, so many
+ * actors can share a few threads.
+ * <p>
+ * The futures of actions complete on the thread of the actor that processes
+ * the last message.
+ */
+public final class WizardActors {
+    /**
+     * Messages processed by an actor before it is scheduled again
+     */
+    public static final int THROUGHPUT = 64;
+
+    private final Executor executor;
+    private final int mailboxCapacity;
+
+    /**
+     * If executor is null or mailboxCapacity is less than 2, an
+     * IllegalArgumentException is thrown
+     *
+     * @param executor        runs the actors
+     * @param mailboxCapacity maximum number of messages in the mailbox of an
+     *                        actor, including the ones reserved by actions
+     */
+    public WizardActors(Executor executor, int mailboxCapacity) {
+        if (executor == null)
+            throw new IllegalArgumentException("Executor must not be null");
+        if (mailboxCapacity < 2)
+            throw new IllegalArgumentException("Mailbox capacity must be at least 2");
+        this.executor = executor;
+        this.mailboxCapacity = mailboxCapacity;
+    }
+
+    /**
+     * If wizard is null, an IllegalArgumentException is thrown; creates the actor
+     * that owns wizard. From now on, wizard must only be used through the actor
+     *
+     * @param wizard wizard to own
+     * @return new actor
+     */
+    public Actor spawn(Wizard wizard) {
+        if (wizard == null)
+            throw new IllegalArgumentException("Wizard must not be null");
+        return new Actor(wizard);
+    }
+
+    private static void requireNonNull(Object... arguments) {
+        for (var argument : arguments)
+            if (argument == null)
+                throw new IllegalArgumentException("Arguments must not be null");
+    }
+
+    private static void release(Actor actor, int messages) {
+        actor.size.addAndGet(-messages);
+    }
+
+    private static <T> CompletableFuture<T> rejected(CompletableFuture<T> result) {
+        result.completeExceptionally(new RejectedExecutionException("Mailbox is full"));
+        return result;
+    }
+
+    /**
+     * Owner of one wizard, with its mailbox
+     */
+    public final class Actor {
+        private final Wizard wizard;
+        private final ConcurrentLinkedQueue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+        /**
+         * Messages in the mailbox plus messages reserved by actions
+         */
+        private final AtomicInteger size = new AtomicInteger();
+        /**
+         * True, while the actor is scheduled or running
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Actor(Wizard wizard) {
+            this.wizard = wizard;
+        }
+
+        /**
+         * Returns the number of messages in the mailbox, including reserved ones
+         *
+         * @return size of the mailbox
+         */
+        public int getMailboxSize() {
+            return size.get();
+        }
+
+        /**
+         * If spell or target is null, an IllegalArgumentException is thrown; casts
+         * spell on the wizard of target (see Wizard.castSpell)
+         *
+         * @param spell  spell to cast
+         * @param target actor of the target
+         * @return future of true, if the spell was cast (the mana may not have
+         * sufficed), false if the wizard is dead or does not know the spell
+         */
+        public CompletableFuture<Boolean> castSpell(Spell spell, Actor target) {
+            requireNonNull(spell, target);
+            var result = new CompletableFuture<Boolean>();
+            if (!reserve(target, 1, 1))
+                return rejected(result);
+            send(result, () -> {
+                if (wizard.isDead() || !wizard.getKnownSpells().contains(spell)) {
+                    release(target, 1);
+                    result.complete(false);
+                } else if (!spell.charge(wizard)) {
+                    release(target, 1);
+                    result.complete(true);
+                } else {
+                    Journal.charge(wizard, spell);
+                    target.send(result, () -> {
+                        spell.doEffect(target.wizard);
+                        Journal.effect(wizard, target.wizard, spell);
+                        result.complete(true);
+                    });
+                }
+            });
+            return result;
+        }
+
+        /**
+         * If item or target is null, an IllegalArgumentException is thrown; uses
+         * item on the wizard of target (see Wizard.useItem)
+         *
+         * @param item   item to use
+         * @param target actor of the target
+         * @return future of true, if the item was used, false if the wizard is
+         * dead or does not possess the item
+         */
+        public CompletableFuture<Boolean> useItem(Tradeable item, Actor target) {
+            requireNonNull(item, target);
+            var result = new CompletableFuture<Boolean>();
+            if (!reserve(target, 1, 1))
+                return rejected(result);
+            send(result, () -> {
+                if (wizard.isDead() || !wizard.possesses(item)) {
+                    release(target, 1);
+                    result.complete(false);
+                    return;
+                }
+                var used = item instanceof ItemStack stack ? wizard.unstack(stack) : item;
+                // journaled as by Wizard.useItem, so Replay splits the item off the stack
+                var journaled = item instanceof ItemStack stack ? stack.withCount(1) : item;
+                if (target == this) {
+                    release(target, 1);
+                    used.useOn(wizard);
+                    Journal.use(wizard, wizard, journaled);
+                    result.complete(true);
+                    return;
+                }
+                if (!(used instanceof MagicItem magicItem) || !magicItem.getPrototype().isInstantiable()) {
+                    release(target, 1);
+                    throw new UnsupportedOperationException(used.getClass().getSimpleName()
+                            + " can only be used by its owner on itself");
+                }
+                // the copy has the usages before this usage, so it takes effect exactly if the usage succeeds
+                var copy = magicItem.copy();
+                magicItem.tryUsage();
+                target.send(result, () -> {
+                    copy.useOn(target.wizard);
+                    Journal.use(wizard, target.wizard, journaled);
+                    result.complete(true);
+                });
+            });
+            return result;
+        }
+
+        /**
+         * If item or buyer is null, or buyer is this actor, an
+         * IllegalArgumentException is thrown; sells item to the wizard of buyer at
+         * its price (see Wizard.sellItem and Tradeable.purchase)
+         *
+         * @param item  item to sell
+         * @param buyer actor of the buyer
+         * @return future of true, if the item was sold
+         */
+        public CompletableFuture<Boolean> sellItem(Tradeable item, Actor buyer) {
+            requireNonNull(item, buyer);
+            if (buyer == this)
+                throw new IllegalArgumentException("Seller and buyer must not be the same");
+            var result = new CompletableFuture<Boolean>();
+            if (!reserve(buyer, 2, 1))
+                return rejected(result);
+            int price = item.getPrice();
+            send(result, () -> {
+                if (wizard.isDead() || !wizard.removeFromInventory(item)) {
+                    release(this, 1);
+                    release(buyer, 1);
+                    result.complete(false);
+                    return;
+                }
+                buyer.send(result, () -> {
+                    var b = buyer.wizard;
+                    boolean bought = b.hasCapacity(item.getWeight()) && b.canAfford(price) && b.pay(price);
+                    if (bought && !b.addToInventory(item)) {
+                        b.earn(price);
+                        bought = false;
+                    }
+                    boolean sold = bought;
+                    send(result, () -> {
+                        if (!sold) {
+                            wizard.addToInventory(item);
+                            result.complete(false);
+                            return;
+                        }
+                        // a seller that died in between loses the price, like a dead wizard
+                        // cannot earn; the buyer keeps the item, so the trade is journaled
+                        // anyway (Replay does not credit a dead seller either)
+                        wizard.earn(price);
+                        Journal.trade(Journal.Type.PURCHASE, wizard, b, item, 1, price);
+                        result.complete(true);
+                    });
+                });
+            });
+            return result;
+        }
+
+        /**
+         * If victim is null or this actor, an IllegalArgumentException is thrown;
+         * the wizard of this actor steals from the wizard of victim (see
+         * Wizard.steal)
+         *
+         * @param victim actor of the wizard to steal from
+         * @return future of true, if the theft was successful
+         */
+        public CompletableFuture<Boolean> steal(Actor victim) {
+            requireNonNull(victim);
+            if (victim == this)
+                throw new IllegalArgumentException("Thief and victim must not be the same");
+            var result = new CompletableFuture<Boolean>();
+            if (!reserve(victim, 2, 1))
+                return rejected(result);
+            send(result, () -> {
+                if (!wizard.canSteal()) {
+                    release(this, 1);
+                    release(victim, 1);
+                    result.complete(false);
+                    return;
+                }
+                victim.send(result, () -> {
+                    var item = victim.wizard.takeRandomItem();
+                    send(result, () -> {
+                        if (item == null) {
+                            result.complete(false);
+                            return;
+                        }
+                        boolean carried = wizard.addToInventory(item);
+                        Journal.trade(Journal.Type.STEAL, victim.wizard, wizard, item, carried ? 1 : 0, 0);
+                        result.complete(carried);
+                    });
+                });
+            });
+            return result;
+        }
+
+        /**
+         * If victim is null or this actor, an IllegalArgumentException is thrown;
+         * the wizard of this actor loots the wizard of victim (see Wizard.loot)
+         *
+         * @param victim actor of the wizard to loot
+         * @return future of true, if at least one item was looted
+         */
+        public CompletableFuture<Boolean> loot(Actor victim) {
+            requireNonNull(victim);
+            if (victim == this)
+                throw new IllegalArgumentException("Looter and victim must not be the same");
+            var result = new CompletableFuture<Boolean>();
+            if (!reserve(victim, 2, 1))
+                return rejected(result);
+            send(result, () -> {
+                if (!wizard.canLoot()) {
+                    release(this, 1);
+                    release(victim, 1);
+                    result.complete(false);
+                    return;
+                }
+                victim.send(result, () -> {
+                    var items = victim.wizard.isLootable() ? victim.wizard.takeAll() : null;
+                    send(result, () -> result.complete(items != null
+                            && Wizard.carryAway(victim.wizard, wizard, items)));
+                });
+            });
+            return result;
+        }
+
+        /**
+         * If action is null, an IllegalArgumentException is thrown; applies action
+         * to the wizard of this actor, e.g. to read its state
+         *
+         * @param action action to apply
+         * @param <T>    type of the result
+         * @return future of the result of action
+         */
+        public <T> CompletableFuture<T> ask(Function<? super Wizard, ? extends T> action) {
+            requireNonNull(action);
+            var result = new CompletableFuture<T>();
+            if (!reserve(this, 1, 0))
+                return rejected(result);
+            send(result, () -> result.complete(action.apply(wizard)));
+            return result;
+        }
+
+        /**
+         * Reserves own messages in this mailbox and other messages in the mailbox
+         * of other (which may be this actor); all or nothing
+         */
+        private boolean reserve(Actor other, int own, int others) {
+            if (other == this)
+                return tryReserve(own + others);
+            if (!tryReserve(own))
+                return false;
+            if (other.tryReserve(others))
+                return true;
+            release(this, own);
+            return false;
+        }
+
+        private boolean tryReserve(int messages) {
+            int current;
+            do {
+                current = size.get();
+                if (current + messages > mailboxCapacity)
+                    return false;
+            } while (!size.compareAndSet(current, current + messages));
+            return true;
+        }
+
+        /**
+         * Sends a reserved message; if it throws, result fails
+         */
+        private void send(CompletableFuture<?> result, Runnable message) {
+            mailbox.add(() -> {
+                try {
+                    message.run();
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            if (scheduled.compareAndSet(false, true))
+                executor.execute(this::process);
+        }
+
+        /**
+         * Processes up to THROUGHPUT messages, then schedules the actor again, if
+         * there are messages left
+         */
+        private void process() {
+            for (int i = 0; i < THROUGHPUT; ++i) {
+                var message = mailbox.poll();
+                if (message == null)
+                    break;
+                size.decrementAndGet();
+                message.run();
+            }
+            scheduled.set(false);
+            if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true))
+                executor.execute(this::process);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package a12226166;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Memory-mapped file of wizards with a fixed record layout, so a world can be
+ * reopened without deserializing every wizard. The file consists of
+ * <ul>
+ * <li>a header: magic number, version, number of wizards, record size, size
+ * of the data area, the journal sequence of the snapshot (see Replay) and the
+ * size of the spell table</li>
+ * <li>one record of RECORD_SIZE bytes per wizard: level, basicHP, HP, basicMP,
+ * MP, money, carryingCapacity and the positions of name, known spells,
+ * protections and inventory in the data area; so the attributes of wizard i
+ * are read directly at HEADER_SIZE + i * RECORD_SIZE</li>
+ * <li>the data area: the spell table; names as UTF-8; known spells and
+ * protections as the words of their SpellBitSet (an int count followed by the
+ * longs); inventories as an int count followed by the codes of the items (see
+ * ItemCodec)</li>
+ * </ul>
+ * Spells are stored by the SpellCatalog ids of the writer; the spell table
+ * maps them to their definitions (see SpellTable), so the application must
+ * have interned its spells before it reads a file, but in any order. All
+ * numbers are big endian. A file is limited to Integer.MAX_VALUE bytes (one
+ * mapping).
+ * <p>
+ * open maps the file read-only; the getters read single attributes, and load
+ * creates a Wizard only for the record that is needed. A WizardFile can be
+ * read by several threads.
+ */
+public final class WizardFile {
+    static final int MAGIC = 0x48574946; // "HWIF"
+    static final int VERSION = 3;
+    public static final int HEADER_SIZE = 40;
+    public static final int RECORD_SIZE = 64;
+
+    // header
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_COUNT = 8;
+    private static final int H_RECORD_SIZE = 12;
+    private static final int H_DATA_SIZE = 16;
+    private static final int H_SEQUENCE = 24;
+    private static final int H_SPELLS_SIZE = 32;
+
+    // record
+    private static final int R_LEVEL = 0;
+    private static final int R_BASIC_HP = 4;
+    private static final int R_HP = 8;
+    private static final int R_BASIC_MP = 12;
+    private static final int R_MP = 16;
+    private static final int R_MONEY = 20;
+    private static final int R_CAPACITY = 24;
+    private static final int R_NAME_LENGTH = 28;
+    private static final int R_NAME = 32;
+    private static final int R_SPELLS = 40;
+    private static final int R_PROTECTIONS = 48;
+    private static final int R_INVENTORY = 56;
+
+    private static final MagicLevel[] LEVELS = MagicLevel.values();
+
+    private final ByteBuffer buffer;
+    private final ItemCodec codec;
+    private final int count;
+    /**
+     * Translates the spell ids of the file to those of the catalog
+     */
+    private final SpellTable spells;
+
+    private WizardFile(ByteBuffer buffer, ItemCodec codec, int count, SpellTable spells) {
+        this.buffer = buffer;
+        this.codec = codec;
+        this.count = count;
+        this.spells = spells;
+    }
+
+    /**
+     * If an argument is null or wizards contains null, an
+     * IllegalArgumentException is thrown; writes wizards (in the order of the
+     * collection) to a new file at path, which replaces an existing file
+     *
+     * @param path    file to write
+     * @param wizards wizards to write
+     * @param codec   codec for the items of the inventories
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, Collection<Wizard> wizards, ItemCodec codec) throws IOException {
+        write(path, wizards, codec, 0);
+    }
+
+    /**
+     * Same as write(path, wizards, codec), but the file is marked as a snapshot
+     * of the state after all journal events before sequence (see
+     * Journal.nextSequence), so Replay continues with event sequence. If
+     * sequence is negative, an IllegalArgumentException is thrown
+     *
+     * @param path     file to write
+     * @param wizards  wizards to write
+     * @param codec    codec for the items of the inventories
+     * @param sequence sequence of the first journal event not contained in the
+     *                 snapshot
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, Collection<Wizard> wizards, ItemCodec codec, long sequence)
+            throws IOException {
+        if (path == null || wizards == null || codec == null)
+            throw new IllegalArgumentException("Path, wizards and codec must not be null");
+        if (sequence < 0)
+            throw new IllegalArgumentException("Sequence must not be negative");
+        var array = wizards.toArray(new Wizard[0]);
+        var names = new byte[array.length][];
+        var used = new SpellBitSet<>();
+        for (int i = 0; i < array.length; ++i) {
+            if (array[i] == null)
+                throw new IllegalArgumentException("Wizards must not contain null");
+            used.addAll(array[i].getKnownSpells());
+            used.addAll(array[i].getProtectedFrom());
+        }
+        var table = new ByteArrayOutputStream();
+        SpellTable.write(new DataOutputStream(table), used.toWords());
+        long dataSize = table.size();
+        for (int i = 0; i < array.length; ++i) {
+            names[i] = array[i].getName().getBytes(StandardCharsets.UTF_8);
+            dataSize += names[i].length + 12L + 8L * array[i].getInventory().size()
+                    + 8L * (array[i].getKnownSpells().toWords().length + array[i].getProtectedFrom().toWords().length);
+        }
+        long dataStart = HEADER_SIZE + (long) RECORD_SIZE * array.length;
+        if (dataStart + dataSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Wizards do not fit into a single file");
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataStart + dataSize);
+            out.putInt(H_MAGIC, MAGIC).putInt(H_VERSION, VERSION).putInt(H_COUNT, array.length)
+                    .putInt(H_RECORD_SIZE, RECORD_SIZE).putLong(H_DATA_SIZE, dataSize).putLong(H_SEQUENCE, sequence)
+                    .putInt(H_SPELLS_SIZE, table.size());
+            out.position((int) dataStart);
+            out.put(table.toByteArray());
+            for (int i = 0; i < array.length; ++i) {
+                var wizard = array[i];
+                int record = HEADER_SIZE + i * RECORD_SIZE;
+                out.put(record + R_LEVEL, (byte) wizard.getLevel().ordinal())
+                        .putInt(record + R_BASIC_HP, wizard.getBasicHP())
+                        .putInt(record + R_HP, wizard.getHP())
+                        .putInt(record + R_BASIC_MP, wizard.getBasicMP())
+                        .putInt(record + R_MP, wizard.getMP())
+                        .putInt(record + R_MONEY, wizard.getMoney())
+                        .putInt(record + R_CAPACITY, wizard.getCarryingCapacity())
+                        .putInt(record + R_NAME_LENGTH, names[i].length);
+                out.putLong(record + R_NAME, out.position()).put(names[i]);
+                out.putLong(record + R_SPELLS, out.position());
+                putWords(out, wizard.getKnownSpells().toWords());
+                out.putLong(record + R_PROTECTIONS, out.position());
+                putWords(out, wizard.getProtectedFrom().toWords());
+                out.putLong(record + R_INVENTORY, out.position());
+                out.putInt(wizard.getInventory().size());
+                for (var item : wizard.getInventory())
+                    out.putLong(codec.encode(item));
+            }
+            out.force();
+        }
+    }
+
+    private static void putWords(ByteBuffer out, long[] words) {
+        out.putInt(words.length);
+        for (long word : words)
+            out.putLong(word);
+    }
+
+    /**
+     * Writes a single wizard to out with the same fields as a record (used by
+     * the delta files of Checkpointer); the spells are stored by their
+     * SpellCatalog ids, so the data needs a spell table of them
+     *
+     * @param out    output
+     * @param wizard wizard to write
+     * @param codec  codec for the items of the inventory
+     * @throws IOException if out cannot be written
+     */
+    static void writeWizard(DataOutput out, Wizard wizard, ItemCodec codec) throws IOException {
+        out.writeUTF(wizard.getName());
+        out.writeByte(wizard.getLevel().ordinal());
+        out.writeInt(wizard.getBasicHP());
+        out.writeInt(wizard.getHP());
+        out.writeInt(wizard.getBasicMP());
+        out.writeInt(wizard.getMP());
+        out.writeInt(wizard.getMoney());
+        out.writeInt(wizard.getCarryingCapacity());
+        writeWords(out, wizard.getKnownSpells().toWords());
+        writeWords(out, wizard.getProtectedFrom().toWords());
+        out.writeInt(wizard.getInventory().size());
+        for (var item : wizard.getInventory())
+            out.writeLong(codec.encode(item));
+    }
+
+    private static void writeWords(DataOutput out, long[] words) throws IOException {
+        out.writeInt(words.length);
+        for (long word : words)
+            out.writeLong(word);
+    }
+
+    /**
+     * Reads a wizard written by writeWizard
+     *
+     * @param in     input
+     * @param codec  codec for the items of the inventory
+     * @param spells spell table of the data, in which all spells are known
+     * @return new wizard with the state read
+     * @throws IOException if in cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    static Wizard readWizard(DataInput in, ItemCodec codec, SpellTable spells) throws IOException {
+        String name = in.readUTF();
+        var level = LEVELS[in.readByte()];
+        int basicHP = in.readInt();
+        int HP = in.readInt();
+        int basicMP = in.readInt();
+        int MP = in.readInt();
+        int money = in.readInt();
+        int carryingCapacity = in.readInt();
+        var knownSpells = (Set<Spell>) readWords(in, spells);
+        var protectedFrom = (Set<AttackingSpell>) readWords(in, spells);
+        Set<Tradeable> inventory = new LinkedHashSet<>();
+        int items = in.readInt();
+        for (int k = 0; k < items; ++k)
+            inventory.add(codec.decode(in.readLong()));
+        return new Wizard(name, level, basicHP, HP, basicMP, MP, money, knownSpells, protectedFrom, carryingCapacity,
+                inventory);
+    }
+
+    private static SpellBitSet<?> readWords(DataInput in, SpellTable spells) throws IOException {
+        var words = new long[in.readInt()];
+        for (int k = 0; k < words.length; ++k)
+            words[k] = in.readLong();
+        return new SpellBitSet<>(spells.toCatalog(words));
+    }
+
+    /**
+     * If path or codec is null, an IllegalArgumentException is thrown; maps the
+     * file at path read-only
+     *
+     * @param path  file written by write
+     * @param codec codec for the items of the inventories
+     * @return the mapped file
+     * @throws IOException if the file cannot be read, is not a valid file of
+     *                     wizards or contains a spell that is not known to
+     *                     SpellCatalog
+     */
+    public static WizardFile open(Path path, ItemCodec codec) throws IOException {
+        if (path == null || codec == null)
+            throw new IllegalArgumentException("Path and codec must not be null");
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+                throw new IOException("Not a wizard file: " + path);
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (in.getInt(H_MAGIC) != MAGIC || in.getInt(H_RECORD_SIZE) != RECORD_SIZE)
+                throw new IOException("Not a wizard file: " + path);
+            if (in.getInt(H_VERSION) != VERSION)
+                throw new IOException("Unsupported version " + in.getInt(H_VERSION) + ": " + path);
+            int count = in.getInt(H_COUNT);
+            if (count < 0 || HEADER_SIZE + (long) RECORD_SIZE * count + in.getLong(H_DATA_SIZE) != size
+                    || in.getInt(H_SPELLS_SIZE) < 0 || in.getInt(H_SPELLS_SIZE) > in.getLong(H_DATA_SIZE))
+                throw new IOException("Truncated wizard file: " + path);
+            var table = new byte[in.getInt(H_SPELLS_SIZE)];
+            in.get(HEADER_SIZE + RECORD_SIZE * count, table);
+            var spells = SpellTable.read(new DataInputStream(new ByteArrayInputStream(table)));
+            spells.checkKnown(path);
+            return new WizardFile(in, codec, count, spells);
+        }
+    }
+
+    /**
+     * Returns the number of wizards in the file
+     *
+     * @return number of wizards
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the sequence of the first journal event that is not contained in
+     * the snapshot
+     *
+     * @return journal sequence of the snapshot
+     */
+    public long getSequence() {
+        return buffer.getLong(H_SEQUENCE);
+    }
+
+    /**
+     * If i is not the index of a wizard, an IllegalArgumentException is thrown;
+     * returns the position of the record of wizard i
+     *
+     * @param i index of the wizard
+     * @return position of the record
+     */
+    private int record(int i) {
+        if (i < 0 || i >= count)
+            throw new IllegalArgumentException("No wizard with index " + i);
+        return HEADER_SIZE + i * RECORD_SIZE;
+    }
+
+    public String getName(int i) {
+        int record = record(i);
+        var bytes = new byte[buffer.getInt(record + R_NAME_LENGTH)];
+        buffer.get((int) buffer.getLong(record + R_NAME), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public MagicLevel getLevel(int i) {
+        return LEVELS[buffer.get(record(i) + R_LEVEL)];
+    }
+
+    public int getBasicHP(int i) {
+        return buffer.getInt(record(i) + R_BASIC_HP);
+    }
+
+    public int getHP(int i) {
+        return buffer.getInt(record(i) + R_HP);
+    }
+
+    public int getBasicMP(int i) {
+        return buffer.getInt(record(i) + R_BASIC_MP);
+    }
+
+    public int getMP(int i) {
+        return buffer.getInt(record(i) + R_MP);
+    }
+
+    public int getMoney(int i) {
+        return buffer.getInt(record(i) + R_MONEY);
+    }
+
+    public int getCarryingCapacity(int i) {
+        return buffer.getInt(record(i) + R_CAPACITY);
+    }
+
+    /**
+     * Returns true, if wizard i knows s; reads a single word of the file
+     *
+     * @param i index of the wizard
+     * @param s spell
+     * @return true, if wizard i knows s
+     */
+    public boolean knows(int i, Spell s) {
+        return testBit((int) buffer.getLong(record(i) + R_SPELLS), s);
+    }
+
+    /**
+     * Returns true, if wizard i is protected against s; reads a single word of
+     * the file
+     *
+     * @param i index of the wizard
+     * @param s spell
+     * @return true, if wizard i is protected against s
+     */
+    public boolean isProtected(int i, Spell s) {
+        return testBit((int) buffer.getLong(record(i) + R_PROTECTIONS), s);
+    }
+
+    private boolean testBit(int position, Spell s) {
+        if (s == null)
+            throw new IllegalArgumentException("Spell must not be null");
+        int id = spells.toData(s.getId());
+        if (id < 0 || (id >>> 6) >= buffer.getInt(position))
+            return false;
+        return (buffer.getLong(position + 4 + 8 * (id >>> 6)) & (1L << id)) != 0;
+    }
+
+    private SpellBitSet<?> readWords(int position) {
+        var words = new long[buffer.getInt(position)];
+        for (int k = 0; k < words.length; ++k)
+            words[k] = buffer.getLong(position + 4 + 8 * k);
+        return new SpellBitSet<>(spells.toCatalog(words));
+    }
+
+    /**
+     * Returns the number of items in the inventory of wizard i
+     *
+     * @param i index of the wizard
+     * @return number of items
+     */
+    public int getInventorySize(int i) {
+        return buffer.getInt((int) buffer.getLong(record(i) + R_INVENTORY));
+    }
+
+    /**
+     * Creates the Wizard stored in record i; the items are decoded with the
+     * codec of the file
+     *
+     * @param i index of the wizard
+     * @return new wizard with the state stored in the file
+     */
+    @SuppressWarnings("unchecked")
+    public Wizard load(int i) {
+        int record = record(i);
+        var knownSpells = (Set<Spell>) readWords((int) buffer.getLong(record + R_SPELLS));
+        var protectedFrom = (Set<AttackingSpell>) readWords((int) buffer.getLong(record + R_PROTECTIONS));
+        int position = (int) buffer.getLong(record + R_INVENTORY);
+        Set<Tradeable> inventory = new LinkedHashSet<>();
+        int items = buffer.getInt(position);
+        for (int k = 0; k < items; ++k)
+            inventory.add(codec.decode(buffer.getLong(position + 4 + 8 * k)));
+        return new Wizard(getName(i), getLevel(i), getBasicHP(i), getHP(i), getBasicMP(i), getMP(i), getMoney(i),
+                knownSpells, protectedFrom, getCarryingCapacity(i), inventory);
+    }
+
+    /**
+     * Creates all wizards of the file (see load)
+     *
+     * @return list of the wizards in the order of the file
+     */
+    public List<Wizard> loadAll() {
+        List<Wizard> wizards = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i)
+            wizards.add(load(i));
+        return wizards;
+    }
+}
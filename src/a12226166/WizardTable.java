@@ -0,0 +1,729 @@
+package a12226166;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Column store of many wizards. The scalar attributes of a wizard (name, level,
+ * basicHP, HP, basicMP, MP, money, carryingCapacity) are kept in one array per
+ * attribute, indexed by the id of the wizard (0, 1, 2, ... in the order of
+ * add). Known spells, protections and inventory are only allocated once the
+ * wizard gets the first element, so an entity without them costs a few dozen
+ * bytes and bulk updates of one attribute run over a single array.
+ * <p>
+ * get returns a lightweight View of a wizard, which behaves like a Wizard and
+ * can be used wherever a MagicEffectRealization, Trader or MagicSource is
+ * expected. Views are created on demand; views with the same table and id are
+ * equal. All trades of the wizards of one table are serialized by one trade
+ * lock (the table). Like Wizard, a table is not thread safe.
+ */
+public class WizardTable {
+    private static final MagicLevel[] LEVELS = MagicLevel.values();
+
+    /**
+     * Position of the wizards of this table in the global order of trade locks
+     */
+    private final long lockOrder = TradeLock.nextId();
+    private final RandomGenerator random;
+    private int size;
+
+    private String[] names;
+    /**
+     * Ordinal of the MagicLevel of every wizard
+     */
+    private byte[] levels;
+    private int[] basicHP;
+    private int[] HP;
+    private int[] basicMP;
+    private int[] MP;
+    private int[] money;
+    private int[] carryingCapacity;
+    /**
+     * Running total of the weights of every inventory
+     */
+    private int[] inventoryWeight;
+    /**
+     * Elements are null until the wizard learns the first spell
+     */
+    private SpellBitSet<Spell>[] knownSpells;
+    /**
+     * The spells of every knownSpells element in an IndexedSet, so that a
+     * random spell is picked in O(1); allocated together with knownSpells
+     */
+    private IndexedSet<Spell>[] spellLists;
+    /**
+     * Elements are null until the wizard gets the first protection
+     */
+    private SpellBitSet<AttackingSpell>[] protectedFrom;
+    /**
+     * Elements are null until the wizard gets the first item
+     */
+    private IndexedSet<Tradeable>[] inventories;
+    /**
+     * The ItemStacks of every inventory by their kind (see ItemStack.put);
+     * allocated together with the inventory
+     */
+    private Map<Long, ItemStack>[] stacks;
+
+    /**
+     * Creates an empty table
+     */
+    public WizardTable() {
+        this(16, new SplittableRandom());
+    }
+
+    /**
+     * If initialCapacity is negative or random is null, an
+     * IllegalArgumentException is thrown
+     *
+     * @param initialCapacity number of wizards the table can hold without growing
+     * @param random          random generator for the choice of stolen items and
+     *                        random spells
+     */
+    @SuppressWarnings("unchecked")
+    public WizardTable(int initialCapacity, RandomGenerator random) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Initial capacity must not be negative");
+        if (random == null)
+            throw new IllegalArgumentException("Random generator must not be null");
+        this.random = random;
+        names = new String[initialCapacity];
+        levels = new byte[initialCapacity];
+        basicHP = new int[initialCapacity];
+        HP = new int[initialCapacity];
+        basicMP = new int[initialCapacity];
+        MP = new int[initialCapacity];
+        money = new int[initialCapacity];
+        carryingCapacity = new int[initialCapacity];
+        inventoryWeight = new int[initialCapacity];
+        knownSpells = (SpellBitSet<Spell>[]) new SpellBitSet<?>[initialCapacity];
+        spellLists = (IndexedSet<Spell>[]) new IndexedSet<?>[initialCapacity];
+        protectedFrom = (SpellBitSet<AttackingSpell>[]) new SpellBitSet<?>[initialCapacity];
+        inventories = (IndexedSet<Tradeable>[]) new IndexedSet<?>[initialCapacity];
+        stacks = (Map<Long, ItemStack>[]) new Map<?, ?>[initialCapacity];
+    }
+
+    /**
+     * Adds a wizard without spells, protections and items; the same values are
+     * rejected with an IllegalArgumentException as by the constructor of Wizard
+     *
+     * @param name             name
+     * @param level            magic level
+     * @param basicHP          basic health points
+     * @param HP               current health points
+     * @param basicMP          basic mana points
+     * @param MP               current mana points
+     * @param money            money
+     * @param carryingCapacity maximum carrying capacity
+     * @return id of the new wizard
+     */
+    public int add(String name, MagicLevel level, int basicHP, int HP, int basicMP, int MP, int money,
+                   int carryingCapacity) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("Name must not be null or empty");
+        if (level == null)
+            throw new IllegalArgumentException("MagicLevel must not be null");
+        if (basicHP < 0 || HP < 0 || basicMP < level.toMana() || MP < 0 || money < 0 || carryingCapacity < 0)
+            throw new IllegalArgumentException("Values must not be negative");
+
+        if (size == names.length)
+            grow();
+        int id = size++;
+        names[id] = name;
+        levels[id] = (byte) level.ordinal();
+        this.basicHP[id] = basicHP;
+        this.HP[id] = HP;
+        this.basicMP[id] = basicMP;
+        this.MP[id] = MP;
+        this.money[id] = money;
+        this.carryingCapacity[id] = carryingCapacity;
+        return id;
+    }
+
+    /**
+     * Doubles the capacity of all columns
+     */
+    private void grow() {
+        int capacity = Math.max(16, names.length * 2);
+        names = Arrays.copyOf(names, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        basicHP = Arrays.copyOf(basicHP, capacity);
+        HP = Arrays.copyOf(HP, capacity);
+        basicMP = Arrays.copyOf(basicMP, capacity);
+        MP = Arrays.copyOf(MP, capacity);
+        money = Arrays.copyOf(money, capacity);
+        carryingCapacity = Arrays.copyOf(carryingCapacity, capacity);
+        inventoryWeight = Arrays.copyOf(inventoryWeight, capacity);
+        knownSpells = Arrays.copyOf(knownSpells, capacity);
+        spellLists = Arrays.copyOf(spellLists, capacity);
+        protectedFrom = Arrays.copyOf(protectedFrom, capacity);
+        inventories = Arrays.copyOf(inventories, capacity);
+        stacks = Arrays.copyOf(stacks, capacity);
+    }
+
+    /**
+     * Returns the number of wizards in the table
+     *
+     * @return number of wizards
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * If id is not the id of a wizard of this table, an IllegalArgumentException
+     * is thrown
+     *
+     * @param id id to check
+     */
+    private void checkId(int id) {
+        if (id < 0 || id >= size)
+            throw new IllegalArgumentException("No wizard with id " + id);
+    }
+
+    /**
+     * Returns a view of the wizard with the given id
+     *
+     * @param id id of the wizard
+     * @return view of the wizard
+     */
+    public View get(int id) {
+        checkId(id);
+        return new View(id);
+    }
+
+    public String getName(int id) {
+        checkId(id);
+        return names[id];
+    }
+
+    public MagicLevel getLevel(int id) {
+        checkId(id);
+        return LEVELS[levels[id]];
+    }
+
+    public int getHP(int id) {
+        checkId(id);
+        return HP[id];
+    }
+
+    public int getBasicHP(int id) {
+        checkId(id);
+        return basicHP[id];
+    }
+
+    public int getMP(int id) {
+        checkId(id);
+        return MP[id];
+    }
+
+    public int getBasicMP(int id) {
+        checkId(id);
+        return basicMP[id];
+    }
+
+    public int getMoney(int id) {
+        checkId(id);
+        return money[id];
+    }
+
+    public int getCarryingCapacity(int id) {
+        checkId(id);
+        return carryingCapacity[id];
+    }
+
+    /**
+     * Returns the number of wizards that are not dead; a single pass over the HP
+     * column
+     *
+     * @return number of living wizards
+     */
+    public int countAlive() {
+        int alive = 0;
+        for (int i = 0; i < size; ++i)
+            if (HP[i] != 0)
+                ++alive;
+        return alive;
+    }
+
+    /**
+     * Applies effect with amount to all wizards of the table (e.g. a storm or a
+     * blessing); same as applyToRange(effect, 0, size(), amount)
+     *
+     * @param effect kind of the effect
+     * @param amount amount or percentage of the effect
+     */
+    public void applyToAll(EffectKind effect, int amount) {
+        applyToRange(effect, 0, size, amount);
+    }
+
+    /**
+     * If effect is null, from and to are not a range of ids, or amount is
+     * negative (or greater than 100 for a percentage), an
+     * IllegalArgumentException is thrown. Applies effect with amount to the
+     * wizards from to to-1, with exactly the results of the methods of Wizard
+     * (e.g. HP becomes max(0, HP - (int) (basicHP * (amount / 100.0))) for
+     * DAMAGE_PERCENT). Protections are not checked, as in EffectKind.applyTo.
+     * <p>
+     * Every kind of effect is a single loop over the HP or MP column (and the
+     * basicHP or basicMP column for percentages) without calls or branches, which
+     * the JIT compiler can unroll and vectorize.
+     *
+     * @param effect kind of the effect
+     * @param from   id of the first wizard (inclusive)
+     * @param to     id of the last wizard (exclusive)
+     * @param amount amount or percentage of the effect
+     */
+    public void applyToRange(EffectKind effect, int from, int to, int amount) {
+        if (effect == null)
+            throw new IllegalArgumentException("Effect must not be null");
+        if (from < 0 || from > to || to > size)
+            throw new IllegalArgumentException("Invalid range of ids");
+        if (amount < 0 || effect.isPercentage() && amount > 100)
+            throw new IllegalArgumentException("Amount must not be negative and percentage not greater than 100");
+        switch (effect) {
+            case DAMAGE -> subtractClamped(HP, from, to, amount);
+            case DAMAGE_PERCENT -> subtractPercentClamped(HP, basicHP, from, to, amount);
+            case WEAKEN -> subtractClamped(MP, from, to, amount);
+            case WEAKEN_PERCENT -> subtractPercentClamped(MP, basicMP, from, to, amount);
+            case HEAL -> add(HP, from, to, amount);
+            case HEAL_PERCENT -> addPercent(HP, basicHP, from, to, amount);
+            case ENFORCE -> add(MP, from, to, amount);
+            case ENFORCE_PERCENT -> addPercent(MP, basicMP, from, to, amount);
+        }
+    }
+
+    private static void subtractClamped(int[] values, int from, int to, int amount) {
+        for (int i = from; i < to; ++i)
+            values[i] = Math.max(0, values[i] - amount);
+    }
+
+    private static void subtractPercentClamped(int[] values, int[] basic, int from, int to, int percentage) {
+        double factor = percentage / 100.0;
+        for (int i = from; i < to; ++i)
+            values[i] = Math.max(0, values[i] - (int) (basic[i] * factor));
+    }
+
+    private static void add(int[] values, int from, int to, int amount) {
+        for (int i = from; i < to; ++i)
+            values[i] += amount;
+    }
+
+    private static void addPercent(int[] values, int[] basic, int from, int to, int percentage) {
+        double factor = percentage / 100.0;
+        for (int i = from; i < to; ++i)
+            values[i] += (int) (basic[i] * factor);
+    }
+
+    /**
+     * A wizard of a WizardTable; has the same behavior as Wizard, but all state
+     * is kept in the table
+     */
+    public final class View implements MagicEffectRealization, Trader, MagicSource {
+        private final int id;
+
+        private View(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Returns the id of the wizard in the table
+         *
+         * @return id of the wizard
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Returns the table of the wizard
+         *
+         * @return table of the wizard
+         */
+        public WizardTable getTable() {
+            return WizardTable.this;
+        }
+
+        /**
+         * See Wizard.isDead
+         *
+         * @return true, if the wizard is dead
+         */
+        public boolean isDead() {
+            return HP[id] == 0;
+        }
+
+        /**
+         * See Wizard.learn
+         *
+         * @param s spell to learn
+         * @return true, if the spell was learned
+         */
+        public boolean learn(Spell s) {
+            if (s == null)
+                throw new IllegalArgumentException("Spell must not be null");
+            if (isDead())
+                return false;
+            if (knownSpells[id] == null) {
+                knownSpells[id] = new SpellBitSet<>();
+                spellLists[id] = new IndexedSet<>();
+            }
+            if (!knownSpells[id].add(s))
+                return false;
+            spellLists[id].add(s);
+            return true;
+        }
+
+        /**
+         * See Wizard.forget
+         *
+         * @param s spell to forget
+         * @return true, if the spell was forgotten
+         */
+        public boolean forget(Spell s) {
+            if (s == null)
+                throw new IllegalArgumentException("Spell must not be null");
+            if (isDead() || knownSpells[id] == null)
+                return false;
+            if (!knownSpells[id].remove(s))
+                return false;
+            spellLists[id].remove(s);
+            return true;
+        }
+
+        /**
+         * Returns true, if the wizard knows s
+         *
+         * @param s spell
+         * @return true, if the wizard knows s
+         */
+        private boolean knows(Spell s) {
+            return knownSpells[id] != null && knownSpells[id].contains(s);
+        }
+
+        /**
+         * See Wizard.castSpell
+         *
+         * @param s      spell to be cast
+         * @param target target of the spell to cast
+         * @return true, if cast was called, false otherwise
+         */
+        public boolean castSpell(Spell s, MagicEffectRealization target) {
+            if (s == null || target == null)
+                throw new IllegalArgumentException("Spell and target must not be null");
+            if (isDead() || !knows(s))
+                return false;
+            s.cast(this, target);
+            return true;
+        }
+
+        /**
+         * See Wizard.castRandomSpell
+         *
+         * @param target target of the spell to cast
+         * @return false, if the wizard does not know a spell, otherwise the result
+         * of the delegation to castSpell
+         */
+        public boolean castRandomSpell(MagicEffectRealization target) {
+            var spells = spellLists[id];
+            if (spells == null || spells.isEmpty())
+                return false;
+            return castSpell(spells.get(random.nextInt(spells.size())), target);
+        }
+
+        /**
+         * See Wizard.useItem; of an ItemStack, a single item is split off (see
+         * ItemStack.unstack) and used
+         *
+         * @param item   item to be used
+         * @param target target on which item is to be used on
+         * @return true, if useOn was called, false otherwise
+         */
+        public boolean useItem(Tradeable item, MagicEffectRealization target) {
+            if (item == null || target == null)
+                throw new IllegalArgumentException("Item and target must not be null");
+            if (isDead() || !possesses(item))
+                return false;
+            Tradeable used = item instanceof ItemStack stack ? ItemStack.unstack(inventories[id], stacks[id], stack)
+                    : item;
+            used.useOn(target);
+            Journal.use(this, target, item instanceof ItemStack stack ? stack.withCount(1) : item);
+            return true;
+        }
+
+        /**
+         * See Wizard.sellItem
+         *
+         * @param item   item to be sold
+         * @param target object the item is sold to (buyer)
+         * @return true, if purchase returned true, false otherwise
+         */
+        public boolean sellItem(Tradeable item, Trader target) {
+            if (item == null || target == null)
+                throw new IllegalArgumentException("Item and target must not be null");
+            if (isDead())
+                return false;
+            return item.purchase(this, target);
+        }
+
+        /**
+         * Same format as Wizard.toString
+         *
+         * @return string representation of the wizard
+         */
+        @Override
+        public String toString() {
+            return String.format("[%s(%s): %d/%d %d/%d; %d %s; knows %s; carries %s]", names[id], LEVELS[levels[id]],
+                    HP[id], basicHP[id], MP[id], basicMP[id], money[id], money[id] == 1 ? "Knut" : "Knuts",
+                    knownSpells[id] == null ? "[]" : knownSpells[id], inventories[id] == null ? "[]" : inventories[id]);
+        }
+
+        /**
+         * Views are equal, if they have the same table and id
+         *
+         * @param o object to compare with
+         * @return true, if o is a view of the same wizard
+         */
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof View && ((View) o).id == id && ((View) o).getTable() == WizardTable.this;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(WizardTable.this) + id;
+        }
+
+        // MagicSource Interface
+
+        @Override
+        public boolean provideMana(MagicLevel levelNeeded, int manaAmount) {
+            if (levelNeeded == null || manaAmount < 0)
+                throw new IllegalArgumentException("Level needed must not be null and mana amount must not be negative");
+            if (isDead() || levels[id] < levelNeeded.ordinal() || MP[id] < manaAmount)
+                return false;
+            MP[id] -= manaAmount;
+            return true;
+        }
+
+        // Trader Interface
+
+        @Override
+        public boolean possesses(Tradeable item) {
+            if (item == null)
+                throw new IllegalArgumentException("Item must not be null");
+            return inventories[id] != null && ItemStack.holds(inventories[id], stacks[id], item);
+        }
+
+        @Override
+        public boolean canAfford(int amount) {
+            if (amount < 0)
+                throw new IllegalArgumentException("Amount must not be negative");
+            return money[id] >= amount;
+        }
+
+        @Override
+        public boolean hasCapacity(int weight) {
+            if (weight < 0)
+                throw new IllegalArgumentException("Weight must not be negative");
+            return inventoryWeight[id] + weight <= carryingCapacity[id];
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return Math.max(0, carryingCapacity[id] - inventoryWeight[id]);
+        }
+
+        @Override
+        public boolean pay(int amount) {
+            if (amount < 0)
+                throw new IllegalArgumentException("Amount must not be negative");
+            if (isDead() || money[id] < amount)
+                return false;
+            money[id] -= amount;
+            return true;
+        }
+
+        @Override
+        public boolean earn(int amount) {
+            if (amount < 0)
+                throw new IllegalArgumentException("Amount must not be negative");
+            if (isDead())
+                return false;
+            money[id] += amount;
+            return true;
+        }
+
+        @Override
+        public boolean addToInventory(Tradeable item) {
+            if (item == null)
+                throw new IllegalArgumentException("Item must not be null");
+            if (!hasCapacity(item.getWeight()))
+                return false;
+            if (inventories[id] == null) {
+                inventories[id] = new IndexedSet<>();
+                stacks[id] = new HashMap<>();
+            }
+            if (!ItemStack.put(inventories[id], stacks[id], item))
+                return false;
+            inventoryWeight[id] += item.getWeight();
+            return true;
+        }
+
+        @Override
+        public boolean removeFromInventory(Tradeable item) {
+            if (item == null)
+                throw new IllegalArgumentException("Item must not be null");
+            if (inventories[id] == null || !ItemStack.take(inventories[id], stacks[id], item))
+                return false;
+            inventoryWeight[id] -= item.getWeight();
+            return true;
+        }
+
+        @Override
+        public boolean canSteal() {
+            return !isDead();
+        }
+
+        @Override
+        public boolean steal(Trader thief) {
+            if (thief == null)
+                throw new IllegalArgumentException("Thief must not be null");
+            var inventory = inventories[id];
+            if (!thief.canSteal() || inventory == null || inventory.isEmpty())
+                return false;
+            var item = ItemStack.single(inventory.get(random.nextInt(inventory.size())));
+            removeFromInventory(item);
+            boolean carried = thief.addToInventory(item);
+            Journal.trade(Journal.Type.STEAL, this, thief, item, carried ? 1 : 0, 0);
+            return carried;
+        }
+
+        @Override
+        public boolean isLootable() {
+            return isDead();
+        }
+
+        @Override
+        public boolean canLoot() {
+            return !isDead();
+        }
+
+        @Override
+        public boolean loot(Trader looter) {
+            if (looter == null)
+                throw new IllegalArgumentException("Looter must not be null");
+            var inventory = inventories[id];
+            if (!looter.canLoot() || !isLootable() || inventory == null)
+                return false;
+            boolean success = false;
+            for (var item : inventory) {
+                boolean carried = looter.addToInventory(item);
+                Journal.trade(Journal.Type.LOOT, this, looter, item, carried ? 1 : 0, 0);
+                success |= carried;
+            }
+            inventories[id] = null;
+            stacks[id] = null;
+            inventoryWeight[id] = 0;
+            return success;
+        }
+
+        /**
+         * Returns the table, so all trades of the wizards of a table are
+         * serialized
+         *
+         * @return the table of the wizard
+         */
+        @Override
+        public Object tradeLock() {
+            return WizardTable.this;
+        }
+
+        @Override
+        public long lockOrder() {
+            return lockOrder;
+        }
+
+        // MagicEffectRealization Interface
+
+        @Override
+        public void takeDamage(int amount) {
+            MagicEffectRealization.super.takeDamage(amount);
+            HP[id] = Math.max(0, HP[id] - amount);
+        }
+
+        @Override
+        public void takeDamagePercent(int percentage) {
+            MagicEffectRealization.super.takeDamagePercent(percentage);
+            takeDamage((int) (basicHP[id] * (percentage / 100.0)));
+        }
+
+        @Override
+        public void weakenMagic(int amount) {
+            MagicEffectRealization.super.weakenMagic(amount);
+            MP[id] = Math.max(0, MP[id] - amount);
+        }
+
+        @Override
+        public void weakenMagicPercent(int percentage) {
+            MagicEffectRealization.super.weakenMagicPercent(percentage);
+            weakenMagic((int) (basicMP[id] * (percentage / 100.0)));
+        }
+
+        @Override
+        public void heal(int amount) {
+            MagicEffectRealization.super.heal(amount);
+            HP[id] += amount;
+        }
+
+        @Override
+        public void healPercent(int percentage) {
+            MagicEffectRealization.super.healPercent(percentage);
+            heal((int) (basicHP[id] * (percentage / 100.0)));
+        }
+
+        @Override
+        public void enforceMagic(int amount) {
+            MagicEffectRealization.super.enforceMagic(amount);
+            MP[id] += amount;
+        }
+
+        @Override
+        public void enforceMagicPercent(int percentage) {
+            MagicEffectRealization.super.enforceMagicPercent(percentage);
+            enforceMagic((int) (basicMP[id] * (percentage / 100.0)));
+        }
+
+        @Override
+        public boolean isProtected(Spell s) {
+            MagicEffectRealization.super.isProtected(s);
+            return s instanceof AttackingSpell && protectedFrom[id] != null && protectedFrom[id].contains(s);
+        }
+
+        @Override
+        public void setProtection(Set<AttackingSpell> attacks) {
+            MagicEffectRealization.super.setProtection(attacks);
+            if (protectedFrom[id] == null)
+                protectedFrom[id] = new SpellBitSet<>();
+            protectedFrom[id].addAll(attacks);
+        }
+
+        @Override
+        public void removeProtection(Set<AttackingSpell> attacks) {
+            MagicEffectRealization.super.removeProtection(attacks);
+            if (protectedFrom[id] != null)
+                protectedFrom[id].removeAll(attacks);
+        }
+
+        @Override
+        public boolean consumeProtection(AttackingSpell s) {
+            if (s == null)
+                throw new IllegalArgumentException("Spell cannot be null");
+            return protectedFrom[id] != null && protectedFrom[id].remove(s);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package jmh;
+
+import a12226166.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A global effect (one DAMAGE_PERCENT and one HEAL_PERCENT, so HP do not
+ * drift) on every wizard: per object on Wizard instances versus
+ * WizardTable.applyToAll over the columns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BulkEffectBenchmark {
+    @Param({"1024", "1048576"})
+    public int population;
+
+    private Wizard[] wizards;
+    private WizardTable table;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new SplittableRandom(1);
+        wizards = new Wizard[population];
+        table = new WizardTable(population, new SplittableRandom(2));
+        for (int i = 0; i < population; ++i) {
+            int basicHP = 1 + random.nextInt(1000);
+            wizards[i] = new Wizard("Wizard", MagicLevel.NOOB, basicHP, Fixtures.VITALS, 100, 100, 0,
+                    new HashSet<>(), new HashSet<>(), 0, new HashSet<>());
+            table.add("Wizard", MagicLevel.NOOB, basicHP, Fixtures.VITALS, 100, 100, 0, 0);
+        }
+    }
+
+    @Benchmark
+    public void perObject() {
+        EffectKind.DAMAGE_PERCENT.applyTo(wizards, 10);
+        EffectKind.HEAL_PERCENT.applyTo(wizards, 10);
+    }
+
+    @Benchmark
+    public void columns() {
+        table.applyToAll(EffectKind.DAMAGE_PERCENT, 10);
+        table.applyToAll(EffectKind.HEAL_PERCENT, 10);
+    }
+}
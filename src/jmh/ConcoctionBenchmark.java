@@ -0,0 +1,43 @@
+package jmh;
+
+import a12226166.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concoction.useOn and toString, parameterized by the number of spells cast by
+ * the concoction. Run with -prof gc to see the allocation rate of toString.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ConcoctionBenchmark {
+    @Param({"0", "2", "16"})
+    public int spellCount;
+
+    private Concoction concoction;
+    private Wizard target;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        List<Spell> spells = Fixtures.spells("Concoction", spellCount);
+        // +1 HP and -1 MP, and the spells alternate between -1 HP and +1 HP
+        concoction = new Concoction("Brew", Integer.MAX_VALUE, 1, 1, 1, -1, spells);
+        target = Fixtures.wizard("Target", 1);
+    }
+
+    @Benchmark
+    public void useOn() {
+        concoction.useOn(target);
+    }
+
+    @Benchmark
+    public String toStringBenchmark() {
+        return concoction.toString();
+    }
+}
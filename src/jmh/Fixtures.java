@@ -0,0 +1,102 @@
+package jmh;
+
+import a12226166.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Factory methods for the objects used by the benchmarks. All wizards are
+ * seeded, so every fork runs the same sequence of random choices.
+ */
+final class Fixtures {
+    /**
+     * HP and MP of the wizards; far away from 0 and Integer.MAX_VALUE, so that
+     * the effects of one measurement iteration neither kill nor overflow them
+     */
+    static final int VITALS = 1_000_000_000;
+    /**
+     * Carrying capacity and money of the wizards; large enough for every
+     * inventory size
+     */
+    static final int PLENTY = 1_000_000_000;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns size spells without mana cost; every second spell deals 1 damage,
+     * the others heal 1 HP, so casting random spells does not drift HP
+     *
+     * @param prefix prefix of the names, so different benchmarks define different
+     *               spells
+     * @param size   number of spells
+     * @return list of size distinct spells
+     */
+    static List<Spell> spells(String prefix, int size) {
+        List<Spell> spells = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i)
+            spells.add(i % 2 == 0
+                    ? new AttackingSpell(prefix + " Attack " + i, 0, MagicLevel.NOOB, true, false, 1)
+                    : new HealingSpell(prefix + " Heal " + i, 0, MagicLevel.NOOB, true, false, 1));
+        return spells;
+    }
+
+    /**
+     * Returns size distinct health potions of weight 1 with practically
+     * unlimited usages
+     *
+     * @param size number of potions
+     * @return list of size potions
+     */
+    static List<Tradeable> items(int size) {
+        List<Tradeable> items = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i)
+            items.add(new HealthPotion("Potion " + i, Integer.MAX_VALUE, 1, 1, 1));
+        return items;
+    }
+
+    /**
+     * Returns a living master wizard with the given spells and inventory
+     *
+     * @param name      name
+     * @param spells    known spells
+     * @param inventory inventory
+     * @param seed      seed of the random generator of the wizard
+     * @return new wizard
+     */
+    static Wizard wizard(String name, Set<Spell> spells, Set<Tradeable> inventory, long seed) {
+        return wizard(name, spells, inventory, PLENTY, seed);
+    }
+
+    /**
+     * Returns a living master wizard with the given spells, inventory and
+     * carrying capacity
+     *
+     * @param name             name
+     * @param spells           known spells
+     * @param inventory        inventory
+     * @param carryingCapacity carrying capacity; at least the weight of inventory
+     * @param seed             seed of the random generator of the wizard
+     * @return new wizard
+     */
+    static Wizard wizard(String name, Set<Spell> spells, Set<Tradeable> inventory, int carryingCapacity,
+                         long seed) {
+        return new Wizard(name, MagicLevel.MASTER, VITALS, VITALS, VITALS, VITALS, PLENTY,
+                spells, new HashSet<>(), carryingCapacity, inventory, new SplittableRandom(seed));
+    }
+
+    /**
+     * Returns a living master wizard without spells and items
+     *
+     * @param name name
+     * @param seed seed of the random generator of the wizard
+     * @return new wizard
+     */
+    static Wizard wizard(String name, long seed) {
+        return wizard(name, new HashSet<>(), new HashSet<>(), seed);
+    }
+}
@@ -0,0 +1,85 @@
+package jmh;
+
+import a12226166.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trades between two wizards (Tradeable.purchase, Wizard.steal and
+ * Wizard.loot), parameterized by the size of the inventories. purchase and
+ * steal are measured as a round trip, so both inventories keep their size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TradeBenchmark {
+    @Param({"16", "1024", "65536"})
+    public int inventorySize;
+
+    private Wizard seller;
+    private Wizard buyer;
+    private Tradeable item;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        List<Tradeable> items = Fixtures.items(inventorySize);
+        item = items.get(0);
+        seller = Fixtures.wizard("Seller", new HashSet<>(), new HashSet<>(items), 1);
+        buyer = Fixtures.wizard("Buyer", new HashSet<>(), new HashSet<>(Fixtures.items(inventorySize)), 2);
+    }
+
+    /**
+     * Sells item to buyer and back, so money and inventories do not change
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean purchase() {
+        return item.purchase(seller, buyer) & item.purchase(buyer, seller);
+    }
+
+    /**
+     * buyer steals a random item from seller and seller steals a random item
+     * back
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean steal() {
+        return seller.steal(buyer) & buyer.steal(seller);
+    }
+
+    /**
+     * Looting empties the victim, so every invocation gets a new dead victim
+     * and an empty looter; the time of the setup is not measured, but limits
+     * the accuracy for small inventories
+     */
+    @State(Scope.Thread)
+    public static class LootState {
+        private List<Tradeable> items;
+        private Wizard victim;
+        private Wizard looter;
+
+        @Setup(Level.Trial)
+        public void createItems(TradeBenchmark benchmark) {
+            items = Fixtures.items(benchmark.inventorySize);
+        }
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            victim = new Wizard("Victim", MagicLevel.NOOB, 1, 0, MagicLevel.NOOB.toMana(), 0, 0,
+                    new HashSet<>(), new HashSet<>(), Fixtures.PLENTY, new HashSet<>(items));
+            looter = Fixtures.wizard("Looter", 3);
+        }
+    }
+
+    @Benchmark
+    public void loot(LootState state, Blackhole blackhole) {
+        blackhole.consume(state.victim.loot(state.looter));
+    }
+}
@@ -0,0 +1,102 @@
+package jmh;
+
+import a12226166.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spell casting, item usage and inventory operations of a single wizard,
+ * parameterized by the size of its spellbook and inventory. Every benchmark
+ * leaves the wizards in the same state as before (up to random drift), so the
+ * state is only rebuilt once per iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WizardBenchmark {
+    @Param({"1", "64", "1024"})
+    public int spellbookSize;
+    @Param({"16", "1024", "65536"})
+    public int inventorySize;
+
+    private Wizard caster;
+    /**
+     * Wizard with the same inventory as caster, whose carrying capacity is
+     * exactly the weight of its inventory
+     */
+    private Wizard full;
+    private Wizard target;
+    private Spell attack;
+    private Spell heal;
+    private List<Tradeable> items;
+    private Tradeable extra;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        List<Spell> spells = Fixtures.spells("Wizard", Math.max(2, spellbookSize));
+        attack = spells.get(0);
+        heal = spells.get(1);
+        items = Fixtures.items(inventorySize);
+        caster = Fixtures.wizard("Caster", new HashSet<>(spells), new HashSet<>(items), 1);
+        full = Fixtures.wizard("Full", new HashSet<>(), new HashSet<>(items), inventorySize, 3);
+        target = Fixtures.wizard("Target", 2);
+        extra = new HealthPotion("Extra", 1, 1, 1, 1);
+        next = 0;
+    }
+
+    /**
+     * One damaging and one healing castSpell, so the target keeps its HP
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean castSpell() {
+        return caster.castSpell(attack, target) & caster.castSpell(heal, target);
+    }
+
+    @Benchmark
+    public boolean castRandomSpell() {
+        return caster.castRandomSpell(target);
+    }
+
+    /**
+     * Uses the items of the inventory in turn; every use heals the target by 1
+     */
+    @Benchmark
+    public boolean useItem() {
+        Tradeable item = items.get(next);
+        if (++next == items.size())
+            next = 0;
+        return caster.useItem(item, target);
+    }
+
+    @Benchmark
+    public boolean hasCapacity() {
+        return caster.hasCapacity(1);
+    }
+
+    /**
+     * addToInventory to an inventory of inventorySize items with spare capacity,
+     * followed by removeFromInventory to restore it
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean addToInventory() {
+        return caster.addToInventory(extra) & caster.removeFromInventory(extra);
+    }
+
+    /**
+     * addToInventory to an inventory at its carrying capacity, which is rejected
+     * by the capacity check
+     */
+    @Benchmark
+    public boolean addToFullInventory() {
+        return full.addToInventory(extra);
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * JMH microbenchmarks for the hot paths of a12226166. The benchmarks are
+ * parameterized by spellbook and inventory sizes; throughput is reported per
+ * operation, and the allocation rate per operation is reported with the gc
+ * profiler, e.g. {@code java -jar benchmarks.jar -prof gc}.
+ * <p>
+ * The sources need org.openjdk.jmh:jmh-core and the jmh-generator-annprocess
+ * annotation processor on the class path and are not part of the main sources.
+ */
+package jmh;
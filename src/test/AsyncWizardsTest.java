@@ -0,0 +1,89 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class AsyncWizardsTest {
+    ExecutorService executor;
+    AsyncWizards async;
+    HealthPotion potion;
+    Wizard merchant;
+    Wizard buyer;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+        async = new AsyncWizards(executor);
+        potion = new HealthPotion("Potion", 1, 2, 1, 10);
+        merchant = new Wizard("Merchant", MagicLevel.NOOB, 100, 100, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 10_000, new HashSet<>(Set.of(new ItemStack(potion, 1000))),
+                new SplittableRandom(1));
+        buyer = new Wizard("Buyer", MagicLevel.NOOB, 100, 50, 50, 50, 10_000,
+                new HashSet<>(), new HashSet<>(), 10_000, new HashSet<>(), new SplittableRandom(2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void arguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AsyncWizards(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> async.sellItem(merchant, null, buyer));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> async.steal(merchant, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> async.submit(null, w -> w));
+    }
+
+    @Test
+    void compose() {
+        var single = new ItemStack(potion, 1);
+        var result = async.sellItem(merchant, single, buyer)
+                .thenCompose(sold -> async.useItem(buyer, single, buyer))
+                .thenCompose(used -> async.submit(buyer, Wizard::toString))
+                .join();
+        Assertions.assertTrue(result.startsWith("[Buyer(*): 60/100"));
+        Assertions.assertTrue(result.contains("; 9998 Knuts;"));
+        Assertions.assertFalse(async.useItem(buyer, single, buyer).join());
+    }
+
+    @Test
+    void lanes() {
+        // plain int counters are safe, as actions of a wizard never overlap
+        var counts = new int[2];
+        var futures = new ArrayList<CompletableFuture<?>>();
+        var single = new ItemStack(potion, 1);
+        for (int i = 0; i < 1000; ++i) {
+            futures.add(async.sellItem(merchant, single, buyer));
+            futures.add(async.submit(merchant, w -> ++counts[0]));
+            futures.add(async.submit(buyer, w -> ++counts[1]));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        Assertions.assertEquals(1000, counts[0]);
+        Assertions.assertEquals(1000, counts[1]);
+        Assertions.assertTrue(buyer.possesses(new ItemStack(potion, 1000)));
+        Assertions.assertTrue(merchant.toString().contains("; 2000 Knuts;"));
+        Assertions.assertTrue(buyer.toString().contains("; 8000 Knuts;"));
+    }
+
+    @Test
+    void failure() {
+        var failed = async.submit(merchant, w -> {
+            throw new IllegalStateException("failed");
+        });
+        Assertions.assertThrows(Exception.class, failed::join);
+        // the lane goes on after a failed action
+        Assertions.assertEquals("Merchant", async.submit(merchant, w -> w.toString().substring(1, 9)).join());
+    }
+}
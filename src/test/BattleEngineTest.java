@@ -0,0 +1,72 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+class BattleEngineTest {
+    static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
+    static HealingSpell episkey = new HealingSpell("Episkey", 2, MagicLevel.NOOB, true, false, 1);
+
+    static List<Wizard> army(int size) {
+        List<Wizard> wizards = new ArrayList<>();
+        for (int i = 0; i < size; ++i)
+            wizards.add(new Wizard("Wizard " + i, MagicLevel.ADEPT, 30, 30, 100, 100, 0,
+                    new HashSet<>(Set.of(fireball, episkey)), new HashSet<>(), 0, new HashSet<>(),
+                    new SplittableRandom(i)));
+        return wizards;
+    }
+
+    @Test
+    void constructor() {
+        var pool = ForkJoinPool.commonPool();
+        var wizards = army(3);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BattleEngine(null, pool, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BattleEngine(new ArrayList<>(), pool, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BattleEngine(wizards, 0, pool, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BattleEngine(wizards, 1, null, 0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new BattleEngine(Arrays.asList(wizards.get(0), null), pool, 0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new BattleEngine(Arrays.asList(wizards.get(0), wizards.get(0)), pool, 0));
+        Assertions.assertEquals(1, new BattleEngine(wizards, pool, 0).getPartitions());
+        Assertions.assertEquals(3, new BattleEngine(wizards, 10, pool, 0).getPartitions());
+        Assertions.assertEquals(2, new BattleEngine(army(5), 2, pool, 0).getPartitions());
+    }
+
+    @Test
+    void tick() {
+        var wizards = army(10);
+        var engine = new BattleEngine(wizards, 3, ForkJoinPool.commonPool(), 42);
+        Assertions.assertEquals(10, engine.tick());
+        Assertions.assertEquals(1, engine.getTick());
+        for (var wizard : wizards)
+            Assertions.assertTrue(wizard.toString().contains(" 97/100;") || wizard.toString().contains(" 98/100;"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> engine.run(-1));
+    }
+
+    @Test
+    void deterministic() {
+        var sequential = army(1000);
+        var parallel = army(1000);
+        var pool = new ForkJoinPool(1);
+        var first = new BattleEngine(sequential, 8, pool, 7).run(20);
+        var second = new BattleEngine(parallel, 8, ForkJoinPool.commonPool(), 7).run(20);
+        pool.shutdown();
+        Assertions.assertEquals(20, first.getTicks());
+        Assertions.assertEquals(first.getCasts(), second.getCasts());
+        Assertions.assertEquals(first.getAlive(), second.getAlive());
+        Assertions.assertTrue(first.getAlive() < 1000);
+        for (int i = 0; i < sequential.size(); ++i)
+            Assertions.assertEquals(sequential.get(i).toString(), parallel.get(i).toString());
+        Assertions.assertTrue(second.toString().contains("20 ticks in "));
+    }
+}
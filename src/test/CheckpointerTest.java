@@ -0,0 +1,267 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+class CheckpointerTest {
+    static AttackingSpell fireball = Fixtures.fireball;
+    static ProtectingSpell shield = new ProtectingSpell("Shield", 1, MagicLevel.NOOB, Set.of(fireball));
+    static AttackingSpell ember = new AttackingSpell("Ember", 2, MagicLevel.NOOB, true, false, 7);
+    static HealingSpell balm = new HealingSpell("Balm", 1, MagicLevel.NOOB, true, false, 4);
+    static ProtectingSpell ward = new ProtectingSpell("Ward", 1, MagicLevel.NOOB, Set.of(ember));
+    Path directory;
+    Path journal;
+    Checkpointer checkpointer;
+
+    static List<Wizard> world(List<MagicItem> items) {
+        List<Wizard> world = new ArrayList<>();
+        world.add(Fixtures.wizard("Dude", Set.of(fireball, shield), items));
+        for (int i = 0; i < 8; ++i)
+            world.add(Fixtures.wizard("Wizard " + i, Set.of(fireball), Set.of()));
+        return world;
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("checkpoint");
+        journal = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Journal.uninstall();
+        if (checkpointer != null)
+            checkpointer.close();
+        Fixtures.deleteTrees(directory, journal);
+    }
+
+    static void assertSameWorld(List<Wizard> expected, List<Wizard> actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i)
+            Assertions.assertEquals(expected.get(i).toString(), actual.get(i).toString());
+    }
+
+    @Test
+    void open() {
+        var items = Fixtures.items();
+        var world = world(items);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Checkpointer.open(null, world, items, Fixtures.codec(items), 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Checkpointer.open(directory, null, items, Fixtures.codec(items), 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Checkpointer.open(directory, world, null, Fixtures.codec(items), 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Checkpointer.open(directory, world, items, null, 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Checkpointer.open(directory, world, items, Fixtures.codec(items), 0));
+    }
+
+    @Test
+    void dirtyTracking() {
+        var items = Fixtures.items();
+        var world = world(items);
+        var dude = world.get(0);
+        var prey = world.get(1);
+        Assertions.assertFalse(dude.isDirty());
+        Assertions.assertFalse(dude.learn(fireball));
+        Assertions.assertFalse(dude.isDirty());
+        Assertions.assertTrue(dude.castSpell(fireball, prey));
+        Assertions.assertTrue(dude.isDirty());
+        Assertions.assertTrue(prey.isDirty());
+        Assertions.assertFalse(world.get(2).isDirty());
+        Assertions.assertFalse(items.get(1).isDirty());
+        Assertions.assertTrue(items.get(1).tryUsage());
+        Assertions.assertTrue(items.get(1).isDirty());
+        items.get(2).takeDamagePercent(50);
+        Assertions.assertTrue(items.get(2).isDirty());
+    }
+
+    @Test
+    void deltas() throws IOException {
+        var items = Fixtures.items();
+        var world = world(items);
+        checkpointer = Checkpointer.open(directory, world, items, Fixtures.codec(items), 100);
+        Assertions.assertTrue(Files.exists(directory.resolve(Checkpointer.BASE)));
+        Assertions.assertEquals(0, checkpointer.checkpoint(0));
+
+        var dude = world.get(0);
+        Assertions.assertTrue(dude.castSpell(fireball, world.get(3)));
+        Assertions.assertTrue(dude.useItem(items.get(1), world.get(4)));
+        Assertions.assertEquals(4, checkpointer.checkpoint(0));
+        Assertions.assertFalse(dude.isDirty());
+        Assertions.assertFalse(items.get(1).isDirty());
+        Assertions.assertTrue(items.get(0).give(dude, world.get(5)));
+        Assertions.assertEquals(2, checkpointer.checkpoint(0));
+        checkpointer.sync();
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(4, files.count());
+        }
+
+        var restoredItems = Fixtures.items();
+        assertSameWorld(world, Checkpointer.recover(directory, null, Fixtures.codec(restoredItems)));
+        Assertions.assertEquals(items.toString(), restoredItems.toString());
+    }
+
+    @Test
+    void compaction() throws IOException {
+        var items = Fixtures.items();
+        var world = world(items);
+        checkpointer = Checkpointer.open(directory, world, items, Fixtures.codec(items), 2);
+        var dude = world.get(0);
+        Assertions.assertTrue(dude.useItem(items.get(1), world.get(1)));
+        checkpointer.checkpoint(3);
+        Assertions.assertTrue(dude.castSpell(fireball, world.get(2)));
+        checkpointer.checkpoint(5);
+        checkpointer.sync();
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(2, files.count());
+        }
+        Assertions.assertEquals(5,
+                WizardFile.open(directory.resolve(Checkpointer.BASE), Fixtures.codec(items)).getSequence());
+
+        Assertions.assertTrue(dude.castSpell(shield, dude));
+        checkpointer.checkpoint(6);
+        checkpointer.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> checkpointer.checkpoint(7));
+
+        var restoredItems = Fixtures.items();
+        var restored = Checkpointer.recover(directory, null, Fixtures.codec(restoredItems));
+        assertSameWorld(world, restored);
+        Assertions.assertEquals(items.toString(), restoredItems.toString());
+        checkpointer = Checkpointer.open(directory, restored, restoredItems, Fixtures.codec(restoredItems), 2);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Checkpointer.open(directory, world.subList(0, 2), items, Fixtures.codec(items), 2));
+    }
+
+    @Test
+    void compactionLeftovers() throws IOException {
+        var items = Fixtures.items();
+        var world = world(items);
+        checkpointer = Checkpointer.open(directory, world, items, Fixtures.codec(items), 100);
+        var dude = world.get(0);
+        Assertions.assertTrue(dude.castSpell(fireball, world.get(1)));
+        checkpointer.checkpoint(1);
+        Assertions.assertTrue(dude.useItem(items.get(1), world.get(2)));
+        checkpointer.checkpoint(2);
+        Assertions.assertTrue(dude.castSpell(fireball, world.get(1)));
+        checkpointer.checkpoint(3);
+        checkpointer.sync();
+        var old = new ArrayList<Path>();
+        var contents = new ArrayList<byte[]>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (var delta : files.filter(p -> p.toString().endsWith(".delta")).sorted().toList()) {
+                old.add(delta);
+                contents.add(Files.readAllBytes(delta));
+            }
+        }
+        Assertions.assertEquals(3, old.size());
+        checkpointer.compact();
+        checkpointer.sync();
+
+        // a crash may leave any number of the newest old deltas next to the new base
+        for (int first = old.size(); first >= 0; --first) {
+            for (int i = first; i < old.size(); ++i)
+                Files.write(old.get(i), contents.get(i));
+            var restoredItems = Fixtures.items();
+            assertSameWorld(world, Checkpointer.recover(directory, null, Fixtures.codec(restoredItems)));
+            Assertions.assertEquals(items.toString(), restoredItems.toString());
+        }
+    }
+
+    /**
+     * Writes a checkpoint and a journal in a new JVM, whose catalog gets the
+     * spells in another order (see reorderedCatalog)
+     */
+    static final class ReorderedWriter {
+        public static void main(String[] args) throws IOException {
+            ward.getId();
+            balm.getId();
+            ember.getId();
+            var items = Fixtures.items();
+            var world = reorderedWorld(items);
+            try (var checkpointer = Checkpointer.open(Path.of(args[0]), world, items, Fixtures.codec(items), 10);
+                 var log = Journal.open(Path.of(args[1]), Fixtures.codec(items), o -> world.indexOf(o), 16, 1 << 12)) {
+                Journal.install(log);
+                play(world, log, checkpointer);
+            }
+        }
+    }
+
+    static List<Wizard> reorderedWorld(List<MagicItem> items) {
+        return List.of(new Wizard("Dude", MagicLevel.ADEPT, 100, 100, 100, 100, 10,
+                        new HashSet<>(Set.of(ember, ward)), new HashSet<>(), 10, new HashSet<>(items)),
+                new Wizard("Prey", MagicLevel.ADEPT, 100, 50, 100, 100, 10,
+                        new HashSet<>(Set.of(balm)), new HashSet<>(Set.of(ember)), 10, new HashSet<>()));
+    }
+
+    static void play(List<Wizard> world, Journal log, Checkpointer checkpointer) throws IOException {
+        var dude = world.get(0);
+        var prey = world.get(1);
+        Assertions.assertTrue(dude.learn(balm));
+        Assertions.assertTrue(dude.castSpell(ember, prey));
+        log.sync();
+        checkpointer.checkpoint(log.nextSequence());
+        Assertions.assertTrue(dude.castSpell(ember, prey));
+        Assertions.assertTrue(dude.castSpell(ward, prey));
+        Assertions.assertTrue(prey.castSpell(balm, prey));
+        log.sync();
+        checkpointer.sync();
+    }
+
+    @Test
+    void reorderedCatalog() throws IOException, InterruptedException {
+        ember.getId();
+        balm.getId();
+        ward.getId();
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var writer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ReorderedWriter.class.getName(), directory.toString(), journal.toString()).inheritIO().start();
+        Assertions.assertEquals(0, writer.waitFor());
+
+        var items = Fixtures.items();
+        var world = reorderedWorld(items);
+        checkpointer = Checkpointer.open(Files.createTempDirectory(directory, "live"), world, items,
+                Fixtures.codec(items), 10);
+        try (var log = Journal.open(Files.createTempDirectory(journal, "live"), Fixtures.codec(items),
+                o -> world.indexOf(o), 16, 1 << 12)) {
+            Journal.install(log);
+            play(world, log, checkpointer);
+            Journal.uninstall();
+        }
+        var restoredItems = Fixtures.items();
+        assertSameWorld(world, Checkpointer.recover(directory, journal, Fixtures.codec(restoredItems)));
+        Assertions.assertEquals(items.toString(), restoredItems.toString());
+    }
+
+    @Test
+    void recoverWithJournal() throws IOException {
+        var items = Fixtures.items();
+        var world = world(items);
+        checkpointer = Checkpointer.open(directory, world, items, Fixtures.codec(items), 10);
+        try (var log = Journal.open(journal, Fixtures.codec(items), o -> world.indexOf(o), 16, 1 << 12)) {
+            Journal.install(log);
+            var dude = world.get(0);
+            Assertions.assertTrue(dude.castSpell(fireball, world.get(1)));
+            log.sync();
+            checkpointer.checkpoint(log.nextSequence());
+            Assertions.assertTrue(dude.castSpell(fireball, world.get(2)));
+            Assertions.assertTrue(items.get(0).purchase(dude, world.get(3)));
+            Journal.uninstall();
+        }
+        checkpointer.sync();
+        assertSameWorld(world, Checkpointer.recover(directory, journal, Fixtures.codec(Fixtures.items())));
+    }
+}
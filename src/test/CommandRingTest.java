@@ -0,0 +1,188 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+class CommandRingTest {
+    static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
+    static AttackingSpell curse = new AttackingSpell("Killing Curse", 5, MagicLevel.NOOB, true, true, 100);
+    List<Tradeable> items;
+    List<Wizard> world;
+    ItemCodec codec;
+    List<Boolean> results;
+    long lastSequence;
+    int batches;
+    CommandRing ring;
+
+    @BeforeEach
+    void setUp() {
+        var potion = new HealthPotion("Potion", 1, 2, 1, 10);
+        items = List.of(new ItemStack(potion, 1));
+        world = new ArrayList<>();
+        world.add(new Wizard("Dude", MagicLevel.ADEPT, 100_000, 100_000, 100_000, 100_000, 10,
+                new HashSet<>(Set.of(fireball, curse)), new HashSet<>(), 10,
+                new HashSet<>(Set.of(new ItemStack(potion, 5))), new SplittableRandom(1)));
+        world.add(new Wizard("Prey", MagicLevel.ADEPT, 100_000, 100_000, 100, 100, 10,
+                new HashSet<>(), new HashSet<>(), 10, new HashSet<>(), new SplittableRandom(2)));
+        results = new ArrayList<>();
+        lastSequence = -1;
+        codec = new ItemCodec() {
+            @Override
+            public long encode(Tradeable item) {
+                return items.indexOf(item);
+            }
+
+            @Override
+            public Tradeable decode(long code) {
+                return items.get((int) code);
+            }
+        };
+        ring = CommandRing.open(id -> id >= 0 && id < world.size() ? world.get((int) id) : null, codec,
+                new CommandRing.Listener() {
+                    @Override
+                    public void processed(long sequence, CommandRing.Type type, boolean result, long latencyNanos) {
+                        Assertions.assertEquals(lastSequence + 1, sequence);
+                        lastSequence = sequence;
+                        results.add(result);
+                    }
+
+                    @Override
+                    public void batchEnd(long next) {
+                        ++batches;
+                    }
+                }, 64);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ring.close();
+    }
+
+    @Test
+    void arguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CommandRing.open(null, null, null, 64));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> CommandRing.open(id -> null, null, null, 64));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ring.getLatencyPercentile(101));
+        Assertions.assertEquals(0, ring.getLatencyPercentile(50));
+    }
+
+    @Test
+    void commands() {
+        Assertions.assertEquals(0, ring.cast(0, 1, fireball.getId()));
+        ring.use(0, 1, 0);
+        ring.sell(0, 1, 0);
+        ring.steal(1, 0);
+        // the prey was healed by the potion, the second curse kills it
+        ring.cast(0, 1, curse.getId());
+        ring.cast(0, 1, curse.getId());
+        ring.loot(0, 1);
+        // unknown wizard and unknown spell
+        ring.cast(0, 7, fireball.getId());
+        ring.cast(0, 1, -1);
+        ring.sync();
+        Assertions.assertEquals(List.of(true, true, true, true, true, true, true, false, false), results);
+        Assertions.assertEquals(9, ring.getProcessed());
+        Assertions.assertEquals(2, ring.getFailed());
+        Assertions.assertTrue(batches >= 1);
+        Assertions.assertTrue(world.get(0).toString().contains("; 12 Knuts;"));
+        Assertions.assertTrue(world.get(0).toString().contains("4 x [Potion"));
+        Assertions.assertTrue(world.get(1).toString().contains("carries []"));
+
+        Assertions.assertTrue(ring.getMaxLatency() >= ring.getMeanLatency());
+        Assertions.assertTrue(ring.getMeanLatency() > 0);
+        Assertions.assertTrue(ring.getLatencyPercentile(50) <= ring.getLatencyPercentile(100));
+        Assertions.assertTrue(ring.getLatencyPercentile(100) >= ring.getMaxLatency());
+
+        ring.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> ring.steal(1, 0));
+    }
+
+    @Test
+    void producers() throws InterruptedException {
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; ++t) {
+            var thread = new Thread(() -> {
+                for (int i = 0; i < 5000; ++i)
+                    ring.cast(0, 1, fireball.getId());
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads)
+            thread.join();
+        ring.sync();
+        Assertions.assertEquals(20_000, ring.getProcessed());
+        Assertions.assertEquals(20_000, results.size());
+        Assertions.assertFalse(results.contains(false));
+        // 20000 fire balls of 3 HP and 3 MP each
+        Assertions.assertTrue(world.get(0).toString().contains(": 100000/100000 40000/100000;"));
+        Assertions.assertTrue(world.get(1).toString().contains(": 40000/100000 100/100;"));
+    }
+
+    @Test
+    void throwingListener() {
+        var throwing = CommandRing.open(id -> id >= 0 && id < world.size() ? world.get((int) id) : null,
+                codec, new CommandRing.Listener() {
+                    @Override
+                    public void processed(long sequence, CommandRing.Type type, boolean result, long latencyNanos) {
+                        throw new IllegalStateException("processed");
+                    }
+
+                    @Override
+                    public void batchEnd(long next) {
+                        throw new IllegalStateException("batchEnd");
+                    }
+                }, 4);
+        try {
+            // more commands than slots: the world thread must keep running
+            for (int i = 0; i < 100; ++i)
+                throwing.cast(0, 1, fireball.getId());
+            throwing.sync();
+            Assertions.assertEquals(100, throwing.getProcessed());
+            // every command and at least one batch end
+            Assertions.assertTrue(throwing.getFailed() > 100);
+            Assertions.assertTrue(world.get(1).toString().contains(": 99700/100000 "));
+        } finally {
+            throwing.close();
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> throwing.cast(0, 1, fireball.getId()));
+    }
+
+    @Test
+    void closeWhilePublishing() throws InterruptedException {
+        var published = new AtomicLong();
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; ++t) {
+            var thread = new Thread(() -> {
+                while (true) {
+                    try {
+                        ring.cast(0, 1, fireball.getId());
+                    } catch (IllegalStateException e) {
+                        return;
+                    }
+                    published.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        Thread.sleep(20);
+        ring.close();
+        for (var thread : threads)
+            thread.join();
+        // every command was either run or its publisher failed, none got lost
+        Assertions.assertEquals(published.get(), ring.getProcessed());
+        Assertions.assertEquals(published.get(), results.size());
+    }
+}
@@ -0,0 +1,202 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+class ConcurrentWizardTest {
+    static AttackingSpell fireball = new AttackingSpell("Fire Ball", 1, MagicLevel.ADEPT, true, false, 1);
+    static AttackingSpell poison = new AttackingSpell("Poison", 3, MagicLevel.ADEPT, true, true, 50);
+    static HealthPotion potHP = new HealthPotion("Potion", 10, 1, 1, 3);
+    static ManaPotion potMP = new ManaPotion("Mana Potion", 10, 1, 10, 3);
+    static ConcurrentWizard dude;
+    static ConcurrentWizard prey;
+
+    @BeforeEach
+    void setUp() {
+        dude = new ConcurrentWizard("Dude", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(Collections.singleton(fireball)), new HashSet<>(Collections.singleton(poison)),
+                10, new HashSet<>());
+        prey = new ConcurrentWizard("Prey", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(Collections.singleton(fireball)), new HashSet<>(Collections.singleton(poison)),
+                10, new HashSet<>());
+    }
+
+    /**
+     * Runs task on the given number of threads at the same time and waits for all
+     * of them to finish
+     */
+    static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < threads; ++i) {
+            var thread = new Thread(task);
+            thread.start();
+            started.add(thread);
+        }
+        for (var thread : started)
+            thread.join();
+    }
+
+    @Test
+    void constructor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ConcurrentWizard(null, MagicLevel.NOOB,
+                10, 10, 50, 50, 10, new HashSet<>(), new HashSet<>(), 10, new HashSet<>()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ConcurrentWizard("a", MagicLevel.ADEPT,
+                10, 10, 50, 50, 10, new HashSet<>(), new HashSet<>(), 10, new HashSet<>()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ConcurrentWizard("a", MagicLevel.NOOB,
+                10, 10, 50, 50, 10, new HashSet<>(), new HashSet<>(), 0,
+                new HashSet<>(Collections.singleton(potHP))));
+        Assertions.assertDoesNotThrow(() -> new ConcurrentWizard("a", MagicLevel.NOOB,
+                0, 0, 50, 0, 0, new HashSet<>(), new HashSet<>(), 0, new HashSet<>()));
+    }
+
+    @Test
+    void seededRandom() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ConcurrentWizard("a", MagicLevel.NOOB,
+                10, 10, 50, 50, 10, new HashSet<>(), new HashSet<>(), 10, new HashSet<>(), null));
+        var items = new HashSet<Tradeable>();
+        for (int i = 0; i < 20; ++i)
+            items.add(new HealthPotion("Potion " + i, 1, 1, 1, 1));
+        var victim1 = new ConcurrentWizard("Victim", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 20, items, new SplittableRandom(42));
+        var victim2 = new ConcurrentWizard("Victim", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 20, items, new SplittableRandom(42));
+        var thief1 = new ConcurrentWizard("Thief", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 20, new HashSet<>());
+        var thief2 = new ConcurrentWizard("Thief", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 20, new HashSet<>());
+        for (int i = 0; i < 10; ++i) {
+            Assertions.assertTrue(victim1.steal(thief1));
+            Assertions.assertTrue(victim2.steal(thief2));
+        }
+        for (var item : items)
+            Assertions.assertEquals(thief1.possesses(item), thief2.possesses(item));
+    }
+
+    @Test
+    void castSpell() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.castSpell(null, prey));
+        Assertions.assertFalse(dude.castSpell(poison, prey));
+        Assertions.assertTrue(dude.castSpell(fireball, prey));
+        Assertions.assertTrue(dude.castSpell(fireball, prey));
+        Assertions.assertTrue(dude.castSpell(fireball, prey));
+        Assertions.assertTrue(prey.isDead());
+        Assertions.assertFalse(prey.castRandomSpell(dude));
+    }
+
+    @Test
+    void concurrentCasts() throws InterruptedException {
+        var target = new ConcurrentWizard("Target", MagicLevel.ADEPT, 100, 10000, 100, 0, 0,
+                new HashSet<>(), new HashSet<>(), 0, new HashSet<>());
+        var caster = new ConcurrentWizard("Caster", MagicLevel.ADEPT, 100, 100, 100, 8000, 0,
+                new HashSet<>(Collections.singleton(fireball)), new HashSet<>(), 0, new HashSet<>());
+        runConcurrently(8, () -> {
+            for (int i = 0; i < 1000; ++i)
+                caster.castSpell(fireball, target);
+        });
+        Assertions.assertFalse(caster.provideMana(MagicLevel.NOOB, 1));
+        target.takeDamage(1999);
+        Assertions.assertFalse(target.isDead());
+        target.takeDamage(1);
+        Assertions.assertTrue(target.isDead());
+    }
+
+    @Test
+    void concurrentPayments() throws InterruptedException {
+        runConcurrently(8, () -> {
+            for (int i = 0; i < 1000; ++i)
+                if (dude.pay(1))
+                    prey.earn(1);
+        });
+        Assertions.assertFalse(dude.canAfford(1));
+        Assertions.assertTrue(prey.canAfford(200));
+        Assertions.assertFalse(prey.canAfford(201));
+    }
+
+    @Test
+    void consumeProtection() throws InterruptedException {
+        var target = new ConcurrentWizard("Target", MagicLevel.ADEPT, 100, 100, 100, 0, 0,
+                new HashSet<>(), new HashSet<>(Collections.singleton(fireball)), 0, new HashSet<>());
+        runConcurrently(8, () -> fireball.doEffect(target));
+        target.takeDamage(92);
+        Assertions.assertFalse(target.isDead());
+        target.takeDamage(1);
+        Assertions.assertTrue(target.isDead());
+    }
+
+    @Test
+    void inventory() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.addToInventory(null));
+        Assertions.assertTrue(dude.addToInventory(potHP));
+        Assertions.assertFalse(dude.addToInventory(potHP));
+        Assertions.assertFalse(dude.addToInventory(potMP));
+        Assertions.assertTrue(dude.hasCapacity(9));
+        Assertions.assertFalse(dude.hasCapacity(10));
+        Assertions.assertTrue(dude.sellItem(potHP, prey));
+        Assertions.assertTrue(prey.possesses(potHP));
+        Assertions.assertTrue(dude.hasCapacity(10));
+        Assertions.assertTrue(prey.steal(dude));
+        Assertions.assertTrue(dude.possesses(potHP));
+        Assertions.assertFalse(prey.possesses(potHP));
+        Assertions.assertTrue(prey.hasCapacity(10));
+    }
+
+    @Test
+    void useStack() {
+        var stack = new ItemStack(new HealthPotion("Potion", 1, 1, 1, 3), 3);
+        Assertions.assertTrue(dude.addToInventory(stack));
+        // stacks of a kind are merged
+        Assertions.assertTrue(dude.addToInventory(stack.withCount(2)));
+        Assertions.assertTrue(dude.possesses(stack.withCount(5)));
+        Assertions.assertFalse(dude.possesses(stack.withCount(6)));
+        Assertions.assertTrue(dude.useItem(stack.withCount(1), dude));
+        Assertions.assertTrue(dude.toString().startsWith("[Dude(**): 6/100"));
+        Assertions.assertTrue(dude.possesses(stack.withCount(4)));
+        Assertions.assertFalse(dude.possesses(stack.withCount(5)));
+        Assertions.assertTrue(dude.toString().contains("0 gulps"));
+        Assertions.assertTrue(dude.hasCapacity(5));
+        Assertions.assertFalse(dude.hasCapacity(6));
+
+        // a part of the stack is removed, a theft takes a single item
+        Assertions.assertTrue(dude.removeFromInventory(stack.withCount(2)));
+        Assertions.assertFalse(dude.removeFromInventory(stack.withCount(3)));
+        Assertions.assertTrue(dude.useItem(stack, prey));
+        Assertions.assertTrue(dude.possesses(stack.withCount(1)));
+        Assertions.assertFalse(dude.possesses(stack.withCount(2)));
+    }
+
+    @Test
+    void stealFromStack() {
+        var stack = new ItemStack(new HealthPotion("Potion", 1, 1, 1, 3), 3);
+        Assertions.assertTrue(dude.addToInventory(stack));
+        Assertions.assertTrue(dude.steal(prey));
+        Assertions.assertTrue(dude.possesses(stack.withCount(2)));
+        Assertions.assertFalse(dude.possesses(stack));
+        Assertions.assertTrue(prey.possesses(stack.withCount(1)));
+        Assertions.assertTrue(prey.hasCapacity(9));
+        Assertions.assertFalse(prey.hasCapacity(10));
+    }
+
+    @Test
+    void loot() {
+        dude.addToInventory(potHP);
+        Assertions.assertFalse(dude.loot(prey));
+        dude.takeDamage(999);
+        Assertions.assertTrue(dude.loot(prey));
+        Assertions.assertTrue(prey.possesses(potHP));
+        Assertions.assertTrue(dude.hasCapacity(10));
+    }
+
+    @Test
+    void testToString() {
+        Assertions.assertEquals("[Dude(**): 3/100 3/100; 100 Knuts; knows [" + fireball + "]; carries []]",
+                dude.toString());
+    }
+}
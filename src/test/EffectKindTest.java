@@ -0,0 +1,80 @@
+package test;
+
+import a12226166.EffectKind;
+import a12226166.MagicEffectRealization;
+import a12226166.MagicLevel;
+import a12226166.Wizard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+
+class EffectKindTest {
+    static Wizard dude;
+
+    @BeforeEach
+    void setUp() {
+        dude = new Wizard("Dude", MagicLevel.ADEPT, 100, 50, 100, 50, 0,
+                new HashSet<>(), new HashSet<>(), 0, new HashSet<>());
+    }
+
+    @Test
+    void attack() {
+        Assertions.assertEquals(EffectKind.DAMAGE, EffectKind.attack(true, false));
+        Assertions.assertEquals(EffectKind.DAMAGE_PERCENT, EffectKind.attack(true, true));
+        Assertions.assertEquals(EffectKind.WEAKEN, EffectKind.attack(false, false));
+        Assertions.assertEquals(EffectKind.WEAKEN_PERCENT, EffectKind.attack(false, true));
+    }
+
+    @Test
+    void healing() {
+        Assertions.assertEquals(EffectKind.HEAL, EffectKind.healing(true, false));
+        Assertions.assertEquals(EffectKind.HEAL_PERCENT, EffectKind.healing(true, true));
+        Assertions.assertEquals(EffectKind.ENFORCE, EffectKind.healing(false, false));
+        Assertions.assertEquals(EffectKind.ENFORCE_PERCENT, EffectKind.healing(false, true));
+    }
+
+    @Test
+    void properties() {
+        for (var kind : EffectKind.values()) {
+            boolean harmful = kind.name().startsWith("DAMAGE") || kind.name().startsWith("WEAKEN");
+            Assertions.assertEquals(harmful, kind.isHarmful());
+            Assertions.assertEquals(kind.name().endsWith("PERCENT"), kind.isPercentage());
+            Assertions.assertEquals(kind.name().startsWith("DAMAGE") || kind.name().startsWith("HEAL"),
+                    kind.affectsHP());
+        }
+    }
+
+    @Test
+    void applyTo() {
+        EffectKind.WEAKEN_PERCENT.applyTo(dude, 40);
+        EffectKind.ENFORCE_PERCENT.applyTo(dude, 5);
+        EffectKind.WEAKEN.applyTo(dude, 5);
+        EffectKind.ENFORCE.applyTo(dude, 1);
+        Assertions.assertTrue(dude.provideMana(MagicLevel.NOOB, 11));
+        Assertions.assertFalse(dude.provideMana(MagicLevel.NOOB, 1));
+        EffectKind.DAMAGE_PERCENT.applyTo(dude, 49);
+        Assertions.assertFalse(dude.isDead());
+        EffectKind.HEAL.applyTo(dude, 10);
+        EffectKind.DAMAGE.applyTo(dude, 10);
+        EffectKind.DAMAGE.applyTo(dude, 1);
+        Assertions.assertTrue(dude.isDead());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EffectKind.HEAL_PERCENT.applyTo(dude, 101));
+    }
+
+    @Test
+    void applyToAll() {
+        var other = new Wizard("Other", MagicLevel.ADEPT, 100, 20, 100, 50, 0,
+                new HashSet<>(), new HashSet<>(), 0, new HashSet<>());
+        MagicEffectRealization[] targets = {dude, other};
+        EffectKind.ENFORCE.applyTo(targets, 10);
+        EffectKind.DAMAGE_PERCENT.applyTo(targets, 20);
+        Assertions.assertTrue(other.isDead());
+        Assertions.assertFalse(dude.isDead());
+        EffectKind.DAMAGE.applyTo(targets, 1, 2, 100);
+        Assertions.assertFalse(dude.isDead());
+        Assertions.assertTrue(dude.provideMana(MagicLevel.NOOB, 60));
+        Assertions.assertFalse(other.provideMana(MagicLevel.NOOB, 0));
+    }
+}
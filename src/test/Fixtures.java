@@ -0,0 +1,70 @@
+package test;
+
+import a12226166.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Items, wizards, codec and clean-up shared by the tests of the persistence
+ * (WizardFile, Journal, Replay and Checkpointer)
+ */
+final class Fixtures {
+    static final AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
+
+    private Fixtures() {
+    }
+
+    /**
+     * Items as the application would restore them; a new list for the live
+     * world and for every recovery
+     */
+    static List<MagicItem> items() {
+        return List.of(new HealthPotion("Potion", 10, 2, 1, 3), new Scroll("Scroll", 5, 1, 1, fireball),
+                new ManaPotion("Mana Potion", 3, 1, 2, 3));
+    }
+
+    /**
+     * Codec whose code of an item is its index in items
+     */
+    static ItemCodec codec(List<? extends Tradeable> items) {
+        return new ItemCodec() {
+            @Override
+            public long encode(Tradeable item) {
+                return items.indexOf(item);
+            }
+
+            @Override
+            public Tradeable decode(long code) {
+                return items.get((int) code);
+            }
+        };
+    }
+
+    /**
+     * Adept wizard with 100 HP, MP, money and carrying capacity and an
+     * inventory with items
+     */
+    static Wizard wizard(String name, Set<Spell> spells, Collection<? extends Tradeable> items) {
+        return new Wizard(name, MagicLevel.ADEPT, 100, 100, 100, 100, 10,
+                new HashSet<>(spells), new HashSet<>(), 10, new HashSet<>(items));
+    }
+
+    /**
+     * Deletes the directories with all their files
+     */
+    static void deleteTrees(Path... directories) throws IOException {
+        for (var directory : directories)
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList())
+                    Files.delete(p);
+            }
+    }
+}
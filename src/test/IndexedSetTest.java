@@ -0,0 +1,63 @@
+package test;
+
+import a12226166.IndexedSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+class IndexedSetTest {
+    static IndexedSet<Integer> set;
+
+    @BeforeEach
+    void setUp() {
+        set = new IndexedSet<>(Arrays.asList(1, 2, 3));
+    }
+
+    @Test
+    void constructor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new IndexedSet<Integer>(null));
+        Assertions.assertEquals(0, new IndexedSet<Integer>().size());
+        Assertions.assertEquals(3, new IndexedSet<>(Arrays.asList(1, 1, 2, 3)).size());
+    }
+
+    @Test
+    void get() {
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)),
+                new HashSet<>(Arrays.asList(set.get(0), set.get(1), set.get(2))));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> set.get(3));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> set.get(-1));
+    }
+
+    @Test
+    void add() {
+        Assertions.assertFalse(set.add(1));
+        for (int i = 4; i <= 100; ++i)
+            Assertions.assertTrue(set.add(i));
+        Assertions.assertEquals(100, set.size());
+        Assertions.assertTrue(set.contains(100));
+    }
+
+    @Test
+    void remove() {
+        Assertions.assertTrue(set.remove(1));
+        Assertions.assertFalse(set.remove(1));
+        Assertions.assertFalse(set.contains(1));
+        Assertions.assertEquals(2, set.size());
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(2, 3)),
+                new HashSet<>(Arrays.asList(set.get(0), set.get(1))));
+        Assertions.assertTrue(set.add(1));
+        Assertions.assertTrue(set.contains(1));
+    }
+
+    @Test
+    void iteratorRemove() {
+        set.removeIf(i -> i != 2);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(2)), set);
+        set.clear();
+        Assertions.assertTrue(set.isEmpty());
+        Assertions.assertEquals("[]", set.toString());
+    }
+}
@@ -0,0 +1,86 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class ItemPrototypeTest {
+    static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
+
+    @Test
+    void shared() {
+        var a = new HealthPotion("Potion", 3, 2, 1, 10);
+        var b = new HealthPotion("Potion", 1, 2, 1, 10);
+        Assertions.assertSame(a.getPrototype(), b.getPrototype());
+        Assertions.assertSame(a.getPrototype(), ItemPrototype.byId(a.getPrototype().getId()));
+        Assertions.assertTrue(a.getPrototype().getId() < ItemPrototype.size());
+        Assertions.assertNotSame(a.getPrototype(), new HealthPotion("Potion", 3, 2, 1, 11).getPrototype());
+        Assertions.assertNotSame(a.getPrototype(), new ManaPotion("Potion", 3, 2, 1, 10).getPrototype());
+        Assertions.assertSame(new Scroll("Scroll", 1, 1, 1, fireball).getPrototype(),
+                new Scroll("Scroll", 5, 1, 1, new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3))
+                        .getPrototype());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ItemPrototype.byId(-1));
+    }
+
+    @Test
+    void concurrentIntern() throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ItemPrototype>> results = new ArrayList<>();
+            for (int i = 0; i < 64; ++i) {
+                int health = i % 8;
+                results.add(pool.submit(() -> new HealthPotion("Racing Potion", 1, 1, 1, health).getPrototype()));
+            }
+            for (int i = 0; i < results.size(); ++i) {
+                var prototype = results.get(i).get();
+                Assertions.assertSame(results.get(i % 8).get(), prototype);
+                Assertions.assertSame(prototype, ItemPrototype.byId(prototype.getId()));
+                Assertions.assertEquals("[Racing Potion; 1 g; 1 Knut; 1 gulp; +" + i % 8 + " HP]",
+                        prototype.newItem(1).toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void sameKind() {
+        var a = new HealthPotion("Potion", 3, 2, 1, 10);
+        var b = new HealthPotion("Potion", 2, 2, 1, 10);
+        Assertions.assertFalse(a.isSameKind(b));
+        Assertions.assertTrue(a.tryUsage());
+        Assertions.assertTrue(a.isSameKind(b));
+        Assertions.assertFalse(a.isSameKind(null));
+        Assertions.assertNotEquals(a, b);
+    }
+
+    @Test
+    void newItem() {
+        var concoction = new Concoction("Brew", 4, 2, 2, -5, 10, List.of(fireball));
+        var prototype = concoction.getPrototype();
+        Assertions.assertEquals(Concoction.class, prototype.getType());
+        Assertions.assertEquals(-5, prototype.getHealth());
+        Assertions.assertEquals(10, prototype.getMana());
+        Assertions.assertEquals(List.of(fireball), prototype.getSpells());
+        var copy = prototype.newItem(1);
+        Assertions.assertTrue(copy instanceof Concoction);
+        Assertions.assertEquals(concoction.toString().replace("4 gulps", "1 gulp"), copy.toString());
+        Assertions.assertTrue(concoction.copy().isSameKind(concoction));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> prototype.newItem(-1));
+
+        var odd = new MagicItem("Odd", 1, 1, 1) {
+            @Override
+            public void useOn(MagicEffectRealization target) {
+            }
+        };
+        Assertions.assertEquals("[Odd; 1 g; 1 Knut; 1 use]", odd.toString());
+        Assertions.assertThrows(UnsupportedOperationException.class, odd::copy);
+    }
+}
@@ -0,0 +1,110 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+class ItemStackTest {
+    HealthPotion potion;
+    Wizard merchant;
+    Wizard buyer;
+
+    @BeforeEach
+    void setUp() {
+        potion = new HealthPotion("Potion", 1, 2, 1, 10);
+        merchant = new Wizard("Merchant", MagicLevel.NOOB, 100, 100, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 10_000, new HashSet<>(Set.of(new ItemStack(potion, 5000))),
+                new SplittableRandom(1));
+        buyer = new Wizard("Buyer", MagicLevel.NOOB, 100, 50, 50, 50, 100,
+                new HashSet<>(), new HashSet<>(), 20, new HashSet<>(), new SplittableRandom(2));
+    }
+
+    @Test
+    void constructor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ItemStack(null, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ItemStack(potion, 0));
+        var unknown = new MagicItem("Odd", 1, 1, 1) {
+            @Override
+            public void useOn(MagicEffectRealization target) {
+            }
+        };
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> new ItemStack(unknown, 1));
+    }
+
+    @Test
+    void value() {
+        var stack = new ItemStack(potion, 3);
+        Assertions.assertEquals(6, stack.getPrice());
+        Assertions.assertEquals(3, stack.getWeight());
+        Assertions.assertEquals(stack, new ItemStack(new HealthPotion("Potion", 1, 2, 1, 10), 3));
+        Assertions.assertEquals(stack.hashCode(), new ItemStack(potion, 3).hashCode());
+        Assertions.assertNotEquals(stack, new ItemStack(potion, 4));
+        Assertions.assertNotEquals(stack, new ItemStack(new HealthPotion("Potion", 2, 2, 1, 10), 3));
+        Assertions.assertNotEquals(stack, new ItemStack(new ManaPotion("Potion", 1, 2, 1, 10), 3));
+        Assertions.assertTrue(stack.isKindOf(potion));
+        Assertions.assertTrue(stack.isSameKind(stack.withCount(7)));
+        Assertions.assertEquals("3 x [Potion; 1 g; 2 Knuts; 1 gulp; +10 HP]", stack.toString());
+        // using a stack uses a new item of its kind, the stack does not change
+        stack.useOn(buyer);
+        Assertions.assertTrue(buyer.toString().startsWith("[Buyer(*): 60/100"));
+        Assertions.assertEquals("3 x [Potion; 1 g; 2 Knuts; 1 gulp; +10 HP]", stack.toString());
+
+        // the stack keeps its own copy of the item
+        Assertions.assertTrue(potion.tryUsage());
+        Assertions.assertFalse(stack.isKindOf(potion));
+        Assertions.assertEquals(1, stack.newItem().getUsages());
+    }
+
+    @Test
+    void purchaseAndGive() {
+        var five = new ItemStack(potion, 5);
+        Assertions.assertTrue(merchant.possesses(five));
+        Assertions.assertTrue(five.purchase(merchant, buyer));
+        Assertions.assertTrue(buyer.toString().contains("; 90 Knuts;"));
+        Assertions.assertTrue(buyer.possesses(five));
+        Assertions.assertFalse(buyer.possesses(five.withCount(6)));
+        Assertions.assertTrue(merchant.possesses(five.withCount(4995)));
+        Assertions.assertFalse(merchant.possesses(five.withCount(4996)));
+
+        Assertions.assertTrue(five.withCount(10).purchase(merchant, buyer));
+        Assertions.assertTrue(buyer.toString().contains("carries [15 x [Potion;"));
+        Assertions.assertFalse(five.withCount(6).purchase(merchant, buyer));
+        Assertions.assertTrue(five.withCount(15).give(buyer, merchant));
+        Assertions.assertTrue(merchant.possesses(five.withCount(5000)));
+        Assertions.assertTrue(buyer.toString().contains("carries []"));
+    }
+
+    @Test
+    void useItem() {
+        var stack = new ItemStack(potion, 2);
+        Assertions.assertTrue(stack.give(merchant, buyer));
+        Assertions.assertTrue(buyer.useItem(stack, buyer));
+        Assertions.assertTrue(buyer.toString().startsWith("[Buyer(*): 60/100"));
+        Assertions.assertTrue(buyer.possesses(stack.withCount(1)));
+        Assertions.assertFalse(buyer.possesses(stack));
+        Assertions.assertTrue(buyer.hasCapacity(18));
+        Assertions.assertFalse(buyer.hasCapacity(19));
+        Assertions.assertNull(merchant.unstack(new ItemStack(new ManaPotion("Mana", 1, 1, 1, 1), 1)));
+        Assertions.assertNotNull(buyer.unstack(stack));
+        Assertions.assertFalse(buyer.possesses(stack.withCount(1)));
+        Assertions.assertNull(buyer.unstack(stack));
+    }
+
+    @Test
+    void stealAndLoot() {
+        Assertions.assertTrue(merchant.steal(buyer));
+        Assertions.assertTrue(buyer.possesses(new ItemStack(potion, 1)));
+        Assertions.assertTrue(merchant.possesses(new ItemStack(potion, 4999)));
+
+        merchant.takeDamage(100);
+        Assertions.assertTrue(merchant.loot(buyer));
+        Assertions.assertTrue(buyer.possesses(new ItemStack(potion, 20)));
+        Assertions.assertFalse(buyer.hasCapacity(1));
+        Assertions.assertTrue(merchant.toString().contains("carries []"));
+    }
+}
@@ -0,0 +1,217 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+class JournalTest {
+    static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
+    static ProtectingSpell shield = new ProtectingSpell("Shield", 1, MagicLevel.NOOB, Set.of(fireball));
+    static List<Tradeable> items = new ArrayList<>();
+    static ItemCodec codec = Fixtures.codec(items);
+    Path directory;
+    Journal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        items.clear();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (journal != null)
+            journal.close();
+        Fixtures.deleteTrees(directory);
+    }
+
+    static List<Journal.Event> readAll(Path directory, long from) throws IOException {
+        List<Journal.Event> events = new ArrayList<>();
+        Journal.read(directory, from, events::add);
+        return events;
+    }
+
+    @Test
+    void open() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Journal.open(null, codec, Journal::defaultId, 8, 1024));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Journal.open(directory, null, Journal::defaultId, 8, 1024));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Journal.open(directory, codec, null, 8, 1024));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Journal.open(directory, codec, Journal::defaultId, 6, 1024));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> Journal.open(directory, codec, Journal::defaultId, 8, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Journal.install(null));
+    }
+
+    @Test
+    void events() throws IOException {
+        var potion = new HealthPotion("Potion", 10, 2, 1, 3);
+        var scroll = new Scroll("Scroll", 1, 1, 1, fireball);
+        items.add(potion);
+        items.add(scroll);
+        var dude = new Wizard("Dude", MagicLevel.ADEPT, 100, 10, 100, 100, 10,
+                new HashSet<>(Set.of(fireball, shield)), new HashSet<>(), 10, new HashSet<>(items));
+        var prey = new Wizard("Prey", MagicLevel.ADEPT, 100, 3, 100, 100, 10,
+                new HashSet<>(), new HashSet<>(), 10, new HashSet<>());
+        journal = Journal.open(directory, codec, Journal::defaultId, 4, 8 + 3 * Journal.RECORD_SIZE);
+        Journal.install(journal);
+
+        Assertions.assertTrue(dude.castSpell(shield, dude));
+        Assertions.assertTrue(dude.castSpell(fireball, prey));
+        Assertions.assertTrue(dude.useItem(potion, prey));
+        Assertions.assertTrue(potion.purchase(dude, prey));
+        Assertions.assertTrue(prey.steal(dude));
+        Assertions.assertTrue(scroll.give(dude, prey));
+        dude.takeDamage(100);
+        Assertions.assertTrue(dude.loot(prey));
+        journal.sync();
+        Assertions.assertEquals(7, journal.nextSequence());
+
+        var events = readAll(directory, 0);
+        Assertions.assertEquals(7, events.size());
+        for (int i = 0; i < events.size(); ++i)
+            Assertions.assertEquals(i, events.get(i).getSequence());
+        Assertions.assertEquals(Journal.Type.CAST, events.get(0).getType());
+        Assertions.assertNull(events.get(0).getEffect());
+        var cast = events.get(1);
+        Assertions.assertEquals(Journal.Type.CAST, cast.getType());
+        Assertions.assertEquals(EffectKind.DAMAGE, cast.getEffect());
+        Assertions.assertEquals(3, cast.getAmount());
+        Assertions.assertEquals(fireball.getId(), cast.getSpell());
+        Assertions.assertEquals(dude.getId(), cast.getSource());
+        Assertions.assertEquals(prey.getId(), cast.getTarget());
+        Assertions.assertEquals(Journal.Type.USE, events.get(2).getType());
+        var purchase = events.get(3);
+        Assertions.assertEquals(Journal.Type.PURCHASE, purchase.getType());
+        Assertions.assertEquals(0, purchase.getItem());
+        Assertions.assertEquals(2, purchase.getPrice());
+        var steal = events.get(4);
+        Assertions.assertEquals(Journal.Type.STEAL, steal.getType());
+        Assertions.assertEquals(prey.getId(), steal.getSource());
+        Assertions.assertEquals(dude.getId(), steal.getTarget());
+        Assertions.assertEquals(1, steal.getAmount());
+        Assertions.assertEquals(Journal.Type.GIVE, events.get(5).getType());
+        Assertions.assertEquals(1, events.get(5).getItem());
+        Assertions.assertEquals(Journal.Type.LOOT, events.get(6).getType());
+        Assertions.assertEquals(2, readAll(directory, 5).size());
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(3, files.filter(p -> p.toString().endsWith(".journal")).count());
+        }
+        Assertions.assertTrue(Files.exists(directory.resolve("spells.table")));
+
+        journal.close();
+        journal = Journal.open(directory, codec, Journal::defaultId, 4, 8 + 3 * Journal.RECORD_SIZE);
+        Assertions.assertEquals(7, journal.nextSequence());
+        Journal.install(journal);
+        Assertions.assertTrue(potion.give(prey, dude));
+        journal.close();
+        Assertions.assertTrue(potion.give(dude, prey));
+        events = readAll(directory, 7);
+        Assertions.assertEquals(1, events.size());
+        Assertions.assertEquals(7, events.get(0).getSequence());
+    }
+
+    @Test
+    void concurrentAppends() throws Exception {
+        var target = new ConcurrentWizard("Target", MagicLevel.ADEPT, 1_000_000, 1_000_000, 100, 100, 0,
+                new HashSet<>(), new HashSet<>(), 0, new HashSet<>());
+        List<ConcurrentWizard> casters = new ArrayList<>();
+        for (int i = 0; i < 4; ++i)
+            casters.add(new ConcurrentWizard("Caster", MagicLevel.ADEPT, 100, 100, 100_000, 100_000, 0,
+                    new HashSet<>(Set.of(fireball)), new HashSet<>(), 0, new HashSet<>()));
+        journal = Journal.open(directory, codec, Journal::defaultId, 64, 1 << 16);
+        Journal.install(journal);
+        List<Thread> threads = new ArrayList<>();
+        for (var caster : casters) {
+            var thread = new Thread(() -> {
+                for (int k = 0; k < 1000; ++k)
+                    caster.castSpell(fireball, target);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads)
+            thread.join();
+        journal.close();
+
+        var events = readAll(directory, 0);
+        Assertions.assertEquals(4000, events.size());
+        for (int i = 0; i < events.size(); ++i)
+            Assertions.assertEquals(i, events.get(i).getSequence());
+        Assertions.assertEquals(4000, events.stream().filter(e -> e.getTarget() == target.getId()).count());
+    }
+
+    @Test
+    void idleWriter() throws Exception {
+        var caster = new Wizard("Caster", MagicLevel.ADEPT, 100, 100, 100, 100, 0,
+                new HashSet<>(Set.of(fireball)), new HashSet<>(), 0, new HashSet<>());
+        journal = Journal.open(directory, codec, Journal::defaultId, 8, 1024);
+        Journal.install(journal);
+        Thread.sleep(100);
+        // the writer parks without a timeout when there is nothing to write
+        for (var thread : Thread.getAllStackTraces().keySet())
+            if (thread.getName().equals("journal-writer"))
+                Assertions.assertEquals(Thread.State.WAITING, thread.getState());
+        caster.castSpell(fireball, caster);
+        journal.sync();
+        Assertions.assertEquals(1, readAll(directory, 0).size());
+    }
+
+    @Test
+    void closeWhileAppending() throws Exception {
+        var target = new ConcurrentWizard("Target", MagicLevel.ADEPT, 1_000_000, 1_000_000, 100, 100, 0,
+                new HashSet<>(), new HashSet<>(), 0, new HashSet<>());
+        // every append looks up the ids of source and target
+        var lookups = new AtomicLong();
+        var failures = new AtomicLong();
+        journal = Journal.open(directory, codec, o -> {
+            lookups.incrementAndGet();
+            return Journal.defaultId(o);
+        }, 4, 1 << 16);
+        Journal.install(journal);
+        var stop = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            var caster = new ConcurrentWizard("Caster", MagicLevel.ADEPT, 100, 100, 1_000_000, 1_000_000, 0,
+                    new HashSet<>(Set.of(fireball)), new HashSet<>(), 0, new HashSet<>());
+            var thread = new Thread(() -> {
+                while (!stop.get()) {
+                    try {
+                        caster.castSpell(fireball, target);
+                    } catch (IllegalStateException e) {
+                        failures.incrementAndGet();
+                        return;
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        Thread.sleep(20);
+        journal.close();
+        stop.set(true);
+        for (var thread : threads)
+            thread.join();
+
+        // every append was either written or failed, none got lost
+        var events = readAll(directory, 0);
+        Assertions.assertEquals(lookups.get() / 2, events.size() + failures.get());
+        for (int i = 0; i < events.size(); ++i)
+            Assertions.assertEquals(i, events.get(i).getSequence());
+    }
+}
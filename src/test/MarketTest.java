@@ -0,0 +1,147 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+class MarketTest {
+    HealthPotion potion;
+    Market market;
+    Wizard merchant;
+    Wizard other;
+    Wizard buyer;
+
+    @BeforeEach
+    void setUp() {
+        potion = new HealthPotion("Potion", 1, 2, 1, 10);
+        market = new Market();
+        merchant = new Wizard("Merchant", MagicLevel.NOOB, 100, 100, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 10_000, new HashSet<>(Set.of(new ItemStack(potion, 100))),
+                new SplittableRandom(1));
+        other = new Wizard("Other", MagicLevel.NOOB, 100, 100, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 10_000, new HashSet<>(Set.of(new ItemStack(potion, 100))),
+                new SplittableRandom(2));
+        buyer = new Wizard("Buyer", MagicLevel.NOOB, 100, 50, 50, 50, 100,
+                new HashSet<>(), new HashSet<>(), 20, new HashSet<>(), new SplittableRandom(3));
+    }
+
+    @Test
+    void arguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> market.ask(null, potion, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> market.ask(merchant, null, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> market.ask(merchant, potion, -1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> market.bid(buyer, potion, -1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> market.cancel(null));
+        Assertions.assertEquals(-1, market.bestAsk(potion));
+        Assertions.assertEquals(-1, market.bestBid(potion));
+    }
+
+    @Test
+    void priceTimePriority() {
+        var stack = new ItemStack(potion, 5);
+        var expensive = market.ask(merchant, stack, 4);
+        var first = market.ask(merchant, stack, 3);
+        var second = market.ask(other, stack, 3);
+        Assertions.assertEquals(3, market.bestAsk(potion));
+        Assertions.assertEquals(0, market.getTrades());
+
+        // fills the first ask at 3 and part of the second
+        var bid = market.bid(buyer, stack.withCount(7), 5);
+        Assertions.assertFalse(bid.isActive());
+        Assertions.assertEquals(0, bid.getRemaining());
+        Assertions.assertFalse(first.isActive());
+        Assertions.assertTrue(second.isActive());
+        Assertions.assertEquals(3, second.getRemaining());
+        Assertions.assertTrue(expensive.isActive());
+        Assertions.assertEquals(2, market.getTrades());
+
+        Assertions.assertTrue(buyer.possesses(stack.withCount(7)));
+        Assertions.assertTrue(buyer.toString().contains("; 79 Knuts;"));
+        Assertions.assertTrue(merchant.toString().contains("; 15 Knuts;"));
+        Assertions.assertTrue(other.toString().contains("; 6 Knuts;"));
+        Assertions.assertTrue(merchant.possesses(stack.withCount(95)));
+        Assertions.assertFalse(merchant.possesses(stack.withCount(96)));
+    }
+
+    @Test
+    void concurrentTraders() {
+        var stack = new ItemStack(potion, 5);
+        var seller = new ConcurrentWizard("Seller", MagicLevel.NOOB, 100, 100, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 100, new HashSet<>(Set.of(stack)));
+        var bidder = new ConcurrentWizard("Bidder", MagicLevel.NOOB, 100, 100, 50, 50, 100,
+                new HashSet<>(), new HashSet<>(), 100, new HashSet<>());
+        var ask = market.ask(seller, stack, 3);
+        // partial fills take a part of the stack and merge it with the stack bought before
+        market.bid(bidder, stack.withCount(2), 3);
+        market.bid(bidder, stack.withCount(2), 3);
+        Assertions.assertTrue(ask.isActive());
+        Assertions.assertEquals(1, ask.getRemaining());
+        Assertions.assertEquals(2, market.getTrades());
+        Assertions.assertTrue(seller.possesses(stack.withCount(1)));
+        Assertions.assertTrue(bidder.possesses(stack.withCount(4)));
+        Assertions.assertTrue(bidder.toString().contains("carries [4 x [Potion"));
+    }
+
+    @Test
+    void restingBid() {
+        var bid = market.bid(buyer, new ItemStack(potion, 2), 3);
+        Assertions.assertTrue(bid.isActive());
+        Assertions.assertEquals(3, market.bestBid(potion));
+        Assertions.assertEquals(-1, market.bestBid(new ManaPotion("Potion", 1, 2, 1, 10)));
+
+        // no match below the ask, then at the price of the resting bid
+        Assertions.assertTrue(market.ask(merchant, potion.copy(), 4).isActive());
+        var ask = market.ask(other, new ItemStack(potion, 5), 1);
+        Assertions.assertFalse(bid.isActive());
+        Assertions.assertEquals(3, ask.getRemaining());
+        Assertions.assertTrue(buyer.toString().contains("; 94 Knuts;"));
+        Assertions.assertEquals(1, market.bestAsk(potion));
+        Assertions.assertEquals(-1, market.bestBid(potion));
+
+        Assertions.assertTrue(market.cancel(ask));
+        Assertions.assertFalse(market.cancel(ask));
+        Assertions.assertEquals(4, market.bestAsk(potion));
+    }
+
+    @Test
+    void staleOrders() {
+        // the seller does not have the items: the ask is dropped
+        var missing = market.ask(buyer, new ItemStack(potion, 1), 1);
+        var ask = market.ask(merchant, new ItemStack(potion, 30), 1);
+        var bid = market.bid(buyer, new ItemStack(potion, 1), 2);
+        Assertions.assertFalse(missing.isActive());
+        Assertions.assertEquals(29, ask.getRemaining());
+
+        // the buyer cannot carry the items: the bid is dropped, the ask rests
+        var heavy = market.bid(buyer, new ItemStack(potion, 25), 1);
+        Assertions.assertFalse(heavy.isActive());
+        Assertions.assertEquals(25, heavy.getRemaining());
+        Assertions.assertEquals(29, ask.getRemaining());
+        Assertions.assertTrue(buyer.toString().contains("; 99 Knuts;"));
+        Assertions.assertFalse(bid.isActive());
+
+        // own orders are not matched
+        var own = market.bid(merchant, new ItemStack(potion, 1), 1);
+        Assertions.assertFalse(ask.isActive());
+        Assertions.assertTrue(own.isActive());
+        Assertions.assertEquals(-1, market.bestAsk(potion));
+    }
+
+    @Test
+    void singleItem() {
+        var scroll = new Scroll("Scroll", 3, 5, 1, new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3));
+        var seller = new Wizard("Seller", MagicLevel.NOOB, 100, 100, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 100, new HashSet<>(Set.of(scroll)), new SplittableRandom(4));
+        market.bid(buyer, scroll.copy(), 6);
+        var ask = market.ask(seller, scroll, 5);
+        Assertions.assertFalse(ask.isActive());
+        Assertions.assertTrue(buyer.possesses(scroll));
+        Assertions.assertFalse(seller.possesses(scroll));
+        Assertions.assertTrue(seller.toString().contains("; 6 Knuts;"));
+    }
+}
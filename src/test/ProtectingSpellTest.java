@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Set;
 
 class ProtectingSpellTest {
     static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.STUDENT, true, false, 3);
@@ -32,6 +33,22 @@ class ProtectingSpellTest {
         Assertions.assertFalse(dude.isProtected(timedextraction));
     }
 
+    @Test
+    void doEffectReadOnly() {
+        var greedy = new MagicEffectRealization() {
+            @Override
+            public void setProtection(Set<AttackingSpell> attacks) {
+                attacks.clear();
+            }
+        };
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> SP.doEffect(greedy));
+        var dude = new Wizard("Dude", MagicLevel.NOOB, 10, 1, 50, 0,
+                999, new HashSet<>(), new HashSet<>(), 999, new HashSet<>());
+        SP.doEffect(dude);
+        Assertions.assertTrue(dude.isProtected(fireball));
+        Assertions.assertTrue(dude.isProtected(poison));
+    }
+
     @Test
     void additionalOutputString() {
         var tmp = new HashSet<>(Arrays.asList(fireball, poison));
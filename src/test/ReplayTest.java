@@ -0,0 +1,226 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+class ReplayTest {
+    static AttackingSpell fireball = Fixtures.fireball;
+    static AttackingSpell poison = new AttackingSpell("Poison", 3, MagicLevel.ADEPT, true, true, 50);
+    static HealingSpell episkey = new HealingSpell("Episkey", 2, MagicLevel.NOOB, false, true, 10);
+    static AttackingSpell curse = new AttackingSpell("Curse", 5, MagicLevel.NOOB, true, false, 1000);
+    static ProtectingSpell shield = new ProtectingSpell("Shield", 1, MagicLevel.NOOB, Set.of(fireball));
+    Path directory;
+    Path snapshot;
+
+    static List<Wizard> world(List<? extends Tradeable> items) {
+        List<Wizard> world = new ArrayList<>();
+        world.add(Fixtures.wizard("Dude", Set.of(fireball, episkey, shield, curse), items));
+        world.add(new Wizard("Prey", MagicLevel.ADEPT, 100, 80, 100, 100, 10,
+                new HashSet<>(Set.of(fireball, poison)), new HashSet<>(), 10, new HashSet<>()));
+        world.add(new Wizard("Other", MagicLevel.NOOB, 100, 100, 50, 50, 10,
+                new HashSet<>(), new HashSet<>(), 10, new HashSet<>()));
+        return world;
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        snapshot = Files.createTempFile("snapshot", ".bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Journal.uninstall();
+        Files.deleteIfExists(snapshot);
+        Fixtures.deleteTrees(directory);
+    }
+
+    static Journal open(Path directory, List<Wizard> world, List<? extends Tradeable> items) throws IOException {
+        return Journal.open(directory, Fixtures.codec(items), o -> world.indexOf(o), 16, 1 << 12);
+    }
+
+    @Test
+    void constructor() {
+        var codec = Fixtures.codec(Fixtures.items());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Replay(null, codec));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Replay(id -> null, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Replay(id -> null, codec).apply(null));
+    }
+
+    @Test
+    void recover() throws IOException {
+        var items = Fixtures.items();
+        var world = world(items);
+        WizardFile.write(snapshot, world, Fixtures.codec(items), 0);
+        try (var journal = open(directory, world, items)) {
+            Journal.install(journal);
+            var dude = world.get(0);
+            var prey = world.get(1);
+            var other = world.get(2);
+            Assertions.assertTrue(dude.castSpell(shield, dude));
+            Assertions.assertTrue(prey.castSpell(fireball, dude));
+            Assertions.assertTrue(prey.castSpell(poison, dude));
+            Assertions.assertTrue(dude.castSpellOnAll(episkey, world, 1, false));
+            Assertions.assertTrue(dude.useItem(items.get(1), prey));
+            Assertions.assertTrue(dude.useItem(items.get(0), dude));
+            Assertions.assertTrue(dude.sellItem(items.get(0), prey));
+            Assertions.assertTrue(items.get(2).give(dude, other));
+            Assertions.assertTrue(dude.castSpell(curse, prey));
+            Assertions.assertTrue(prey.loot(other));
+            Assertions.assertTrue(dude.steal(other));
+        }
+
+        var recovered = Replay.recover(snapshot, directory, Fixtures.codec(Fixtures.items()));
+        Assertions.assertEquals(world.size(), recovered.size());
+        for (int i = 0; i < world.size(); ++i)
+            Assertions.assertEquals(world.get(i).toString(), recovered.get(i).toString());
+        Assertions.assertTrue(recovered.get(1).isDead());
+    }
+
+    @Test
+    void snapshotAndTail() throws IOException {
+        var items = Fixtures.items();
+        var world = world(items);
+        try (var journal = open(directory, world, items)) {
+            Journal.install(journal);
+            var dude = world.get(0);
+            var prey = world.get(1);
+            Assertions.assertTrue(prey.castSpell(fireball, dude));
+            Assertions.assertTrue(dude.sellItem(items.get(0), prey));
+            journal.sync();
+            WizardFile.write(snapshot, world, Fixtures.codec(items), journal.nextSequence());
+            Assertions.assertTrue(dude.castSpell(fireball, prey));
+            Assertions.assertTrue(items.get(0).purchase(prey, dude));
+        }
+
+        var replay = new Replay(id -> null, Fixtures.codec(items));
+        Assertions.assertEquals(4, replay.replay(directory, 2));
+        Assertions.assertEquals(2, replay.getApplied());
+
+        var recovered = Replay.recover(snapshot, directory, Fixtures.codec(Fixtures.items()));
+        for (int i = 0; i < world.size(); ++i)
+            Assertions.assertEquals(world.get(i).toString(), recovered.get(i).toString());
+    }
+
+    @Test
+    void battle() throws IOException {
+        // weakens the magic of the target by 100%, so the order of payment and
+        // effect matters
+        var drain = new AttackingSpell("Drain", 5, MagicLevel.NOOB, false, true, 100);
+        var items = Fixtures.items();
+        List<Wizard> world = new ArrayList<>();
+        for (int i = 0; i < 6; ++i)
+            world.add(new Wizard("Fighter " + i, MagicLevel.NOOB, 100, 100, 50, 10 + 10 * i, 0,
+                    new HashSet<>(Set.of(drain, episkey)), new HashSet<>(), 10, new HashSet<>()));
+        WizardFile.write(snapshot, world, Fixtures.codec(items), 0);
+        var pool = new ForkJoinPool(2);
+        try (var journal = open(directory, world, items)) {
+            Journal.install(journal);
+            var engine = new BattleEngine(world, 2, pool, 7);
+            for (int tick = 0; tick < 3; ++tick)
+                engine.tick();
+        } finally {
+            pool.shutdown();
+        }
+
+        var recovered = Replay.recover(snapshot, directory, Fixtures.codec(Fixtures.items()));
+        for (int i = 0; i < world.size(); ++i)
+            Assertions.assertEquals(world.get(i).toString(), recovered.get(i).toString());
+    }
+
+    @Test
+    void useStack() throws IOException {
+        var potion = new HealthPotion("Potion", 1, 2, 1, 10);
+        List<Tradeable> items = List.of(new ItemStack(potion, 3), new ItemStack(potion, 1));
+        List<Wizard> world = List.of(new Wizard("Dude", MagicLevel.NOOB, 100, 50, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 10, new HashSet<>(Set.of(items.get(0)))));
+        WizardFile.write(snapshot, world, Fixtures.codec(items), 0);
+        try (var journal = open(directory, world, items)) {
+            Journal.install(journal);
+            Assertions.assertTrue(world.get(0).useItem(items.get(0), world.get(0)));
+        }
+
+        var recovered = Replay.recover(snapshot, directory, Fixtures.codec(items));
+        Assertions.assertTrue(recovered.get(0).toString().startsWith("[Dude(*): 60/100"));
+        Assertions.assertEquals(world.get(0).toString(), recovered.get(0).toString());
+    }
+
+    @Test
+    void actorSellerDies() throws IOException {
+        var items = Fixtures.items();
+        var world = world(items);
+        WizardFile.write(snapshot, world, Fixtures.codec(items), 0);
+        try (var journal = open(directory, world, items)) {
+            Journal.install(journal);
+            var tasks = new ArrayDeque<Runnable>();
+            var actors = new WizardActors(tasks::add, 8);
+            var dude = actors.spawn(world.get(0));
+            var prey = actors.spawn(world.get(1));
+            var sold = dude.sellItem(items.get(0), prey);
+            // the seller curses itself before the buyer has paid
+            var cursed = dude.castSpell(curse, dude);
+            while (!tasks.isEmpty())
+                tasks.poll().run();
+            Assertions.assertTrue(cursed.join());
+            Assertions.assertTrue(sold.join());
+        }
+        Assertions.assertTrue(world.get(0).isDead());
+        Assertions.assertTrue(world.get(0).toString().contains("; 10 Knuts;"));
+        Assertions.assertTrue(world.get(1).toString().contains("; 8 Knuts;"));
+
+        var recovered = Replay.recover(snapshot, directory, Fixtures.codec(Fixtures.items()));
+        for (int i = 0; i < world.size(); ++i)
+            Assertions.assertEquals(world.get(i).toString(), recovered.get(i).toString());
+    }
+
+    @Test
+    void actorCastInterleaved() throws IOException {
+        var drain = new AttackingSpell("Drain", 5, MagicLevel.NOOB, false, true, 100);
+        var items = Fixtures.items();
+        List<Wizard> world = List.of(
+                new Wizard("Caster", MagicLevel.ADEPT, 100, 100, 100, 100, 10,
+                        new HashSet<>(Set.of(fireball)), new HashSet<>(), 10, new HashSet<>()),
+                new Wizard("Target", MagicLevel.ADEPT, 100, 100, 100, 100, 10,
+                        new HashSet<>(), new HashSet<>(), 10, new HashSet<>()),
+                new Wizard("Drainer", MagicLevel.NOOB, 100, 100, 50, 50, 10,
+                        new HashSet<>(Set.of(drain)), new HashSet<>(), 10, new HashSet<>()),
+                new Wizard("Healer", MagicLevel.NOOB, 100, 100, 50, 50, 10,
+                        new HashSet<>(Set.of(episkey)), new HashSet<>(), 10, new HashSet<>()));
+        WizardFile.write(snapshot, world, Fixtures.codec(items), 0);
+        try (var journal = open(directory, world, items)) {
+            Journal.install(journal);
+            var tasks = new ArrayDeque<Runnable>();
+            var actors = new WizardActors(tasks::add, 8);
+            var caster = actors.spawn(world.get(0));
+            var target = actors.spawn(world.get(1));
+            var drained = actors.spawn(world.get(2)).castSpell(drain, caster);
+            var healed = actors.spawn(world.get(3)).castSpell(episkey, caster);
+            // the caster pays, is drained and healed, and only then the fire ball lands
+            var cast = caster.castSpell(fireball, target);
+            while (!tasks.isEmpty())
+                tasks.poll().run();
+            Assertions.assertTrue(drained.join());
+            Assertions.assertTrue(healed.join());
+            Assertions.assertTrue(cast.join());
+        }
+        Assertions.assertTrue(world.get(0).toString().contains(": 100/100 10/100;"));
+        Assertions.assertTrue(world.get(1).toString().contains(": 97/100 "));
+
+        var recovered = Replay.recover(snapshot, directory, Fixtures.codec(Fixtures.items()));
+        for (int i = 0; i < world.size(); ++i)
+            Assertions.assertEquals(world.get(i).toString(), recovered.get(i).toString());
+    }
+}
@@ -0,0 +1,109 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+class SettlementBatchTest {
+    HealthPotion potion;
+    Scroll scroll;
+    Wizard merchant;
+    Wizard buyer;
+    SettlementBatch batch;
+
+    @BeforeEach
+    void setUp() {
+        potion = new HealthPotion("Potion", 1, 2, 1, 10);
+        scroll = new Scroll("Scroll", 1, 5, 1, new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3));
+        merchant = new Wizard("Merchant", MagicLevel.NOOB, 100, 100, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 10_000, new HashSet<>(Set.of(new ItemStack(potion, 5))),
+                new SplittableRandom(1));
+        buyer = new Wizard("Buyer", MagicLevel.NOOB, 100, 50, 50, 50, 10,
+                new HashSet<>(), new HashSet<>(), 20, new HashSet<>(Set.of(scroll)), new SplittableRandom(2));
+        batch = new SettlementBatch();
+    }
+
+    @Test
+    void arguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> batch.add(null, merchant, buyer));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> batch.add(potion, null, buyer));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> batch.add(potion, merchant, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> batch.add(potion, merchant, merchant));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> batch.settle(null));
+        Assertions.assertEquals(0, batch.settle(SettlementBatch.Mode.PER_TRADE).length);
+    }
+
+    @Test
+    void netting() {
+        // the merchant has no money, but earns more than the scroll costs
+        batch.add(new ItemStack(potion, 3), merchant, buyer).add(scroll, buyer, merchant);
+        Assertions.assertEquals(2, batch.size());
+        var settled = batch.settle(SettlementBatch.Mode.ALL_OR_NOTHING);
+        Assertions.assertArrayEquals(new boolean[]{true, true}, settled);
+        Assertions.assertEquals(0, batch.size());
+        Assertions.assertTrue(merchant.toString().contains("; 1 Knut;"));
+        Assertions.assertTrue(buyer.toString().contains("; 9 Knuts;"));
+        Assertions.assertTrue(merchant.possesses(scroll));
+        Assertions.assertTrue(merchant.possesses(new ItemStack(potion, 2)));
+        Assertions.assertTrue(buyer.possesses(new ItemStack(potion, 3)));
+        Assertions.assertFalse(buyer.possesses(scroll));
+    }
+
+    @Test
+    void aggregatedChecks() {
+        var three = new ItemStack(potion, 3);
+        // only 5 potions are held and only 10 Knuts can be paid
+        batch.add(three, merchant, buyer).add(three, merchant, buyer).add(three.withCount(2), merchant, buyer);
+        Assertions.assertArrayEquals(new boolean[]{false, false, false, false},
+                batch.add(three, merchant, buyer).settle(SettlementBatch.Mode.ALL_OR_NOTHING));
+        Assertions.assertTrue(merchant.possesses(new ItemStack(potion, 5)));
+        Assertions.assertTrue(buyer.toString().contains("; 10 Knuts;"));
+
+        batch.add(three, merchant, buyer).add(three, merchant, buyer).add(three.withCount(2), merchant, buyer);
+        Assertions.assertArrayEquals(new boolean[]{true, false, true}, batch.settle(SettlementBatch.Mode.PER_TRADE));
+        Assertions.assertTrue(buyer.possesses(new ItemStack(potion, 5)));
+        Assertions.assertTrue(buyer.toString().contains("; 0 Knuts;"));
+        Assertions.assertTrue(merchant.toString().contains("; 10 Knuts;"));
+        Assertions.assertTrue(merchant.toString().contains("carries []"));
+    }
+
+    @Test
+    void concurrentSeller() {
+        var three = new ItemStack(potion, 3);
+        var seller = new ConcurrentWizard("Seller", MagicLevel.NOOB, 100, 100, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 100, new HashSet<>(Set.of(three.withCount(5))));
+        // the parts sold are checked against the stack of the kind, like for a Wizard
+        batch.add(three, seller, buyer).add(three, seller, buyer).add(three.withCount(2), seller, buyer);
+        Assertions.assertArrayEquals(new boolean[]{true, false, true}, batch.settle(SettlementBatch.Mode.PER_TRADE));
+        Assertions.assertTrue(buyer.possesses(new ItemStack(potion, 5)));
+        Assertions.assertTrue(seller.toString().contains("carries []"));
+    }
+
+    @Test
+    void capacityAndItems() {
+        var heavy = new HealthPotion("Heavy", 1, 5, 15, 10);
+        var giver = new Wizard("Giver", MagicLevel.NOOB, 100, 100, 50, 50, 0,
+                new HashSet<>(), new HashSet<>(), 10_000, new HashSet<>(Set.of(new ItemStack(heavy, 2))),
+                new SplittableRandom(3));
+        // the scroll is sold once only, the second heavy potion does not fit
+        batch.add(new ItemStack(heavy, 1), giver, buyer).add(new ItemStack(heavy, 1), giver, buyer)
+                .add(scroll, buyer, giver).add(scroll, buyer, merchant);
+        Assertions.assertArrayEquals(new boolean[]{true, false, true, false},
+                batch.settle(SettlementBatch.Mode.PER_TRADE));
+        Assertions.assertTrue(buyer.possesses(new ItemStack(heavy, 1)));
+        Assertions.assertTrue(giver.possesses(new ItemStack(heavy, 1)));
+        Assertions.assertTrue(giver.possesses(scroll));
+        Assertions.assertTrue(buyer.toString().contains("; 10 Knuts;"));
+
+        // a dead trader takes no part in trades
+        merchant.takeDamage(100);
+        batch.add(new ItemStack(potion, 1), merchant, buyer).add(new ItemStack(heavy, 1), giver, merchant);
+        Assertions.assertArrayEquals(new boolean[]{false, false}, batch.settle(SettlementBatch.Mode.PER_TRADE));
+        Assertions.assertTrue(merchant.possesses(new ItemStack(potion, 5)));
+    }
+}
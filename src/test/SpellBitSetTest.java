@@ -0,0 +1,80 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+class SpellBitSetTest {
+    static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
+    static AttackingSpell poison = new AttackingSpell("Poison", 3, MagicLevel.ADEPT, true, true, 50);
+    static AttackingSpell extraction = new AttackingSpell("Extraction", 3, MagicLevel.ADEPT, false, false, 3);
+    static SpellBitSet<AttackingSpell> set;
+
+    @BeforeEach
+    void setUp() {
+        set = new SpellBitSet<>(Arrays.asList(fireball, poison));
+    }
+
+    @Test
+    void constructor() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SpellBitSet<AttackingSpell>(null));
+        Assertions.assertTrue(new SpellBitSet<AttackingSpell>().isEmpty());
+        Assertions.assertEquals(2, set.size());
+    }
+
+    @Test
+    void contains() {
+        Assertions.assertTrue(set.contains(fireball));
+        Assertions.assertTrue(set.containsId(poison.getId()));
+        Assertions.assertFalse(set.contains(extraction));
+        Assertions.assertFalse(set.contains("Fire Ball"));
+        Assertions.assertFalse(set.containsId(100000));
+    }
+
+    @Test
+    void addRemove() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> set.add(null));
+        Assertions.assertFalse(set.add(fireball));
+        Assertions.assertTrue(set.add(extraction));
+        Assertions.assertEquals(3, set.size());
+        Assertions.assertTrue(set.remove(fireball));
+        Assertions.assertFalse(set.remove(fireball));
+        Assertions.assertFalse(set.remove(null));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(poison, extraction)), set);
+    }
+
+    @Test
+    void addAllRemoveAll() {
+        List<AttackingSpell> many = new ArrayList<>();
+        for (int i = 0; i < 200; ++i)
+            many.add(new AttackingSpell("Spell " + i, 1, MagicLevel.NOOB, true, false, i));
+        var other = new SpellBitSet<>(many);
+        Assertions.assertTrue(set.addAll(other));
+        Assertions.assertFalse(set.addAll(other));
+        Assertions.assertEquals(202, set.size());
+        Assertions.assertTrue(set.containsAll(many));
+        Assertions.assertTrue(set.removeAll(other));
+        Assertions.assertFalse(set.removeAll(other));
+        Assertions.assertEquals(2, set.size());
+        Assertions.assertTrue(set.removeAll(Arrays.asList(poison, extraction)));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(fireball)), set);
+    }
+
+    @Test
+    void iterator() {
+        List<AttackingSpell> iterated = new ArrayList<>(set);
+        Assertions.assertEquals(2, iterated.size());
+        Assertions.assertTrue(iterated.get(0).getId() < iterated.get(1).getId());
+        set.removeIf(poison::equals);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(fireball)), set);
+        set.clear();
+        Assertions.assertEquals("[]", set.toString());
+        Assertions.assertEquals(-1, set.nextId(0));
+    }
+}
@@ -0,0 +1,54 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+class SpellCatalogTest {
+    @Test
+    void byId() {
+        var spell = new HealingSpell("Episkey", 5, MagicLevel.NOOB, true, false, 20);
+        int id = spell.getId();
+        Assertions.assertEquals(id, spell.getId());
+        Assertions.assertTrue(id < SpellCatalog.size());
+        Assertions.assertEquals(spell, SpellCatalog.byId(id));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SpellCatalog.byId(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SpellCatalog.byId(SpellCatalog.size()));
+    }
+
+    @Test
+    void denseIds() {
+        int before = SpellCatalog.size();
+        var first = new AttackingSpell("CatalogDenseFirst", 10, MagicLevel.NOOB, true, false, 20);
+        var second = new AttackingSpell("CatalogDenseSecond", 20, MagicLevel.ADEPT, true, true, 50);
+        Assertions.assertEquals(before, first.getId());
+        Assertions.assertEquals(before + 1, second.getId());
+        Assertions.assertEquals(before + 2, SpellCatalog.size());
+    }
+
+    @Test
+    void intern() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SpellCatalog.intern(null));
+        var first = new AttackingSpell("CatalogIntern", 10, MagicLevel.NOOB, true, false, 20);
+        var copy = new AttackingSpell("CatalogIntern", 10, MagicLevel.NOOB, true, false, 20);
+        var other = new AttackingSpell("CatalogIntern", 10, MagicLevel.NOOB, true, false, 21);
+        Assertions.assertSame(first, SpellCatalog.intern(first));
+        Assertions.assertSame(first, SpellCatalog.intern(copy));
+        Assertions.assertEquals(first.getId(), copy.getId());
+        Assertions.assertNotSame(first, SpellCatalog.intern(other));
+        Assertions.assertNotEquals(first.getId(), other.getId());
+    }
+
+    @Test
+    void internProtection() {
+        var attack = new AttackingSpell("CatalogProtected", 10, MagicLevel.NOOB, true, false, 20);
+        Set<AttackingSpell> attacks = new HashSet<>(Set.of(attack));
+        var first = SpellCatalog.intern(new ProtectingSpell("CatalogShield", 10, MagicLevel.NOOB, attacks));
+        attacks.clear();
+        var second = new ProtectingSpell("CatalogShield", 10, MagicLevel.NOOB, Set.of(attack));
+        Assertions.assertSame(first, SpellCatalog.intern(second));
+    }
+}
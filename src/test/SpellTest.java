@@ -4,7 +4,10 @@ import a12226166.*;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 class SpellTest {
     static class SpellTestClass extends Spell {
@@ -43,6 +46,54 @@ class SpellTest {
         Assertions.assertTrue(dude.isDead());
     }
 
+    @Test
+    void castBatch() {
+        var caster = new Wizard("Caster", MagicLevel.ADEPT, 10, 10, 100, 13,
+                0, new HashSet<>(), new HashSet<>(), 0, new HashSet<>());
+        List<Wizard> targets = new ArrayList<>();
+        for (int i = 0; i < 5; ++i)
+            targets.add(new Wizard("Target", MagicLevel.ADEPT, 10, 3, 100, 3,
+                    0, new HashSet<>(), new HashSet<>(), 0, new HashSet<>()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tmp.cast(caster, null, 0, false));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tmp.cast(caster, targets, -1, false));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> tmp.cast(caster, Arrays.asList(caster, null), 0, false));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> tmp.cast(caster, targets, Integer.MAX_VALUE, false));
+        Assertions.assertFalse(tmp.cast(caster, targets, 3, false));
+        Assertions.assertTrue(tmp.cast(caster, targets, 2, false));
+        for (var target : targets)
+            Assertions.assertTrue(target.isDead());
+        Assertions.assertFalse(caster.provideMana(MagicLevel.NOOB, 1));
+    }
+
+    @Test
+    void castBatchParallel() {
+        var caster = new Wizard("Caster", MagicLevel.ADEPT, 10, 10, 100, 3,
+                0, new HashSet<>(), new HashSet<>(), 0, new HashSet<>());
+        List<Wizard> targets = new ArrayList<>();
+        for (int i = 0; i < 10 * Spell.PARALLEL_THRESHOLD; ++i)
+            targets.add(new Wizard("Target", MagicLevel.ADEPT, 10, i % 2 == 0 ? 3 : 4, 100, 3,
+                    0, new HashSet<>(), new HashSet<>(), 0, new HashSet<>()));
+        Assertions.assertTrue(tmp.cast(caster, targets, 0, true));
+        for (int i = 0; i < targets.size(); ++i)
+            Assertions.assertEquals(i % 2 == 0, targets.get(i).isDead());
+    }
+
+    @Test
+    void testEquals() {
+        var same = new SpellTestClass("TMP", 3, MagicLevel.ADEPT);
+        Assertions.assertEquals(tmp, same);
+        Assertions.assertEquals(tmp.hashCode(), same.hashCode());
+        Assertions.assertNotEquals(tmp, new SpellTestClass("TMP", 4, MagicLevel.ADEPT));
+        Assertions.assertNotEquals(tmp, new SpellTestClass("TMP", 3, MagicLevel.NOOB));
+        Assertions.assertNotEquals(tmp, new SpellTestClass("TMP2", 3, MagicLevel.ADEPT));
+        Assertions.assertNotEquals(tmp, new AttackingSpell("TMP", 3, MagicLevel.ADEPT, true, false, 3));
+        Assertions.assertNotEquals(new AttackingSpell("TMP", 3, MagicLevel.ADEPT, true, false, 3),
+                new AttackingSpell("TMP", 3, MagicLevel.ADEPT, false, false, 3));
+        Assertions.assertNotEquals(tmp, null);
+    }
+
     @Test
     void additionalOutputString() {
         Assertions.assertEquals("", tmp.additionalOutputString());
@@ -1,5 +1,6 @@
 package test;
 
+import a12226166.ConcurrentWizard;
 import a12226166.MagicEffectRealization;
 import a12226166.MagicLevel;
 import a12226166.Tradeable;
@@ -8,7 +9,9 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 class TradeableTest {
     static class TradeableTestClass implements Tradeable {
@@ -89,4 +92,55 @@ class TradeableTest {
         Assertions.assertFalse(dude2.canAfford(1));
         Assertions.assertTrue(dude1.canAfford(6));
     }
-}
\ No newline at end of file
+
+    @Test
+    void purchaseRollback() {
+        dude2.takeDamage(999);
+        Assertions.assertFalse(item2.purchase(dude2, dude1));
+        Assertions.assertTrue(dude2.possesses(item2));
+        Assertions.assertFalse(dude1.possesses(item2));
+        Assertions.assertTrue(dude1.canAfford(3));
+        Assertions.assertFalse(dude1.canAfford(4));
+    }
+
+    @Test
+    void concurrentPurchases() throws InterruptedException {
+        var merchant1 = new ConcurrentWizard("Merchant", MagicLevel.ADEPT, 10, 3, 100, 3,
+                1000, new HashSet<>(), new HashSet<>(), 300, new HashSet<>());
+        var merchant2 = new ConcurrentWizard("Merchant", MagicLevel.ADEPT, 10, 3, 100, 3,
+                1000, new HashSet<>(), new HashSet<>(), 300, new HashSet<>());
+        List<Tradeable> items = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            var item = new TradeableTestClass();
+            items.add(item);
+            Assertions.assertTrue((i % 2 == 0 ? merchant1 : merchant2).addToInventory(item));
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            var thread = new Thread(() -> {
+                for (int round = 0; round < 100; ++round)
+                    for (var item : items)
+                        if (!item.purchase(merchant1, merchant2))
+                            item.purchase(merchant2, merchant1);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (var thread : threads)
+            thread.join();
+        int itemsOf1 = 0;
+        for (var item : items) {
+            Assertions.assertTrue(merchant1.possesses(item) ^ merchant2.possesses(item));
+            if (merchant1.possesses(item))
+                ++itemsOf1;
+        }
+        // money and weight of both merchants have to match the items they own
+        int moneyOf1 = 1000 + 3 * (50 - itemsOf1);
+        Assertions.assertTrue(merchant1.canAfford(moneyOf1));
+        Assertions.assertFalse(merchant1.canAfford(moneyOf1 + 1));
+        Assertions.assertTrue(merchant2.canAfford(2000 - moneyOf1));
+        Assertions.assertFalse(merchant2.canAfford(2000 - moneyOf1 + 1));
+        Assertions.assertTrue(merchant1.hasCapacity(300 - 3 * itemsOf1));
+        Assertions.assertFalse(merchant1.hasCapacity(300 - 3 * itemsOf1 + 1));
+    }
+}
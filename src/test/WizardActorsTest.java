@@ -0,0 +1,155 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+class WizardActorsTest {
+    static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
+    static AttackingSpell curse = new AttackingSpell("Curse", 5, MagicLevel.NOOB, true, false, 1000);
+    HealthPotion potion;
+    /**
+     * Tasks of the executor, run by runAll
+     */
+    ArrayDeque<Runnable> tasks;
+    WizardActors actors;
+    WizardActors.Actor dude;
+    WizardActors.Actor prey;
+
+    @BeforeEach
+    void setUp() {
+        potion = new HealthPotion("Potion", 1, 2, 1, 10);
+        tasks = new ArrayDeque<>();
+        actors = new WizardActors(tasks::add, 8);
+        dude = actors.spawn(new Wizard("Dude", MagicLevel.ADEPT, 100, 100, 100, 100, 10,
+                new HashSet<>(Set.of(fireball, curse)), new HashSet<>(), 10,
+                new HashSet<>(Set.of(new ItemStack(potion, 5))), new SplittableRandom(1)));
+        prey = actors.spawn(new Wizard("Prey", MagicLevel.ADEPT, 100, 80, 100, 100, 10,
+                new HashSet<>(), new HashSet<>(), 10, new HashSet<>(), new SplittableRandom(2)));
+    }
+
+    void runAll() {
+        while (!tasks.isEmpty())
+            tasks.poll().run();
+    }
+
+    String state(WizardActors.Actor actor) {
+        var state = actor.ask(Wizard::toString);
+        runAll();
+        return state.join();
+    }
+
+    @Test
+    void arguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new WizardActors(null, 8));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new WizardActors(tasks::add, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> actors.spawn(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.castSpell(null, prey));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.useItem(potion, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.sellItem(potion, dude));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.steal(dude));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.ask(null));
+    }
+
+    @Test
+    void castAndUse() {
+        var cast = dude.castSpell(fireball, prey);
+        var unknown = prey.castSpell(fireball, dude);
+        var used = dude.useItem(new ItemStack(potion, 1), prey);
+        // nothing happens before the actors run
+        Assertions.assertFalse(cast.isDone());
+        runAll();
+        Assertions.assertTrue(cast.join());
+        Assertions.assertFalse(unknown.join());
+        Assertions.assertTrue(used.join());
+        Assertions.assertTrue(state(prey).contains(": 87/100"));
+        var state = state(dude);
+        Assertions.assertTrue(state.contains(": 100/100 "));
+        Assertions.assertTrue(state.contains("4 x [Potion"));
+    }
+
+    @Test
+    void tradeStealAndLoot() {
+        var five = new ItemStack(potion, 5);
+        var sold = dude.sellItem(five.withCount(2), prey);
+        var tooMuch = dude.sellItem(five.withCount(6), prey);
+        runAll();
+        Assertions.assertTrue(sold.join());
+        Assertions.assertFalse(tooMuch.join());
+        Assertions.assertTrue(state(prey).contains("; 6 Knuts;"));
+        Assertions.assertTrue(state(dude).contains("; 14 Knuts;"));
+
+        var stolen = prey.steal(dude);
+        runAll();
+        Assertions.assertTrue(stolen.join());
+        Assertions.assertTrue(state(prey).contains("3 x [Potion"));
+
+        var dead = dude.castSpell(curse, prey);
+        var looted = dude.loot(prey);
+        runAll();
+        Assertions.assertTrue(dead.join());
+        Assertions.assertTrue(looted.join());
+        Assertions.assertTrue(state(dude).contains("5 x [Potion"));
+        Assertions.assertTrue(state(prey).contains("carries []"));
+    }
+
+    @Test
+    void backpressure() {
+        var futures = new ArrayList<CompletableFuture<Boolean>>();
+        // a cast reserves one message of the caster and one of the target
+        for (int i = 0; i < 8; ++i)
+            futures.add(dude.castSpell(fireball, prey));
+        Assertions.assertEquals(8, dude.getMailboxSize());
+        Assertions.assertEquals(8, prey.getMailboxSize());
+        var rejected = dude.castSpell(fireball, dude);
+        var exception = Assertions.assertThrows(CompletionException.class, rejected::join);
+        Assertions.assertTrue(exception.getCause() instanceof RejectedExecutionException);
+        Assertions.assertThrows(CompletionException.class, () -> prey.ask(w -> w).join());
+
+        runAll();
+        for (var future : futures)
+            Assertions.assertTrue(future.join());
+        Assertions.assertEquals(0, dude.getMailboxSize());
+        Assertions.assertEquals(0, prey.getMailboxSize());
+        Assertions.assertTrue(state(prey).contains(": 56/100"));
+    }
+
+    @Test
+    void concurrent() {
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var concurrent = new WizardActors(executor, 1 << 12);
+            var wizards = new ArrayList<WizardActors.Actor>();
+            for (int i = 0; i < 16; ++i)
+                wizards.add(concurrent.spawn(new Wizard("W" + i, MagicLevel.ADEPT, 1000, 1000, 1000, 1000, 10,
+                        new HashSet<>(Set.of(fireball)), new HashSet<>(), 10, new HashSet<>(),
+                        new SplittableRandom(i))));
+            var futures = new ArrayList<CompletableFuture<Boolean>>();
+            // every wizard casts 10 fire balls on each of the others
+            for (int round = 0; round < 10; ++round)
+                for (var caster : wizards)
+                    for (var target : wizards)
+                        if (caster != target)
+                            futures.add(caster.castSpell(fireball, target));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            for (var wizard : wizards) {
+                var state = wizard.ask(Wizard::toString).join();
+                // 150 fire balls of 3 HP each, 150 casts of 3 MP each
+                Assertions.assertTrue(state.contains(": 550/1000 550/1000;"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
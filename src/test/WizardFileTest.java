@@ -0,0 +1,90 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class WizardFileTest {
+    static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
+    static AttackingSpell poison = new AttackingSpell("Poison", 3, MagicLevel.ADEPT, true, true, 50);
+    static HealingSpell episkey = new HealingSpell("Episkey", 5, MagicLevel.NOOB, true, false, 20);
+    static List<Tradeable> items = List.of(new HealthPotion("Potion", 10, 1, 1, 3),
+            new ManaPotion("Mana Potion", 10, 1, 2, 3), new Scroll("Scroll", 1, 5, 1, fireball));
+    static ItemCodec codec = Fixtures.codec(items);
+    Path path;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = Files.createTempFile("wizards", ".bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    void writeAndOpen() throws IOException {
+        List<Wizard> wizards = new ArrayList<>();
+        wizards.add(new Wizard("Dude", MagicLevel.ADEPT, 100, 3, 100, 7, 1,
+                new HashSet<>(Set.of(fireball, episkey)), new HashSet<>(Set.of(poison)), 10,
+                new HashSet<>(items)));
+        wizards.add(new Wizard("Zauberer \u00d6d\u00f6n", MagicLevel.NOOB, 10, 0, 50, 0, 0,
+                new HashSet<>(), new HashSet<>(), 0, new HashSet<>()));
+        for (int i = 0; i < 100; ++i)
+            wizards.add(new Wizard("Wizard " + i, MagicLevel.MASTER, i, i, 1000 + i, i, i,
+                    new HashSet<>(Set.of(poison)), new HashSet<>(), i, new HashSet<>()));
+        WizardFile.write(path, wizards, codec);
+        Assertions.assertTrue(WizardFile.HEADER_SIZE + 102L * WizardFile.RECORD_SIZE < Files.size(path));
+
+        var file = WizardFile.open(path, codec);
+        Assertions.assertEquals(102, file.size());
+        Assertions.assertEquals("Zauberer \u00d6d\u00f6n", file.getName(1));
+        Assertions.assertEquals(MagicLevel.MASTER, file.getLevel(50));
+        Assertions.assertEquals(48, file.getHP(50));
+        Assertions.assertEquals(1048, file.getBasicMP(50));
+        Assertions.assertEquals(48, file.getMoney(50));
+        Assertions.assertEquals(48, file.getCarryingCapacity(50));
+        Assertions.assertTrue(file.knows(0, episkey));
+        Assertions.assertFalse(file.knows(0, poison));
+        Assertions.assertTrue(file.isProtected(0, poison));
+        Assertions.assertFalse(file.isProtected(1, poison));
+        Assertions.assertEquals(3, file.getInventorySize(0));
+        Assertions.assertEquals(0, file.getInventorySize(1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> file.getHP(102));
+
+        var loaded = file.loadAll();
+        for (int i = 0; i < wizards.size(); ++i)
+            Assertions.assertEquals(wizards.get(i).toString(), loaded.get(i).toString());
+        Assertions.assertTrue(loaded.get(0).isProtected(poison));
+        Assertions.assertTrue(loaded.get(1).isDead());
+        Assertions.assertFalse(loaded.get(0).hasCapacity(7));
+        Assertions.assertTrue(loaded.get(0).hasCapacity(6));
+    }
+
+    @Test
+    void invalid() throws IOException {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WizardFile.write(null, List.of(), codec));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WizardFile.write(path, null, codec));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WizardFile.write(path, List.of(), null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> WizardFile.write(path, Arrays.asList((Wizard) null), codec));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WizardFile.open(path, null));
+        Assertions.assertThrows(IOException.class, () -> WizardFile.open(path, codec));
+        Files.write(path, new byte[100]);
+        Assertions.assertThrows(IOException.class, () -> WizardFile.open(path, codec));
+        WizardFile.write(path, List.of(), codec);
+        Assertions.assertEquals(0, WizardFile.open(path, codec).size());
+    }
+}
@@ -0,0 +1,185 @@
+package test;
+
+import a12226166.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+
+class WizardTableTest {
+    static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
+    static AttackingSpell poison = new AttackingSpell("Poison", 3, MagicLevel.ADEPT, true, true, 50);
+    static HealthPotion potHP = new HealthPotion("Potion", 10, 1, 1, 3);
+    static WizardTable table;
+    static WizardTable.View dude;
+    static WizardTable.View prey;
+
+    @BeforeEach
+    void setUp() {
+        table = new WizardTable(1, new SplittableRandom(1));
+        dude = table.get(table.add("Dude", MagicLevel.ADEPT, 100, 3, 100, 3, 100, 10));
+        prey = table.get(table.add("Prey", MagicLevel.ADEPT, 100, 3, 100, 3, 100, 10));
+    }
+
+    @Test
+    void add() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new WizardTable(-1, new SplittableRandom()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new WizardTable(1, null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> table.add(null, MagicLevel.NOOB, 10, 10, 50, 50, 10, 10));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> table.add("a", null, 10, 10, 50, 50, 10, 10));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> table.add("a", MagicLevel.ADEPT, 10, 10, 50, 50, 10, 10));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> table.add("a", MagicLevel.NOOB, 10, -1, 50, 50, 10, 10));
+        Assertions.assertEquals(2, table.size());
+        for (int i = 0; i < 100; ++i)
+            Assertions.assertEquals(i + 2, table.add("Wizard " + i, MagicLevel.NOOB, 10, i % 2, 50, 50, 0, 0));
+        Assertions.assertEquals(102, table.size());
+        Assertions.assertEquals(52, table.countAlive());
+        Assertions.assertEquals("Wizard 3", table.getName(5));
+        Assertions.assertEquals(MagicLevel.NOOB, table.getLevel(5));
+        Assertions.assertEquals(1, table.getHP(5));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> table.get(102));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> table.getHP(-1));
+    }
+
+    @Test
+    void view() {
+        Assertions.assertEquals(dude, table.get(0));
+        Assertions.assertEquals(dude.hashCode(), table.get(0).hashCode());
+        Assertions.assertNotEquals(dude, prey);
+        Assertions.assertEquals(0, dude.getId());
+        Assertions.assertSame(table, dude.getTable());
+        Assertions.assertEquals("[Dude(**): 3/100 3/100; 100 Knuts; knows []; carries []]", dude.toString());
+    }
+
+    @Test
+    void castSpell() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.castSpell(null, prey));
+        Assertions.assertFalse(dude.castSpell(fireball, prey));
+        Assertions.assertFalse(dude.castRandomSpell(prey));
+        Assertions.assertTrue(dude.learn(fireball));
+        Assertions.assertFalse(dude.learn(fireball));
+        Assertions.assertTrue(dude.castRandomSpell(prey));
+        Assertions.assertTrue(prey.isDead());
+        Assertions.assertEquals(0, table.getMP(0));
+        Assertions.assertTrue(dude.forget(fireball));
+        Assertions.assertFalse(dude.forget(fireball));
+    }
+
+    @Test
+    void effects() {
+        dude.setProtection(new HashSet<>(Collections.singleton(poison)));
+        Assertions.assertTrue(dude.isProtected(poison));
+        Assertions.assertFalse(dude.isProtected(fireball));
+        poison.doEffect(dude);
+        Assertions.assertEquals(3, table.getHP(0));
+        Assertions.assertFalse(dude.isProtected(poison));
+        dude.healPercent(10);
+        dude.enforceMagic(2);
+        Assertions.assertEquals(13, table.getHP(0));
+        Assertions.assertEquals(5, table.getMP(0));
+        dude.weakenMagicPercent(100);
+        dude.takeDamage(20);
+        Assertions.assertTrue(dude.isDead());
+        Assertions.assertEquals(0, table.getMP(0));
+        Assertions.assertFalse(dude.provideMana(MagicLevel.NOOB, 0));
+    }
+
+    @Test
+    void applyToAll() {
+        var random = new SplittableRandom(3);
+        var bulk = new WizardTable(0, new SplittableRandom(1));
+        var wizards = new Wizard[1000];
+        for (int i = 0; i < wizards.length; ++i) {
+            int basicHP = random.nextInt(1000);
+            int basicMP = 50 + random.nextInt(1000);
+            int HP = random.nextInt(1000);
+            int MP = random.nextInt(1000);
+            bulk.add("Wizard", MagicLevel.NOOB, basicHP, HP, basicMP, MP, 0, 0);
+            wizards[i] = new Wizard("Wizard", MagicLevel.NOOB, basicHP, HP, basicMP, MP, 0,
+                    new HashSet<>(), new HashSet<>(), 0, new HashSet<>());
+        }
+        for (int round = 0; round < 50; ++round) {
+            var effect = EffectKind.values()[random.nextInt(EffectKind.values().length)];
+            int amount = random.nextInt(effect.isPercentage() ? 101 : 300);
+            bulk.applyToAll(effect, amount);
+            effect.applyTo(wizards, amount);
+        }
+        bulk.applyToRange(EffectKind.DAMAGE, 10, 20, 100000);
+        for (int i = 10; i < 20; ++i)
+            wizards[i].takeDamage(100000);
+        for (int i = 0; i < wizards.length; ++i)
+            Assertions.assertEquals(wizards[i].toString(), bulk.get(i).toString());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bulk.applyToAll(null, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bulk.applyToAll(EffectKind.HEAL, -1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bulk.applyToAll(EffectKind.HEAL_PERCENT, 101));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bulk.applyToRange(EffectKind.HEAL, 5, 4, 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> bulk.applyToRange(EffectKind.HEAL, 0, 1001, 1));
+    }
+
+    @Test
+    void useStack() {
+        var stack = new ItemStack(new HealthPotion("Potion", 1, 1, 1, 3), 3);
+        Assertions.assertTrue(dude.addToInventory(stack));
+        Assertions.assertTrue(dude.useItem(stack, dude));
+        Assertions.assertEquals(6, table.getHP(0));
+        Assertions.assertTrue(dude.possesses(stack.withCount(2)));
+        Assertions.assertFalse(dude.possesses(stack));
+        Assertions.assertTrue(dude.hasCapacity(7));
+        Assertions.assertFalse(dude.hasCapacity(8));
+    }
+
+    @Test
+    void mergeStacks() {
+        var stack = new ItemStack(new HealthPotion("Potion", 1, 1, 1, 3), 3);
+        var prey = table.get(table.add("Prey", MagicLevel.ADEPT, 100, 3, 100, 3, 100, 10));
+        Assertions.assertTrue(dude.addToInventory(stack));
+        Assertions.assertTrue(dude.addToInventory(stack.withCount(2)));
+        Assertions.assertTrue(dude.possesses(stack.withCount(5)));
+        Assertions.assertFalse(dude.possesses(stack.withCount(6)));
+        Assertions.assertTrue(dude.removeFromInventory(stack.withCount(2)));
+        Assertions.assertTrue(dude.possesses(stack));
+        // a theft takes a single item of the stack
+        Assertions.assertTrue(dude.steal(prey));
+        Assertions.assertTrue(dude.possesses(stack.withCount(2)));
+        Assertions.assertFalse(dude.possesses(stack));
+        Assertions.assertTrue(prey.possesses(stack.withCount(1)));
+        Assertions.assertTrue(dude.hasCapacity(8));
+        Assertions.assertFalse(dude.hasCapacity(9));
+    }
+
+    @Test
+    void trade() {
+        Assertions.assertTrue(dude.addToInventory(potHP));
+        Assertions.assertFalse(dude.addToInventory(potHP));
+        Assertions.assertTrue(dude.possesses(potHP));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> potHP.purchase(dude, table.get(0)));
+        Assertions.assertTrue(dude.sellItem(potHP, prey));
+        Assertions.assertEquals(101, table.getMoney(0));
+        Assertions.assertEquals(99, table.getMoney(1));
+        Assertions.assertTrue(prey.possesses(potHP));
+        Assertions.assertTrue(prey.steal(dude));
+        Assertions.assertFalse(prey.steal(dude));
+        Assertions.assertTrue(dude.useItem(potHP, dude));
+        Assertions.assertEquals(6, table.getHP(0));
+        dude.takeDamage(6);
+        Assertions.assertTrue(dude.loot(prey));
+        Assertions.assertFalse(dude.possesses(potHP));
+        Assertions.assertTrue(prey.possesses(potHP));
+        Assertions.assertTrue(prey.hasCapacity(9));
+        Assertions.assertFalse(prey.hasCapacity(10));
+
+        var wizard = new Wizard("Wizard", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 10, new HashSet<>());
+        Assertions.assertTrue(potHP.purchase(prey, wizard));
+        Assertions.assertTrue(wizard.possesses(potHP));
+    }
+}
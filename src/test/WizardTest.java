@@ -8,6 +8,8 @@ import org.junit.jupiter.api.Test;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
 
 class WizardTest {
     static AttackingSpell fireball = new AttackingSpell("Fire Ball", 3, MagicLevel.ADEPT, true, false, 3);
@@ -77,6 +79,33 @@ class WizardTest {
         });
     }
 
+    @Test
+    void seededRandom() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Wizard("a", MagicLevel.NOOB,
+                10, 10, 50, 50, 10, new HashSet<>(), new HashSet<>(), 10, new HashSet<>(), null));
+        // separately built sets of separately created items iterate in different orders
+        var items1 = new HashSet<Tradeable>();
+        var items2 = new HashSet<Tradeable>();
+        for (int i = 0; i < 20; ++i) {
+            items1.add(new HealthPotion("Potion " + i, 1, 1, 1, 1));
+            items2.add(new HealthPotion("Potion " + (19 - i), 1, 1, 1, 1));
+        }
+        var victim1 = new Wizard("Victim", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 20, items1, new SplittableRandom(42));
+        var victim2 = new Wizard("Victim", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 20, items2, new SplittableRandom(42));
+        var thief1 = new Wizard("Thief", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 20, new HashSet<>());
+        var thief2 = new Wizard("Thief", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 20, new HashSet<>());
+        for (int i = 0; i < 10; ++i) {
+            Assertions.assertTrue(victim1.steal(thief1));
+            Assertions.assertTrue(victim2.steal(thief2));
+        }
+        Assertions.assertEquals(thief1.toString(), thief2.toString());
+        Assertions.assertEquals(victim1.toString(), victim2.toString());
+    }
+
     @Test
     void isDead() {
         dude.takeDamage(999);
@@ -114,6 +143,21 @@ class WizardTest {
         Assertions.assertFalse(prey.castSpell(fireball, dude));
     }
 
+    @Test
+    void castSpellOnAll() {
+        var targets = Arrays.asList(prey, new Wizard("Prey", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 10, new HashSet<>()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.castSpellOnAll(null, targets));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dude.castSpellOnAll(fireball, null));
+        Assertions.assertFalse(dude.castSpellOnAll(poison, targets));
+        Assertions.assertTrue(dude.castSpellOnAll(fireball, targets, 1, false));
+        Assertions.assertFalse(targets.get(0).isDead());
+        Assertions.assertTrue(dude.castSpellOnAll(fireball, targets));
+        for (var target : targets)
+            Assertions.assertTrue(target.isDead());
+        Assertions.assertFalse(prey.castSpellOnAll(fireball, Collections.singleton(dude)));
+    }
+
     @Test
     void castRandomSpell() {
         var clone = new Wizard("Clone", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
@@ -126,6 +170,25 @@ class WizardTest {
         Assertions.assertFalse(prey.castRandomSpell(dude));
     }
 
+    @Test
+    void castRandomSpellAfterForget() {
+        var caster = new Wizard("Caster", MagicLevel.ADEPT, 100, 100, 1000, 1000, 100,
+                new HashSet<>(Arrays.asList(fireball, poison, extraction)), new HashSet<>(), 10, new HashSet<>());
+        Assertions.assertTrue(caster.forget(poison));
+        Assertions.assertTrue(caster.learn(timedextraction));
+        var cast = new HashSet<Spell>();
+        var target = new MagicEffectRealization() {
+            @Override
+            public boolean consumeProtection(AttackingSpell s) {
+                cast.add(s);
+                return true;
+            }
+        };
+        for (int i = 0; i < 100; ++i)
+            Assertions.assertTrue(caster.castRandomSpell(target));
+        Assertions.assertEquals(Set.of(fireball, extraction, timedextraction), cast);
+    }
+
     @Test
     void useItem() {
         Assertions.assertThrows(IllegalArgumentException.class, () -> dude.useItem(null, prey));
@@ -229,6 +292,23 @@ class WizardTest {
         Assertions.assertFalse(dude.hasCapacity(1));
     }
 
+    @Test
+    void hasCapacityAfterTransfers() {
+        var thief = new Wizard("Thief", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 11, new HashSet<>(Collections.singleton(potHP)));
+        Assertions.assertFalse(thief.hasCapacity(11));
+        Assertions.assertTrue(thief.hasCapacity(10));
+        Assertions.assertTrue(dude.addToInventory(potMP));
+        Assertions.assertTrue(dude.steal(thief));
+        Assertions.assertTrue(dude.hasCapacity(10));
+        Assertions.assertFalse(thief.hasCapacity(1));
+        thief.takeDamage(999);
+        Assertions.assertTrue(thief.loot(dude));
+        Assertions.assertTrue(thief.hasCapacity(11));
+        Assertions.assertFalse(dude.hasCapacity(10));
+        Assertions.assertTrue(dude.hasCapacity(0));
+    }
+
     @Test
     void pay() {
         Assertions.assertTrue(dude.pay(100));
@@ -330,6 +410,69 @@ class WizardTest {
         }
     }
 
+    @Test
+    void lootOptimal() {
+        var big = new HealthPotion("Big", 1, 30, 6, 1);
+        var left = new HealthPotion("Left", 1, 20, 5, 1);
+        var right = new HealthPotion("Right", 1, 20, 5, 1);
+        var pebble = new HealthPotion("Pebble", 1, 0, 1, 1);
+        var deaddude = new Wizard("Dead Dude", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 20, new HashSet<>(Arrays.asList(big, left, right, pebble)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> deaddude.lootOptimal(null));
+        Assertions.assertFalse(deaddude.lootOptimal(dude));
+        deaddude.takeDamage(999);
+        Assertions.assertEquals(10, dude.remainingCapacity());
+        Assertions.assertTrue(deaddude.lootOptimal(dude));
+        Assertions.assertTrue(dude.possesses(left));
+        Assertions.assertTrue(dude.possesses(right));
+        Assertions.assertFalse(dude.possesses(big));
+        Assertions.assertFalse(dude.possesses(pebble));
+        Assertions.assertEquals(0, dude.remainingCapacity());
+        Assertions.assertEquals(20, deaddude.remainingCapacity());
+        Assertions.assertFalse(deaddude.lootOptimal(prey));
+    }
+
+    @Test
+    void lootOptimalStacks() {
+        var potion = new HealthPotion("Potion", 1, 2, 1, 10);
+        var heavy = new HealthPotion("Heavy", 1, 3, 4, 10);
+        var deaddude = new Wizard("Dead Dude", MagicLevel.ADEPT, 100, 0, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 1000, new HashSet<>(Arrays.asList(new ItemStack(potion, 7), heavy)));
+        dude.addToInventory(potHP);
+        Assertions.assertTrue(deaddude.lootOptimal(dude));
+        Assertions.assertTrue(dude.possesses(new ItemStack(potion, 7)));
+        Assertions.assertFalse(dude.possesses(heavy));
+        Assertions.assertEquals(2, dude.remainingCapacity());
+    }
+
+    @Test
+    void lootOptimalStacksConcurrentLooter() {
+        var potion = new HealthPotion("Potion", 1, 2, 1, 10);
+        var deaddude = new Wizard("Dead Dude", MagicLevel.ADEPT, 100, 0, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 1000, new HashSet<>(Arrays.asList(new ItemStack(potion, 5))));
+        var looter = new ConcurrentWizard("Looter", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 10, new HashSet<>());
+        // the stack is split into equal parts (1, 2, 2), which are carried away as one stack
+        Assertions.assertTrue(deaddude.lootOptimal(looter));
+        Assertions.assertTrue(looter.possesses(new ItemStack(potion, 5)));
+        Assertions.assertEquals(5, looter.remainingCapacity());
+    }
+
+    @Test
+    void lootOptimalLargeCapacity() {
+        var big = new HealthPotion("Big", 1, 3, 4_000_000, 1);
+        var left = new HealthPotion("Left", 1, 2, 3_000_000, 1);
+        var right = new HealthPotion("Right", 1, 2, 3_000_000, 1);
+        var deaddude = new Wizard("Dead Dude", MagicLevel.ADEPT, 100, 0, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 10_000_000, new HashSet<>(Arrays.asList(big, left, right)));
+        var giant = new Wizard("Giant", MagicLevel.ADEPT, 100, 3, 100, 3, 100,
+                new HashSet<>(), new HashSet<>(), 6_000_000, new HashSet<>());
+        // too large for the exact table: greedy by price per weight
+        Assertions.assertTrue(deaddude.lootOptimal(giant));
+        Assertions.assertTrue(giant.possesses(big));
+        Assertions.assertEquals(2_000_000, giant.remainingCapacity());
+    }
+
     @Test
     void takeDamage() {
         Assertions.assertDoesNotThrow(() -> dude.takeDamage(0));